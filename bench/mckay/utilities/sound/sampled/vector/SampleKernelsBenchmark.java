@@ -0,0 +1,104 @@
+/*
+ * SampleKernelsBenchmark.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled.vector;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import mckay.utilities.sound.sampled.SampleKernels;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * A JMH benchmark comparing the scalar <code>SampleKernels</code> with the
+ * <code>VectorSampleKernels</code> that use the JDK Vector API. Each kernel
+ * is run over blocks of stereo audio of the given sizes, and the average time
+ * per block is reported for each implementation.
+ *
+ * <p>This is run with the <code>benchmark-kernels</code> target of the build
+ * script, which requires the JMH jars to be given with the
+ * <code>jmh.classpath</code> property.
+ *
+ * @author Cory McKay
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class SampleKernelsBenchmark
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The implementation to benchmark.
+      */
+     @Param({"scalar", "vector"})
+     public String           implementation;
+
+     /**
+      * The number of samples in each channel of each block.
+      */
+     @Param({"1024", "65536", "1048576"})
+     public int              block_size;
+
+     private SampleKernels   kernels;
+     private double[][]      channels;
+     private double[]        destination;
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     @Setup
+     public void setUp()
+     {
+          kernels = implementation.equals("vector") ? new VectorSampleKernels() : new SampleKernels();
+          Random random = new Random(0);
+          channels = new double[2][block_size];
+          for (int chan = 0; chan < channels.length; chan++)
+               for (int samp = 0; samp < block_size; samp++)
+                    channels[chan][samp] = 2.0 * random.nextDouble() - 1.0;
+          destination = new double[block_size];
+     }
+
+
+     @Benchmark
+     public double[] mixDown()
+     {
+          kernels.mixDown(channels, 0, destination, 0, block_size);
+          return destination;
+     }
+
+
+     @Benchmark
+     public double[] scale()
+     {
+          // Alternate between multipliers so that the samples stay bounded
+          kernels.scale(channels[0], 0, block_size, 0.5);
+          kernels.scale(channels[0], 0, block_size, 2.0);
+          return channels[0];
+     }
+
+
+     @Benchmark
+     public double[] scaleAndClip()
+     {
+          System.arraycopy(channels[1], 0, destination, 0, block_size);
+          kernels.scaleAndClip(destination, 0, block_size, 1.5, 0.9);
+          return destination;
+     }
+
+
+     @Benchmark
+     public double findPeak()
+     {
+          return kernels.findPeak(channels[1], 0, block_size, 0.0);
+     }
+}
@@ -0,0 +1,278 @@
+/*
+ * VectorSampleKernels.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import mckay.utilities.sound.sampled.SampleKernels;
+
+
+/**
+ * An implementation of the sample kernels that uses the JDK Vector API, so
+ * that each loop processes as many samples per instruction as the widest
+ * vector registers of the platform allow (e.g. four doubles with AVX2). The
+ * final samples of each block that do not fill a whole vector are processed
+ * with masked vector operations.
+ *
+ * <p>This class is kept in a separate source root and compiled with
+ * <code>--add-modules jdk.incubator.vector</code> by the
+ * <code>-post-compile</code> target of the build script when the
+ * <code>build.vector.kernels</code> property is set, so that the rest of the
+ * library does not depend on the incubator module. It is chosen
+ * automatically by the <code>getInstance</code> method of the
+ * <code>SampleKernels</code> class when it is on the class path and the JVM
+ * is started with <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * <p>Each sample is calculated with the same operations, in the same order,
+ * as in the scalar implementation, so the results are identical.
+ *
+ * @author Cory McKay
+ */
+public class VectorSampleKernels
+     extends SampleKernels
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The widest vector shape supported by the platform.
+      */
+     private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+     /**
+      * The vector shape with as many ints as SPECIES has doubles, which
+      * quantized samples are converted to.
+      */
+     private static final VectorSpecies<Integer> INT_SPECIES
+          = IntVector.SPECIES_PREFERRED.withShape(VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Creates the vectorized implementation. The <code>getInstance</code>
+      * method of the <code>SampleKernels</code> class will usually be used
+      * rather than this constructor.
+      */
+     public VectorSampleKernels()
+     {
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns a description of this implementation that includes the number
+      * of samples processed by each vector operation.
+      *
+      * @return    The name of this implementation.
+      */
+     @Override
+     public String getName()
+     {
+          return "vector (" + SPECIES.length() + " doubles per vector)";
+     }
+
+
+     /**
+      * Mixes the given block of channels down into one channel, adding the
+      * channels of a whole vector of samples at a time.
+      *
+      * @param channels            The samples to mix down.
+      * @param offset              The index in each channel of the first
+      *                            sample to mix down.
+      * @param destination         The array to store the mixed down samples
+      *                            in. May be one of the channels.
+      * @param destination_offset  The index in <i>destination</i> at which to
+      *                            store the first mixed down sample.
+      * @param length              The number of samples to mix down.
+      */
+     @Override
+     public void mixDown( double[][] channels,
+          int offset,
+          double[] destination,
+          int destination_offset,
+          int length )
+     {
+          double[] first_channel = channels[0];
+          if (first_channel != destination || offset != destination_offset)
+               System.arraycopy(first_channel, offset, destination, destination_offset, length);
+          if (channels.length == 1)
+               return;
+
+          double number_channels = (double) channels.length;
+          int samp = 0;
+          for (int bound = SPECIES.loopBound(length); samp < bound; samp += SPECIES.length())
+          {
+               DoubleVector sum = DoubleVector.fromArray(SPECIES, destination, destination_offset + samp);
+               for (int chan = 1; chan < channels.length; chan++)
+                    sum = sum.add(DoubleVector.fromArray(SPECIES, channels[chan], offset + samp));
+               sum.div(number_channels).intoArray(destination, destination_offset + samp);
+          }
+          if (samp < length)
+          {
+               VectorMask<Double> mask = SPECIES.indexInRange(samp, length);
+               DoubleVector sum = DoubleVector.fromArray(SPECIES, destination, destination_offset + samp, mask);
+               for (int chan = 1; chan < channels.length; chan++)
+                    sum = sum.add(DoubleVector.fromArray(SPECIES, channels[chan], offset + samp, mask));
+               sum.div(number_channels).intoArray(destination, destination_offset + samp, mask);
+          }
+     }
+
+
+     /**
+      * Multiplies the given block of samples in place by the given value, a
+      * whole vector of samples at a time.
+      *
+      * @param samples        The samples to modify.
+      * @param offset         The index of the first sample to modify.
+      * @param length         The number of samples to modify.
+      * @param multiplier     The value to multiply each sample by.
+      */
+     @Override
+     public void scale(double[] samples, int offset, int length, double multiplier)
+     {
+          int samp = 0;
+          for (int bound = SPECIES.loopBound(length); samp < bound; samp += SPECIES.length())
+               DoubleVector.fromArray(SPECIES, samples, offset + samp)
+                    .mul(multiplier)
+                    .intoArray(samples, offset + samp);
+          if (samp < length)
+          {
+               VectorMask<Double> mask = SPECIES.indexInRange(samp, length);
+               DoubleVector.fromArray(SPECIES, samples, offset + samp, mask)
+                    .mul(multiplier)
+                    .intoArray(samples, offset + samp, mask);
+          }
+     }
+
+
+     /**
+      * Multiplies, clips and scales the given block of samples in place, a
+      * whole vector of samples at a time. NaN samples stay NaN, as the
+      * lanewise minimum and maximum return NaN as Math.min and Math.max do.
+      *
+      * @param samples        The samples to modify.
+      * @param offset         The index of the first sample to modify.
+      * @param length         The number of samples to modify.
+      * @param multiplier     The value to multiply each sample by before
+      *                       clipping.
+      * @param scale          The value to multiply each sample by after
+      *                       clipping.
+      */
+     @Override
+     public void scaleAndClip( double[] samples,
+          int offset,
+          int length,
+          double multiplier,
+          double scale )
+     {
+          int samp = 0;
+          for (int bound = SPECIES.loopBound(length); samp < bound; samp += SPECIES.length())
+               DoubleVector.fromArray(SPECIES, samples, offset + samp)
+                    .mul(multiplier)
+                    .max(-1.0)
+                    .min(1.0)
+                    .mul(scale)
+                    .intoArray(samples, offset + samp);
+          if (samp < length)
+          {
+               VectorMask<Double> mask = SPECIES.indexInRange(samp, length);
+               DoubleVector.fromArray(SPECIES, samples, offset + samp, mask)
+                    .mul(multiplier)
+                    .max(-1.0)
+                    .min(1.0)
+                    .mul(scale)
+                    .intoArray(samples, offset + samp, mask);
+          }
+     }
+
+
+     /**
+      * Returns the highest absolute value in the given block of samples, or
+      * the given starting value if it is higher, keeping the highest value
+      * seen in each lane and taking the highest lane at the end.
+      *
+      * @param samples        The samples to search.
+      * @param offset         The index of the first sample to search.
+      * @param length         The number of samples to search.
+      * @param peak_so_far    The highest absolute value found so far.
+      * @return               The highest absolute value found.
+      */
+     @Override
+     public double findPeak(double[] samples, int offset, int length, double peak_so_far)
+     {
+          // Lanes are only replaced by higher values, so NaN samples are
+          // ignored as in the scalar implementation
+          DoubleVector peaks = DoubleVector.broadcast(SPECIES, peak_so_far);
+          int samp = 0;
+          for (int bound = SPECIES.loopBound(length); samp < bound; samp += SPECIES.length())
+          {
+               DoubleVector values = DoubleVector.fromArray(SPECIES, samples, offset + samp).abs();
+               peaks = peaks.blend(values, values.compare(VectorOperators.GT, peaks));
+          }
+          if (samp < length)
+          {
+               VectorMask<Double> mask = SPECIES.indexInRange(samp, length);
+               DoubleVector values = DoubleVector.fromArray(SPECIES, samples, offset + samp, mask).abs();
+               peaks = peaks.blend(values, values.compare(VectorOperators.GT, peaks, mask));
+          }
+          return peaks.reduceLanes(VectorOperators.MAX);
+     }
+
+
+     /**
+      * Clips, scales and truncates the given block of samples to integer PCM
+      * sample values, a whole vector of samples at a time. The conversion to
+      * ints truncates towards zero and converts NaN to 0, as a cast does.
+      *
+      * @param samples             The samples to quantize.
+      * @param offset              The index of the first sample to quantize.
+      * @param length              The number of samples to quantize.
+      * @param max_sample_value    The value that a sample of +1 is quantized
+      *                            to.
+      * @param destination         The array to store the quantized samples
+      *                            in.
+      * @param destination_offset  The index in <i>destination</i> at which to
+      *                            store the first quantized sample.
+      */
+     @Override
+     public void quantize( double[] samples,
+          int offset,
+          int length,
+          double max_sample_value,
+          int[] destination,
+          int destination_offset )
+     {
+          int samp = 0;
+          for (int bound = SPECIES.loopBound(length); samp < bound; samp += SPECIES.length())
+          {
+               DoubleVector values = DoubleVector.fromArray(SPECIES, samples, offset + samp);
+               IntVector quantized = (IntVector) values.max(-1.0)
+                    .min(1.0)
+                    .mul(max_sample_value)
+                    .convertShape(VectorOperators.D2I, INT_SPECIES, 0);
+               quantized.intoArray(destination, destination_offset + samp);
+          }
+          if (samp < length)
+          {
+               DoubleVector values = DoubleVector.fromArray(SPECIES, samples, offset + samp, SPECIES.indexInRange(samp, length));
+               IntVector quantized = (IntVector) values.max(-1.0)
+                    .min(1.0)
+                    .mul(max_sample_value)
+                    .convertShape(VectorOperators.D2I, INT_SPECIES, 0);
+               quantized.intoArray(destination, destination_offset + samp, INT_SPECIES.indexInRange(samp, length));
+          }
+     }
+}
@@ -0,0 +1,53 @@
+/*
+ * AudioBatchConsumer.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+
+
+/**
+ * An interface for objects that receive the audio files loaded by an
+ * <code>AudioBatchLoader</code>. Both methods are always called on the thread
+ * that started the load, one call at a time, so implementing classes need not
+ * be thread-safe.
+ *
+ * @author Cory McKay
+ */
+public interface AudioBatchConsumer
+{
+     /**
+      * Processes one successfully loaded file. The memory that the loader
+      * allows for the file is not released until this method returns, so
+      * implementing classes that keep the samples should expect the loader to
+      * admit further files only as memory allows.
+      *
+      * @param file                The file that was loaded.
+      * @param file_index          The index of the file in the order in which
+      *                            files were found or given.
+      * @param audio_samples       The samples of the file.
+      * @throws Exception          An informative exception may be thrown to
+      *                            abort loading of the remaining files.
+      */
+     public void processAudio(File file, int file_index, AudioSamples audio_samples)
+          throws Exception;
+
+
+     /**
+      * Processes one file that could not be loaded.
+      *
+      * @param file                The file that could not be loaded.
+      * @param file_index          The index of the file in the order in which
+      *                            files were found or given.
+      * @param error               The exception that was thrown while loading
+      *                            the file.
+      * @throws Exception          An informative exception may be thrown to
+      *                            abort loading of the remaining files.
+      */
+     public void processFailure(File file, int file_index, Exception error)
+          throws Exception;
+}
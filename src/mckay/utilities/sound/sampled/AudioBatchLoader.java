@@ -0,0 +1,371 @@
+/*
+ * AudioBatchLoader.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.sound.sampled.*;
+import mckay.utilities.staticlibraries.FileMethods;
+
+
+/**
+ * Loads many audio files into <code>AudioSamples</code> objects concurrently,
+ * using a fixed number of worker threads, and passes each to an
+ * <code>AudioBatchConsumer</code> on the calling thread. Files may be passed
+ * to the consumer in the order in which they finish loading, or in the order
+ * in which they were found or given.
+ *
+ * <p>The amount of memory used is bounded by limiting the number of bytes in
+ * flight: the estimated size of the decoded samples of every file that has
+ * been started but not yet passed to the consumer. A file is only started if
+ * its estimate fits within the limit, except that a file is always started if
+ * no other file is in flight, so files larger than the limit are loaded one
+ * at a time. When files are passed to the consumer in their original order,
+ * files that finish early are held until all earlier files have been passed,
+ * and continue to count towards the limit.
+ *
+ * <p>Sizes are estimated from the header of each file. Memory-mapped files
+ * are estimated to use no memory, as their samples are not loaded. Files
+ * that cannot be mapped, such as compressed files, are estimated as samples
+ * stored as doubles, as that is how they are then stored.
+ *
+ * @author Cory McKay
+ */
+public class AudioBatchLoader
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The number of worker threads that load files.
+      */
+     private int              number_threads;
+
+     /**
+      * The maximum estimated number of bytes of decoded samples in flight.
+      */
+     private long             max_bytes_in_flight;
+
+     /**
+      * The storage mode used for each AudioSamples object. One of the
+      * STORAGE_ constants of the AudioSamples class.
+      */
+     private int              storage_mode;
+
+     /**
+      * Whether each file is normalized if it is clipped.
+      */
+     private boolean          normalize_if_clipped;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares to load files with the given settings.
+      *
+      * @param number_threads           The number of files to load at once.
+      *                                 Must be at least 1.
+      * @param max_bytes_in_flight      The maximum estimated number of bytes
+      *                                 of decoded samples that may be in
+      *                                 flight at once. Must be at least 1.
+      * @param storage_mode             How the samples of each file are to be
+      *                                 stored. Must be one of the STORAGE_
+      *                                 constants of the AudioSamples class.
+      * @param normalize_if_clipped     Whether each file is to be normalized
+      *                                 if any of its samples are outside of
+      *                                 -1 to +1.
+      * @throws Exception               Throws an informative exception if an
+      *                                 invalid parameter is given.
+      */
+     public AudioBatchLoader( int number_threads,
+          long max_bytes_in_flight,
+          int storage_mode,
+          boolean normalize_if_clipped )
+          throws Exception
+     {
+          if (number_threads < 1)
+               throw new Exception( "Number of threads of " + number_threads + " specified.\n" +
+                    "This value must be above 0." );
+          if (max_bytes_in_flight < 1)
+               throw new Exception( "Maximum bytes in flight of " + max_bytes_in_flight + " specified.\n" +
+                    "This value must be above 0." );
+          if ( storage_mode != AudioSamples.STORAGE_DOUBLE &&
+               storage_mode != AudioSamples.STORAGE_MEMORY_MAPPED &&
+               storage_mode != AudioSamples.STORAGE_FLOAT )
+               throw new Exception("Unknown storage mode " + storage_mode + " specified.");
+
+          this.number_threads = number_threads;
+          this.max_bytes_in_flight = max_bytes_in_flight;
+          this.storage_mode = storage_mode;
+          this.normalize_if_clipped = normalize_if_clipped;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Loads all audio files in the given directory that are accepted by the
+      * given filter.
+      *
+      * @param directory                The directory to load files from.
+      * @param explore_subdirectories   Whether files in subdirectories are to
+      *                                 be loaded as well.
+      * @param filter                   The filter that files must be accepted
+      *                                 by, such as a
+      *                                 <code>FileFilterSampledAudio</code>.
+      *                                 Must accept directories if
+      *                                 subdirectories are to be explored. A
+      *                                 <code>FileFilterSampledAudio</code> is
+      *                                 used if this is null.
+      * @param preserve_order           True if files are to be passed to the
+      *                                 consumer in the order in which they
+      *                                 were found, false if they are to be
+      *                                 passed as soon as they are loaded.
+      * @param consumer                 The object to pass loaded files to.
+      * @return                         The number of files that were loaded
+      *                                 successfully.
+      * @throws Exception               Throws an informative exception if the
+      *                                 directory is invalid or if the consumer
+      *                                 throws an exception.
+      */
+     public int loadDirectory( File directory,
+          boolean explore_subdirectories,
+          final javax.swing.filechooser.FileFilter filter,
+          boolean preserve_order,
+          AudioBatchConsumer consumer )
+          throws Exception
+     {
+          if (directory == null || !directory.isDirectory())
+               throw new Exception("The specified directory " + directory + " does not exist.");
+
+          // Adapt the file chooser filter to the type used by FileMethods
+          final javax.swing.filechooser.FileFilter audio_filter = (filter == null) ? new FileFilterSampledAudio() : filter;
+          java.io.FileFilter file_filter = new java.io.FileFilter()
+          {
+               public boolean accept(File file)
+               {
+                    return audio_filter.accept(file);
+               }
+          };
+
+          File[] files = FileMethods.getAllFilesInDirectory(directory, explore_subdirectories, file_filter, null);
+          if (files == null)
+               return 0;
+          return loadFiles(files, preserve_order, consumer);
+     }
+
+
+     /**
+      * Loads the given audio files.
+      *
+      * @param files                    The files to load.
+      * @param preserve_order           True if files are to be passed to the
+      *                                 consumer in the given order, false if
+      *                                 they are to be passed as soon as they
+      *                                 are loaded.
+      * @param consumer                 The object to pass loaded files to.
+      * @return                         The number of files that were loaded
+      *                                 successfully.
+      * @throws Exception               Throws an informative exception if the
+      *                                 consumer throws an exception or if
+      *                                 loading is interrupted.
+      */
+     public int loadFiles( File[] files,
+          boolean preserve_order,
+          AudioBatchConsumer consumer )
+          throws Exception
+     {
+          if (files == null)
+               throw new Exception("No files to load provided.");
+          if (consumer == null)
+               throw new Exception("No consumer provided for loaded files.");
+
+          LinkedBlockingQueue<LoadResult> completed = new LinkedBlockingQueue<LoadResult>();
+          HashMap<Integer, LoadResult> held_results = new HashMap<Integer, LoadResult>();
+          ExecutorService workers = Executors.newFixedThreadPool(Math.min(number_threads, Math.max(1, files.length)));
+          int number_loaded = 0;
+          try
+          {
+               int next_to_start = 0;
+               int next_to_deliver = 0;
+               int number_delivered = 0;
+               long bytes_in_flight = 0;
+
+               // The estimated size of the next file to start, which is kept
+               // while that file waits for memory to be freed, so that its
+               // header is only read once. Is -1 if not yet estimated.
+               long next_estimate = -1;
+               while (number_delivered < files.length)
+               {
+                    // Start as many files as the memory limit allows
+                    while (next_to_start < files.length)
+                    {
+                         if (next_estimate < 0)
+                              next_estimate = estimateDecodedSize(files[next_to_start]);
+                         if (bytes_in_flight > 0 && bytes_in_flight + next_estimate > max_bytes_in_flight)
+                              break;
+                         bytes_in_flight += next_estimate;
+                         workers.execute(new LoadTask(files[next_to_start], next_to_start, next_estimate, completed));
+                         next_to_start++;
+                         next_estimate = -1;
+                    }
+
+                    // Wait for a file to finish and deliver all deliverable
+                    // files
+                    LoadResult result = completed.take();
+                    if (!preserve_order)
+                    {
+                         bytes_in_flight -= result.estimated_size;
+                         number_loaded += deliver(result, consumer);
+                         number_delivered++;
+                    }
+                    else
+                    {
+                         held_results.put(result.file_index, result);
+                         while (held_results.containsKey(next_to_deliver))
+                         {
+                              LoadResult next_result = held_results.remove(next_to_deliver);
+                              bytes_in_flight -= next_result.estimated_size;
+                              number_loaded += deliver(next_result, consumer);
+                              number_delivered++;
+                              next_to_deliver++;
+                         }
+                    }
+               }
+          }
+          finally
+          {
+               workers.shutdownNow();
+          }
+          return number_loaded;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Passes the given result to the consumer.
+      *
+      * @param result         The result to pass.
+      * @param consumer       The object to pass it to.
+      * @return               1 if the file was loaded successfully, 0 if it
+      *                       was not.
+      * @throws Exception     Any exception thrown by the consumer.
+      */
+     private static int deliver(LoadResult result, AudioBatchConsumer consumer)
+          throws Exception
+     {
+          if (result.error != null)
+          {
+               consumer.processFailure(result.file, result.file_index, result.error);
+               return 0;
+          }
+          consumer.processAudio(result.file, result.file_index, result.audio_samples);
+          return 1;
+     }
+
+
+     /**
+      * Returns the estimated number of bytes that the decoded samples of the
+      * given file will occupy.
+      *
+      * @param file      The file to estimate the size of.
+      * @return          The estimated size in bytes.
+      */
+     private long estimateDecodedSize(File file)
+     {
+          // Files that cannot be mapped are decoded into doubles instead
+          if (storage_mode == AudioSamples.STORAGE_MEMORY_MAPPED && MappedAudioFile.isMappable(file))
+               return 0;
+          int bytes_per_stored_sample = (storage_mode == AudioSamples.STORAGE_FLOAT) ? 4 : 8;
+          try
+          {
+               AudioFileFormat file_format = AudioSystem.getAudioFileFormat(file);
+               AudioFormat audio_format = file_format.getFormat();
+               long frame_length = file_format.getFrameLength();
+               if (frame_length == AudioSystem.NOT_SPECIFIED && audio_format.getFrameSize() > 0)
+                    frame_length = file.length() / audio_format.getFrameSize();
+               if (frame_length != AudioSystem.NOT_SPECIFIED)
+                    return frame_length * audio_format.getChannels() * bytes_per_stored_sample;
+          }
+          catch (Exception e)
+          {
+               // Fall back to estimating from the file size
+          }
+
+          // Assume 16 bit samples if the header cannot be read
+          return file.length() / 2 * bytes_per_stored_sample;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * The outcome of loading one file.
+      */
+     private static class LoadResult
+     {
+          File           file;
+          int            file_index;
+          long           estimated_size;
+          AudioSamples   audio_samples;
+          Exception      error;
+     }
+
+
+     /**
+      * Loads one file on a worker thread and queues the outcome.
+      */
+     private class LoadTask
+          implements Runnable
+     {
+          private LoadResult                        result;
+          private LinkedBlockingQueue<LoadResult>   completed;
+
+          LoadTask( File file,
+               int file_index,
+               long estimated_size,
+               LinkedBlockingQueue<LoadResult> completed )
+          {
+               result = new LoadResult();
+               result.file = file;
+               result.file_index = file_index;
+               result.estimated_size = estimated_size;
+               this.completed = completed;
+          }
+
+          public void run()
+          {
+               try
+               {
+                    result.audio_samples = new AudioSamples( result.file,
+                         result.file.getPath(),
+                         normalize_if_clipped,
+                         storage_mode );
+               }
+               catch (Exception e)
+               {
+                    result.error = e;
+               }
+               catch (Throwable t)
+               {
+                    // Report errors such as running out of memory rather than
+                    // leaving the calling thread waiting
+                    result.error = new Exception("File " + result.file.getName() + " could not be loaded: " + t);
+               }
+               completed.add(result);
+          }
+     }
+}
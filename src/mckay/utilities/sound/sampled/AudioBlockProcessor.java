@@ -0,0 +1,41 @@
+/*
+ * AudioBlockProcessor.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * An interface for objects that process blocks of single precision samples
+ * in place as they pass through a <code>DuplexAudioEngine</code>, such as for
+ * live monitoring or effects.
+ *
+ * <p>Implementing classes are called on the audio thread of the engine once
+ * per block, so they should do a bounded amount of work, and should not
+ * allocate memory, block or perform input or output.
+ *
+ * @author Cory McKay
+ */
+public interface AudioBlockProcessor
+{
+     /**
+      * Processes one block of samples in place.
+      *
+      * <p><b>WARNING:</b> The <i>block</i> arrays are reused for every
+      * block, so their contents are only valid until this method returns.
+      *
+      * @param block               The samples to process. The first indice
+      *                            corresponds to channel and the second to
+      *                            sample number. Samples should fall between
+      *                            -1 and +1.
+      * @param number_frames       The number of samples per channel in the
+      *                            block.
+      * @throws Exception          An informative exception may be thrown to
+      *                            stop the engine.
+      */
+     public void processBlock(float[][] block, int number_frames)
+          throws Exception;
+}
@@ -0,0 +1,595 @@
+/*
+ * AudioFileWriter.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.*;
+
+
+/**
+ * Writes integer PCM audio to a WAVE or AIFF file a block at a time. Samples
+ * are quantized block by block into a fixed size buffer that is written
+ * straight to a <code>FileChannel</code>, so audio of any length can be
+ * written using a constant amount of memory, and no complete encoded copy of
+ * the audio is ever made. The header is written with placeholder sizes when
+ * the file is opened, and these are filled in when the writer is closed, so
+ * the total length of the audio need not be known in advance.
+ *
+ * <p>Audio may be written either as samples, which are clipped, quantized and
+ * optionally dithered by a <code>SampleEncoder</code> directly into the
+ * buffer, or as bytes that are already
+ * encoded in the <code>AudioFormat</code> given to the constructor. Encoded
+ * bytes are converted to the byte order and signedness required by the file
+ * type as they are written.
+ *
+ * <p>WAVE files are written little-endian, with 8 bit samples unsigned and
+ * all others signed. AIFF files are written big-endian and signed. Bit depths
+ * of 8, 16, 24 and 32 bits are supported. Files must be smaller than 4 GB.
+ *
+ * <p>The <code>close</code> method must be called once all audio has been
+ * written, or the file will not be valid.
+ *
+ * @author Cory McKay
+ */
+public class AudioFileWriter
+     implements AutoCloseable
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The size in bytes of the buffer that audio is encoded into before it
+      * is written to the file.
+      */
+     private static final int BUFFER_SIZE = 65536;
+
+     /**
+      * The largest number of bytes that the size fields of either file type
+      * can describe.
+      */
+     private static final long MAXIMUM_CHUNK_SIZE = 0xFFFFFFFFL;
+
+
+     /**
+      * The file being written.
+      */
+     private File                  file;
+
+     /**
+      * The channel that the file is written through.
+      */
+     private FileChannel           channel;
+
+     /**
+      * The format of the audio given to this writer.
+      */
+     private AudioFormat           audio_format;
+
+     /**
+      * True if a WAVE file is being written, false if an AIFF file is.
+      */
+     private boolean               wave_file;
+
+     /**
+      * The number of channels.
+      */
+     private int                   number_channels;
+
+     /**
+      * The number of bytes in each sample of each channel.
+      */
+     private int                   bytes_per_sample;
+
+     /**
+      * The number of bytes in each frame.
+      */
+     private int                   frame_size;
+
+     /**
+      * Encodes samples into the buffer in the encoding used by the file.
+      */
+     private SampleEncoder         encoder;
+
+     /**
+      * Holds encoded audio until it is written to the file.
+      */
+     private ByteBuffer            buffer;
+
+     /**
+      * The byte offset in the file of the header field holding the size of
+      * the whole file.
+      */
+     private int                   form_size_position;
+
+     /**
+      * The byte offset in the file of the header field holding the number of
+      * sample frames. Is -1 for WAVE files, which have no such field.
+      */
+     private int                   frame_count_position;
+
+     /**
+      * The byte offset in the file of the header field holding the size of
+      * the chunk that contains the audio.
+      */
+     private int                   data_size_position;
+
+     /**
+      * The number of bytes in the header, including any part of the audio
+      * chunk header that is counted in the audio chunk size.
+      */
+     private int                   header_size;
+
+     /**
+      * The number of bytes of audio written so far.
+      */
+     private long                  data_bytes_written;
+
+     /**
+      * Set to true once the writer has been closed.
+      */
+     private boolean               closed;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Creates or overwrites the given file and writes its header. Samples
+      * are not dithered.
+      *
+      * @param file           The file to write.
+      * @param audio_format   The sampling rate, bit depth and number of
+      *                       channels of the file. Bytes given to the
+      *                       <code>writeBytes</code> method must be encoded in
+      *                       this format.
+      * @param file_type      The type of file to write. Must be WAVE or AIFF.
+      * @throws Exception     Throws an informative exception if the format or
+      *                       file type is not supported, or if the file
+      *                       cannot be written.
+      */
+     public AudioFileWriter( File file,
+          AudioFormat audio_format,
+          AudioFileFormat.Type file_type )
+          throws Exception
+     {
+          this(file, audio_format, file_type, false);
+     }
+
+
+     /**
+      * Creates or overwrites the given file and writes its header.
+      *
+      * @param file           The file to write.
+      * @param audio_format   The sampling rate, bit depth and number of
+      *                       channels of the file. Bytes given to the
+      *                       <code>writeBytes</code> method must be encoded in
+      *                       this format.
+      * @param file_type      The type of file to write. Must be WAVE or AIFF.
+      * @param dither         True if TPDF dither is to be added to samples
+      *                       given to the <code>writeSamples</code> methods
+      *                       before they are quantized.
+      * @throws Exception     Throws an informative exception if the format or
+      *                       file type is not supported, or if the file
+      *                       cannot be written.
+      */
+     public AudioFileWriter( File file,
+          AudioFormat audio_format,
+          AudioFileFormat.Type file_type,
+          boolean dither )
+          throws Exception
+     {
+          if (file == null)
+               throw new Exception("No file provided to save to.");
+          if (audio_format == null)
+               throw new Exception("No audio format provided for saving.");
+          if (file_type == null)
+               throw new Exception("No file type to save to specified.");
+          if (!isWritable(audio_format, file_type))
+               throw new Exception( "Audio in the format " + audio_format + "\n" +
+                    "cannot be written to a " + file_type + " file. Only 8, 16, 24 or 32 bit\n" +
+                    "integer PCM can be written to WAVE or AIFF files." );
+
+          this.file = file;
+          this.audio_format = audio_format;
+          wave_file = file_type.equals(AudioFileFormat.Type.WAVE);
+          number_channels = audio_format.getChannels();
+          bytes_per_sample = audio_format.getSampleSizeInBits() / 8;
+          frame_size = number_channels * bytes_per_sample;
+          encoder = new SampleEncoder( audio_format.getSampleSizeInBits(),
+               !(wave_file && bytes_per_sample == 1),
+               !wave_file,
+               dither );
+          buffer = ByteBuffer.allocate(BUFFER_SIZE);
+          buffer.order(wave_file ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+          data_bytes_written = 0;
+          closed = false;
+
+          channel = FileChannel.open( file.toPath(),
+               StandardOpenOption.CREATE,
+               StandardOpenOption.TRUNCATE_EXISTING,
+               StandardOpenOption.WRITE );
+          try
+          {
+               if (wave_file)
+                    putWaveHeader();
+               else
+                    putAiffHeader();
+               header_size = buffer.position();
+               flushBuffer();
+          }
+          catch (IOException e)
+          {
+               channel.close();
+               throw new Exception("File " + file.getName() + " could not be written to.");
+          }
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns whether audio in the given format can be written to files of
+      * the given type by this class.
+      *
+      * @param audio_format   The format of the audio.
+      * @param file_type      The type of file.
+      * @return               True if it can be written.
+      */
+     public static boolean isWritable(AudioFormat audio_format, AudioFileFormat.Type file_type)
+     {
+          if (!AudioFileFormat.Type.WAVE.equals(file_type) && !AudioFileFormat.Type.AIFF.equals(file_type))
+               return false;
+          AudioFormat.Encoding encoding = audio_format.getEncoding();
+          if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED) && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+               return false;
+          int bit_depth = audio_format.getSampleSizeInBits();
+          if (bit_depth != 8 && bit_depth != 16 && bit_depth != 24 && bit_depth != 32)
+               return false;
+          return audio_format.getChannels() > 0 &&
+               audio_format.getFrameSize() == audio_format.getChannels() * (bit_depth / 8) &&
+               audio_format.getSampleRate() > 0.0F;
+     }
+
+
+     /**
+      * Writes all of the given samples.
+      *
+      * @param samples        The samples to write. The first indice
+      *                       corresponds to the channel and the second to the
+      *                       sample number. Values outside of -1 to +1 are
+      *                       clipped.
+      * @throws Exception     Throws an informative exception if the samples
+      *                       have the wrong number of channels or cannot be
+      *                       written.
+      */
+     public void writeSamples(double[][] samples)
+          throws Exception
+     {
+          writeSamples(samples, 0, samples[0].length);
+     }
+
+
+     /**
+      * Writes the given block of samples.
+      *
+      * @param samples        The samples to write. The first indice
+      *                       corresponds to the channel and the second to the
+      *                       sample number. Values outside of -1 to +1 are
+      *                       clipped.
+      * @param offset         The index in each channel of the first sample to
+      *                       write.
+      * @param length         The number of samples per channel to write.
+      * @throws Exception     Throws an informative exception if the samples
+      *                       have the wrong number of channels or cannot be
+      *                       written.
+      */
+     public void writeSamples(double[][] samples, int offset, int length)
+          throws Exception
+     {
+          verifyOpen();
+          if (samples.length != number_channels)
+               throw new Exception( "Samples with " + samples.length + " channels given to a writer\n" +
+                    "for " + number_channels + " channels." );
+
+          // Encode each block straight into the buffer
+          int block_size = buffer.capacity() / frame_size;
+          for (int start = 0; start < length; start += block_size)
+          {
+               int block_length = Math.min(block_size, length - start);
+               ensureSpace(block_length * frame_size);
+               encoder.encode(samples, offset + start, block_length, buffer.array(), buffer.position());
+               buffer.position(buffer.position() + block_length * frame_size);
+               data_bytes_written += (long) block_length * frame_size;
+          }
+          verifySize();
+     }
+
+
+     /**
+      * Writes the given bytes, which must be encoded in the
+      * <code>AudioFormat</code> given to the constructor, converting them to
+      * the byte order and signedness used by the file.
+      *
+      * @param audio_bytes    The encoded audio.
+      * @param offset         The index of the first byte to write.
+      * @param length         The number of bytes to write. Must be a multiple
+      *                       of the frame size.
+      * @throws Exception     Throws an informative exception if a partial
+      *                       frame is given or if the bytes cannot be
+      *                       written.
+      */
+     public void writeBytes(byte[] audio_bytes, int offset, int length)
+          throws Exception
+     {
+          verifyOpen();
+          if (length % frame_size != 0)
+               throw new Exception( length + " bytes given to write. This is not a whole number\n" +
+                    "of frames of " + frame_size + " bytes." );
+
+          // WAVE files are little-endian and AIFF files are big-endian
+          boolean swap = bytes_per_sample > 1 && audio_format.isBigEndian() == wave_file;
+          boolean given_unsigned = audio_format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED);
+          boolean file_unsigned = wave_file && bytes_per_sample == 1;
+          boolean flip_sign = given_unsigned != file_unsigned;
+
+          // Bytes that need no conversion are copied directly
+          if (!swap && !flip_sign)
+          {
+               int position = offset;
+               while (position < offset + length)
+               {
+                    int chunk = Math.min(buffer.capacity(), offset + length - position);
+                    ensureSpace(chunk);
+                    buffer.put(audio_bytes, position, chunk);
+                    position += chunk;
+               }
+          }
+          else
+          {
+               // The most significant byte of each sample in the given bytes
+               int sign_byte = (audio_format.isBigEndian() || bytes_per_sample == 1) ? 0 : bytes_per_sample - 1;
+               int frames_per_chunk = buffer.capacity() / frame_size;
+               int position = offset;
+               while (position < offset + length)
+               {
+                    int chunk = Math.min(frames_per_chunk * frame_size, offset + length - position);
+                    ensureSpace(chunk);
+                    for (int sample_start = position; sample_start < position + chunk; sample_start += bytes_per_sample)
+                         for (int b = 0; b < bytes_per_sample; b++)
+                         {
+                              int source_byte = swap ? bytes_per_sample - 1 - b : b;
+                              byte value = audio_bytes[sample_start + source_byte];
+                              if (flip_sign && source_byte == sign_byte)
+                                   value ^= (byte) 0x80;
+                              buffer.put(value);
+                         }
+                    position += chunk;
+               }
+          }
+          data_bytes_written += length;
+          verifySize();
+     }
+
+
+     /**
+      * Returns the number of sample frames written so far.
+      *
+      * @return    The number of frames written.
+      */
+     public long getFramesWritten()
+     {
+          return data_bytes_written / frame_size;
+     }
+
+
+     /**
+      * Returns the file being written.
+      *
+      * @return    The file.
+      */
+     public File getFile()
+     {
+          return file;
+     }
+
+
+     /**
+      * Writes any buffered audio, fills in the sizes in the header and closes
+      * the file. Does nothing if the writer has already been closed.
+      *
+      * @throws IOException   Throws an informative exception if the file
+      *                       cannot be written.
+      */
+     public void close()
+          throws IOException
+     {
+          if (closed)
+               return;
+          closed = true;
+          try
+          {
+               // Chunks must have an even length
+               boolean pad = (data_bytes_written % 2) != 0;
+               if (pad)
+               {
+                    ensureSpace(1);
+                    buffer.put((byte) 0);
+               }
+               flushBuffer();
+
+               // Fill in the sizes
+               long data_chunk_size = data_bytes_written + (header_size - data_size_position - 4);
+               long form_size = header_size - 8 + data_bytes_written + (pad ? 1 : 0);
+               putSizeField(form_size_position, form_size);
+               putSizeField(data_size_position, data_chunk_size);
+               if (frame_count_position >= 0)
+                    putSizeField(frame_count_position, getFramesWritten());
+          }
+          catch (IOException e)
+          {
+               throw new IOException("File " + file.getName() + " could not be written to.", e);
+          }
+          finally
+          {
+               channel.close();
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Stores a WAVE header with placeholder sizes in the buffer.
+      */
+     private void putWaveHeader()
+     {
+          buffer.put(new byte[] {'R', 'I', 'F', 'F'});
+          form_size_position = buffer.position();
+          buffer.putInt(0);
+          buffer.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+          buffer.putInt(16);
+          buffer.putShort((short) 1);
+          buffer.putShort((short) number_channels);
+          buffer.putInt((int) audio_format.getSampleRate());
+          buffer.putInt((int) audio_format.getSampleRate() * frame_size);
+          buffer.putShort((short) frame_size);
+          buffer.putShort((short) (bytes_per_sample * 8));
+          buffer.put(new byte[] {'d', 'a', 't', 'a'});
+          data_size_position = buffer.position();
+          buffer.putInt(0);
+          frame_count_position = -1;
+     }
+
+
+     /**
+      * Stores an AIFF header with placeholder sizes in the buffer.
+      */
+     private void putAiffHeader()
+     {
+          buffer.put(new byte[] {'F', 'O', 'R', 'M'});
+          form_size_position = buffer.position();
+          buffer.putInt(0);
+          buffer.put(new byte[] {'A', 'I', 'F', 'F', 'C', 'O', 'M', 'M'});
+          buffer.putInt(18);
+          buffer.putShort((short) number_channels);
+          frame_count_position = buffer.position();
+          buffer.putInt(0);
+          buffer.putShort((short) (bytes_per_sample * 8));
+          putExtended(audio_format.getSampleRate());
+          buffer.put(new byte[] {'S', 'S', 'N', 'D'});
+          data_size_position = buffer.position();
+          buffer.putInt(0);
+          buffer.putInt(0);
+          buffer.putInt(0);
+     }
+
+
+     /**
+      * Stores the given value in the buffer as an 80 bit IEEE 754 extended
+      * precision number, as used for the sampling rate of AIFF files.
+      *
+      * @param value     The positive value to store.
+      */
+     private void putExtended(double value)
+     {
+          if (value <= 0.0)
+          {
+               buffer.putShort((short) 0);
+               buffer.putLong(0L);
+               return;
+          }
+          int exponent = Math.getExponent(value);
+          long fraction = Double.doubleToLongBits(value) & 0x000FFFFFFFFFFFFFL;
+          buffer.putShort((short) (exponent + 16383));
+          buffer.putLong(0x8000000000000000L | (fraction << 11));
+     }
+
+
+     /**
+      * Writes the buffer to the file if it does not have room for the given
+      * number of bytes.
+      *
+      * @param bytes_needed   The number of bytes about to be stored. Must not
+      *                       be more than the capacity of the buffer.
+      * @throws IOException   If the file cannot be written.
+      */
+     private void ensureSpace(int bytes_needed)
+          throws IOException
+     {
+          if (buffer.remaining() < bytes_needed)
+               flushBuffer();
+     }
+
+
+     /**
+      * Writes the contents of the buffer to the file and empties it.
+      *
+      * @throws IOException   If the file cannot be written.
+      */
+     private void flushBuffer()
+          throws IOException
+     {
+          buffer.flip();
+          while (buffer.hasRemaining())
+               channel.write(buffer);
+          buffer.clear();
+     }
+
+
+     /**
+      * Overwrites the 32 bit size field at the given offset in the file.
+      *
+      * @param position  The byte offset of the field.
+      * @param size      The value to store.
+      * @throws IOException   If the file cannot be written.
+      */
+     private void putSizeField(int position, long size)
+          throws IOException
+     {
+          ByteBuffer field = ByteBuffer.allocate(4);
+          field.order(buffer.order());
+          field.putInt((int) size);
+          field.flip();
+          while (field.hasRemaining())
+               channel.write(field, position + field.position());
+     }
+
+
+     /**
+      * Throws an exception if the writer has been closed.
+      *
+      * @throws Exception     If the writer has been closed.
+      */
+     private void verifyOpen()
+          throws Exception
+     {
+          if (closed)
+               throw new Exception("File " + file.getName() + " has already been closed.");
+     }
+
+
+     /**
+      * Throws an exception if too much audio has been written for the sizes
+      * to be stored in the header.
+      *
+      * @throws Exception     If the file is too large.
+      */
+     private void verifySize()
+          throws Exception
+     {
+          if (header_size + data_bytes_written + 1 > MAXIMUM_CHUNK_SIZE)
+               throw new Exception( "File " + file.getName() + " has become too large.\n" +
+                    "WAVE and AIFF files must be smaller than 4 GB." );
+     }
+}
@@ -8,6 +8,8 @@
 
 package mckay.utilities.sound.sampled;
 
+import java.util.LinkedHashMap;
+
 /**
  * A holder class for general static methods relating to processing signals
  * in the form of samples stored as arrays of doubles.
@@ -16,6 +18,18 @@ package mckay.utilities.sound.sampled;
  */
 public class AudioMethodsDSP
 {
+     // The auto-correlation plans used by each thread, keyed by signal length
+     // and lag range and ordered from least to most recently used
+     private static final ThreadLocal<LinkedHashMap<AutoCorrelationKey, AutoCorrelationPlan>> cached_autocorrelation_plans =
+          new ThreadLocal<LinkedHashMap<AutoCorrelationKey, AutoCorrelationPlan>>()
+     {
+          protected LinkedHashMap<AutoCorrelationKey, AutoCorrelationPlan> initialValue()
+          {
+               return new LinkedHashMap<AutoCorrelationKey, AutoCorrelationPlan>(16, 0.75f, true);
+          }
+     };
+     
+     
      /**
       * Applies a gain to the given samples. Note that a negative gain
       * effectively applies a phase shift of pi. There is no guarantee that the
@@ -100,9 +114,9 @@ public class AudioMethodsDSP
                     throw new Exception("Channel " + chan + " is empty.");
           
           // Apply gain to all samples equally accross all channels
+          SampleKernels kernels = SampleKernels.getInstance();
           for (int chan = 0; chan < samples_to_modify.length; chan++)
-               for (int samp = 0; samp < samples_to_modify[chan].length; samp++)
-                    samples_to_modify[chan][samp] *= gain;
+               kernels.scale(samples_to_modify[chan], 0, samples_to_modify[chan].length, gain);
           
           // Apply panning in the stereo case
           if (samples_to_modify.length == 2 && panning != 0.0)
@@ -111,16 +125,14 @@ public class AudioMethodsDSP
                if (panning > 0.0)
                {
                     double left_multiplier = 1.0 - panning;
-                    for (int samp = 0; samp < samples_to_modify[0].length; samp++)
-                         samples_to_modify[0][samp] *= left_multiplier;
+                    kernels.scale(samples_to_modify[0], 0, samples_to_modify[0].length, left_multiplier);
                }
                
                // Adjust right channel if panning is to the left
                if (panning < 0.0)
                {
                     double right_multiplier = panning + 1.0;
-                    for (int samp = 0; samp < samples_to_modify[1].length; samp++)
-                         samples_to_modify[1][samp] *= right_multiplier;
+                    kernels.scale(samples_to_modify[1], 0, samples_to_modify[1].length, right_multiplier);
                }
           }
      }
@@ -146,12 +158,40 @@ public class AudioMethodsDSP
           int number_samples = audio_samples[0].length;
           
           double[] samples_mixed_down = new double[number_samples];
+          SampleKernels.getInstance().mixDown(audio_samples, 0, samples_mixed_down, 0, number_samples);
+          
+          return samples_mixed_down;
+     }
+     
+     
+     /**
+      * Returns the given set of single precision samples as a set of samples
+      * mixed down into one channel. This is the same as the double precision
+      * version of this method, except that the mixdown is accumulated with
+      * double precision and then stored with single precision.
+      *
+      * @param	audio_samples	Audio samples to modify, with a minimum value of
+      *                         -1 and a maximum value of +1. The first indice
+      *                         corresponds to the channel and the second indice
+      *                         corresponds to the sample number.
+      * @return			The given audio samples mixed down, with equal
+      *                         gain, into one channel.
+      */
+     public static float[] getSamplesMixedDownIntoOneChannel(float[][] audio_samples)
+     {
+          if (audio_samples.length == 1)
+               return audio_samples[0];
+          
+          double number_channels = (double) audio_samples.length;
+          int number_samples = audio_samples[0].length;
+          
+          float[] samples_mixed_down = new float[number_samples];
           for (int samp = 0; samp < number_samples; samp++)
           {
                double total_so_far = 0.0;
                for (int chan = 0; chan < number_channels; chan++)
                     total_so_far += audio_samples[chan][samp];
-               samples_mixed_down[samp] = total_so_far / number_channels;
+               samples_mixed_down[samp] = (float) (total_so_far / number_channels);
           }
           
           return samples_mixed_down;
@@ -179,20 +219,14 @@ public class AudioMethodsDSP
           if (original_samples == null)
                throw new Exception( "Empty set of samples to provided." );
           
-          // Perform clipping
+          // Perform clipping on a copy. Multiplying by 1 leaves each sample
+          // unchanged, so only the clipping of the kernel has any effect
+          SampleKernels kernels = SampleKernels.getInstance();
           double[][] clipped_samples = new double[original_samples.length][];
           for (int chan = 0; chan < clipped_samples.length; chan++)
           {
-               clipped_samples[chan] = new double[original_samples[chan].length];
-               for (int samp = 0; samp < clipped_samples[chan].length; samp++)
-               {
-                    if (original_samples[chan][samp] < -1.0)
-                         clipped_samples[chan][samp] = -1.0;
-                    else if (original_samples[chan][samp] > 1.0)
-                         clipped_samples[chan][samp] = 1.0;
-                    else
-                         clipped_samples[chan][samp] = original_samples[chan][samp];
-               }
+               clipped_samples[chan] = original_samples[chan].clone();
+               kernels.scaleAndClip(clipped_samples[chan], 0, clipped_samples[chan].length, 1.0, 1.0);
           }
           return clipped_samples;
      }
@@ -256,6 +290,54 @@ public class AudioMethodsDSP
      }
      
      
+     /**
+      * Normalizes the given single precision samples so that the absolute
+      * value of the highest sample amplitude is 1. Does nothing if all samples
+      * are 0.
+      *
+      * @param	samples_to_normalize    The samples to normalize.
+      * @return				Returns a copy of the given samples
+      *					after normalization.
+      */
+     public static float[] normalizeSamples(float[] samples_to_normalize)
+     {
+          float[][] wrapped_samples = new float[1][];
+          wrapped_samples[0] = samples_to_normalize;
+          return normalizeSamples(wrapped_samples)[0];
+     }
+     
+     
+     /**
+      * Normalizes the given single precision samples dependantly so that the
+      * absolute value of the highest sample amplitude is 1. Does nothing if
+      * all samples are 0.
+      *
+      * @param	samples_to_normalize    The samples to normalize. The first
+      *                                 indice denotes channel and the second
+      *                                 denotes sample number.
+      * @return                         Returns a copy of the given samples
+      *					after normalization.
+      */
+     public static float[][] normalizeSamples(float[][] samples_to_normalize)
+     {
+          float[][] normalized_samples = new float[samples_to_normalize.length][];
+          for (int chan = 0; chan < normalized_samples.length; chan++)
+               normalized_samples[chan] = samples_to_normalize[chan].clone();
+          
+          double max_sample_value = 0.0;
+          for (int chan = 0; chan < normalized_samples.length; chan++)
+               for (int samp = 0; samp < normalized_samples[chan].length; samp++)
+                    if (Math.abs(normalized_samples[chan][samp]) > max_sample_value)
+                         max_sample_value = Math.abs(normalized_samples[chan][samp]);
+          if (max_sample_value != 0.0)
+               for (int chan = 0; chan < normalized_samples.length; chan++)
+                    for (int samp = 0; samp < normalized_samples[chan].length; samp++)
+                         normalized_samples[chan][samp] = (float) (normalized_samples[chan][samp] / max_sample_value);
+          
+          return normalized_samples;
+     }
+     
+     
      /**
       * Returns a copy of the given array of samples.
       *
@@ -334,31 +416,130 @@ public class AudioMethodsDSP
       * <p>The getAutoCorrelationLabels method can be called to find the labels
       * in Hz for each of the returned bins.
       *
+      * <p>The auto-correlation is calculated either directly or with FFTs,
+      * whichever is expected to be faster for the given signal length and lag
+      * range. The plans used for the FFT method are cached for each thread
+      * (see the getAutoCorrelationPlan method), so repeated calls with the
+      * same signal length and lags do not recalculate the FFT tables.
+      *
       * @param	signal   The digital signal to auto-correlate.
       * @param	min_lag  The minimum lag in samples to look for in the
-      *                  auto-correlation.
+      *                  auto-correlation. Must be 0 or more.
       * @param	max_lag  The maximum lag in samples to look for in the
-      *                  auto-correaltion.
+      *                  auto-correaltion. Must be at least min_lag.
       * @return          The auto-correlation for each lag from min_lag to
       *                  max_lag. Entry 0 corresponds to min_lag, and the last
       *                  entry corresponds to max_lag.
+      * @throws	IllegalArgumentException Thrown if the lags are invalid.
       */
      public static double[] getAutoCorrelation( double[] signal,
           int min_lag,
           int max_lag )
      {
-          double[] autocorrelation = new double[max_lag - min_lag + 1];
-          for (int lag = min_lag; lag <= max_lag; lag++)
+          if (min_lag < 0)
+               throw new IllegalArgumentException( "Minimum lag of " + min_lag + " specified.\n" +
+                    "This value must be 0 or greater." );
+          if (max_lag < min_lag)
+               throw new IllegalArgumentException( "Maximum lag of " + max_lag + " specified.\n" +
+                    "This value must be at least the minimum lag of " + min_lag + "." );
+          
+          if (AutoCorrelationPlan.isFFTFaster(signal.length, min_lag, max_lag))
           {
-               int auto_indice = lag - min_lag;
-               autocorrelation[auto_indice] = 0.0;
-               for (int samp = 0; samp < signal.length - lag; samp++)
-                    autocorrelation[auto_indice] += signal[samp] * signal[samp + lag];
+               AutoCorrelationPlan plan;
+               try
+               {
+                    plan = getAutoCorrelationPlan(signal.length, min_lag, max_lag);
+               }
+               catch (Exception e)
+               {
+                    // Plans only reject invalid arguments
+                    throw new IllegalArgumentException(e.getMessage(), e);
+               }
+               return plan.calculate(signal);
           }
+          
+          double[] autocorrelation = new double[max_lag - min_lag + 1];
+          AutoCorrelationPlan.calculateDirectly(signal, min_lag, max_lag, autocorrelation);
           return autocorrelation;
      }
      
      
+     /**
+      * Returns an AutoCorrelationPlan for the given signal length and lags.
+      * Plans are created the first time that they are requested by each
+      * thread, and are then reused until they are among the least recently
+      * used when more than <code>FFT.MAXIMUM_CACHED_PLANS</code> are cached.
+      * The returned plan must only be used by the calling thread.
+      *
+      * @param	signal_length The number of samples in each signal.
+      * @param	min_lag       The minimum lag in samples to calculate. Must be
+      *                       0 or more.
+      * @param	max_lag       The maximum lag in samples to calculate. Must be
+      *                       at least min_lag.
+      * @return               The plan.
+      * @throws	Exception     Throws an informative exception if an invalid
+      *                       parameter is given.
+      */
+     public static AutoCorrelationPlan getAutoCorrelationPlan( int signal_length,
+          int min_lag,
+          int max_lag )
+          throws Exception
+     {
+          LinkedHashMap<AutoCorrelationKey, AutoCorrelationPlan> plans = cached_autocorrelation_plans.get();
+          AutoCorrelationKey key = new AutoCorrelationKey(signal_length, min_lag, max_lag);
+          AutoCorrelationPlan plan = plans.get(key);
+          if (plan == null)
+          {
+               plan = new AutoCorrelationPlan(signal_length, min_lag, max_lag);
+               plans.put(key, plan);
+               FFT.evictLeastRecentlyUsed(plans);
+          }
+          return plan;
+     }
+     
+     
+     /**
+      * Calculates the auto-correlations of each of the given signals, which
+      * must all have the same length. The auto-correlations are only
+      * calculated between the given lags. A single
+      * <code>AutoCorrelationPlan</code> is used for all signals.
+      *
+      * @param	signals  The digital signals to auto-correlate. The first
+      *                  indice corresponds to the signal and the second to
+      *                  the sample number.
+      * @param	min_lag  The minimum lag in samples to look for in the
+      *                  auto-correlations. Must be 0 or more.
+      * @param	max_lag  The maximum lag in samples to look for in the
+      *                  auto-correaltions.
+      * @return          The auto-correlation of each signal for each lag from
+      *                  min_lag to max_lag. The first indice corresponds to
+      *                  the signal. For the second indice, entry 0
+      *                  corresponds to min_lag, and the last entry corresponds
+      *                  to max_lag.
+      * @throws	Exception Throws an informative exception if the signals have
+      *                  different lengths or if the lags are invalid.
+      */
+     public static double[][] getAutoCorrelations( double[][] signals,
+          int min_lag,
+          int max_lag )
+          throws Exception
+     {
+          double[][] autocorrelations = new double[signals.length][];
+          if (signals.length == 0)
+               return autocorrelations;
+          
+          AutoCorrelationPlan plan = new AutoCorrelationPlan(signals[0].length, min_lag, max_lag);
+          for (int i = 0; i < signals.length; i++)
+          {
+               if (signals[i].length != signals[0].length)
+                    throw new Exception( "Signal " + i + " has " + signals[i].length + " samples.\n" +
+                         "All signals must have " + signals[0].length + " samples." );
+               autocorrelations[i] = plan.calculate(signals[i]);
+          }
+          return autocorrelations;
+     }
+     
+     
      /**
       * Returns the bin labels for each bin of an auto-correlation calculation
       * that involved the given paremeters (most likely using the
@@ -448,4 +629,37 @@ public class AudioMethodsDSP
                     sample_values[chan][samp] *= amplitude_multipler;
           }
      }  
+     
+     
+     /**
+      * The key under which an AutoCorrelationPlan is cached.
+      */
+     private static class AutoCorrelationKey
+     {
+          private final int signal_length;
+          private final int min_lag;
+          private final int max_lag;
+          
+          AutoCorrelationKey(int signal_length, int min_lag, int max_lag)
+          {
+               this.signal_length = signal_length;
+               this.min_lag = min_lag;
+               this.max_lag = max_lag;
+          }
+          
+          public boolean equals(Object other)
+          {
+               if (!(other instanceof AutoCorrelationKey))
+                    return false;
+               AutoCorrelationKey other_key = (AutoCorrelationKey) other;
+               return signal_length == other_key.signal_length &&
+                    min_lag == other_key.min_lag &&
+                    max_lag == other_key.max_lag;
+          }
+          
+          public int hashCode()
+          {
+               return (signal_length * 31 + min_lag) * 31 + max_lag;
+          }
+     }
 }
\ No newline at end of file
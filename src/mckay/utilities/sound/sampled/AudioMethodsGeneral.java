@@ -9,8 +9,7 @@
 package mckay.utilities.sound.sampled;
 
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
+import java.util.Arrays;
 import javax.sound.sampled.*;
 
 
@@ -23,6 +22,13 @@ import javax.sound.sampled.*;
  */
 public class AudioMethodsGeneral
 {
+     /**
+      * The number of sample frames decoded at a time when audio is read
+      * incrementally from an AudioInputStream.
+      */
+     public static final int STREAMING_BLOCK_SIZE = 16384;
+     
+     
      /**
       * Returns a copy of the given AudioFormat.
       *
@@ -503,6 +509,11 @@ public class AudioMethodsGeneral
       * linear PCM encoding, regardless of the original encoding. The bit depth
       * is converted to 16 bits if it is not 8 or 16 bits.
       *
+      * <p>This conversion is not needed in order to decode samples, and loses
+      * precision for bit depths above 16 bits. The
+      * <code>getDecodableAudioStream</code> method should be used instead
+      * when the stream is to be decoded.
+      *
       * @param      audio_input_stream  The AudioInputStream to convert to a new
       *                                 encoding.
       * @return				A copy of the passed AudioInputStream
@@ -519,6 +530,26 @@ public class AudioMethodsGeneral
      }
      
      
+     /**
+      * Returns the given AudioInputStream if its samples can be decoded
+      * directly by the <code>decodeSampleValues</code> method, or a copy of
+      * it converted by the <code>getConvertedAudioStream</code> method
+      * otherwise. This avoids a conversion stream for the PCM encodings that
+      * can be decoded directly, such as 24-bit and little-endian audio.
+      *
+      * @param      audio_input_stream  The AudioInputStream to be decoded.
+      * @return                         The original AudioInputStream if it
+      *                                 can be decoded, and a converted
+      *                                 AudioInputStream if it cannot.
+      */
+     public static AudioInputStream getDecodableAudioStream(AudioInputStream audio_input_stream)
+     {
+          if (isDecodable(audio_input_stream.getFormat()))
+               return audio_input_stream;
+          return getConvertedAudioStream(audio_input_stream);
+     }
+     
+     
      /**
       * Takes the given AudioInputStream and tests if it is playable. If not,
       * converts it to big-Endian signed 16 bit linear PCM with the original
@@ -557,8 +588,13 @@ public class AudioMethodsGeneral
       * Returns an array of doubles representing the samples for each channel
       * in the given AudioInputStream.
       *
-      * <p>This method is only compatible with audio with bit depths of 8 or 16
-      * bits that is encoded using signed PCM with big endian byte order.
+      * <p>This method is only compatible with audio that can be decoded by the
+      * <code>decodeSampleValues</code> method.
+      *
+      * <p>If the length of the stream is known, then the returned arrays are
+      * allocated once at their final size and samples are decoded into them
+      * block by block, so that the full encoded stream is never held in
+      * memory.
       *
       * @param      audio_input_stream  The AudioInputStream to convert to
       *                                 sample values.
@@ -574,59 +610,267 @@ public class AudioMethodsGeneral
      public static double[][] extractSampleValues(AudioInputStream audio_input_stream)
      throws Exception
      {
-          // Converts the contents of audio_input_stream into an array of bytes
+          // Note the AudioFormat
+          AudioFormat this_audio_format = audio_input_stream.getFormat();
+          
+          // Throw exception if incompatible this_audio_format provided
+          if (!isDecodable(this_audio_format))
+               throw new Exception( "Only 8, 16, 24 or 32 bit integer PCM samples or 32 or 64 bit\n" +
+                    "floating point PCM samples can be analyzed currently." );
+          int number_of_channels = this_audio_format.getChannels();
+          
+          // Decode directly into arrays of the final size if the length of the
+          // stream is known
+          long frame_length = audio_input_stream.getFrameLength();
+          if (frame_length != AudioSystem.NOT_SPECIFIED && frame_length <= Integer.MAX_VALUE)
+          {
+               int number_samples = (int) frame_length;
+               double[][] sample_values = new double[number_of_channels][number_samples];
+               SampleBlockReader reader = new SampleBlockReader(audio_input_stream, STREAMING_BLOCK_SIZE);
+               int samples_so_far = 0;
+               while (samples_so_far < number_samples)
+               {
+                    int frames_read = reader.readFrames( sample_values,
+                         samples_so_far,
+                         number_samples - samples_so_far );
+                    if (frames_read < 0)
+                         break;
+                    samples_so_far += frames_read;
+               }
+               
+               // Trim the arrays if the stream ended early
+               if (samples_so_far < number_samples)
+                    for (int chan = 0; chan < number_of_channels; chan++)
+                         sample_values[chan] = Arrays.copyOf(sample_values[chan], samples_so_far);
+               return sample_values;
+          }
+          
+          // Otherwise read the entire stream before decoding it
           byte[] audio_bytes = getBytesFromAudioInputStream(audio_input_stream);
-          int number_bytes = audio_bytes.length;
+          int number_samples = audio_bytes.length / this_audio_format.getFrameSize();
+          double[][] sample_values = new double[number_of_channels][number_samples];
+          decodeSampleValues(audio_bytes, 0, this_audio_format, sample_values, 0, number_samples);
           
+          // Return the samples
+          return sample_values;
+     }
+     
+     
+     /**
+      * Returns an array of floats representing the samples for each channel
+      * in the given AudioInputStream. This is the same as the
+      * <code>extractSampleValues</code> method, except that samples are
+      * stored with single precision, which halves the memory needed. This
+      * loses no information for integer audio with bit depths of 24 bits or
+      * less, or for 32 bit floating point audio.
+      *
+      * <p>Samples are decoded a block at a time, so no double precision copy
+      * of the full stream is ever held in memory.
+      *
+      * @param      audio_input_stream  The AudioInputStream to convert to
+      *                                 sample values.
+      * @return				A 2-D array of sample values whose first
+      *                                 indice indicates channel and whose
+      *                                 second indice indicates sample number.
+      *					In stereo, indice 0 corresponds to left
+      *                                 and 1 to right. All samples should fall
+      *                                 between -1 and +1.
+      * @throws     Exception		Throws an informative exception if an
+      *                                 invalid paramter is provided.
+      */
+     public static float[][] extractSampleValuesAsFloats(AudioInputStream audio_input_stream)
+     throws Exception
+     {
           // Note the AudioFormat
           AudioFormat this_audio_format = audio_input_stream.getFormat();
           
-          // Extract information from this_audio_format
+          // Throw exception if incompatible this_audio_format provided
+          if (!isDecodable(this_audio_format))
+               throw new Exception( "Only 8, 16, 24 or 32 bit integer PCM samples or 32 or 64 bit\n" +
+                    "floating point PCM samples can be analyzed currently." );
           int number_of_channels = this_audio_format.getChannels();
-          int bit_depth = this_audio_format.getSampleSizeInBits();
           
-          // Throw exception if incompatible this_audio_format provided
-          if ( (bit_depth != 16 && bit_depth != 8 )||
-               !this_audio_format.isBigEndian() ||
-               this_audio_format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED )
-               throw new Exception( "Only 8 or 16 bit signed PCM samples with a big-endian\n" +
-                    "byte order can be analyzed currently." );
+          // Allocate the final size if the length of the stream is known, and
+          // grow the arrays as needed otherwise
+          int capacity = STREAMING_BLOCK_SIZE;
+          long frame_length = audio_input_stream.getFrameLength();
+          if (frame_length != AudioSystem.NOT_SPECIFIED && frame_length <= Integer.MAX_VALUE)
+               capacity = (int) frame_length;
+          float[][] sample_values = new float[number_of_channels][capacity];
+          
+          // Decode a block at a time and narrow each block into the arrays
+          SampleBlockReader reader = new SampleBlockReader(audio_input_stream, STREAMING_BLOCK_SIZE);
+          double[][] block = reader.getBlock();
+          int samples_so_far = 0;
+          int frames_read;
+          while ((frames_read = reader.readBlock()) > 0)
+          {
+               if (samples_so_far + frames_read > sample_values[0].length)
+               {
+                    int new_capacity = Math.max(samples_so_far + frames_read, 2 * sample_values[0].length);
+                    for (int chan = 0; chan < number_of_channels; chan++)
+                         sample_values[chan] = Arrays.copyOf(sample_values[chan], new_capacity);
+               }
+               for (int chan = 0; chan < number_of_channels; chan++)
+                    for (int samp = 0; samp < frames_read; samp++)
+                         sample_values[chan][samples_so_far + samp] = (float) block[chan][samp];
+               samples_so_far += frames_read;
+          }
           
-          // Find the number of samples in the audio_bytes
-          int number_of_bytes = audio_bytes.length;
-          int bytes_per_sample = bit_depth / 8;
-          int number_samples = number_of_bytes / bytes_per_sample / number_of_channels;
+          // Trim the arrays to the number of samples actually read
+          if (samples_so_far < sample_values[0].length)
+               for (int chan = 0; chan < number_of_channels; chan++)
+                    sample_values[chan] = Arrays.copyOf(sample_values[chan], samples_so_far);
           
-          // Throw exception if incorrect number of bytes given
-          if ( ((number_samples == 2 || bytes_per_sample == 2) && (number_of_bytes % 2 != 0)) ||
-               ((number_samples == 2 && bytes_per_sample == 2) && (number_of_bytes % 4 != 0)) )
-               throw new Exception("Uneven number of bytes for given bit depth and number of channels.");
+          // Return the samples
+          return sample_values;
+     }
+     
+     
+     /**
+      * Decodes the given AudioInputStream block by block, passing each block
+      * to the given consumer as soon as it has been decoded. Only one block of
+      * audio is held in memory at a time, so this is suitable for streams of
+      * any length, and processing can begin before the stream has been fully
+      * decoded.
+      *
+      * <p>This method is only compatible with audio that can be decoded by the
+      * <code>decodeSampleValues</code> method. The
+      * <code>getDecodableAudioStream</code> method may be used to convert
+      * other streams.
+      *
+      * @param      audio_input_stream  The AudioInputStream to decode.
+      * @param      frames_per_block    The maximum number of samples per
+      *                                 channel to pass to the consumer at a
+      *                                 time.
+      * @param      consumer            The object to which blocks of decoded
+      *                                 samples are passed. The same block
+      *                                 array is reused for every call.
+      * @return                         The total number of samples per
+      *                                 channel that were decoded.
+      * @throws     Exception           Throws an informative exception if an
+      *                                 invalid parameter is provided, if the
+      *                                 stream cannot be read or if the
+      *                                 consumer throws an exception.
+      */
+     public static long streamSampleValues( AudioInputStream audio_input_stream,
+          int frames_per_block,
+          SampleBlockConsumer consumer )
+          throws Exception
+     {
+          if (consumer == null)
+               throw new Exception("No consumer provided for decoded samples.");
+          
+          SampleBlockReader reader = new SampleBlockReader(audio_input_stream, frames_per_block);
+          double[][] block = reader.getBlock();
+          long first_frame = 0;
+          int frames_read = reader.readBlock();
+          while (frames_read > 0)
+          {
+               consumer.processBlock(block, frames_read, first_frame);
+               first_frame += frames_read;
+               frames_read = reader.readBlock();
+          }
+          return first_frame;
+     }
+     
+     
+     /**
+      * Returns whether or not audio encoded in the given AudioFormat can be
+      * decoded by the <code>decodeSampleValues</code> method.
+      *
+      * @param      audio_format   The AudioFormat to check.
+      * @return                    True if samples in the given format can be
+      *                            decoded, false if they must first be
+      *                            converted.
+      */
+     public static boolean isDecodable(AudioFormat audio_format)
+     {
+          int bit_depth = audio_format.getSampleSizeInBits();
+          AudioFormat.Encoding encoding = audio_format.getEncoding();
+          boolean decodable_depth;
+          if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+               decodable_depth = bit_depth == 8 || bit_depth == 16 || bit_depth == 24 || bit_depth == 32;
+          else if (encoding.equals(AudioFormat.Encoding.PCM_FLOAT))
+               decodable_depth = bit_depth == 32 || bit_depth == 64;
+          else
+               decodable_depth = false;
+          
+          // Frames must be made up of the samples of each channel alone
+          return decodable_depth &&
+               audio_format.getChannels() > 0 &&
+               audio_format.getFrameSize() == audio_format.getChannels() * (bit_depth / 8);
+     }
+     
+     
+     /**
+      * Decodes interleaved sample frames stored in the given array of bytes
+      * into the given arrays of doubles. Does not allocate any memory, so may
+      * be called repeatedly on reused buffers.
+      *
+      * <p>Signed or unsigned integer PCM with bit depths of 8, 16, 24 or 32
+      * bits, and floating point PCM with bit depths of 32 or 64 bits, can be
+      * decoded, with either byte order. Each combination is decoded by its own
+      * loop, so no intermediate conversion is needed. Integer samples are
+      * divided by 2 to the power of one less than the bit depth, so that they
+      * fall between -1 and +1. Floating point samples are stored unchanged.
+      *
+      * @param      audio_bytes    The encoded sample frames.
+      * @param      byte_offset    The index in <i>audio_bytes</i> of the
+      *                            first byte of the first frame to decode.
+      * @param      audio_format   The AudioFormat of <i>audio_bytes</i>.
+      * @param      sample_values  The arrays to decode into. The first indice
+      *                            indicates channel and the second indicates
+      *                            sample number.
+      * @param      sample_offset  The sample index in <i>sample_values</i> at
+      *                            which to store the first decoded frame.
+      * @param      number_frames  The number of frames to decode.
+      * @throws     Exception      Throws an informative exception if the
+      *                            given format cannot be decoded.
+      */
+     public static void decodeSampleValues( byte[] audio_bytes,
+          int byte_offset,
+          AudioFormat audio_format,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+          throws Exception
+     {
+          if (!isDecodable(audio_format))
+               throw new Exception( "Only 8, 16, 24 or 32 bit integer PCM samples or 32 or 64 bit\n" +
+                    "floating point PCM samples can be analyzed currently." );
+          
+          int bit_depth = audio_format.getSampleSizeInBits();
+          boolean big_endian = audio_format.isBigEndian();
+          
+          if (audio_format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT))
+          {
+               if (bit_depth == 32)
+                    decodeFloatSamples(audio_bytes, byte_offset, big_endian, sample_values, sample_offset, number_frames);
+               else
+                    decodeDoubleSamples(audio_bytes, byte_offset, big_endian, sample_values, sample_offset, number_frames);
+               return;
+          }
           
           // Find the maximum possible value that a sample may have with the given
           // bit depth
           double max_sample_value = AudioMethodsDSP.findMaximumSampleValue(bit_depth) + 2.0;
           
-          // Instantiate the sample value holder
-          double[][] sample_values = new double[number_of_channels][number_samples];
+          // Unsigned samples are converted to signed samples by inverting the
+          // most significant bit of their sign extended values
+          int sign_flip = 0;
+          if (audio_format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED))
+               sign_flip = -1 << (bit_depth - 1);
           
           // Convert the bytes to double samples
-          ByteBuffer byte_buffer = ByteBuffer.wrap(audio_bytes);
           if (bit_depth == 8)
-          {
-               for (int samp = 0; samp < number_samples; samp++)
-                    for (int chan = 0; chan < number_of_channels; chan++)
-                         sample_values[chan][samp] = (double) byte_buffer.get() / max_sample_value;
-          }
+               decode8BitSamples(audio_bytes, byte_offset, sign_flip, max_sample_value, sample_values, sample_offset, number_frames);
           else if (bit_depth == 16)
-          {
-               ShortBuffer short_buffer = byte_buffer.asShortBuffer();
-               for (int samp = 0; samp < number_samples; samp++)
-                    for (int chan = 0; chan < number_of_channels; chan++)
-                         sample_values[chan][samp] = (double) short_buffer.get() / max_sample_value;
-          }
-          
-          // Return the samples
-          return sample_values;
+               decode16BitSamples(audio_bytes, byte_offset, big_endian, sign_flip, max_sample_value, sample_values, sample_offset, number_frames);
+          else if (bit_depth == 24)
+               decode24BitSamples(audio_bytes, byte_offset, big_endian, sign_flip, max_sample_value, sample_values, sample_offset, number_frames);
+          else
+               decode32BitSamples(audio_bytes, byte_offset, big_endian, sign_flip, max_sample_value, sample_values, sample_offset, number_frames);
      }
      
      
@@ -636,6 +880,12 @@ public class AudioMethodsGeneral
       * the <code>AudioInputStream</code> at the moment that this method is
       * called.
       *
+      * <p>If the length of the stream is known, an array of exactly that size
+      * is allocated and the stream is read directly into it, so that no
+      * intermediate buffers or copies are needed. Otherwise the stream is
+      * read into an array whose capacity is doubled whenever it fills, which
+      * is trimmed to the number of bytes read at the end.
+      *
       * @param      audio_input_stream  The <code>AudioInputStream</code> to
       *                                 extract the bytes from.
       * @return				The audio bytes extracted from the
@@ -647,32 +897,50 @@ public class AudioMethodsGeneral
      public static byte[] getBytesFromAudioInputStream(AudioInputStream audio_input_stream)
      throws Exception
      {
-          // Calculate the buffer size to use
-          float buffer_duration_in_seconds = 0.25F;
-          int buffer_size = AudioMethodsGeneral.getNumberBytesNeeded( buffer_duration_in_seconds,
-               audio_input_stream.getFormat() );
-          byte rw_buffer[] = new byte[buffer_size + 2];
+          AudioFormat audio_format = audio_input_stream.getFormat();
+          int frame_size = Math.max(1, audio_format.getFrameSize());
+          long frame_length = audio_input_stream.getFrameLength();
           
-          // Read the bytes into the rw_buffer and then into the ByteArrayOutputStream
-          ByteArrayOutputStream byte_array_output_stream = new ByteArrayOutputStream();
-          int position = audio_input_stream.read(rw_buffer, 0, rw_buffer.length);
-          while (position > 0)
+          // Read streams of known length directly into an array of that length
+          if (frame_length != AudioSystem.NOT_SPECIFIED)
           {
-               byte_array_output_stream.write(rw_buffer, 0, position);
-               position = audio_input_stream.read(rw_buffer, 0, rw_buffer.length);
-          }
-          byte[] results = byte_array_output_stream.toByteArray();
-          try
-          {
-               byte_array_output_stream.close();
+               long number_bytes = frame_length * frame_size;
+               if (number_bytes > Integer.MAX_VALUE - 8)
+                    throw new Exception( "The stream has " + number_bytes + " bytes of audio.\n" +
+                         "At most " + (Integer.MAX_VALUE - 8) + " bytes can be stored in an array." );
+               byte[] results = new byte[(int) number_bytes];
+               int bytes_read = readFully(audio_input_stream, results, 0, results.length);
+               
+               // Trim the array if the stream ended early
+               if (bytes_read < results.length)
+                    results = Arrays.copyOf(results, bytes_read);
+               return results;
           }
-          catch (IOException e)
+          
+          // Otherwise grow the array geometrically, starting with room for
+          // 0.25 seconds of audio, and keeping whole frames
+          int capacity = getNumberBytesNeeded(0.25, audio_format);
+          capacity = Math.max(frame_size, capacity - (capacity % frame_size));
+          byte[] results = new byte[capacity];
+          int bytes_so_far = 0;
+          while (true)
           {
-               System.out.println(e);
-               System.exit(0);
+               if (bytes_so_far == results.length)
+               {
+                    long new_capacity = Math.min(2L * results.length, (long) (Integer.MAX_VALUE - 8));
+                    new_capacity -= new_capacity % frame_size;
+                    if (new_capacity <= results.length)
+                         throw new Exception( "The stream has more than " + results.length + " bytes of audio.\n" +
+                              "At most " + (Integer.MAX_VALUE - 8) + " bytes can be stored in an array." );
+                    results = Arrays.copyOf(results, (int) new_capacity);
+               }
+               int bytes_read = audio_input_stream.read(results, bytes_so_far, results.length - bytes_so_far);
+               if (bytes_read < 0)
+                    break;
+               bytes_so_far += bytes_read;
           }
-          
-          // Return the results
+          if (bytes_so_far < results.length)
+               results = Arrays.copyOf(results, bytes_so_far);
           return results;
      }
      
@@ -736,9 +1004,7 @@ public class AudioMethodsGeneral
      {
           int number_bytes_needed = getNumberBytesNeeded(samples[0].length, audio_format);
           byte[] audio_bytes = new byte[number_bytes_needed];
-          writeSamplesToBuffer( samples,
-               audio_format.getSampleSizeInBits(),
-               audio_bytes );
+          writeSamplesToBuffer(samples, audio_format, false, audio_bytes);
           return getInputStream(audio_bytes, audio_format);
      }
      
@@ -758,7 +1024,7 @@ public class AudioMethodsGeneral
       *                       should fall between -1 and +1.
       * @param bit_depth      The bit depth to use for encoding the doubles
       *                       stored in <i>samples_to_modify</i>. Only bit
-      *                       depths of 8 or 16 bits are accepted.
+      *                       depths of 8, 16, 24 or 32 bits are accepted.
       * @param buffer         The buffer of bytes to write synthesized samples
       *                       to.
 	  * @throws Exception     An informative exception is thrown if a problem occurs.
@@ -771,44 +1037,68 @@ public class AudioMethodsGeneral
           // Throw exceptions for invalid parameters
           if (sample_values == null)
                throw new Exception( "Empty set of samples to write provided." );
-          if (bit_depth != 8 && bit_depth != 16)
+          if (bit_depth != 8 && bit_depth != 16 && bit_depth != 24 && bit_depth != 32)
                throw new Exception( "Bit depth of " + bit_depth + " specified." +
-                    "Only bit depths of 8 or 16 currently accepted." );
+                    "Only bit depths of 8, 16, 24 or 32 currently accepted." );
+          
+          AudioFormat audio_format = new AudioFormat( AudioFormat.Encoding.PCM_SIGNED,
+               AudioSystem.NOT_SPECIFIED,
+               bit_depth,
+               sample_values.length,
+               sample_values.length * (bit_depth / 8),
+               AudioSystem.NOT_SPECIFIED,
+               true );
+          writeSamplesToBuffer(sample_values, audio_format, false, buffer);
+     }
+     
+     
+     /**
+      * Writes the samples in the <i>sample_values</i> parameter to the
+      * <i>buffer</i> parameter as interleaved frames in the given format.
+      * Sample vaules greater than 1 or less than -1 are automatically clipped.
+      * Clipping, quantization and interleaving are performed in a single pass
+      * by a <code>SampleEncoder</code>, directly into the buffer.
+      *
+      * @param sample_values  A 2-D array of doubles whose first indice
+      *                       indicates channel and whose second indice
+      *                       indicates sample value. All samples should fall
+      *                       between -1 and +1.
+      * @param audio_format   The format to encode in. Must use signed or
+      *                       unsigned integer PCM with a bit depth of 8, 16,
+      *                       24 or 32 bits, and must have the same number of
+      *                       channels as <i>sample_values</i>. Either byte
+      *                       order may be used.
+      * @param dither         True if TPDF dither is to be added to the
+      *                       samples before they are quantized.
+      * @param buffer         The buffer of bytes to write the samples to.
+      *                       Must have room for all of the samples.
+      * @throws Exception     An informative exception is thrown if a problem
+      *                       occurs.
+      */
+     public static void writeSamplesToBuffer( double[][] sample_values,
+          AudioFormat audio_format,
+          boolean dither,
+          byte[] buffer )
+          throws Exception
+     {
+          // Throw exceptions for invalid parameters
+          if (sample_values == null)
+               throw new Exception( "Empty set of samples to write provided." );
           if (buffer == null)
                throw new Exception("Null buffer for storing samples provided.");
+          if (audio_format.getChannels() != sample_values.length)
+               throw new Exception( "The specified samples have " + sample_values.length + " channels but\n" +
+                    "the specified audio format has " + audio_format.getChannels() + " channels.\n" +
+                    "These must be the same." );
+          SampleEncoder encoder = new SampleEncoder(audio_format, dither);
+          int number_samples = sample_values[0].length;
+          long bytes_needed = (long) number_samples * audio_format.getFrameSize();
+          if (bytes_needed > buffer.length)
+               throw new Exception( bytes_needed + " bytes are needed to store the samples, but the\n" +
+                    "buffer has only " + buffer.length + " bytes." );
           
-          // Clip values above +1 or below -1
-          sample_values = AudioMethodsDSP.clipSamples(sample_values);
-          
-          // Find the maximum value a sample may have under the current bit depth
-          // (assuming signed samples)
-          double max_sample_value = AudioMethodsDSP.findMaximumSampleValue(bit_depth);
-          
-          // Prepare buffer of audio samples to be written to by wrapping it in
-          // a ByteBuffer so that bytes may easily be written to it
-          ByteBuffer byte_buffer = ByteBuffer.wrap(buffer);
-          
-          // Write samples to buffer (by way of byte_buffer)
-          // Only works for bit depths of 8 or 16 bits and big endian signed samples
-          if (bit_depth == 8)
-          {
-               for (int samp = 0; samp < sample_values[0].length; samp++)
-                    for (int chan = 0; chan < sample_values.length; chan++)
-                    {
-                    double sample_value = sample_values[chan][samp] * max_sample_value;
-                    byte_buffer.put( (byte) sample_value );
-                    }
-          }
-          else if (bit_depth == 16)
-          {
-               ShortBuffer short_buffer = byte_buffer.asShortBuffer();
-               for (int samp = 0; samp < sample_values[0].length; samp++)
-                    for (int chan = 0; chan < sample_values.length; chan++)
-                    {
-                    double sample_value = sample_values[chan][samp] * max_sample_value;
-                    short_buffer.put( (short) sample_value );
-                    }
-          }
+          // Clip, quantize and interleave all samples in one pass
+          encoder.encode(sample_values, 0, number_samples, buffer, 0);
      }
      
      
@@ -860,6 +1150,12 @@ public class AudioMethodsGeneral
       * exceptions. Useful for non-real-time recording, as well as possibly
       * real-time recording.
       *
+      * <p>Integer PCM streams saved to WAVE or AIFF files are copied to the
+      * file a block at a time with an <code>AudioFileWriter</code>, so streams
+      * of any length, including those whose length is not known, are saved
+      * using a constant amount of memory. Other streams are saved with
+      * <code>AudioSystem.write</code>.
+      *
       * @param	audio_input_stream The audio data to be recorded.
       * @param	file_to_save_to    The file to save the audio to.
       * @param	file_type          The type of audio file to save to.
@@ -878,6 +1174,284 @@ public class AudioMethodsGeneral
                throw new Exception("No file provided to save to.");
           if (file_type == null)
                throw new Exception("No file type to save to specified.");
-          AudioSystem.write(audio_input_stream, file_type, file_to_save_to);
+          
+          AudioFormat audio_format = audio_input_stream.getFormat();
+          if (!AudioFileWriter.isWritable(audio_format, file_type))
+          {
+               AudioSystem.write(audio_input_stream, file_type, file_to_save_to);
+               return;
+          }
+          
+          // Copy whole frames a block at a time, keeping any partial frame
+          // for the next block
+          AudioFileWriter writer = new AudioFileWriter(file_to_save_to, audio_format, file_type);
+          try
+          {
+               int frame_size = audio_format.getFrameSize();
+               byte[] block = new byte[STREAMING_BLOCK_SIZE * frame_size];
+               int bytes_available = 0;
+               int bytes_just_read;
+               while ((bytes_just_read = audio_input_stream.read(block, bytes_available, block.length - bytes_available)) >= 0)
+               {
+                    bytes_available += bytes_just_read;
+                    int complete_bytes = bytes_available - (bytes_available % frame_size);
+                    writer.writeBytes(block, 0, complete_bytes);
+                    bytes_available -= complete_bytes;
+                    System.arraycopy(block, complete_bytes, block, 0, bytes_available);
+               }
+          }
+          finally
+          {
+               writer.close();
+          }
+     }
+     
+     
+     /**
+      * Decodes interleaved 8 bit integer samples. Used by the
+      * <code>decodeSampleValues</code> method, whose parameters are the same
+      * apart from those described here.
+      *
+      * @param      sign_flip           The value to exclusive-or with each
+      *                                 sign extended sample in order to make
+      *                                 it signed.
+      * @param      max_sample_value    The value to divide each sample by.
+      */
+     private static void decode8BitSamples( byte[] audio_bytes,
+          int byte_offset,
+          int sign_flip,
+          double max_sample_value,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+     {
+          int number_of_channels = sample_values.length;
+          int position = byte_offset;
+          int end_sample = sample_offset + number_frames;
+          for (int samp = sample_offset; samp < end_sample; samp++)
+               for (int chan = 0; chan < number_of_channels; chan++)
+                    sample_values[chan][samp] = (double) (audio_bytes[position++] ^ sign_flip) / max_sample_value;
+     }
+     
+     
+     /**
+      * Decodes interleaved 16 bit integer samples. Used by the
+      * <code>decodeSampleValues</code> method, whose parameters are the same
+      * apart from those described here.
+      *
+      * @param      big_endian          Whether the most significant byte of
+      *                                 each sample comes first.
+      * @param      sign_flip           The value to exclusive-or with each
+      *                                 sign extended sample in order to make
+      *                                 it signed.
+      * @param      max_sample_value    The value to divide each sample by.
+      */
+     private static void decode16BitSamples( byte[] audio_bytes,
+          int byte_offset,
+          boolean big_endian,
+          int sign_flip,
+          double max_sample_value,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+     {
+          int number_of_channels = sample_values.length;
+          int high = big_endian ? 0 : 1;
+          int low = 1 - high;
+          int position = byte_offset;
+          int end_sample = sample_offset + number_frames;
+          for (int samp = sample_offset; samp < end_sample; samp++)
+               for (int chan = 0; chan < number_of_channels; chan++)
+               {
+                    int value = (audio_bytes[position + high] << 8) | (audio_bytes[position + low] & 0xFF);
+                    sample_values[chan][samp] = (double) (value ^ sign_flip) / max_sample_value;
+                    position += 2;
+               }
+     }
+     
+     
+     /**
+      * Decodes interleaved 24 bit integer samples. Used by the
+      * <code>decodeSampleValues</code> method, whose parameters are the same
+      * apart from those described here.
+      *
+      * @param      big_endian          Whether the most significant byte of
+      *                                 each sample comes first.
+      * @param      sign_flip           The value to exclusive-or with each
+      *                                 sign extended sample in order to make
+      *                                 it signed.
+      * @param      max_sample_value    The value to divide each sample by.
+      */
+     private static void decode24BitSamples( byte[] audio_bytes,
+          int byte_offset,
+          boolean big_endian,
+          int sign_flip,
+          double max_sample_value,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+     {
+          int number_of_channels = sample_values.length;
+          int high = big_endian ? 0 : 2;
+          int low = 2 - high;
+          int position = byte_offset;
+          int end_sample = sample_offset + number_frames;
+          for (int samp = sample_offset; samp < end_sample; samp++)
+               for (int chan = 0; chan < number_of_channels; chan++)
+               {
+                    int value = (audio_bytes[position + high] << 16) |
+                         ((audio_bytes[position + 1] & 0xFF) << 8) |
+                         (audio_bytes[position + low] & 0xFF);
+                    sample_values[chan][samp] = (double) (value ^ sign_flip) / max_sample_value;
+                    position += 3;
+               }
+     }
+     
+     
+     /**
+      * Decodes interleaved 32 bit integer samples. Used by the
+      * <code>decodeSampleValues</code> method, whose parameters are the same
+      * apart from those described here.
+      *
+      * @param      big_endian          Whether the most significant byte of
+      *                                 each sample comes first.
+      * @param      sign_flip           The value to exclusive-or with each
+      *                                 sample in order to make it signed.
+      * @param      max_sample_value    The value to divide each sample by.
+      */
+     private static void decode32BitSamples( byte[] audio_bytes,
+          int byte_offset,
+          boolean big_endian,
+          int sign_flip,
+          double max_sample_value,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+     {
+          int number_of_channels = sample_values.length;
+          int position = byte_offset;
+          int end_sample = sample_offset + number_frames;
+          for (int samp = sample_offset; samp < end_sample; samp++)
+               for (int chan = 0; chan < number_of_channels; chan++)
+               {
+                    int value = getInt(audio_bytes, position, big_endian);
+                    sample_values[chan][samp] = (double) (value ^ sign_flip) / max_sample_value;
+                    position += 4;
+               }
+     }
+     
+     
+     /**
+      * Decodes interleaved 32 bit floating point samples. Used by the
+      * <code>decodeSampleValues</code> method, whose parameters are the same
+      * apart from that described here.
+      *
+      * @param      big_endian          Whether the most significant byte of
+      *                                 each sample comes first.
+      */
+     private static void decodeFloatSamples( byte[] audio_bytes,
+          int byte_offset,
+          boolean big_endian,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+     {
+          int number_of_channels = sample_values.length;
+          int position = byte_offset;
+          int end_sample = sample_offset + number_frames;
+          for (int samp = sample_offset; samp < end_sample; samp++)
+               for (int chan = 0; chan < number_of_channels; chan++)
+               {
+                    sample_values[chan][samp] = Float.intBitsToFloat(getInt(audio_bytes, position, big_endian));
+                    position += 4;
+               }
+     }
+     
+     
+     /**
+      * Decodes interleaved 64 bit floating point samples. Used by the
+      * <code>decodeSampleValues</code> method, whose parameters are the same
+      * apart from that described here.
+      *
+      * @param      big_endian          Whether the most significant byte of
+      *                                 each sample comes first.
+      */
+     private static void decodeDoubleSamples( byte[] audio_bytes,
+          int byte_offset,
+          boolean big_endian,
+          double[][] sample_values,
+          int sample_offset,
+          int number_frames )
+     {
+          int number_of_channels = sample_values.length;
+          int first_word = big_endian ? 0 : 4;
+          int second_word = 4 - first_word;
+          int position = byte_offset;
+          int end_sample = sample_offset + number_frames;
+          for (int samp = sample_offset; samp < end_sample; samp++)
+               for (int chan = 0; chan < number_of_channels; chan++)
+               {
+                    long high_bits = getInt(audio_bytes, position + first_word, big_endian);
+                    long low_bits = getInt(audio_bytes, position + second_word, big_endian) & 0xFFFFFFFFL;
+                    sample_values[chan][samp] = Double.longBitsToDouble((high_bits << 32) | low_bits);
+                    position += 8;
+               }
+     }
+     
+     
+     /**
+      * Returns the 32 bit integer stored in the four bytes starting at the
+      * given index.
+      *
+      * @param      bytes          The array to read from.
+      * @param      index          The index of the first byte.
+      * @param      big_endian     Whether the most significant byte comes
+      *                            first.
+      * @return                    The stored integer.
+      */
+     private static int getInt(byte[] bytes, int index, boolean big_endian)
+     {
+          if (big_endian)
+               return (bytes[index] << 24) |
+                    ((bytes[index + 1] & 0xFF) << 16) |
+                    ((bytes[index + 2] & 0xFF) << 8) |
+                    (bytes[index + 3] & 0xFF);
+          return (bytes[index + 3] << 24) |
+               ((bytes[index + 2] & 0xFF) << 16) |
+               ((bytes[index + 1] & 0xFF) << 8) |
+               (bytes[index] & 0xFF);
+     }
+     
+     
+     /**
+      * Reads bytes from the given stream into the given array until the
+      * requested number have been read or the stream ends.
+      *
+      * @param      audio_input_stream  The stream to read from.
+      * @param      destination         The array to read into.
+      * @param      offset              The index in <i>destination</i> at
+      *                                 which to store the first byte.
+      * @param      length              The number of bytes to read. Should
+      *                                 be a whole number of frames.
+      * @return                         The number of bytes read, which is
+      *                                 less than <i>length</i> only if the
+      *                                 stream ended.
+      * @throws     IOException         Thrown if the stream cannot be read.
+      */
+     private static int readFully( AudioInputStream audio_input_stream,
+          byte[] destination,
+          int offset,
+          int length )
+          throws IOException
+     {
+          int bytes_so_far = 0;
+          while (bytes_so_far < length)
+          {
+               int bytes_read = audio_input_stream.read(destination, offset + bytes_so_far, length - bytes_so_far);
+               if (bytes_read < 0)
+                    break;
+               bytes_so_far += bytes_read;
+          }
+          return bytes_so_far;
      }
 }
\ No newline at end of file
@@ -16,6 +16,11 @@ import javax.sound.sampled.*;
  * A holder class for static methods and internal classes relating to playing
  * back audio recordings.
  *
+ * <p>The methods of this class play each stream on a line provided by the
+ * caller. Applications that play many sounds, or that need protection against
+ * underruns, may use an <code>AudioPlaybackService</code> instead, which
+ * pools open lines and pre-buffers audio on a separate thread.
+ *
  * @author	Cory McKay
  */
 public class AudioMethodsPlayback
@@ -42,6 +42,42 @@ public class AudioMethodsRecording
      }
      
      
+     /**
+      * Records the samples coming in on the given <code>TargetDataLine</code>
+      * to a fixed-capacity <code>AudioRingBuffer</code>, from which another
+      * thread can read them while recording continues. Returns the thread
+      * that can be stopped and whose <code>getRingBuffer</code> method
+      * returns the buffer. Memory use is bounded by the buffer, however long
+      * recording continues. If the reading thread falls behind by more than
+      * the buffer holds, newly captured audio is discarded and counted as an
+      * overrun by the buffer.
+      *
+      * @param	target_data_line   Where the samples are being recorded from.
+      * @param	buffer_duration    The duration of audio, in seconds, that the
+      *                            buffer can hold.
+      * @return                    The thread that performs the recording.
+      * @throws	Exception          Throws an exception if the target_data_line
+      *                            parameter is null or if the duration is not
+      *                            above 0.
+      */
+     public static RecordThread recordToRingBuffer( TargetDataLine target_data_line,
+          double buffer_duration )
+          throws Exception
+     {
+          if (target_data_line == null)
+               throw new Exception("Target TargetDataLine for recording is empty.");
+          if (!(buffer_duration > 0.0))
+               throw new Exception( "Buffer duration of " + buffer_duration + " seconds specified.\n" +
+                    "This value must be above 0." );
+          AudioFormat audio_format = target_data_line.getFormat();
+          int capacity_in_frames = Math.max(1, (int) Math.ceil(buffer_duration * audio_format.getFrameRate()));
+          AudioRingBuffer ring_buffer = new AudioRingBuffer(capacity_in_frames, audio_format.getFrameSize());
+          RecordThread record_thread = new RecordThread(target_data_line, ring_buffer);
+          record_thread.start();
+          return record_thread;
+     }
+     
+     
      /**
       * Records the samples coming in on the given <code>TargetDataLine</code> 
       * to the given file. Returns the thread that can be stopped when recording
@@ -81,6 +117,11 @@ public class AudioMethodsRecording
       * written to it is not dealt with. This could result in an 
       * <code>OutOfMemory</code> error.
       *
+      * <p>Alternatively, the thread may record into a fixed-capacity
+      * <code>AudioRingBuffer</code>, which another thread can read from while
+      * recording continues, so that memory use stays bounded. The buffer is
+      * closed when recording ends.
+      *
       * <p><b>WARNING:</b>Note that the <code>TargetDataLine</code> is stopped 
       * and closed after recording has terminated. It will need to be re-started
       * if it is to be used elsewhere.
@@ -89,9 +130,10 @@ public class AudioMethodsRecording
           extends Thread
      {
           private byte rw_buffer[]; // Temporary buffer to store information between reading and writing
-          private boolean stop_recording; // Set to true if recording should be terminated
+          private volatile boolean stop_recording; // Set to true if recording should be terminated
           private TargetDataLine target_data_line; // The source of the audio to be recorded
           private ByteArrayOutputStream byte_array_output_stream; // The output stream of what is being recorded
+          private AudioRingBuffer ring_buffer; // The ring buffer to record to instead, or null if the output stream is used
           
           /**
            * Constructor that performs standard operations of the <code>Thread</code> class
@@ -103,20 +145,43 @@ public class AudioMethodsRecording
            */
           RecordThread(TargetDataLine target_data_line)
           throws Exception
+          {
+               this(target_data_line, null);
+          }
+          
+          /**
+           * Constructor that prepares to record from the given
+           * <code>TargetDataLine</code> into the given ring buffer rather than
+           * into a <code>ByteArrayOutputStream</code>.
+           *
+           * @param	target_data_line	The source of the audio to be recorded.
+           * @param	ring_buffer		The buffer to record to, or null if
+           *				a <code>ByteArrayOutputStream</code>
+           *				is to be used.
+           * @throws	Exception	Throws an exception if the
+           *				target_data_line parameter is null.
+           */
+          RecordThread(TargetDataLine target_data_line, AudioRingBuffer ring_buffer)
+          throws Exception
           {
                // Call the super class' constructor
                super();
                
-               // Calculate the buffer size to use
-               int frame_size_in_bytes = target_data_line.getFormat().getFrameSize();
-               float frame_rate = target_data_line.getFormat().getFrameRate();
-               float buffer_duration_in_seconds = 0.25F;
-               int buffer_size = (int) (frame_size_in_bytes * frame_rate * buffer_duration_in_seconds);
-               
                // Throw an exception if the target_data_line is null
                if (target_data_line == null)
                     throw new Exception("Target TargetDataLine for recording is empty.");
                
+               // Calculate the buffer size to use, reading less at a time when
+               // recording to a ring buffer so that consumers receive audio
+               // promptly and each read fits within the ring
+               int frame_size_in_bytes = target_data_line.getFormat().getFrameSize();
+               float frame_rate = target_data_line.getFormat().getFrameRate();
+               float buffer_duration_in_seconds = (ring_buffer == null) ? 0.25F : 0.02F;
+               int buffer_size = (int) (frame_size_in_bytes * frame_rate * buffer_duration_in_seconds);
+               buffer_size = Math.max(frame_size_in_bytes, buffer_size - (buffer_size % frame_size_in_bytes));
+               if (ring_buffer != null)
+                    buffer_size = Math.min(buffer_size, ring_buffer.getCapacity());
+               
                // Prepare the rw_buffer
                this.target_data_line = target_data_line;
                rw_buffer = new byte[buffer_size];
@@ -124,6 +189,7 @@ public class AudioMethodsRecording
                // Prepare misc initializations
                stop_recording = false;
                byte_array_output_stream = null;
+               this.ring_buffer = ring_buffer;
           }
           
           /**
@@ -138,6 +204,27 @@ public class AudioMethodsRecording
           public void run()
           {
                stop_recording = false;
+               if (ring_buffer != null)
+               {
+                    // Close the ring even if the line fails, so that readers
+                    // waiting on it are released
+                    try
+                    {
+                         while (!stop_recording)
+                         {
+                              int position = target_data_line.read(rw_buffer, 0, rw_buffer.length);
+                              if (position > 0)
+                                   ring_buffer.write(rw_buffer, 0, position);
+                         }
+                    }
+                    finally
+                    {
+                         ring_buffer.close();
+                         target_data_line.stop();
+                         target_data_line.close();
+                    }
+                    return;
+               }
                byte_array_output_stream = new ByteArrayOutputStream();
                while (!stop_recording)
                {
@@ -170,9 +257,22 @@ public class AudioMethodsRecording
                stop_recording = true;
           }
           
+          /**
+           * Returns the ring buffer that audio is recorded to, from which it
+           * may be read while recording continues.
+		   * 
+		   * @return The ring buffer, or null if audio is recorded to a
+		   *         <code>ByteArrayOutputStream</code>.
+           */
+          public AudioRingBuffer getRingBuffer()
+          {
+               return ring_buffer;
+          }
+          
           /**
            * Returns the stream of recorded data. Note that stream is set to 
-           * null if no data has been recorded yet.
+           * null if no data has been recorded yet, and is always null if audio
+           * is recorded to a ring buffer.
 		   * 
 		   * @return The stream of encoded data.
            */
@@ -27,6 +27,10 @@ import javax.sound.sampled.AudioFormat;
  * formats using the <code>writeSamplesToBuffer</code> method, or indirectly 
  * using the <code>synthesizeAndWriteToBuffer</code> method.
  *
+ * <p>The sinusoids are generated by <code>SineOscillator</code> objects, which
+ * may also be used directly to generate longer or streamed stimuli block by
+ * block into existing buffers.
+ *
  * <p>See the descriptions below for information on other available methods.
  *
  * @author	Cory McKay
@@ -386,19 +390,12 @@ public class AudioMethodsSynthesis
           // Prepare the array to hold the samples for each channel
           double[][] samples = new double[number_of_channels][total_samples_per_chan];
           
-          // Generate the samples one by one
-          for(int samp = 0; samp < total_samples_per_chan; samp++)
-          {
-               // Find the time of the current sample
-               double time = samp / sample_rate;
-               
-               // Add sinusoids to get basic sample value
-               double sample_value = ( Math.sin( 2 * Math.PI * fund_freq * time ) );
-               
-               // Store identical samples on each channel
-               for (int chan = 0; chan < samples.length; chan++)
-                    samples[chan][samp] = sample_value;
-          }
+          // Generate the samples for the first channel
+          SineOscillator oscillator = new SineOscillator(fund_freq, sample_rate);
+          oscillator.generate(samples[0], 0, total_samples_per_chan);
+          
+          // Store identical samples on each channel
+          copyFirstChannel(samples);
           
           // Return the generated samples
           return samples;
@@ -484,25 +481,19 @@ public class AudioMethodsSynthesis
           // Prepare the array to hold the samples for each channel
           double[][] samples = new double[number_of_channels][total_samples_per_chan];
           
-          // Generate the samples one by one
-          for (int samp = 0; samp < total_samples_per_chan; samp++)
+          // Add sinusoids on the first channel, each scaled by a third so that
+          // the samples fall between -1 and +1
+          double[] partial_ratios = {1.0, 1.2, 1.8};
+          for (int partial = 0; partial < partial_ratios.length; partial++)
           {
-               // Find the time of the current sample
-               double time = samp / sample_rate;
-               
-               // Add sinusoids to get basic sample value
-               double sample_value = ( Math.sin( 2 * Math.PI * fund_freq * time ) +
-                    Math.sin( 2 * Math.PI * (1.2) * fund_freq * time ) +
-                    Math.sin( 2 * Math.PI * (1.8) * fund_freq * time ) );
-               
-               // Normalize sample values so that they fall between -1 and +1
-               sample_value = sample_value / 3.0;
-               
-               // Store identical samples on each channel
-               for (int chan = 0; chan < samples.length; chan++)
-                    samples[chan][samp] = sample_value;
+               SineOscillator oscillator = new SineOscillator(partial_ratios[partial] * fund_freq, sample_rate);
+               oscillator.setAmplitude(1.0 / 3.0, 0.0);
+               oscillator.accumulate(samples[0], 0, total_samples_per_chan);
           }
           
+          // Store identical samples on each channel
+          copyFirstChannel(samples);
+          
           // Return the generated samples
           return samples;
      }
@@ -587,25 +578,16 @@ public class AudioMethodsSynthesis
           // Prepare the array to hold the samples for each channel
           double[][] samples = new double[number_of_channels][total_samples_per_chan];
           
-          // Generate the samples one by one
-          for (int samp = 0; samp < total_samples_per_chan; samp++)
-          {
-               // Find the time of the current sample
-               double time = samp / sample_rate;
-               
-               // Find the time dependant gain for each channel
-               double right_gain = (double) samp / (double) total_samples_per_chan;
-               double left_gain = 1.0 - right_gain;
-               
-               // Add sinusoids to get basic sample value
-               double original_left_sample_value = Math.sin( 2 * Math.PI * fund_freq * time );
-               double original_right_sample_value = Math.sin( 2 * Math.PI * fund_freq / 2 * time );
-               
-               // Store the samples on each channel
-               // Store identical samples on each channel
-               samples[0][samp] = left_gain * original_left_sample_value;
-               samples[1][samp] = right_gain * original_right_sample_value;
-          }
+          // Generate the samples for each channel, with the gain on the left
+          // falling linearly from 1 to 0 and the gain on the right rising
+          // linearly from 0 to 1
+          double gain_slope = 1.0 / (double) total_samples_per_chan;
+          SineOscillator left_oscillator = new SineOscillator(fund_freq, sample_rate);
+          left_oscillator.setAmplitude(1.0, -gain_slope);
+          left_oscillator.generate(samples[0], 0, total_samples_per_chan);
+          SineOscillator right_oscillator = new SineOscillator(fund_freq / 2, sample_rate);
+          right_oscillator.setAmplitude(0.0, gain_slope);
+          right_oscillator.generate(samples[1], 0, total_samples_per_chan);
           
           // Return the generated samples
           return samples;
@@ -692,7 +674,13 @@ public class AudioMethodsSynthesis
           // Prepare the array to hold the samples for each channel
           double[][] samples = new double[number_of_channels][total_samples_per_chan];
           
-          // Generate the samples one by one
+          // Generate the sinusoids for each channel
+          SineOscillator left_oscillator = new SineOscillator(fund_freq, sample_rate);
+          left_oscillator.generate(samples[0], 0, total_samples_per_chan);
+          SineOscillator right_oscillator = new SineOscillator(fund_freq * 0.8, sample_rate);
+          right_oscillator.generate(samples[1], 0, total_samples_per_chan);
+          
+          // Apply the gains one sample at a time
           double number_of_times_a_sec_switches_occur = 4.0;
           double switch_time_interval = 1 / number_of_times_a_sec_switches_occur;
           double time_of_last_switch = 0.0;
@@ -712,14 +700,9 @@ public class AudioMethodsSynthesis
                     time_of_last_switch = time;
                }
                
-               // Add sinusoids to get basic sample value
-               double original_left_sample_value = Math.sin( 2 * Math.PI * fund_freq * time );
-               double original_right_sample_value = Math.sin( 2 * Math.PI * fund_freq * 0.8 * time );
-               
                // Store the samples on each channel
-               // Store identical samples on each channel
-               samples[0][samp] = left_gain * original_left_sample_value;
-               samples[1][samp] = right_gain * original_right_sample_value;
+               samples[0][samp] *= left_gain;
+               samples[1][samp] *= right_gain;
           }
           
           // Return the generated samples
@@ -811,25 +794,20 @@ public class AudioMethodsSynthesis
           double high_freq = fund_freq;
           double low_freq = high_freq / 10.0;
           
-          // Generate the samples one by one
-          for(int samp = 0; samp < total_samples_per_chan; samp++)
-          {
-               // Find the time of the current sample
-               double time = samp / sample_rate;
-               
-               // Find the fraction of the synthesis that has been completed
-               double fraction_done = (double) samp / (double) total_samples_per_chan;
-               
-               // Find the time dependant frequency
-               double freq = low_freq + (high_freq - low_freq) * fraction_done;
-               
-               // Add sinusoids to get basic sample value
-               double sample_value = ( Math.sin( 2 * Math.PI * freq * time ) );
-               
-               // Store identical samples on each channel
-               for (int chan = 0; chan < samples.length; chan++)
-                    samples[chan][samp] = sample_value;
-          }
+          // Generate the samples for the first channel. Each sample has the
+          // phase 2 pi (f0 t + (f1 - f0) t^2 / T), where t is the time of the
+          // sample and T is the duration of the sound, as the sinusoid at
+          // each sample's time dependant frequency is evaluated at that time.
+          // This phase increases by 2 pi (f0 + (f1 - f0) (2n + 1) / N) / sr
+          // from sample n to sample n + 1, where N is the total number of
+          // samples and sr the sampling rate, so the oscillator starts at
+          // f0 + (f1 - f0) / N Hz and rises by 2 (f1 - f0) / N Hz per sample.
+          double freq_change = (high_freq - low_freq) / (double) total_samples_per_chan;
+          SineOscillator oscillator = new SineOscillator(low_freq + freq_change, 2.0 * freq_change, 0.0, sample_rate);
+          oscillator.generate(samples[0], 0, total_samples_per_chan);
+          
+          // Store identical samples on each channel
+          copyFirstChannel(samples);
           
           // Return the generated samples
           return samples;
@@ -914,23 +892,14 @@ public class AudioMethodsSynthesis
           // Prepare the array to hold the samples for each channel
           double[][] samples = new double[number_of_channels][total_samples_per_chan];
           
-          // Generate the samples one by one
-          for(int samp = 0; samp < total_samples_per_chan; samp++)
-          {
-               // Find the time of the current sample
-               double time = samp / sample_rate;
-               
-               // Find the amplitude coefficient
-               double fraction_done = (double) samp / (double) total_samples_per_chan;
-               double amplitude_coef = 1.0 - fraction_done;
-               
-               // Add sinusoids to get basic sample value
-               double sample_value = amplitude_coef * ( Math.sin( 2 * Math.PI * fund_freq * time ) );
-               
-               // Store identical samples on each channel
-               for (int chan = 0; chan < samples.length; chan++)
-                    samples[chan][samp] = sample_value;
-          }
+          // Generate the samples for the first channel, with an amplitude
+          // that falls linearly from 1 to 0
+          SineOscillator oscillator = new SineOscillator(fund_freq, sample_rate);
+          oscillator.setAmplitude(1.0, -1.0 / (double) total_samples_per_chan);
+          oscillator.generate(samples[0], 0, total_samples_per_chan);
+          
+          // Store identical samples on each channel
+          copyFirstChannel(samples);
           
           // Return the generated samples
           return samples;
@@ -986,4 +955,21 @@ public class AudioMethodsSynthesis
           // Return the generated samples
           return samples;
      }
+     
+     
+     /* PRIVATE METHODS *******************************************************/
+     
+     
+     /**
+      * Copies the samples of the first channel of the given array into each of
+      * its other channels.
+      *
+      * @param samples   The samples, with the first indice indicating channel
+      *                  and the second indicating sample.
+      */
+     private static void copyFirstChannel(double[][] samples)
+     {
+          for (int chan = 1; chan < samples.length; chan++)
+               System.arraycopy(samples[0], 0, samples[chan], 0, samples[0].length);
+     }
 }
\ No newline at end of file
@@ -0,0 +1,806 @@
+/*
+ * AudioPlaybackService.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.*;
+
+
+/**
+ * Plays <code>AudioInputStream</code>s on pooled <code>SourceDataLine</code>s,
+ * with reading and playback decoupled by a double-buffered queue. This is an
+ * alternative to the methods of the <code>AudioMethodsPlayback</code> class
+ * for applications that play many sounds, such as short interface sounds, or
+ * long streams that must not underrun.
+ *
+ * <p>Lines are kept open after playback ends, up to a maximum number per
+ * <code>AudioFormat</code>, so later sounds in the same format do not pay the
+ * latency of opening a line. The <code>preload</code> method can open lines
+ * in advance so that even the first sound does not.
+ *
+ * <p>Each playback uses two threads. A reader thread fills two chunks, each
+ * holding half the line's buffer, from the stream. A writer thread writes the
+ * filled chunks to the line and returns them for refilling. These threads are
+ * taken from a pool owned by the service, so that starting a playback does
+ * not pay the cost of creating threads. Two threads per line kept per format
+ * stay in the pool once started, and more are created while more sounds
+ * overlap. The <code>preload</code> method starts the pooled threads as
+ * well. The line is only
+ * started once both chunks have been written to it, or the stream has ended,
+ * so it starts with a full buffer. Reading, such as decoding a compressed
+ * file, therefore does not delay writing, and a pause in either thread can be
+ * absorbed by up to a full buffer of audio.
+ *
+ * <p>The service records the start latency of each playback, which is the time
+ * from the call to <code>play</code> to the start of the line, and counts
+ * underruns, in which a line's buffer was empty when a chunk was to be
+ * written.
+ *
+ * <p>Lines are opened by the <code>openLine</code> method, which may be
+ * overridden to use a particular mixer or a <code>VirtualSourceDataLine</code>.
+ *
+ * @author Cory McKay
+ */
+public class AudioPlaybackService
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The default duration of each line's buffer, in seconds.
+      */
+     public static final double    DEFAULT_BUFFER_DURATION = 0.2;
+
+     /**
+      * The default maximum number of idle lines kept open per format.
+      */
+     public static final int       DEFAULT_LINES_PER_FORMAT = 2;
+
+     /**
+      * How long threads waiting on a playback's queues wait before checking
+      * whether it has been stopped, in milliseconds.
+      */
+     private static final long     POLL_INTERVAL = 50;
+
+     /**
+      * How long threads beyond those always kept in the pool wait for another
+      * playback before ending, in seconds.
+      */
+     private static final long     THREAD_KEEP_ALIVE = 60;
+
+     /**
+      * The duration of each line's buffer, in seconds.
+      */
+     private final double          buffer_duration;
+
+     /**
+      * The maximum number of idle lines kept open per format.
+      */
+     private final int             lines_per_format;
+
+     /**
+      * The idle lines, keyed by a description of their format.
+      */
+     private final HashMap<String, ArrayList<SourceDataLine>>    idle_lines;
+
+     /**
+      * The threads that read and write the audio of playbacks.
+      */
+     private final ThreadPoolExecutor   playback_threads;
+
+     /**
+      * Whether the service has been shut down.
+      */
+     private boolean               shut_down;
+
+     /**
+      * Statistics on the playbacks started so far.
+      */
+     private long                  playbacks_started;
+     private long                  total_start_latency_nanoseconds;
+     private long                  max_start_latency_nanoseconds;
+     private long                  underruns;
+     private long                  pool_hits;
+     private long                  pool_misses;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares a service with the default buffer duration and number of lines
+      * kept per format.
+      */
+     public AudioPlaybackService()
+     {
+          this(DEFAULT_BUFFER_DURATION, DEFAULT_LINES_PER_FORMAT);
+     }
+
+
+     /**
+      * Prepares a service with the given buffer duration and number of lines
+      * kept per format.
+      *
+      * @param buffer_duration     The duration of each line's buffer, in
+      *                            seconds. Longer buffers absorb longer pauses
+      *                            but delay stopping.
+      * @param lines_per_format    The maximum number of idle lines to keep
+      *                            open per <code>AudioFormat</code>. Sounds
+      *                            played at the same time each need their own
+      *                            line, so this is the number of overlapping
+      *                            sounds that avoid opening a line.
+      * @throws IllegalArgumentException     Thrown if the buffer duration is
+      *                                      not positive or the number of
+      *                                      lines is negative.
+      */
+     public AudioPlaybackService(double buffer_duration, int lines_per_format)
+     {
+          if (!(buffer_duration > 0.0))
+               throw new IllegalArgumentException( "Buffer duration of " + buffer_duration + " seconds specified.\n" +
+                    "This value must be above 0." );
+          if (lines_per_format < 0)
+               throw new IllegalArgumentException( "Number of lines per format of " + lines_per_format + " specified.\n" +
+                    "This value must be 0 or more." );
+          this.buffer_duration = buffer_duration;
+          this.lines_per_format = lines_per_format;
+          idle_lines = new HashMap<String, ArrayList<SourceDataLine>>();
+          shut_down = false;
+
+          // Each playback needs two threads at once, so the pool may not
+          // queue tasks, and must grow while more sounds overlap
+          playback_threads = new ThreadPoolExecutor( 2 * Math.max(1, lines_per_format),
+               Integer.MAX_VALUE,
+               THREAD_KEEP_ALIVE,
+               TimeUnit.SECONDS,
+               new SynchronousQueue<Runnable>(),
+               new ThreadFactory()
+               {
+                    public Thread newThread(Runnable task)
+                    {
+                         Thread thread = new Thread(task, "AudioPlaybackService worker");
+                         thread.setDaemon(true);
+                         return thread;
+                    }
+               } );
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Begins playing the given stream on a pooled line, and returns
+      * immediately. The stream is closed when playback ends.
+      *
+      * @param audio_input_stream  The audio to play.
+      * @return                    The playback, which may be used to stop it,
+      *                            wait for it to finish or examine its
+      *                            metrics.
+      * @throws Exception          Throws an informative exception if the
+      *                            stream is null, the service has been shut
+      *                            down or no line can be opened for the
+      *                            stream's format.
+      */
+     public Playback play(AudioInputStream audio_input_stream)
+          throws Exception
+     {
+          long request_time = System.nanoTime();
+          if (audio_input_stream == null)
+               throw new Exception("Source AudioInputStream for playback is empty.");
+          SourceDataLine line = acquireLine(audio_input_stream.getFormat());
+          Playback playback = new Playback(audio_input_stream, line, request_time);
+          playback.begin();
+          return playback;
+     }
+
+
+     /**
+      * Opens lines for the given format in advance, so that playing sounds in
+      * that format does not need to open them. No more than the maximum number
+      * of lines per format are kept. Also starts the threads kept in the
+      * service's pool, if they have not already been started.
+      *
+      * @param format         The format to open lines for.
+      * @param number_lines   The number of lines to have ready.
+      * @throws Exception     Throws an informative exception if a line cannot
+      *                       be opened or the service has been shut down.
+      */
+     public void preload(AudioFormat format, int number_lines)
+          throws Exception
+     {
+          playback_threads.prestartAllCoreThreads();
+          number_lines = Math.min(number_lines, lines_per_format);
+          while (true)
+          {
+               synchronized (this)
+               {
+                    if (shut_down)
+                         throw new Exception("The audio playback service has been shut down.");
+                    if (getIdleLines(format).size() >= number_lines)
+                         return;
+               }
+               releaseLine(openLine(format, getBufferSize(format)));
+          }
+     }
+
+
+     /**
+      * Closes every idle line and prevents further playbacks. Playbacks in
+      * progress are allowed to finish, after which their lines are closed and
+      * the service's threads end.
+      */
+     public void shutDown()
+     {
+          ArrayList<SourceDataLine> to_close = new ArrayList<SourceDataLine>();
+          synchronized (this)
+          {
+               shut_down = true;
+               for (ArrayList<SourceDataLine> lines : idle_lines.values())
+                    to_close.addAll(lines);
+               idle_lines.clear();
+          }
+          playback_threads.shutdown();
+          for (SourceDataLine line : to_close)
+               line.close();
+     }
+
+
+     /**
+      * Returns the number of playbacks started.
+      *
+      * @return    The number of playbacks.
+      */
+     public synchronized long getPlaybackCount()
+     {
+          return playbacks_started;
+     }
+
+
+     /**
+      * Returns the average time from a call to <code>play</code> to the start
+      * of the line, over every playback that has started.
+      *
+      * @return    The average start latency in seconds, or 0 if no playbacks
+      *            have started.
+      */
+     public synchronized double getAverageStartLatency()
+     {
+          if (playbacks_started == 0)
+               return 0.0;
+          return total_start_latency_nanoseconds / (double) playbacks_started / 1.0e9;
+     }
+
+
+     /**
+      * Returns the longest time from a call to <code>play</code> to the start
+      * of the line.
+      *
+      * @return    The maximum start latency in seconds.
+      */
+     public synchronized double getMaximumStartLatency()
+     {
+          return max_start_latency_nanoseconds / 1.0e9;
+     }
+
+
+     /**
+      * Returns the total number of underruns over every playback.
+      *
+      * @return    The number of underruns.
+      */
+     public synchronized long getUnderrunCount()
+     {
+          return underruns;
+     }
+
+
+     /**
+      * Returns the number of playbacks that used an idle line from the pool.
+      *
+      * @return    The number of pool hits.
+      */
+     public synchronized long getPoolHitCount()
+     {
+          return pool_hits;
+     }
+
+
+     /**
+      * Returns the number of playbacks that had to open a new line.
+      *
+      * @return    The number of pool misses.
+      */
+     public synchronized long getPoolMissCount()
+     {
+          return pool_misses;
+     }
+
+
+     /**
+      * Returns a summary of the service's metrics.
+      *
+      * @return    A one-line description of the metrics.
+      */
+     public synchronized String getStatistics()
+     {
+          return "playbacks: " + playbacks_started +
+               ", average start latency: " + (getAverageStartLatency() * 1000.0) + " ms" +
+               ", maximum start latency: " + (getMaximumStartLatency() * 1000.0) + " ms" +
+               ", underruns: " + underruns +
+               ", pool hits: " + pool_hits +
+               ", pool misses: " + pool_misses;
+     }
+
+
+     /* PROTECTED METHODS *****************************************************/
+
+
+     /**
+      * Opens a line for playing audio in the given format. The line is not
+      * started. May be overridden to use a particular mixer or a
+      * <code>VirtualSourceDataLine</code>.
+      *
+      * @param format         The format of the line.
+      * @param buffer_size    The size of the line's buffer in bytes.
+      * @return               The open line.
+      * @throws Exception     Throws an informative exception if no line can be
+      *                       opened for the format.
+      */
+     protected SourceDataLine openLine(AudioFormat format, int buffer_size)
+          throws Exception
+     {
+          DataLine.Info data_line_info = new DataLine.Info(SourceDataLine.class, format);
+          SourceDataLine line = (SourceDataLine) AudioSystem.getLine(data_line_info);
+          line.open(format, buffer_size);
+          return line;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the size of the buffer used for lines of the given format,
+      * which is a whole and even number of frames.
+      *
+      * @param format    The format of the line.
+      * @return          The buffer size in bytes.
+      */
+     private int getBufferSize(AudioFormat format)
+     {
+          int frame_size = Math.max(1, format.getFrameSize());
+          int frames = AudioMethodsGeneral.STREAMING_BLOCK_SIZE;
+          if (format.getFrameRate() > 0.0f)
+               frames = Math.max(2, (int) (format.getFrameRate() * buffer_duration));
+          return (frames - frames % 2) * frame_size;
+     }
+
+
+     /**
+      * Returns the list of idle lines for the given format, adding it if there
+      * is none.
+      *
+      * @param format    The format of the lines.
+      * @return          The idle lines.
+      */
+     private ArrayList<SourceDataLine> getIdleLines(AudioFormat format)
+     {
+          String key = format.toString();
+          ArrayList<SourceDataLine> lines = idle_lines.get(key);
+          if (lines == null)
+          {
+               lines = new ArrayList<SourceDataLine>();
+               idle_lines.put(key, lines);
+          }
+          return lines;
+     }
+
+
+     /**
+      * Takes an idle line for the given format from the pool, or opens a new
+      * one if there are none.
+      *
+      * @param format         The format of the line.
+      * @return               The open line.
+      * @throws Exception     Throws an informative exception if the service
+      *                       has been shut down or a line cannot be opened.
+      */
+     private SourceDataLine acquireLine(AudioFormat format)
+          throws Exception
+     {
+          synchronized (this)
+          {
+               if (shut_down)
+                    throw new Exception("The audio playback service has been shut down.");
+               ArrayList<SourceDataLine> lines = getIdleLines(format);
+               while (!lines.isEmpty())
+               {
+                    SourceDataLine line = lines.remove(lines.size() - 1);
+                    if (line.isOpen())
+                    {
+                         pool_hits++;
+                         return line;
+                    }
+               }
+               pool_misses++;
+          }
+          return openLine(format, getBufferSize(format));
+     }
+
+
+     /**
+      * Stops the given line and returns it to the pool, or closes it if the
+      * pool for its format is full or the service has been shut down.
+      *
+      * @param line      The line to release.
+      */
+     private void releaseLine(SourceDataLine line)
+     {
+          line.stop();
+          line.flush();
+          synchronized (this)
+          {
+               if (!shut_down && line.isOpen())
+               {
+                    ArrayList<SourceDataLine> lines = getIdleLines(line.getFormat());
+                    if (lines.size() < lines_per_format)
+                    {
+                         lines.add(line);
+                         return;
+                    }
+               }
+          }
+          line.close();
+     }
+
+
+     /**
+      * Adds the metrics of a finished playback to the service's statistics.
+      *
+      * @param playback  The finished playback.
+      */
+     private synchronized void recordPlayback(Playback playback)
+     {
+          if (playback.start_latency_nanoseconds >= 0)
+          {
+               playbacks_started++;
+               total_start_latency_nanoseconds += playback.start_latency_nanoseconds;
+               if (playback.start_latency_nanoseconds > max_start_latency_nanoseconds)
+                    max_start_latency_nanoseconds = playback.start_latency_nanoseconds;
+          }
+          underruns += playback.underruns;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * Queued by a playback's reader thread after the last chunk of audio.
+      */
+     private static final Chunk    END_OF_STREAM = new Chunk(0);
+
+
+     /**
+      * A chunk of audio passed from a playback's reader thread to its writer
+      * thread.
+      */
+     private static class Chunk
+     {
+          final byte[]   data;
+          int            length;
+
+          Chunk(int size)
+          {
+               data = new byte[size];
+               length = 0;
+          }
+     }
+
+
+     /**
+      * A sound being played by the service. May be used to stop it, to wait
+      * for it to finish or to examine its metrics.
+      */
+     public class Playback
+     {
+          private final AudioInputStream          audio_input_stream;
+          private final SourceDataLine            line;
+          private final long                      request_time;
+          private final ArrayBlockingQueue<Chunk> empty_chunks;
+          private final ArrayBlockingQueue<Chunk> full_chunks;
+          private final CountDownLatch            finished;
+          private volatile boolean                stop_playing;
+          private volatile boolean                line_released;
+          private volatile long                   start_latency_nanoseconds;
+          private volatile long                   underruns;
+          private volatile Exception              error;
+
+          /**
+           * Prepares to play the given stream on the given line.
+           */
+          private Playback( AudioInputStream audio_input_stream,
+               SourceDataLine line,
+               long request_time )
+          {
+               this.audio_input_stream = audio_input_stream;
+               this.line = line;
+               this.request_time = request_time;
+               int chunk_size = line.getBufferSize() / 2;
+               int frame_size = Math.max(1, line.getFormat().getFrameSize());
+               chunk_size = Math.max(frame_size, chunk_size - chunk_size % frame_size);
+               empty_chunks = new ArrayBlockingQueue<Chunk>(2);
+               full_chunks = new ArrayBlockingQueue<Chunk>(3);
+               empty_chunks.add(new Chunk(chunk_size));
+               empty_chunks.add(new Chunk(chunk_size));
+               finished = new CountDownLatch(1);
+               stop_playing = false;
+               line_released = false;
+               start_latency_nanoseconds = -1;
+               underruns = 0;
+               error = null;
+          }
+
+          /**
+           * Stops playback, discarding any audio still buffered. Returns
+           * without waiting for the playback's threads to finish.
+           */
+          public void stop()
+          {
+               stop_playing = true;
+               synchronized (this)
+               {
+                    // Unblock a write in progress
+                    if (!line_released)
+                         line.flush();
+               }
+          }
+
+          /**
+           * Blocks until playback has finished and its line has been
+           * released.
+           *
+           * @throws InterruptedException    Thrown if the calling thread is
+           *                                 interrupted while waiting.
+           */
+          public void waitUntilFinished()
+               throws InterruptedException
+          {
+               finished.await();
+          }
+
+          /**
+           * Returns whether playback has finished and its line has been
+           * released.
+           *
+           * @return    True if playback has finished.
+           */
+          public boolean isFinished()
+          {
+               return finished.getCount() == 0;
+          }
+
+          /**
+           * Returns the time from the call to <code>play</code> to the start
+           * of the line.
+           *
+           * @return    The start latency in seconds, or -1 if the line has not
+           *            been started.
+           */
+          public double getStartLatency()
+          {
+               long latency = start_latency_nanoseconds;
+               return latency < 0 ? -1.0 : latency / 1.0e9;
+          }
+
+          /**
+           * Returns the number of times that the line's buffer was empty when
+           * a chunk was to be written to it.
+           *
+           * @return    The number of underruns.
+           */
+          public long getUnderrunCount()
+          {
+               return underruns;
+          }
+
+          /**
+           * Returns the exception that ended playback early, or that was
+           * thrown when closing the stream afterwards, if any.
+           *
+           * @return    The exception, or null if none occurred.
+           */
+          public Exception getError()
+          {
+               return error;
+          }
+
+          /**
+           * Runs the reader and writer on threads from the service's pool.
+           * The writer runs at the highest priority, and its thread is
+           * returned to the pool at normal priority.
+           *
+           * @throws Exception     Throws an informative exception if the
+           *                       service was shut down before both could
+           *                       be started, in which case the line is
+           *                       released.
+           */
+          private void begin()
+               throws Exception
+          {
+               try
+               {
+                    playback_threads.execute(new Runnable()
+                    {
+                         public void run()
+                         {
+                              Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+                              try
+                              {
+                                   writeLine();
+                              }
+                              finally
+                              {
+                                   Thread.currentThread().setPriority(Thread.NORM_PRIORITY);
+                              }
+                         }
+                    });
+               }
+               catch (RejectedExecutionException e)
+               {
+                    releaseLine(line);
+                    audio_input_stream.close();
+                    throw new Exception("The audio playback service has been shut down.");
+               }
+               try
+               {
+                    playback_threads.execute(new Runnable()
+                    {
+                         public void run()
+                         {
+                              readStream();
+                         }
+                    });
+               }
+               catch (RejectedExecutionException e)
+               {
+                    // The writer releases the line once it sees the end
+                    stop_playing = true;
+                    full_chunks.offer(END_OF_STREAM);
+                    audio_input_stream.close();
+                    throw new Exception("The audio playback service has been shut down.");
+               }
+          }
+
+          /**
+           * Fills empty chunks from the stream and queues them for the
+           * writer until the stream ends or playback is stopped.
+           */
+          private void readStream()
+          {
+               try
+               {
+                    while (!stop_playing)
+                    {
+                         Chunk chunk = empty_chunks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                         if (chunk == null)
+                              continue;
+                         chunk.length = 0;
+                         int bytes_read = 0;
+                         while (chunk.length < chunk.data.length && !stop_playing)
+                         {
+                              bytes_read = audio_input_stream.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+                              if (bytes_read == -1)
+                                   break;
+                              chunk.length += bytes_read;
+                         }
+                         if (chunk.length > 0)
+                              full_chunks.put(chunk);
+                         else
+                              empty_chunks.put(chunk);
+                         if (bytes_read == -1)
+                              break;
+                    }
+               }
+               catch (Exception e)
+               {
+                    error = e;
+               }
+               finally
+               {
+                    // There is always room for the marker, as only two
+                    // chunks of audio are ever queued
+                    full_chunks.offer(END_OF_STREAM);
+                    try
+                    {
+                         audio_input_stream.close();
+                    }
+                    catch (Exception e)
+                    {
+                         // Keep any earlier error, which is what ended
+                         // playback
+                         if (error == null)
+                              error = e;
+                    }
+               }
+          }
+
+          /**
+           * Writes queued chunks to the line, starting it once it is full,
+           * and then releases the line.
+           */
+          private void writeLine()
+          {
+               try
+               {
+                    int chunks_written = 0;
+                    while (!stop_playing)
+                    {
+                         Chunk chunk = full_chunks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                         if (chunk == null)
+                              continue;
+                         if (chunk == END_OF_STREAM)
+                              break;
+
+                         // Only check for underruns once the line is running
+                         if (chunks_written >= 2 && line.available() >= line.getBufferSize())
+                              underruns++;
+                         int bytes_written = 0;
+                         while (bytes_written < chunk.length && !stop_playing)
+                              bytes_written += line.write(chunk.data, bytes_written, chunk.length - bytes_written);
+                         chunks_written++;
+                         empty_chunks.put(chunk);
+
+                         // Start once the line has been filled
+                         if (chunks_written == 2)
+                              startLine();
+                    }
+                    if (!stop_playing)
+                    {
+                         startLine();
+                         line.drain();
+                    }
+               }
+               catch (Exception e)
+               {
+                    error = e;
+               }
+               finally
+               {
+                    stop_playing = true;
+                    synchronized (this)
+                    {
+                         line_released = true;
+                    }
+                    releaseLine(line);
+                    recordPlayback(this);
+                    finished.countDown();
+               }
+          }
+
+          /**
+           * Starts the line and records the start latency, if it has not
+           * already been started.
+           */
+          private void startLine()
+          {
+               if (start_latency_nanoseconds >= 0)
+                    return;
+               line.start();
+               start_latency_nanoseconds = System.nanoTime() - request_time;
+          }
+     }
+}
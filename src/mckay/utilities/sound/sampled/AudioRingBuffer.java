@@ -0,0 +1,458 @@
+/*
+ * AudioRingBuffer.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A fixed-capacity ring buffer of audio bytes passed from a single producer
+ * thread, such as a thread capturing audio, to a single consumer thread,
+ * such as a thread analyzing it as it arrives. Memory use is bounded by the
+ * capacity, however long the stream.
+ *
+ * <p>The buffer is lock-free: the producer and the consumer each advance
+ * their own position, and neither ever waits for the other to release a
+ * lock. The producer never blocks. If the consumer falls so far behind that
+ * a block being written does not fit, the part that does not fit is
+ * discarded and counted as an overrun, so that the producer can keep up
+ * with its source. The consumer may read whatever is available without
+ * blocking, or may block until a whole block is available.
+ *
+ * <p>Capacities are whole numbers of frames, and as long as the producer
+ * writes and the consumer reads whole frames, frames are never split.
+ * Discarded bytes are likewise whole frames if the producer writes whole
+ * frames.
+ *
+ * <p>Exactly one thread may write to and close a buffer, and exactly one
+ * thread may read from it. Status methods may be called from any thread.
+ *
+ * @author Cory McKay
+ */
+public class AudioRingBuffer
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The longest time that a blocked consumer sleeps before checking the
+      * buffer again, in case a wake-up was missed.
+      */
+     private static final long MAXIMUM_PARK_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(10);
+
+
+     /**
+      * The bytes held.
+      */
+     private final byte[]          buffer;
+
+     /**
+      * The number of bytes in each frame.
+      */
+     private final int             frame_size;
+
+     /**
+      * The total number of bytes written so far. Only changed by the
+      * producer.
+      */
+     private volatile long         write_position;
+
+     /**
+      * The total number of bytes read so far. Only changed by the consumer.
+      */
+     private volatile long         read_position;
+
+     /**
+      * The total number of bytes discarded because they did not fit. Only
+      * changed by the producer.
+      */
+     private volatile long         overrun_bytes;
+
+     /**
+      * The number of writes that were not stored in full. Only changed by the
+      * producer.
+      */
+     private volatile long         overrun_count;
+
+     /**
+      * Whether the producer has finished writing.
+      */
+     private volatile boolean      closed;
+
+     /**
+      * The consumer thread if it is blocked waiting for bytes, or null if it
+      * is not.
+      */
+     private volatile Thread       waiting_consumer;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Creates an empty buffer that holds the given number of frames.
+      *
+      * @param capacity_in_frames  The number of frames that the buffer can
+      *                            hold. Must be at least 1.
+      * @param frame_size          The number of bytes in each frame. Must be
+      *                            at least 1.
+      * @throws Exception          Throws an informative exception if the
+      *                            capacity or frame size is invalid.
+      */
+     public AudioRingBuffer(int capacity_in_frames, int frame_size)
+          throws Exception
+     {
+          if (capacity_in_frames < 1)
+               throw new Exception( "Capacity of " + capacity_in_frames + " frames specified.\n" +
+                    "This value must be above 0." );
+          if (frame_size < 1)
+               throw new Exception( "Frame size of " + frame_size + " bytes specified.\n" +
+                    "This value must be above 0." );
+          if ((long) capacity_in_frames * frame_size > Integer.MAX_VALUE - 8)
+               throw new Exception( "Capacity of " + capacity_in_frames + " frames of " + frame_size + " bytes specified.\n" +
+                    "At most " + (Integer.MAX_VALUE - 8) + " bytes can be held." );
+          this.frame_size = frame_size;
+          buffer = new byte[capacity_in_frames * frame_size];
+          write_position = 0;
+          read_position = 0;
+          overrun_bytes = 0;
+          overrun_count = 0;
+          closed = false;
+          waiting_consumer = null;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns the number of bytes that the buffer can hold.
+      *
+      * @return    The capacity in bytes.
+      */
+     public int getCapacity()
+     {
+          return buffer.length;
+     }
+
+
+     /**
+      * Returns the number of bytes in each frame.
+      *
+      * @return    The frame size in bytes.
+      */
+     public int getFrameSize()
+     {
+          return frame_size;
+     }
+
+
+     /**
+      * Returns the number of bytes written but not yet read.
+      *
+      * @return    The number of bytes available to the consumer.
+      */
+     public int getAvailableBytes()
+     {
+          long read = read_position;
+          return (int) (write_position - read);
+     }
+
+
+     /**
+      * Returns the total number of bytes stored by the producer so far, not
+      * including discarded bytes.
+      *
+      * @return    The number of bytes stored.
+      */
+     public long getTotalBytesWritten()
+     {
+          return write_position;
+     }
+
+
+     /**
+      * Returns the total number of bytes read by the consumer so far.
+      *
+      * @return    The number of bytes read.
+      */
+     public long getTotalBytesRead()
+     {
+          return read_position;
+     }
+
+
+     /**
+      * Returns the total number of bytes discarded because the consumer had
+      * fallen too far behind for them to fit.
+      *
+      * @return    The number of bytes discarded.
+      */
+     public long getOverrunBytes()
+     {
+          return overrun_bytes;
+     }
+
+
+     /**
+      * Returns the number of writes of which some or all bytes were
+      * discarded.
+      *
+      * @return    The number of overruns.
+      */
+     public long getOverrunCount()
+     {
+          return overrun_count;
+     }
+
+
+     /**
+      * Returns whether the producer has finished writing. Bytes written
+      * before the buffer was closed may still be available to read.
+      *
+      * @return    True if the buffer is closed.
+      */
+     public boolean isClosed()
+     {
+          return closed;
+     }
+
+
+     /**
+      * Stores as many of the given bytes as fit, discarding the rest and
+      * counting them as an overrun. Never blocks. May only be called by the
+      * producer.
+      *
+      * @param source    The bytes to store.
+      * @param offset    The index of the first byte to store.
+      * @param length    The number of bytes to store. Should be a whole
+      *                  number of frames.
+      * @return          The number of bytes stored.
+      * @throws IllegalStateException Thrown if the buffer has been closed.
+      */
+     public int write(byte[] source, int offset, int length)
+     {
+          if (closed)
+               throw new IllegalStateException("Bytes cannot be written to a closed ring buffer.");
+
+          long write = write_position;
+          int free_bytes = buffer.length - (int) (write - read_position);
+          int bytes_to_write = Math.min(length, free_bytes - (free_bytes % frame_size));
+          if (bytes_to_write < length)
+          {
+               overrun_bytes += length - bytes_to_write;
+               overrun_count++;
+          }
+          if (bytes_to_write > 0)
+          {
+               copy(source, offset, buffer, (int) (write % buffer.length), bytes_to_write, true);
+               write_position = write + bytes_to_write;
+          }
+          wakeConsumer();
+          return bytes_to_write;
+     }
+
+
+     /**
+      * Marks the end of the stream, so that blocked reads return once the
+      * remaining bytes have been read. May only be called by the producer.
+      */
+     public void close()
+     {
+          closed = true;
+          wakeConsumer();
+     }
+
+
+     /**
+      * Reads up to the given number of bytes, rounded down to whole frames,
+      * without blocking. May only be called by the consumer.
+      *
+      * @param destination    The array to store the bytes in.
+      * @param offset         The index at which to store the first byte.
+      * @param max_length     The maximum number of bytes to read.
+      * @return               The number of bytes read, which may be 0, or -1
+      *                       if the buffer is closed and empty.
+      */
+     public int read(byte[] destination, int offset, int max_length)
+     {
+          long read = read_position;
+          boolean was_closed = closed;
+          int available = (int) (write_position - read);
+          if (available == 0)
+               return was_closed ? -1 : 0;
+          int bytes_to_read = Math.min(available, max_length - (max_length % frame_size));
+          if (bytes_to_read <= 0)
+               return 0;
+          copy(buffer, (int) (read % buffer.length), destination, offset, bytes_to_read, false);
+          read_position = read + bytes_to_read;
+          return bytes_to_read;
+     }
+
+
+     /**
+      * Reads exactly the given number of bytes, blocking until they are
+      * available or the buffer is closed. May only be called by the
+      * consumer.
+      *
+      * @param destination    The array to store the bytes in.
+      * @param offset         The index at which to store the first byte.
+      * @param length         The number of bytes to read. Must be no more
+      *                       than the capacity of the buffer, and should be
+      *                       a whole number of frames.
+      * @return               The number of bytes read. Is less than
+      *                       <i>length</i> only if the buffer was closed,
+      *                       and is -1 if it was closed and empty.
+      * @throws InterruptedException Thrown if the consumer thread is
+      *                       interrupted while waiting. No bytes are read in
+      *                       this case.
+      */
+     public int readBlock(byte[] destination, int offset, int length)
+          throws InterruptedException
+     {
+          if (length > buffer.length)
+               throw new IllegalArgumentException( "Block of " + length + " bytes requested.\n" +
+                    "The ring buffer only holds " + buffer.length + " bytes." );
+          if (!awaitBytes(length, Long.MAX_VALUE))
+               return -1;
+          int available = getAvailableBytes();
+          return read(destination, offset, Math.min(length, available));
+     }
+
+
+     /**
+      * Reads exactly the given number of bytes, blocking until they are
+      * available, the buffer is closed or the given time has passed. May only
+      * be called by the consumer.
+      *
+      * @param destination    The array to store the bytes in.
+      * @param offset         The index at which to store the first byte.
+      * @param length         The number of bytes to read. Must be no more
+      *                       than the capacity of the buffer, and should be
+      *                       a whole number of frames.
+      * @param timeout        The longest time to wait.
+      * @param unit           The unit of <i>timeout</i>.
+      * @return               The number of bytes read. Is 0 if the time
+      *                       passed first, less than <i>length</i> only if the
+      *                       buffer was closed, and -1 if it was closed and
+      *                       empty.
+      * @throws InterruptedException Thrown if the consumer thread is
+      *                       interrupted while waiting. No bytes are read in
+      *                       this case.
+      */
+     public int readBlock( byte[] destination,
+          int offset,
+          int length,
+          long timeout,
+          TimeUnit unit )
+          throws InterruptedException
+     {
+          if (length > buffer.length)
+               throw new IllegalArgumentException( "Block of " + length + " bytes requested.\n" +
+                    "The ring buffer only holds " + buffer.length + " bytes." );
+          long deadline = System.nanoTime() + unit.toNanos(timeout);
+          if (!awaitBytes(length, deadline))
+               return -1;
+          int available = getAvailableBytes();
+          if (available < length && !closed)
+               return 0;
+          return read(destination, offset, Math.min(length, available));
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Waits until the given number of bytes are available, the buffer is
+      * closed or the given deadline passes.
+      *
+      * @param length         The number of bytes to wait for.
+      * @param deadline       The value of <code>System.nanoTime</code> at
+      *                       which to stop waiting, or Long.MAX_VALUE to wait
+      *                       indefinitely.
+      * @return               False if the buffer is closed and empty, true
+      *                       otherwise.
+      * @throws InterruptedException Thrown if the thread is interrupted.
+      */
+     private boolean awaitBytes(int length, long deadline)
+          throws InterruptedException
+     {
+          try
+          {
+               while (getAvailableBytes() < length && !closed)
+               {
+                    waiting_consumer = Thread.currentThread();
+
+                    // Check again, in case bytes arrived before the producer
+                    // could see that the consumer was waiting
+                    if (getAvailableBytes() >= length || closed)
+                         break;
+                    long park_time = MAXIMUM_PARK_NANOSECONDS;
+                    if (deadline != Long.MAX_VALUE)
+                    {
+                         long remaining = deadline - System.nanoTime();
+                         if (remaining <= 0)
+                              return true;
+                         park_time = Math.min(park_time, remaining);
+                    }
+                    LockSupport.parkNanos(this, park_time);
+                    if (Thread.interrupted())
+                         throw new InterruptedException();
+               }
+          }
+          finally
+          {
+               waiting_consumer = null;
+          }
+          return !(closed && getAvailableBytes() == 0);
+     }
+
+
+     /**
+      * Wakes the consumer if it is blocked.
+      */
+     private void wakeConsumer()
+     {
+          Thread consumer = waiting_consumer;
+          if (consumer != null)
+               LockSupport.unpark(consumer);
+     }
+
+
+     /**
+      * Copies bytes to or from the ring, wrapping around its end.
+      *
+      * @param source              The array to copy from.
+      * @param source_offset       The index of the first byte to copy.
+      * @param destination         The array to copy to.
+      * @param destination_offset  The index to copy the first byte to.
+      * @param length              The number of bytes to copy.
+      * @param into_ring           True if <i>destination</i> is the ring,
+      *                            false if <i>source</i> is.
+      */
+     private void copy( byte[] source,
+          int source_offset,
+          byte[] destination,
+          int destination_offset,
+          int length,
+          boolean into_ring )
+     {
+          int ring_offset = into_ring ? destination_offset : source_offset;
+          int first_part = Math.min(length, buffer.length - ring_offset);
+          System.arraycopy(source, source_offset, destination, destination_offset, first_part);
+          if (first_part < length)
+          {
+               if (into_ring)
+                    System.arraycopy(source, source_offset + first_part, destination, 0, length - first_part);
+               else
+                    System.arraycopy(source, 0, destination, destination_offset + first_part, length - first_part);
+          }
+     }
+}
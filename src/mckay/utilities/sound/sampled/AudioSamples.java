@@ -38,6 +38,25 @@ import javax.sound.sampled.*;
  * getting formatted information about them. The samples can also be changed
  * externally.
  *
+ * <p>By default all samples are decoded at instantiation and stored in memory.
+ * Alternatively, the samples of uncompressed WAV or AIFF files may be left on
+ * disk and memory-mapped (see the <code>STORAGE_MEMORY_MAPPED</code> storage
+ * mode), in which case only the sample ranges requested through the segment
+ * and window access methods are decoded. This allows recordings much larger
+ * than the available heap to be analyzed a window at a time. Samples may also
+ * be stored in memory with single rather than double precision (see the
+ * <code>STORAGE_FLOAT</code> storage mode), which halves the memory needed
+ * while losing nothing for audio with bit depths of 16 bits or less. All
+ * access methods return doubles regardless of the storage mode used.
+ *
+ * <p>When more than one channel is present, the samples mixed down into one
+ * channel are only calculated the first time that they are needed, and are
+ * then kept until the channel segregated samples are changed. The mixdown is
+ * calculated while holding the object's lock, so objects that are only read
+ * may be shared by several threads. Methods that change the samples, such as
+ * <code>setSamples</code> and the normalization methods, must not be called
+ * while other threads are using the object.
+ *
  * @author	Cory McKay
  */
 public class AudioSamples
@@ -45,6 +64,29 @@ public class AudioSamples
      /* FIELDS ****************************************************************/
      
      
+     /**
+      * Storage mode code indicating that all samples are decoded at
+      * instantiation and stored in memory as arrays of doubles.
+      */
+     public static final int STORAGE_DOUBLE = 0;
+     
+     
+     /**
+      * Storage mode code indicating that the samples of an uncompressed WAV or
+      * AIFF file are to be memory-mapped and decoded only when requested.
+      * Files that cannot be mapped are stored as with STORAGE_DOUBLE.
+      */
+     public static final int STORAGE_MEMORY_MAPPED = 1;
+     
+     
+     /**
+      * Storage mode code indicating that all samples are decoded at
+      * instantiation and stored in memory as arrays of floats. Samples are
+      * converted to doubles as they are accessed.
+      */
+     public static final int STORAGE_FLOAT = 2;
+     
+     
      /**
       * A unique identifier that external objects can use to identify each
       * individual object of this class. Not used internally by objects of this
@@ -56,7 +98,9 @@ public class AudioSamples
      /**
       * Audio samples, with a minimum value of -1 and a maximum value of +1. If
       * audio is multi-channel, all channels are mixed down into this one
-      * channel.
+      * channel. In this case it is null until the mixdown is first needed,
+      * and should therefore be accessed through the getMixedDownSamples
+      * method.
       */
      protected double[]					samples;
      
@@ -82,6 +126,34 @@ public class AudioSamples
 	  * parsed. Will be null if not available.
       */
 	 protected AudioFileFormat			original_audio_file_format;
+	 
+	 
+	 /**
+	  * The memory-mapped file from which samples are decoded on demand. Is null
+	  * unless the samples are memory-mapped, in which case the samples and
+	  * channel_samples fields are both null.
+	  */
+	 protected MappedAudioFile			mapped_audio_file;
+	 
+	 
+	 /**
+	  * Audio samples stored with single precision, mixed down into one
+	  * channel. Is null unless the samples are stored as floats, in which
+	  * case the samples and channel_samples fields are both null. If audio is
+	  * multi-channel, it is also null until the mixdown is first needed, and
+	  * should therefore be accessed through the getMixedDownFloatSamples
+	  * method.
+	  */
+	 protected float[]					float_samples;
+	 
+	 
+	 /**
+	  * Audio samples stored with single precision. Is null unless the samples
+	  * are stored as floats and more than one channel of audio is present.
+	  * First indice corresponds to channel and second indice corresponds to
+	  * sample number.
+	  */
+	 protected float[][]				float_channel_samples;
     
 			 
      /* CONSTRUCTORS **********************************************************/
@@ -95,7 +167,8 @@ public class AudioSamples
       * given file, it will be converted and stored using big-endian signed
       * linear PCM encoding. Sampling rate and number of channels is maintained,
       * but bit depth will be changed to 16 bits if it is not either 8 or 16
-      * bits.
+      * bits. The samples themselves are decoded directly from integer and
+      * floating point PCM, so this does not reduce their precision.
       *
       * @param	audio_file		A reference to an audio file from which
       *                                 to extract and store samples as double
@@ -119,11 +192,136 @@ public class AudioSamples
           String unique_identifier,
           boolean normalize_if_clipped )
           throws Exception
+     {
+          this(audio_file, unique_identifier, normalize_if_clipped, STORAGE_DOUBLE);
+     }
+     
+     
+     /**
+      * Store the given audio file as samples and the corresponding
+      * AudioFormat, using the given storage mode.
+      *
+      * <p>If <i>storage_mode</i> is STORAGE_MEMORY_MAPPED and the file is an
+      * uncompressed WAV or AIFF file, then the samples are not read at
+      * instantiation. The data chunk of the file is instead memory-mapped, and
+      * samples are decoded only as they are requested. The file must not be
+      * altered while this object is in use. Samples decoded from integer PCM
+      * can never be clipped, so <i>normalize_if_clipped</i> has no effect in
+      * this case. Files that cannot be memory-mapped are decoded into memory
+      * as with STORAGE_DOUBLE, and the <code>isMemoryMapped</code> method may
+      * be used to tell which was done. If <i>storage_mode</i> is STORAGE_FLOAT,
+      * then the samples are decoded at instantiation and stored as floats.
+      *
+      * <p>If a default <code>DecodedSampleCache</code> has been set, the
+      * samples are read from its entry for the file rather than being decoded
+      * again whenever the file has not changed since the entry was stored. A
+      * new entry is stored if there is none. This also allows files that are
+      * not uncompressed WAV or AIFF files, such as MP3 files, to be
+      * memory-mapped with STORAGE_MEMORY_MAPPED.
+      *
+      * <p><b>IMPORTANT:</b> Note that, regardless of the AudioFormat in the
+      * given file, the AudioFormat stored with the samples will use big-endian
+      * signed linear PCM encoding. Sampling rate and number of channels is
+      * maintained, but bit depth will be changed to 16 bits if it is not
+      * either 8 or 16 bits. The samples themselves are decoded directly from
+      * integer and floating point PCM, so this does not reduce their
+      * precision.
+      *
+      * @param	audio_file		A reference to an audio file from which
+      *                                 to extract samples.
+      * @param	unique_identifier	The string that will be used by external
+      *					objects to uniquely identify the
+      *                                 instantiated AudioSamples object.
+      * @param	normalize_if_clipped    If set to true, then normalizes audio so
+      *                                 the absolute value of the highest
+      *                                 amplitude sample is 1. Does this if and
+      *                                 only if one or more of the samples is
+      *                                 outside the allowable range of sample
+      *                                 values (-1 to 1).
+      * @param	storage_mode		How the samples are to be stored. Must
+      *                                 be one of the STORAGE_ constants of
+      *                                 this class.
+      * @throws	Exception		Throws an informative exception if the
+      *                                 samples cannot be extracted from the
+      *                                 file or if an unknown storage mode is
+      *                                 specified.
+      */
+     public AudioSamples( File audio_file,
+          String unique_identifier,
+          boolean normalize_if_clipped,
+          int storage_mode )
+          throws Exception
      {
           if ( !audio_file.exists() )
                throw new Exception("File " + audio_file.getName() + " does not exist.");
           if ( audio_file.isDirectory() )
                throw new Exception("File " + audio_file.getName() + " is a directory.");
+          if ( storage_mode != STORAGE_DOUBLE &&
+               storage_mode != STORAGE_MEMORY_MAPPED &&
+               storage_mode != STORAGE_FLOAT )
+               throw new Exception("Unknown storage mode " + storage_mode + " specified.");
+          
+          unique_ID = unique_identifier;
+          
+          // Find the previously decoded samples of the file if they are cached
+          MappedAudioFile cached_samples = null;
+          DecodedSampleCache cache = DecodedSampleCache.getDefaultCache();
+          if (cache != null)
+          {
+               try
+               {
+                    cached_samples = cache.getSamples(audio_file);
+               }
+               catch (Exception e)
+               {
+                    // Decode the file without the cache. The error is
+                    // counted by the cache and may be retrieved with its
+                    // getErrorCount and getLastError methods
+               }
+          }
+          
+          // Map the file if requested and possible
+          if (storage_mode == STORAGE_MEMORY_MAPPED)
+          {
+               MappedAudioFile mapped_file = cached_samples;
+               if (mapped_file == null)
+               {
+                    try
+                    {
+                         mapped_file = new MappedAudioFile(audio_file);
+                    }
+                    catch (Exception e)
+                    {
+                         // Files that are not uncompressed WAVE or AIFF
+                         // files are decoded into memory instead, as
+                         // reported by isMemoryMapped. Files that cannot be
+                         // read at all cause the decoding below to throw
+                    }
+               }
+               if (mapped_file != null)
+               {
+                    if (mapped_file.getNumberFrames() > Integer.MAX_VALUE)
+                         throw new Exception( "File " + audio_file.getName() + " has " + mapped_file.getNumberFrames() + " samples per channel.\n" +
+                              "At most " + Integer.MAX_VALUE + " samples per channel can be accessed." );
+                    mapped_audio_file = mapped_file;
+                    samples = null;
+                    channel_samples = null;
+                    audio_format = AudioMethodsGeneral.getConvertedAudioFormat(mapped_file.getAudioFormat());
+                    original_audio_file_format = AudioSystem.getAudioFileFormat(audio_file);
+                    return;
+               }
+          }
+          
+          // Copy cached samples into memory without decoding the file
+          if (cached_samples != null)
+          {
+               storeSamples(cached_samples, storage_mode == STORAGE_FLOAT);
+               audio_format = AudioMethodsGeneral.getConvertedAudioFormat(cached_samples.getAudioFormat());
+               original_audio_file_format = AudioSystem.getAudioFileFormat(audio_file);
+               if (normalize_if_clipped)
+                    normalizeIfClipped();
+               return;
+          }
           
           AudioInputStream audio_input_stream = null;
           
@@ -140,19 +338,12 @@ public class AudioSamples
                throw new Exception("File " + audio_file.getName() + " is not readable.");
           }
           
-          AudioInputStream converted_audio = AudioMethodsGeneral.getConvertedAudioStream(audio_input_stream);
-          
-          channel_samples = AudioMethodsGeneral.extractSampleValues(converted_audio);
+          AudioInputStream converted_audio = AudioMethodsGeneral.getDecodableAudioStream(audio_input_stream);
           
-          samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(channel_samples);
+          storeSamples(converted_audio, storage_mode == STORAGE_FLOAT);
           
-          if (channel_samples.length == 1)
-               channel_samples = null;
+          audio_format = AudioMethodsGeneral.getConvertedAudioFormat(converted_audio.getFormat());
           
-          audio_format = converted_audio.getFormat();
-          
-          unique_ID = unique_identifier;
-		  
 		  original_audio_file_format = AudioSystem.getAudioFileFormat(audio_file);
           
           if (normalize_if_clipped)
@@ -169,7 +360,9 @@ public class AudioSamples
       * <p><b>IMPORTANT:</b> Note that the AudioFormat in the AudioInputStream
       * will be converted and stored as big-endian signed linear PCM encoding
       * with. Sampling rate and number of channels is maintained, but bit depth
-      * will be changed to 16 bits if it is not either 8 or 16 bits.
+      * will be changed to 16 bits if it is not either 8 or 16 bits. The
+      * samples themselves are decoded directly from integer and floating point
+      * PCM, so this does not reduce their precision.
       *
       * @param	audio_input_stream	An AudioInputStream from which to
       *                                 extract and store samples as double
@@ -193,22 +386,60 @@ public class AudioSamples
           String unique_identifier,
           boolean normalize_if_clipped )
           throws Exception
+     {
+          this(audio_input_stream, unique_identifier, normalize_if_clipped, STORAGE_DOUBLE);
+     }
+     
+     
+     /**
+      * Store the given AudioInputStream as samples and the corresponding
+      * AudioFormat, using the given storage mode.
+      *
+      * <p><b>IMPORTANT:</b> Note that the AudioFormat in the AudioInputStream
+      * will be converted and stored as big-endian signed linear PCM encoding
+      * with. Sampling rate and number of channels is maintained, but bit depth
+      * will be changed to 16 bits if it is not either 8 or 16 bits. The
+      * samples themselves are decoded directly from integer and floating point
+      * PCM, so this does not reduce their precision.
+      *
+      * @param	audio_input_stream	An AudioInputStream from which to
+      *                                 extract and store samples.
+      * @param	unique_identifier	The string that will be used by external
+      *					objects to uniquely identify the
+      *                                 instantiated AudioSamples object.
+      * @param	normalize_if_clipped    If set to true, then normalizes audio so
+      *                                 the absolute value of the highest
+      *                                 amplitude sample is 1. Does this if and
+      *                                 only if one or more of the samples is
+      *                                 outside the allowable range of sample
+      *                                 values (-1 to 1).
+      * @param	storage_mode		How the samples are to be stored. Must
+      *                                 be either STORAGE_DOUBLE or
+      *                                 STORAGE_FLOAT, as streams cannot be
+      *                                 memory-mapped.
+      * @throws	Exception		Throws an informative exception if the
+      *                                 samples cannot be extracted from the
+      *                                 AudioInputStream or if an invalid
+      *                                 storage mode is specified.
+      */
+     public AudioSamples( AudioInputStream audio_input_stream,
+          String unique_identifier,
+          boolean normalize_if_clipped,
+          int storage_mode )
+          throws Exception
      {
           if (audio_input_stream == null)
                throw new Exception("Given AudioInputStream is empty.");
+          if (storage_mode != STORAGE_DOUBLE && storage_mode != STORAGE_FLOAT)
+               throw new Exception("Storage mode " + storage_mode + " cannot be used with an AudioInputStream.");
           
           unique_ID = unique_identifier;
           
-          AudioInputStream converted_audio = AudioMethodsGeneral.getConvertedAudioStream(audio_input_stream);
-          
-          channel_samples = AudioMethodsGeneral.extractSampleValues(converted_audio);
+          AudioInputStream converted_audio = AudioMethodsGeneral.getDecodableAudioStream(audio_input_stream);
           
-          samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(channel_samples);
+          storeSamples(converted_audio, storage_mode == STORAGE_FLOAT);
           
-          if (channel_samples.length == 1)
-               channel_samples = null;
-          
-          audio_format = converted_audio.getFormat();
+          audio_format = AudioMethodsGeneral.getConvertedAudioFormat(converted_audio.getFormat());
           
 		  original_audio_file_format = null;
 		  
@@ -254,6 +485,53 @@ public class AudioSamples
           String unique_identifier,
           boolean normalize_if_clipped )
           throws Exception
+     {
+          this(audio_samples, audio_format, unique_identifier, normalize_if_clipped, true);
+     }
+     
+     
+     /**
+      * Store the given samples with the associated AudioFormat, optionally
+      * taking ownership of the given arrays rather than copying them. Not
+      * copying avoids a full size allocation when the caller has no further
+      * use for the arrays.
+      *
+      * <p><b>IMPORTANT:</b> Note that, regardless of the given AudioFormat, it
+      * will be converted and samples will be stored as big-endian signed linear
+      * PCM encoding. Sampling rate and number of channels is maintained, but
+      * bit depth will be changed to 16 bits if it is not either 8 or 16 bits.
+      *
+      * @param	audio_samples		Audio samles to store, with a minimum
+      *                                 value of -1 and a maximum value of +1.
+      *                                 The first indice corresponds to the
+      *                                 channel and the second indice
+      *                                 corresponds to the sample number.
+      * @param	audio_format		The AudioFormat to use for interpereting
+      *                                 the given samples.
+      * @param	unique_identifier	The string that will be used by external
+      *					objects to uniquely identify the
+      *                                 instantiated AudioSamples object.
+      * @param	normalize_if_clipped    If set to true, then normalizes audio so
+      *                                 the absolute value of the highest
+      *                                 amplitude sample is 1. Does this if and
+      *                                 only if one or more of the samples is
+      *                                 outside the allowable range of sample
+      *                                 values (-1 to 1).
+      * @param	copy_samples		If set to true, then the samples are
+      *                                 copied before being stored.
+      *                                 If set to false, then the given arrays
+      *                                 are stored directly, and must not be
+      *                                 modified by the caller afterwards.
+      * @throws	Exception		Throws an informative exception if the
+      *                                 samples cannot be extracted from the
+      *                                 audio_samples.
+      */
+     public AudioSamples( double[][] audio_samples,
+          AudioFormat audio_format,
+          String unique_identifier,
+          boolean normalize_if_clipped,
+          boolean copy_samples )
+          throws Exception
      {
           if (audio_samples == null)
                throw new Exception("Given audio samples array is empty.");
@@ -274,12 +552,12 @@ public class AudioSamples
           
           unique_ID = unique_identifier;
           
-          samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(audio_samples);
-          
           if (audio_samples.length == 1)
-               channel_samples = null;
-          else
+               samples = copy_samples ? audio_samples[0].clone() : audio_samples[0];
+          else if (copy_samples)
                channel_samples = AudioMethodsDSP.getCopyOfSamples(audio_samples);
+          else
+               channel_samples = audio_samples;
           
           this.audio_format = AudioMethodsGeneral.getConvertedAudioFormat(audio_format);
           
@@ -321,6 +599,47 @@ public class AudioSamples
           String unique_identifier,
           boolean normalize_if_clipped )
           throws Exception
+     {
+          this(audio_samples, sampling_rate, unique_identifier, normalize_if_clipped, true);
+     }
+     
+     
+     /**
+      * Store the given samples with the associated sampling rate, optionally
+      * taking ownership of the given arrays rather than copying them. A
+      * default AudioFormat is generated.
+      *
+      * @param	audio_samples		Audio samles to store, with a minimum
+      *                                 value of -1 and a maximum value of +1.
+      *                                 The first indice corresponds to the
+      *                                 channel and the second indice
+      *                                 corresponds to the sample number.
+      * @param	sampling_rate		The sampling rate to associate with the
+      *                                 given samples.
+      * @param	unique_identifier	The string that will be used by external
+      *                                 objects to uniquely identify the
+      *                                 instantiated AudioSamples object.
+      * @param	normalize_if_clipped    If set to true, then normalizes audio so
+      *                                 the absolute value of the highest
+      *                                 amplitude sample is 1. Does this if and
+      *                                 only if one or more of the samples is
+      *                                 outside the allowable range of sample
+      *                                 values (-1 to 1).
+      * @param	copy_samples		If set to true, then the samples are
+      *                                 copied before being stored.
+      *                                 If set to false, then the given arrays
+      *                                 are stored directly, and must not be
+      *                                 modified by the caller afterwards.
+      * @throws	Exception		Throws an informative exception if the
+      *                                 samples cannot be extracted from the
+      *                                 audio_samples.
+      */
+     public AudioSamples( double[][] audio_samples,
+          float sampling_rate,
+          String unique_identifier,
+          boolean normalize_if_clipped,
+          boolean copy_samples )
+          throws Exception
      {
           if (audio_samples == null)
                throw new Exception("Given audio samples array is empty.");
@@ -335,12 +654,12 @@ public class AudioSamples
           
           unique_ID = unique_identifier;
           
-          samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(audio_samples);
-          
           if (audio_samples.length == 1)
-               channel_samples = null;
-          else
+               samples = copy_samples ? audio_samples[0].clone() : audio_samples[0];
+          else if (copy_samples)
                channel_samples = AudioMethodsDSP.getCopyOfSamples(audio_samples);
+          else
+               channel_samples = audio_samples;
           
           audio_format = getDefaultAudioFormat(sampling_rate);
 
@@ -351,6 +670,33 @@ public class AudioSamples
      }
      
      
+     /**
+      * Stores the given single precision samples directly, without copying
+      * them. Used to copy objects whose samples are stored as floats.
+      *
+      * @param	float_channel_samples	The samples to store. The first indice
+      *                                 corresponds to the channel and the
+      *                                 second indice corresponds to the
+      *                                 sample number.
+      * @param	audio_format		The AudioFormat of the samples.
+      * @param	unique_identifier	The string that will be used by external
+      *                                 objects to uniquely identify the
+      *                                 instantiated AudioSamples object.
+      */
+     private AudioSamples( float[][] float_channel_samples,
+          AudioFormat audio_format,
+          String unique_identifier )
+     {
+          unique_ID = unique_identifier;
+          if (float_channel_samples.length == 1)
+               float_samples = float_channel_samples[0];
+          else
+               this.float_channel_samples = float_channel_samples;
+          this.audio_format = audio_format;
+          original_audio_file_format = null;
+     }
+     
+     
      /* PUBLIC METHODS ********************************************************/
      
      
@@ -359,6 +705,10 @@ public class AudioSamples
       * references to the original fields, so no changes made to the copies
       * will change the original
       *
+      * <p>Samples stored as floats are copied as floats. Memory-mapped samples
+      * are decoded into memory and stored as doubles, so that the copy does
+      * not depend on the file.
+      *
       * @return               A copy of this object.
       * @throws	Exception     Throws an informative exception if the copy cannot
       *                       be made.
@@ -370,8 +720,36 @@ public class AudioSamples
           if (new_unique_ID != null)
                new_unique_ID = new String(unique_ID);
           
+          AudioFormat new_audio_format = null;
+          if (audio_format != null)
+          {
+               new_audio_format = new AudioFormat( audio_format.getEncoding(),
+                    audio_format.getSampleRate(),
+                    audio_format.getSampleSizeInBits(),
+                    audio_format.getChannels(),
+                    audio_format.getFrameSize(),
+                    audio_format.getFrameRate(),
+                    audio_format.isBigEndian() );
+          }
+          
+          if (getStorageMode() == STORAGE_FLOAT)
+          {
+               float[][] new_float_samples;
+               if (float_channel_samples == null)
+                    new_float_samples = new float[][] {float_samples.clone()};
+               else
+               {
+                    new_float_samples = new float[float_channel_samples.length][];
+                    for (int chan = 0; chan < new_float_samples.length; chan++)
+                         new_float_samples[chan] = float_channel_samples[chan].clone();
+               }
+               return new AudioSamples(new_float_samples, new_audio_format, new_unique_ID);
+          }
+          
           double[][] new_channel_samples = null;
-          if (channel_samples != null)
+          if (getStorageMode() == STORAGE_MEMORY_MAPPED)
+               new_channel_samples = getSamplesChannelSegregated();
+          else if (channel_samples != null)
           {
                new_channel_samples = new double[channel_samples.length][];
                for (int i = 0; i < new_channel_samples.length; i++)
@@ -388,19 +766,7 @@ public class AudioSamples
                     new_channel_samples[0][i] = samples[i];
           }
           
-          AudioFormat new_audio_format = null;
-          if (audio_format != null)
-          {
-               new_audio_format = new AudioFormat( audio_format.getEncoding(),
-                    audio_format.getSampleRate(),
-                    audio_format.getSampleSizeInBits(),
-                    audio_format.getChannels(),
-                    audio_format.getFrameSize(),
-                    audio_format.getFrameRate(),
-                    audio_format.isBigEndian() );
-          }
-          
-          return new AudioSamples(new_channel_samples, new_audio_format, new_unique_ID, false);
+          return new AudioSamples(new_channel_samples, new_audio_format, new_unique_ID, false, false);
      }
      
      
@@ -494,6 +860,14 @@ public class AudioSamples
       */
      public int getNumberSamplesPerChannel()
      {
+          if (mapped_audio_file != null)
+               return (int) mapped_audio_file.getNumberFrames();
+          if (float_channel_samples != null)
+               return float_channel_samples[0].length;
+          if (float_samples != null)
+               return float_samples.length;
+          if (channel_samples != null)
+               return channel_samples[0].length;
           return samples.length;
      }
      
@@ -505,7 +879,7 @@ public class AudioSamples
       */
      public double getDuration()
      {
-          return convertSampleIndexToTime(samples.length - 1);
+          return convertSampleIndexToTime(getNumberSamplesPerChannel() - 1);
      }
      
      
@@ -516,6 +890,12 @@ public class AudioSamples
       */
      public int getNumberChannels()
      {
+          if (mapped_audio_file != null)
+               return mapped_audio_file.getNumberChannels();
+          if (float_channel_samples != null)
+               return float_channel_samples.length;
+          if (float_samples != null)
+               return 1;
           if (channel_samples == null)
                return 1;
           else
@@ -523,17 +903,83 @@ public class AudioSamples
      }
      
      
+     /**
+      * Returns whether the samples are memory-mapped from an audio file and
+      * decoded on demand, rather than stored in memory.
+      *
+      * @return	True if the samples are memory-mapped.
+      */
+     public boolean isMemoryMapped()
+     {
+          return mapped_audio_file != null;
+     }
+     
+     
+     /**
+      * Returns the number of bytes of heap memory occupied by the arrays that
+      * currently hold the samples, including the samples mixed down into one
+      * channel if they have been calculated. Memory-mapped samples occupy no
+      * heap memory.
+      *
+      * @return	The number of bytes of stored samples.
+      */
+     public long getStoredSampleBytes()
+     {
+          long total_bytes = 0;
+          if (samples != null)
+               total_bytes += 8L * samples.length;
+          if (channel_samples != null)
+               for (int chan = 0; chan < channel_samples.length; chan++)
+                    total_bytes += 8L * channel_samples[chan].length;
+          if (float_samples != null)
+               total_bytes += 4L * float_samples.length;
+          if (float_channel_samples != null)
+               for (int chan = 0; chan < float_channel_samples.length; chan++)
+                    total_bytes += 4L * float_channel_samples[chan].length;
+          return total_bytes;
+     }
+     
+     
+     /**
+      * Returns how the samples are currently stored. Note that this may differ
+      * from the storage mode requested at instantiation, as files that cannot
+      * be memory-mapped are stored in memory, and memory-mapped samples are
+      * loaded into memory when they are modified.
+      *
+      * @return	One of the STORAGE_ constants of this class.
+      */
+     public int getStorageMode()
+     {
+          if (mapped_audio_file != null)
+               return STORAGE_MEMORY_MAPPED;
+          if (float_samples != null || float_channel_samples != null)
+               return STORAGE_FLOAT;
+          return STORAGE_DOUBLE;
+     }
+     
+     
      /**
       * Returns the stored audio samples. If the audio data originally consisted
       * of multiple channels, then the returned samples represent the audio
       * after mixing down into a single channel.
       *
+      * <p><b>WARNING:</b> If the samples are memory-mapped or stored as
+      * floats, then every call to this method decodes the entire recording
+      * into a new array. The segment and window access methods should be used
+      * instead for large recordings.
+      *
       * @return     The audio samples stored in this object. These have a
       *             minimum value of -1 and a maximum value of +1.
       */
      public double[] getSamplesMixedDown()
      {
-          return samples;
+          if (getStorageMode() != STORAGE_DOUBLE)
+          {
+               double[] decoded_samples = new double[getNumberSamplesPerChannel()];
+               copySamplesMixedDown(0, decoded_samples, 0, decoded_samples.length);
+               return decoded_samples;
+          }
+          return getMixedDownSamples();
      }
      
      
@@ -564,9 +1010,9 @@ public class AudioSamples
           if (start_sample < 0)
                throw new Exception( "Requested audio starting at sample " + start_sample +
                     "\nStart sample indice must be 0 or greater." );
-          if (end_sample >= samples.length)
+          if (end_sample >= getNumberSamplesPerChannel())
                throw new Exception( "Requested audio ending at sample " + end_sample +
-                    "\nA total of " + samples.length + "samples are present." +
+                    "\nA total of " + getNumberSamplesPerChannel() + "samples are present." +
                     "\nRequested ending sample indice must be less than this." );
           if (start_sample >= end_sample)
                throw new Exception( "Requested audio starting at sample " + start_sample +
@@ -574,10 +1020,9 @@ public class AudioSamples
                     "Requested start sample indice must be less than requested" +
                     "\nend sample indice." );
           
-          int number_samples = end_sample - start_sample;
+          int number_samples = end_sample - start_sample + 1;
           double[] sample_segment = new double[number_samples];
-          for (int samp = start_sample; samp <= end_sample; samp++)
-               sample_segment[samp - start_sample] = samples[samp];
+          copySamplesMixedDown(start_sample, sample_segment, 0, number_samples);
           return sample_segment;
      }
      
@@ -637,28 +1082,18 @@ public class AudioSamples
                throw new Exception( "Window size of " + window_size + " specified.\n" +
                     "This value must be above 0." );
           
-          int number_windows = samples.length / window_size;
-          if (samples.length % window_size != 0)
+          int number_samples = getNumberSamplesPerChannel();
+          int number_windows = number_samples / window_size;
+          if (number_samples % window_size != 0)
                number_windows++;
           
+          // The last window is left zero-padded past the end of the samples
           double[][] windowed_samples = new double[number_windows][window_size];
           for (int win = 0; win < number_windows; win++)
           {
-               if (win != number_windows - 1)
-               {
-                    for (int samp = 0; samp < window_size; samp++)
-                         windowed_samples[win][samp] = samples[win * window_size + samp];
-               }
-               else
-               {
-                    for (int samp = 0; samp < window_size; samp++)
-                    {
-                         if (win * window_size + samp < samples.length)
-                              windowed_samples[win][samp] = samples[win * window_size + samp];
-                         else
-                              windowed_samples[win][samp] = 0;
-                    }
-               }
+               int start_sample = win * window_size;
+               int window_length = Math.min(window_size, number_samples - start_sample);
+               copySamplesMixedDown(start_sample, windowed_samples[win], 0, window_length);
           }
           
           return windowed_samples;
@@ -718,7 +1153,7 @@ public class AudioSamples
           
           // Convert samples to 2-D array
           double[][] samples_to_convert = new double[1][];
-          samples_to_convert[0] = samples;
+          samples_to_convert[0] = getSamplesMixedDown();
           
           // Convert to an AudioInputStream
           AudioInputStream audio_input_stream
@@ -821,6 +1256,11 @@ public class AudioSamples
      /**
       * Returns the stored audio samples.
       *
+      * <p><b>WARNING:</b> If the samples are memory-mapped or stored as
+      * floats, then every call to this method decodes the entire recording
+      * into new arrays. The segment and window access methods should be used
+      * instead for large recordings.
+      *
       * @return     The audio samples stored in this object. These have a
       *             minimum value of -1 and a maximum value of +1. The first
       *             indice corresponds to the channel and the second indice 
@@ -828,6 +1268,12 @@ public class AudioSamples
       */
      public double[][] getSamplesChannelSegregated()
      {
+          if (getStorageMode() != STORAGE_DOUBLE)
+          {
+               double[][] decoded_samples = new double[getNumberChannels()][getNumberSamplesPerChannel()];
+               copySamplesChannelSegregated(0, decoded_samples, 0, getNumberSamplesPerChannel());
+               return decoded_samples;
+          }
           if (channel_samples == null)
           {
                double[][] formatted_samples = new double[1][];
@@ -862,9 +1308,9 @@ public class AudioSamples
           if (start_sample < 0)
                throw new Exception( "Requested audio starting at sample " + start_sample +
                     "\nStart sample indice must be 0 or greater." );
-          if (end_sample >= samples.length)
+          if (end_sample >= getNumberSamplesPerChannel())
                throw new Exception( "Requested audio ending at sample " + end_sample +
-                    "\nA total of " + samples.length + "samples are present." +
+                    "\nA total of " + getNumberSamplesPerChannel() + "samples are present." +
                     "\nRequested ending sample indice must be less than this." );
           if (start_sample >= end_sample)
                throw new Exception( "Requested audio starting at sample " + start_sample +
@@ -873,25 +1319,9 @@ public class AudioSamples
                     "\nend sample indice." );
           
           int number_samples = end_sample - start_sample + 1;
-          
-          // Case where only one channel of audio is present
-          if (channel_samples == null)
-          {
-               double[][] sample_segment = new double[1][number_samples];
-               for (int samp = start_sample; samp <= end_sample; samp++)
-                    sample_segment[0][samp - start_sample] = samples[samp];
-               return sample_segment;
-          }
-          
-          // Case where multiple channels of audio are present
-          else
-          {
-               double[][] sample_segment = new double[channel_samples.length][number_samples];
-               for (int chan = 0; chan < channel_samples.length; chan++)
-                    for (int samp = start_sample; samp <= end_sample; samp++)
-                         sample_segment[chan][samp - start_sample] = channel_samples[chan][samp];
-               return sample_segment;
-          }
+          double[][] sample_segment = new double[getNumberChannels()][number_samples];
+          copySamplesChannelSegregated(start_sample, sample_segment, 0, number_samples);
+          return sample_segment;
      }
      
      
@@ -943,7 +1373,8 @@ public class AudioSamples
      public double[][][] getSampleWindowsChannelSegregated(int window_size)
      throws Exception
      {
-          if (channel_samples == null)
+          int number_channels = getNumberChannels();
+          if (number_channels == 1)
           {
                double[][][] windowed_samples = new double[1][][];
                windowed_samples[0] = getSampleWindowsMixedDown(window_size);
@@ -954,30 +1385,22 @@ public class AudioSamples
                throw new Exception( "Window size of " + window_size + " specified.\n" +
                     "This value must be above 0." );
           
-          int number_windows = samples.length / window_size;
-          if (samples.length % window_size != 0)
+          int number_samples = getNumberSamplesPerChannel();
+          int number_windows = number_samples / window_size;
+          if (number_samples % window_size != 0)
                number_windows++;
           
-          double[][][] windowed_samples = new double[channel_samples.length][number_windows][window_size];
-          for (int chan = 0; chan < channel_samples.length; chan++)
-               for (int win = 0; win < number_windows; win++)
-               {
-               if (win != number_windows - 1)
-               {
-                    for (int samp = 0; samp < window_size; samp++)
-                         windowed_samples[chan][win][samp] = channel_samples[chan][win * window_size + samp];
-               }
-               else
-               {
-                    for (int samp = 0; samp < window_size; samp++)
-                    {
-                         if (win * window_size + samp < samples.length)
-                              windowed_samples[chan][win][samp] = channel_samples[chan][win * window_size + samp];
-                         else
-                              windowed_samples[chan][win][samp] = 0;
-                    }
-               }
-               }
+          // The last window is left zero-padded past the end of the samples
+          double[][][] windowed_samples = new double[number_channels][number_windows][window_size];
+          double[][] window = new double[number_channels][];
+          for (int win = 0; win < number_windows; win++)
+          {
+               for (int chan = 0; chan < number_channels; chan++)
+                    window[chan] = windowed_samples[chan][win];
+               int start_sample = win * window_size;
+               int window_length = Math.min(window_size, number_samples - start_sample);
+               copySamplesChannelSegregated(start_sample, window, 0, window_length);
+          }
           
           return windowed_samples;
      }
@@ -1010,6 +1433,29 @@ public class AudioSamples
      }
      
      
+     /**
+      * Returns an iterator over the stored audio samples divided into windows
+      * of equal lengths, where consecutive windows start the given hop size
+      * apart. Windows overlap if the hop size is less than the window size.
+      * Unlike the getSampleWindows methods, no windows are copied unless
+      * requested, and windows may be copied into buffers that are reused for
+      * every window.
+      *
+      * @param	window_size   The length in samples of the windows that the
+      *                       samples are to divided into.
+      * @param	hop_size      The number of samples between the starts of
+      *                       consecutive windows.
+      * @return               An iterator positioned before the first window.
+      * @throws	Exception     Throws an exception if a negative or 0 window size
+      *                       or hop size is specified.
+      */
+     public SampleWindowIterator getSampleWindowIterator(int window_size, int hop_size)
+     throws Exception
+     {
+          return new SampleWindowIterator(this, window_size, hop_size);
+     }
+     
+     
      /**
       * Returns the stored audio samples in the form of an AudioInputStream.
       *
@@ -1100,6 +1546,10 @@ public class AudioSamples
       * <p><b>WARNING:</b> Will automatically overwrite given file if it already 
       * exists.
       *
+      * <p>If the samples are memory-mapped from the given file, they are saved
+      * to a temporary file in the same directory that then replaces the given
+      * file, so that the samples are not overwritten while they are read.
+      *
       * @param	save_file		The File to save the audio samples to.
       * @param	multi_channel		If this is true, then any separate 
       *                                 channels are saved on separate channels.
@@ -1137,23 +1587,44 @@ public class AudioSamples
           if (normalize_if_clipped)
                normalizeIfClipped();
           
-          // Convert samples to an AudioInputStream
-          AudioInputStream audio_input_stream = null;
-          if (multi_channel)
-               audio_input_stream = getAudioInputStreamChannelSegregated();
-          else
-               audio_input_stream = getAudioInputStreamMixedDown();
-          
           // Save as a wav file if file type not specified
           if (save_file_type == null)
                save_file_type = AudioFileFormat.Type.WAVE;
           
-          // Delete any pre-existing file
-          if (save_file.exists())
-               save_file.delete();
+          // Save directly if the samples are not mapped from the file
+          if ( !isMemoryMapped() ||
+               !mapped_audio_file.getFile().getCanonicalFile().equals(save_file.getCanonicalFile()) )
+          {
+               writeAudio(save_file, multi_channel, save_file_type);
+               return;
+          }
           
-          // Write the samples to the file
-          AudioSystem.write(audio_input_stream, save_file_type, save_file);
+          // Otherwise save to a temporary file in the same directory and move
+          // it into place, as the samples are read from the file as they are
+          // written
+          File temporary_file = File.createTempFile( "." + save_file.getName(),
+               ".tmp",
+               save_file.getCanonicalFile().getParentFile() );
+          try
+          {
+               writeAudio(temporary_file, multi_channel, save_file_type);
+               try
+               {
+                    java.nio.file.Files.move( temporary_file.toPath(),
+                         save_file.toPath(),
+                         java.nio.file.StandardCopyOption.REPLACE_EXISTING );
+               }
+               catch (IOException e)
+               {
+                    throw new Exception( "Could not replace " + save_file.getName() + " with the saved samples.\n" +
+                         "The samples are memory-mapped from it, and it may be locked.\n" +
+                         e.getMessage() );
+               }
+          }
+          finally
+          {
+               temporary_file.delete();
+          }
      }
      
      
@@ -1179,20 +1650,28 @@ public class AudioSamples
       */
      public double getMaximumAmplitude()
      {
+          SampleKernels kernels = SampleKernels.getInstance();
           double max_amplitude = 0.0;
-          if (channel_samples != null)
+          if (getStorageMode() != STORAGE_DOUBLE)
           {
-               for (int chan = 0; chan < channel_samples.length; chan++)
-                    for (int samp = 0; samp < channel_samples[chan].length; samp++)
-                         if (Math.abs(channel_samples[chan][samp]) > max_amplitude)
-                              max_amplitude = Math.abs(channel_samples[chan][samp]);
+               // Scan the mapped or single precision samples a block at a time
+               int number_samples = getNumberSamplesPerChannel();
+               double[][] block = new double[getNumberChannels()][Math.min(number_samples, AudioMethodsGeneral.STREAMING_BLOCK_SIZE)];
+               for (int start_sample = 0; start_sample < number_samples; start_sample += block[0].length)
+               {
+                    int block_length = Math.min(block[0].length, number_samples - start_sample);
+                    copySamplesChannelSegregated(start_sample, block, 0, block_length);
+                    for (int chan = 0; chan < block.length; chan++)
+                         max_amplitude = kernels.findPeak(block[chan], 0, block_length, max_amplitude);
+               }
           }
-          else
+          else if (channel_samples != null)
           {
-               for (int samp = 0; samp < samples.length; samp++)
-                    if (Math.abs(samples[samp]) > max_amplitude)
-                         max_amplitude = Math.abs(samples[samp]);
+               for (int chan = 0; chan < channel_samples.length; chan++)
+                    max_amplitude = kernels.findPeak(channel_samples[chan], 0, channel_samples[chan].length, max_amplitude);
           }
+          else
+               max_amplitude = kernels.findPeak(samples, 0, samples.length, max_amplitude);
           return max_amplitude;
      }
      
@@ -1207,7 +1686,13 @@ public class AudioSamples
       */
      public double checkMixedDownSamplesForClipping()
      {
+          // Samples decoded from integer PCM can never be clipped
           double max_difference = -1.0;
+          if (mapped_audio_file != null)
+               return max_difference;
+          if (getStorageMode() == STORAGE_FLOAT)
+               return checkForClipping(getMixedDownFloatSamples());
+          double[] samples = getMixedDownSamples();
           for (int samp = 0; samp < samples.length; samp++)
                if (Math.abs(samples[samp]) > 1.0)
                {
@@ -1231,7 +1716,12 @@ public class AudioSamples
      public double checkChannelSegregatedSamplesForClipping()
      {
           double max_difference = -1.0;
-          if (channel_samples != null)
+          if (float_channel_samples != null)
+          {
+               for (int chan = 0; chan < float_channel_samples.length; chan++)
+                    max_difference = Math.max(max_difference, checkForClipping(float_channel_samples[chan]));
+          }
+          else if (channel_samples != null)
           {
                for (int chan = 0; chan < channel_samples.length; chan++)
                     for (int samp = 0; samp < channel_samples[chan].length; samp++)
@@ -1255,7 +1745,11 @@ public class AudioSamples
       */
      public void normalizeMixedDownSamples()
      {
-          samples = AudioMethodsDSP.normalizeSamples(samples);
+          loadMappedSamplesIntoMemory();
+          if (getStorageMode() == STORAGE_FLOAT)
+               float_samples = AudioMethodsDSP.normalizeSamples(getMixedDownFloatSamples());
+          else
+               samples = AudioMethodsDSP.normalizeSamples(getMixedDownSamples());
      }
      
      
@@ -1265,8 +1759,19 @@ public class AudioSamples
       */
      public void normalizeChannelSegretatedSamples()
      {
-          if (channel_samples != null)
+          loadMappedSamplesIntoMemory();
+          
+          // The mixdown is calculated first so that it is not normalized too
+          if (float_channel_samples != null)
+          {
+               getMixedDownFloatSamples();
+               float_channel_samples = AudioMethodsDSP.normalizeSamples(float_channel_samples);
+          }
+          else if (channel_samples != null)
+          {
+               getMixedDownSamples();
                channel_samples = AudioMethodsDSP.normalizeSamples(channel_samples);
+          }
           else
                normalizeMixedDownSamples();
      }
@@ -1280,7 +1785,7 @@ public class AudioSamples
      public void normalize()
      {
           normalizeChannelSegretatedSamples();
-          if (channel_samples != null)
+          if (getNumberChannels() != 1)
                normalizeMixedDownSamples();
      }
      
@@ -1289,7 +1794,9 @@ public class AudioSamples
       * Updates the samples stored in an object of this class. The given new
       * samples must have the same number of channels as the original data.
       * The stored samples are a copy of the given samples, so changes to
-      * the passed array will not affect the information stored here.
+      * the passed array will not affect the information stored here. Samples
+      * stored as floats remain stored as floats, but memory-mapped samples
+      * are replaced by samples stored in memory as doubles.
       *
       * @param	new_samples   Audio samles to store, usually with a minimum 
       *                       value of -1 and a maximum value of +1. The first 
@@ -1316,6 +1823,37 @@ public class AudioSamples
                number_samples = new_samples[chan].length;
           }
           
+          // Stop using any memory-mapped samples
+          if (mapped_audio_file != null)
+          {
+               if (new_samples.length != getNumberChannels())
+                    throw new Exception( "Given samples have " + new_samples.length + " channels.\n" +
+                         getNumberChannels() + " channel should be present." );
+               if (new_samples.length != 1)
+                    channel_samples = new double[new_samples.length][];
+               mapped_audio_file = null;
+          }
+          
+          // Keep single precision samples as floats
+          if (getStorageMode() == STORAGE_FLOAT)
+          {
+               if (new_samples.length != getNumberChannels())
+                    throw new Exception( "Given samples have " + new_samples.length + " channels.\n" +
+                         getNumberChannels() + " channel should be present." );
+               float[][] new_float_samples = new float[new_samples.length][number_samples];
+               for (int chan = 0; chan < new_float_samples.length; chan++)
+                    for (int samp = 0; samp < number_samples; samp++)
+                         new_float_samples[chan][samp] = (float) new_samples[chan][samp];
+               if (new_float_samples.length == 1)
+                    float_samples = new_float_samples[0];
+               else
+               {
+                    float_channel_samples = new_float_samples;
+                    float_samples = null;
+               }
+               return;
+          }
+          
           // Update the samples and channel_samples fields
           if (channel_samples == null)
           {
@@ -1339,8 +1877,7 @@ public class AudioSamples
                for (int chan = 0; chan < channel_samples.length; chan++)
                     for (int samp = 0; samp < channel_samples[chan].length; samp++)
                          channel_samples[chan][samp] = new_samples[chan][samp];
-               samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(channel_samples);
-               
+               samples = null;
           }
      }
      
@@ -1348,6 +1885,310 @@ public class AudioSamples
      /* PRIVATE METHODS *******************************************************/
      
      
+     /**
+      * Copies the given range of samples, mixed down into one channel, into
+      * the given array. Decodes the samples if they are memory-mapped. Is
+      * package-private so that it can be used by SampleWindowIterator.
+      *
+      * @param	start_sample       The index of the first sample to copy.
+      * @param	destination        The array to copy the samples into.
+      * @param	destination_offset The index in <i>destination</i> at which to
+      *                            store the first sample.
+      * @param	number_samples     The number of samples to copy.
+      */
+     void copySamplesMixedDown( int start_sample,
+          double[] destination,
+          int destination_offset,
+          int number_samples )
+     {
+          if (mapped_audio_file != null)
+               mapped_audio_file.readFramesMixedDown(start_sample, number_samples, destination, destination_offset);
+          else if (getStorageMode() == STORAGE_FLOAT)
+          {
+               float[] float_samples = getMixedDownFloatSamples();
+               for (int samp = 0; samp < number_samples; samp++)
+                    destination[destination_offset + samp] = float_samples[start_sample + samp];
+          }
+          else
+               System.arraycopy(getMixedDownSamples(), start_sample, destination, destination_offset, number_samples);
+     }
+     
+     
+     /**
+      * Calculates and stores the mixdown of multi-channel samples if it has
+      * not yet been calculated, so that later calls to copySamplesMixedDown
+      * only read stored samples. Is package-private so that it can be called
+      * before the samples are shared by several threads, such as by
+      * ShortTimeFourierTransform, which then never wait for one another to
+      * calculate the mixdown. Memory-mapped samples need no preparation.
+      */
+     void prepareMixdown()
+     {
+          if (mapped_audio_file != null)
+               return;
+          if (getStorageMode() == STORAGE_FLOAT)
+               getMixedDownFloatSamples();
+          else
+               getMixedDownSamples();
+     }
+     
+     
+     /**
+      * Copies the given range of samples of each channel into the given
+      * arrays. Decodes the samples if they are memory-mapped. Is
+      * package-private so that it can be used by SampleWindowIterator.
+      *
+      * @param	start_sample       The index of the first sample to copy.
+      * @param	destination        The arrays to copy the samples into. The
+      *                            first indice corresponds to the channel and
+      *                            the second to the sample number.
+      * @param	destination_offset The index in each channel of
+      *                            <i>destination</i> at which to store the
+      *                            first sample.
+      * @param	number_samples     The number of samples to copy.
+      */
+     void copySamplesChannelSegregated( int start_sample,
+          double[][] destination,
+          int destination_offset,
+          int number_samples )
+     {
+          if (mapped_audio_file != null)
+               mapped_audio_file.readFramesChannelSegregated(start_sample, number_samples, destination, destination_offset);
+          else if (getStorageMode() == STORAGE_FLOAT)
+          {
+               if (float_channel_samples == null)
+                    copySamplesMixedDown(start_sample, destination[0], destination_offset, number_samples);
+               else
+                    for (int chan = 0; chan < float_channel_samples.length; chan++)
+                         for (int samp = 0; samp < number_samples; samp++)
+                              destination[chan][destination_offset + samp] = float_channel_samples[chan][start_sample + samp];
+          }
+          else if (channel_samples == null)
+               System.arraycopy(samples, start_sample, destination[0], destination_offset, number_samples);
+          else
+               for (int chan = 0; chan < channel_samples.length; chan++)
+                    System.arraycopy(channel_samples[chan], start_sample, destination[chan], destination_offset, number_samples);
+     }
+     
+     
+     /**
+      * Returns the samples mixed down into one channel when they are stored
+      * as doubles. The mixdown of multi-channel audio is calculated and
+      * stored in the samples field the first time that this is called. Is
+      * synchronized so that threads sharing this object never see a partly
+      * calculated mixdown.
+      *
+      * @return	The samples field.
+      */
+     private synchronized double[] getMixedDownSamples()
+     {
+          if (samples == null)
+               samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(channel_samples);
+          return samples;
+     }
+     
+     
+     /**
+      * Returns the samples mixed down into one channel when they are stored
+      * as floats. The mixdown of multi-channel audio is calculated and stored
+      * in the float_samples field the first time that this is called. Is
+      * synchronized for the same reason as getMixedDownSamples.
+      *
+      * @return	The float_samples field.
+      */
+     private synchronized float[] getMixedDownFloatSamples()
+     {
+          if (float_samples == null)
+               float_samples = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(float_channel_samples);
+          return float_samples;
+     }
+     
+     
+     /**
+      * Decodes the samples in the given converted AudioInputStream and stores
+      * them in the samples and channel_samples fields, or in the float_samples
+      * and float_channel_samples fields if they are to be stored as floats.
+      *
+      * @param	converted_audio    The stream to decode. Must already have been
+      *                            converted to a decodable format.
+      * @param	store_as_floats    Whether to store the samples as floats.
+      * @throws	Exception          Throws an informative exception if the
+      *                            samples cannot be decoded.
+      */
+     private void storeSamples(AudioInputStream converted_audio, boolean store_as_floats)
+          throws Exception
+     {
+          if (store_as_floats)
+          {
+               float_channel_samples = AudioMethodsGeneral.extractSampleValuesAsFloats(converted_audio);
+               if (float_channel_samples.length == 1)
+               {
+                    float_samples = float_channel_samples[0];
+                    float_channel_samples = null;
+               }
+          }
+          else
+          {
+               channel_samples = AudioMethodsGeneral.extractSampleValues(converted_audio);
+               if (channel_samples.length == 1)
+               {
+                    samples = channel_samples[0];
+                    channel_samples = null;
+               }
+          }
+     }
+     
+     
+     /**
+      * Decodes all of the samples of the given memory-mapped file into the
+      * appropriate fields, as doubles or floats.
+      *
+      * @param	mapped_file	The file to decode.
+      * @param	store_as_floats	Whether the samples are to be stored as
+      *                         floats.
+      * @throws	Exception	Throws an informative exception if the file
+      *                         has too many samples to be held in arrays.
+      */
+     private void storeSamples(MappedAudioFile mapped_file, boolean store_as_floats)
+          throws Exception
+     {
+          if (mapped_file.getNumberFrames() > Integer.MAX_VALUE)
+               throw new Exception( "File " + mapped_file.getFile().getName() + " has " + mapped_file.getNumberFrames() + " samples per channel.\n" +
+                    "At most " + Integer.MAX_VALUE + " samples per channel can be stored." );
+          int number_frames = (int) mapped_file.getNumberFrames();
+          int number_channels = mapped_file.getNumberChannels();
+          if (store_as_floats)
+          {
+               float_channel_samples = new float[number_channels][number_frames];
+               int block_size = Math.min(number_frames, AudioMethodsGeneral.STREAMING_BLOCK_SIZE);
+               double[][] block = new double[number_channels][block_size];
+               for (int start = 0; start < number_frames; start += block_size)
+               {
+                    int frames_to_read = Math.min(block_size, number_frames - start);
+                    mapped_file.readFramesChannelSegregated(start, frames_to_read, block, 0);
+                    for (int chan = 0; chan < number_channels; chan++)
+                         for (int samp = 0; samp < frames_to_read; samp++)
+                              float_channel_samples[chan][start + samp] = (float) block[chan][samp];
+               }
+               if (number_channels == 1)
+               {
+                    float_samples = float_channel_samples[0];
+                    float_channel_samples = null;
+               }
+          }
+          else
+          {
+               channel_samples = new double[number_channels][number_frames];
+               mapped_file.readFramesChannelSegregated(0, number_frames, channel_samples, 0);
+               if (number_channels == 1)
+               {
+                    samples = channel_samples[0];
+                    channel_samples = null;
+               }
+          }
+     }
+     
+     
+     /**
+      * Returns the maximum deviation in the given single precision samples
+      * outside the permissible range of -1 to +1. Returns -1.0 if all samples
+      * fall within the permissible range.
+      *
+      * @param	samples_to_check   The samples to check.
+      * @return                    The maximum deviation from the permissible
+      *                            sample values. -1 if all sample values fall
+      *                            within the allowable range.
+      */
+     private static double checkForClipping(float[] samples_to_check)
+     {
+          double max_difference = -1.0;
+          for (int samp = 0; samp < samples_to_check.length; samp++)
+               if (Math.abs(samples_to_check[samp]) > 1.0)
+               {
+                    double difference = Math.abs(samples_to_check[samp]) - 1.0;
+                    if (difference > max_difference)
+                         max_difference = difference;
+               }
+          return max_difference;
+     }
+     
+     
+     /**
+      * Saves the currently stored samples to the specified file, which is
+      * overwritten. Is used by saveAudio, whose parameters are the same.
+      */
+     private void writeAudio( File save_file,
+          boolean multi_channel,
+          AudioFileFormat.Type save_file_type )
+          throws Exception
+     {
+          // Write the samples a block at a time if the file type and format
+          // allow it, so that no encoded copy of all samples is needed
+          AudioFormat save_format = audio_format;
+          if (!multi_channel)
+               save_format = new AudioFormat( audio_format.getSampleRate(),
+                    audio_format.getSampleSizeInBits(),
+                    1,
+                    true,
+                    audio_format.isBigEndian() );
+          if (AudioFileWriter.isWritable(save_format, save_file_type))
+          {
+               AudioFileWriter writer = new AudioFileWriter(save_file, save_format, save_file_type);
+               try
+               {
+                    int number_samples = getNumberSamplesPerChannel();
+                    double[][] block = new double[save_format.getChannels()][Math.min(number_samples, AudioMethodsGeneral.STREAMING_BLOCK_SIZE)];
+                    for (int start_sample = 0; start_sample < number_samples; start_sample += block[0].length)
+                    {
+                         int block_length = Math.min(block[0].length, number_samples - start_sample);
+                         if (multi_channel)
+                              copySamplesChannelSegregated(start_sample, block, 0, block_length);
+                         else
+                              copySamplesMixedDown(start_sample, block[0], 0, block_length);
+                         writer.writeSamples(block, 0, block_length);
+                    }
+               }
+               finally
+               {
+                    writer.close();
+               }
+               return;
+          }
+          
+          // Convert samples to an AudioInputStream
+          AudioInputStream audio_input_stream = null;
+          if (multi_channel)
+               audio_input_stream = getAudioInputStreamChannelSegregated();
+          else
+               audio_input_stream = getAudioInputStreamMixedDown();
+          
+          // Delete any pre-existing file
+          if (save_file.exists())
+               save_file.delete();
+          
+          // Write the samples to the file
+          AudioSystem.write(audio_input_stream, save_file_type, save_file);
+     }
+     
+     
+     /**
+      * Decodes all memory-mapped samples into the samples and channel_samples
+      * fields, so that they can be modified. Does nothing if the samples are
+      * not memory-mapped.
+      */
+     private void loadMappedSamplesIntoMemory()
+     {
+          if (mapped_audio_file == null)
+               return;
+          double[][] decoded_samples = getSamplesChannelSegregated();
+          if (decoded_samples.length == 1)
+               samples = decoded_samples[0];
+          else
+               channel_samples = decoded_samples;
+          mapped_audio_file = null;
+     }
+     
+     
      /**
       * Returns a new <code>AudioFormat</code> with the given sampling rate. The
       * number of channels is automatically set based on the channel_samples 
@@ -1367,9 +2208,7 @@ public class AudioSamples
           boolean signed = true;
           boolean big_endian = true;
           
-          int channels = 1;
-          if (channel_samples == null)
-               channels = channel_samples.length;
+          int channels = getNumberChannels();
           
           return new AudioFormat(sampling_rate, bit_depth, channels, signed, big_endian);
      }
@@ -1391,8 +2230,8 @@ public class AudioSamples
      {
           if (sample_index < 0)
                sample_index = 0;
-          else if (sample_index >= samples.length)
-               sample_index = samples.length - 1;
+          else if (sample_index >= getNumberSamplesPerChannel())
+               sample_index = getNumberSamplesPerChannel() - 1;
           float time = sample_index / audio_format.getSampleRate();
           return (Float.valueOf(time)).doubleValue();
      }
@@ -1415,8 +2254,8 @@ public class AudioSamples
           int sample_index = (int) (time * audio_format.getSampleRate());
           if (sample_index < 0)
                return 0;
-          else if (sample_index >= samples.length)
-               return samples.length - 1;
+          else if (sample_index >= getNumberSamplesPerChannel())
+               return getNumberSamplesPerChannel() - 1;
           return sample_index;
      }
 }
\ No newline at end of file
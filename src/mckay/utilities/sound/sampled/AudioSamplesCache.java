@@ -0,0 +1,540 @@
+/*
+ * AudioSamplesCache.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A thread-safe cache in memory of <code>AudioSamples</code> objects loaded
+ * from audio files, so that files that are opened repeatedly need only be
+ * loaded once.
+ *
+ * <p>The size of the cache is bounded by the number of bytes occupied by the
+ * sample arrays of the cached objects, as returned by their
+ * <code>getStoredSampleBytes</code> method, rather than by the number of
+ * objects. When this exceeds the maximum, the least recently used objects are
+ * evicted until it does not. Objects whose samples alone exceed the maximum
+ * are returned but never cached, other than by being spilled. Memory-mapped
+ * objects occupy almost no heap memory, and so are almost never evicted.
+ *
+ * <p>If soft-reference spill is enabled, evicted objects are kept through
+ * soft references rather than discarded. They may then still be returned if
+ * they are requested again before the garbage collector reclaims them, which
+ * it only does when memory is needed. Spilled objects do not count towards
+ * the maximum size.
+ *
+ * <p>Objects are cached separately for each combination of file, storage
+ * mode and normalization, and are loaded again if the size or last
+ * modification time of their file changes. The objects returned are shared
+ * by all callers, so they must not be modified. Callers that need to modify
+ * the samples should do so to a copy made with the
+ * <code>getCopyOfAudioSamples</code> method of the <code>AudioSamples</code>
+ * class.
+ *
+ * @author Cory McKay
+ */
+public class AudioSamplesCache
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The maximum number of bytes of sample arrays that may be cached.
+      */
+     private long                                    max_bytes;
+
+     /**
+      * Whether evicted objects are kept through soft references.
+      */
+     private boolean                                 soft_reference_spill;
+
+     /**
+      * The cached objects, in order from least to most recently used.
+      */
+     private LinkedHashMap<String, CacheEntry>       entries;
+
+     /**
+      * The evicted objects that are kept through soft references. Is empty
+      * unless soft_reference_spill is true.
+      */
+     private HashMap<String, SpilledEntry>           spilled_entries;
+
+     /**
+      * The queue that spilled entries are placed on when the garbage collector
+      * reclaims their objects.
+      */
+     private ReferenceQueue<AudioSamples>            reclaimed_queue;
+
+     /**
+      * The total number of bytes of sample arrays of the cached objects.
+      */
+     private long                                    total_bytes;
+
+     /**
+      * The number of requests for which a cached object was returned,
+      * including spilled objects.
+      */
+     private long                                    hit_count;
+
+     /**
+      * The number of requests for which a spilled object was returned.
+      */
+     private long                                    spill_hit_count;
+
+     /**
+      * The number of requests for which the file had to be loaded.
+      */
+     private long                                    miss_count;
+
+     /**
+      * The number of objects evicted to keep the cache within its maximum
+      * size.
+      */
+     private long                                    eviction_count;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Creates an empty cache.
+      *
+      * @param max_bytes                The maximum number of bytes of sample
+      *                                 arrays to cache. Must be at least 0.
+      * @param soft_reference_spill     Whether evicted objects are to be kept
+      *                                 through soft references, so that they
+      *                                 may be returned until the garbage
+      *                                 collector needs their memory.
+      * @throws Exception               Throws an informative exception if
+      *                                 the maximum size is negative.
+      */
+     public AudioSamplesCache(long max_bytes, boolean soft_reference_spill)
+          throws Exception
+     {
+          if (max_bytes < 0)
+               throw new Exception( "Maximum cache size of " + max_bytes + " bytes specified.\n" +
+                    "This value must be 0 or more." );
+          this.max_bytes = max_bytes;
+          this.soft_reference_spill = soft_reference_spill;
+          entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+          spilled_entries = new HashMap<String, SpilledEntry>();
+          reclaimed_queue = new ReferenceQueue<AudioSamples>();
+          total_bytes = 0;
+          hit_count = 0;
+          spill_hit_count = 0;
+          miss_count = 0;
+          eviction_count = 0;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns the cached samples of the given file, loading them with the
+      * <code>AudioSamples</code> constructor and caching them if they are not
+      * cached. The file path is used as the unique identifier of loaded
+      * objects.
+      *
+      * <p>The file is loaded without holding the lock of the cache, so other
+      * files may be requested while it loads. If several threads request the
+      * same uncached file at once, each loads it and the first to finish has
+      * its object cached.
+      *
+      * @param audio_file               The audio file to return the samples
+      *                                 of.
+      * @param normalize_if_clipped     Whether the samples are to be
+      *                                 normalized if clipped, as for the
+      *                                 <code>AudioSamples</code> constructor.
+      * @param storage_mode             How the samples are to be stored. Must
+      *                                 be one of the STORAGE_ constants of
+      *                                 the <code>AudioSamples</code> class.
+      * @return                         The samples of the file. Must not be
+      *                                 modified.
+      * @throws Exception               Throws an informative exception if the
+      *                                 file cannot be loaded.
+      */
+     public AudioSamples getAudioSamples( File audio_file,
+          boolean normalize_if_clipped,
+          int storage_mode )
+          throws Exception
+     {
+          if (audio_file == null)
+               throw new Exception("No audio file provided.");
+          String key = audio_file.getCanonicalPath() + "|" + storage_mode + "|" + normalize_if_clipped;
+          long length = audio_file.length();
+          long last_modified = audio_file.lastModified();
+
+          AudioSamples cached_samples = get(key, length, last_modified);
+          if (cached_samples != null)
+               return cached_samples;
+
+          AudioSamples loaded_samples = new AudioSamples( audio_file,
+               audio_file.getPath(),
+               normalize_if_clipped,
+               storage_mode );
+
+          // Calculate the mixdown before taking the lock of the cache, so that
+          // other requests need not wait for it
+          loaded_samples.prepareMixdown();
+          return put(key, length, last_modified, loaded_samples);
+     }
+
+
+     /**
+      * Removes the cached samples of the given file, for all storage modes
+      * and normalization settings.
+      *
+      * @param audio_file     The file whose samples are to be removed.
+      * @throws Exception     Throws an exception if the path of the file
+      *                       cannot be resolved.
+      */
+     public void invalidate(File audio_file)
+          throws Exception
+     {
+          String prefix = audio_file.getCanonicalPath() + "|";
+          synchronized (this)
+          {
+               Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+               while (iterator.hasNext())
+               {
+                    Map.Entry<String, CacheEntry> entry = iterator.next();
+                    if (entry.getKey().startsWith(prefix))
+                    {
+                         total_bytes -= entry.getValue().size_in_bytes;
+                         iterator.remove();
+                    }
+               }
+               Iterator<String> spilled_keys = spilled_entries.keySet().iterator();
+               while (spilled_keys.hasNext())
+                    if (spilled_keys.next().startsWith(prefix))
+                         spilled_keys.remove();
+          }
+     }
+
+
+     /**
+      * Removes all cached and spilled samples. The counters are not reset.
+      */
+     public synchronized void clear()
+     {
+          entries.clear();
+          spilled_entries.clear();
+          total_bytes = 0;
+     }
+
+
+     /**
+      * Returns the maximum number of bytes of sample arrays that may be
+      * cached.
+      *
+      * @return    The maximum size in bytes.
+      */
+     public long getMaximumSize()
+     {
+          return max_bytes;
+     }
+
+
+     /**
+      * Returns the number of bytes of sample arrays currently cached, not
+      * including spilled objects.
+      *
+      * @return    The size in bytes.
+      */
+     public synchronized long getSize()
+     {
+          return total_bytes;
+     }
+
+
+     /**
+      * Returns the number of objects currently cached, not including spilled
+      * objects.
+      *
+      * @return    The number of cached objects.
+      */
+     public synchronized int getNumberEntries()
+     {
+          return entries.size();
+     }
+
+
+     /**
+      * Returns the number of requests for which a cached or spilled object
+      * was returned.
+      *
+      * @return    The number of hits.
+      */
+     public synchronized long getHitCount()
+     {
+          return hit_count;
+     }
+
+
+     /**
+      * Returns the number of requests for which a spilled object was
+      * returned. These are also counted as hits.
+      *
+      * @return    The number of spill hits.
+      */
+     public synchronized long getSpillHitCount()
+     {
+          return spill_hit_count;
+     }
+
+
+     /**
+      * Returns the number of requests for which the file had to be loaded.
+      *
+      * @return    The number of misses.
+      */
+     public synchronized long getMissCount()
+     {
+          return miss_count;
+     }
+
+
+     /**
+      * Returns the number of objects that have been evicted to keep the cache
+      * within its maximum size.
+      *
+      * @return    The number of evictions.
+      */
+     public synchronized long getEvictionCount()
+     {
+          return eviction_count;
+     }
+
+
+     /**
+      * Returns a summary of the state of the cache, such as for logging.
+      *
+      * @return    The formatted summary.
+      */
+     public synchronized String getStatistics()
+     {
+          return "Entries: " + entries.size() + "\n" +
+               "Bytes cached: " + total_bytes + " of " + max_bytes + "\n" +
+               "Hits: " + hit_count + " (" + spill_hit_count + " from spilled entries)\n" +
+               "Misses: " + miss_count + "\n" +
+               "Evictions: " + eviction_count + "\n";
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the cached or spilled object with the given key if the file
+      * it was loaded from has not changed, and counts a hit or a miss.
+      * Spilled objects are returned to the cache.
+      *
+      * @param key            The key of the object.
+      * @param length         The current size of the file.
+      * @param last_modified  The current last modification time of the file.
+      * @return               The object, or null if it must be loaded.
+      */
+     private synchronized AudioSamples get(String key, long length, long last_modified)
+     {
+          removeReclaimedEntries();
+
+          CacheEntry entry = entries.get(key);
+          if (entry != null)
+          {
+               if (entry.length == length && entry.last_modified == last_modified)
+               {
+                    hit_count++;
+                    return entry.audio_samples;
+               }
+               entries.remove(key);
+               total_bytes -= entry.size_in_bytes;
+          }
+
+          SpilledEntry spilled_entry = spilled_entries.remove(key);
+          if (spilled_entry != null)
+          {
+               AudioSamples spilled_samples = spilled_entry.get();
+               if ( spilled_samples != null &&
+                    spilled_entry.length == length &&
+                    spilled_entry.last_modified == last_modified )
+               {
+                    hit_count++;
+                    spill_hit_count++;
+                    addEntry(key, length, last_modified, spilled_samples);
+                    return spilled_samples;
+               }
+          }
+
+          miss_count++;
+          return null;
+     }
+
+
+     /**
+      * Caches the given newly loaded object, unless another thread has cached
+      * an object with the same key while it was loading.
+      *
+      * @param key            The key of the object.
+      * @param length         The size of the file when it was loaded.
+      * @param last_modified  The last modification time of the file when it
+      *                       was loaded.
+      * @param audio_samples  The loaded object.
+      * @return               The object that is cached, or the given object
+      *                       if it is too large to be cached.
+      */
+     private synchronized AudioSamples put( String key,
+          long length,
+          long last_modified,
+          AudioSamples audio_samples )
+     {
+          CacheEntry existing_entry = entries.get(key);
+          if ( existing_entry != null &&
+               existing_entry.length == length &&
+               existing_entry.last_modified == last_modified )
+               return existing_entry.audio_samples;
+          addEntry(key, length, last_modified, audio_samples);
+          return audio_samples;
+     }
+
+
+     /**
+      * Caches the given object as the most recently used, replacing any
+      * object with the same key, and then evicts objects as needed. The
+      * object is not cached if it alone exceeds the maximum size.
+      *
+      * <p>The mixdown of the object is calculated first if it has not been,
+      * so that its size does not change once it is cached and so that the
+      * threads it is shared with only read it.
+      *
+      * @param key            The key of the object.
+      * @param length         The size of the file.
+      * @param last_modified  The last modification time of the file.
+      * @param audio_samples  The object to cache.
+      */
+     private void addEntry( String key,
+          long length,
+          long last_modified,
+          AudioSamples audio_samples )
+     {
+          audio_samples.prepareMixdown();
+          CacheEntry entry = new CacheEntry();
+          entry.audio_samples = audio_samples;
+          entry.length = length;
+          entry.last_modified = last_modified;
+          entry.size_in_bytes = audio_samples.getStoredSampleBytes();
+          if (entry.size_in_bytes > max_bytes)
+          {
+               spill(key, entry);
+               return;
+          }
+
+          CacheEntry replaced_entry = entries.put(key, entry);
+          if (replaced_entry != null)
+               total_bytes -= replaced_entry.size_in_bytes;
+          total_bytes += entry.size_in_bytes;
+          evictToMaximumSize(key);
+     }
+
+
+     /**
+      * Evicts the least recently used objects until the cache is within its
+      * maximum size, never evicting the object with the given key.
+      *
+      * @param protected_key  The key of the object that was just used.
+      */
+     private void evictToMaximumSize(String protected_key)
+     {
+          Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+          while (total_bytes > max_bytes && iterator.hasNext())
+          {
+               Map.Entry<String, CacheEntry> eldest = iterator.next();
+               if (eldest.getKey().equals(protected_key))
+                    continue;
+               iterator.remove();
+               total_bytes -= eldest.getValue().size_in_bytes;
+               eviction_count++;
+               spill(eldest.getKey(), eldest.getValue());
+          }
+     }
+
+
+     /**
+      * Keeps the given evicted entry through a soft reference if
+      * soft-reference spill is enabled.
+      *
+      * @param key       The key of the entry.
+      * @param entry     The evicted entry.
+      */
+     private void spill(String key, CacheEntry entry)
+     {
+          if (!soft_reference_spill)
+               return;
+          SpilledEntry spilled_entry = new SpilledEntry(key, entry, reclaimed_queue);
+          spilled_entries.put(key, spilled_entry);
+     }
+
+
+     /**
+      * Removes spilled entries whose objects have been reclaimed by the
+      * garbage collector.
+      */
+     private void removeReclaimedEntries()
+     {
+          Object reclaimed;
+          while ((reclaimed = reclaimed_queue.poll()) != null)
+          {
+               SpilledEntry reclaimed_entry = (SpilledEntry) reclaimed;
+               if (spilled_entries.get(reclaimed_entry.key) == reclaimed_entry)
+                    spilled_entries.remove(reclaimed_entry.key);
+          }
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A cached object and the state of the file that it was loaded from.
+      */
+     private static class CacheEntry
+     {
+          AudioSamples   audio_samples;
+          long           length;
+          long           last_modified;
+          long           size_in_bytes;
+     }
+
+
+     /**
+      * An evicted object held through a soft reference, and the state of the
+      * file that it was loaded from.
+      */
+     private static class SpilledEntry
+          extends SoftReference<AudioSamples>
+     {
+          String         key;
+          long           length;
+          long           last_modified;
+
+          SpilledEntry(String key, CacheEntry entry, ReferenceQueue<AudioSamples> queue)
+          {
+               super(entry.audio_samples, queue);
+               this.key = key;
+               length = entry.length;
+               last_modified = entry.last_modified;
+          }
+     }
+}
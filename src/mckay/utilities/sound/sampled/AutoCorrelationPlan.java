@@ -0,0 +1,283 @@
+/*
+ * AutoCorrelationPlan.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * A reusable plan for calculating the auto-correlations of many signals of
+ * one particular length, between one particular range of lags. The results
+ * are the same as those of the <code>getAutoCorrelation</code> method of the
+ * <code>AudioMethodsDSP</code> class, and the
+ * <code>getAutoCorrelationLabels</code> method of that class may be used to
+ * label them.
+ *
+ * <p>Auto-correlations are calculated either directly, which takes time
+ * proportional to the signal length multiplied by the number of lags, or by
+ * using the Wiener-Khinchin theorem. The latter zero-pads the signal,
+ * calculates its power spectrum with an FFT and transforms the power spectrum
+ * back, which takes time proportional to N log N regardless of the number of
+ * lags. The faster of the two is chosen automatically when the plan is
+ * created. The FFT plan and buffers are then reused for every signal, so
+ * repeated calculations allocate no memory when an output array is supplied.
+ *
+ * <p>Plans are not thread-safe. Each thread should use its own plan.
+ *
+ * @author Cory McKay
+ */
+public class AutoCorrelationPlan
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The approximate cost of an FFT of size N, relative to the cost of one
+      * multiply-add in the direct calculation, is this constant multiplied by
+      * N log2 N.
+      */
+     private static final double FFT_COST_FACTOR = 3.0;
+
+
+     /**
+      * The length of the signals to auto-correlate.
+      */
+     private int              signal_length;
+
+     /**
+      * The lowest lag to calculate.
+      */
+     private int              min_lag;
+
+     /**
+      * The highest lag to calculate.
+      */
+     private int              max_lag;
+
+     /**
+      * The plan used for both FFTs. Is null if the direct calculation is
+      * used.
+      */
+     private RealFFTPlan      fft_plan;
+
+     /**
+      * The zero-padded signal, and then the power spectrum mirrored into the
+      * full transform size. Is null if the direct calculation is used.
+      */
+     private double[]         padded_buffer;
+
+     /**
+      * The real and imaginary parts of the unique bins of each FFT. Are null
+      * if the direct calculation is used.
+      */
+     private double[]         spectrum_real;
+     private double[]         spectrum_imaginary;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares to calculate auto-correlations of signals of the given length
+      * between the given lags, choosing the faster method of calculation.
+      *
+      * @param signal_length  The number of samples in each signal.
+      * @param min_lag        The minimum lag in samples to calculate. Must be
+      *                       0 or more.
+      * @param max_lag        The maximum lag in samples to calculate. Must be
+      *                       at least min_lag.
+      * @throws Exception     Throws an informative exception if an invalid
+      *                       parameter is given.
+      */
+     public AutoCorrelationPlan(int signal_length, int min_lag, int max_lag)
+          throws Exception
+     {
+          if (signal_length < 0)
+               throw new Exception("Signal length of " + signal_length + " specified.");
+          if (min_lag < 0)
+               throw new Exception( "Minimum lag of " + min_lag + " specified.\n" +
+                    "This value must be 0 or greater." );
+          if (max_lag < min_lag)
+               throw new Exception( "Maximum lag of " + max_lag + " specified.\n" +
+                    "This value must be at least the minimum lag of " + min_lag + "." );
+
+          this.signal_length = signal_length;
+          this.min_lag = min_lag;
+          this.max_lag = max_lag;
+
+          if (isFFTFaster(signal_length, min_lag, max_lag))
+          {
+               int transform_size = getTransformSize(signal_length, max_lag);
+               fft_plan = new RealFFTPlan(transform_size, false);
+               padded_buffer = new double[transform_size];
+               spectrum_real = new double[transform_size / 2 + 1];
+               spectrum_imaginary = new double[transform_size / 2 + 1];
+          }
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Calculates the auto-correlation of the given signal.
+      *
+      * @param signal    The signal to auto-correlate. Must have the length
+      *                  that this plan was created for.
+      * @return          The auto-correlation for each lag from min_lag to
+      *                  max_lag. Entry 0 corresponds to min_lag, and the last
+      *                  entry corresponds to max_lag.
+      * @throws IllegalArgumentException   If the signal has the wrong length.
+      */
+     public double[] calculate(double[] signal)
+     {
+          double[] autocorrelation = new double[max_lag - min_lag + 1];
+          calculate(signal, autocorrelation);
+          return autocorrelation;
+     }
+
+
+     /**
+      * Calculates the auto-correlation of the given signal into the given
+      * array.
+      *
+      * @param signal             The signal to auto-correlate. Must have the
+      *                           length that this plan was created for.
+      * @param autocorrelation    The array to store the auto-correlation for
+      *                           each lag from min_lag to max_lag in. Must
+      *                           have a length of at least
+      *                           max_lag - min_lag + 1.
+      * @throws IllegalArgumentException   If either array has the wrong
+      *                                    length.
+      */
+     public void calculate(double[] signal, double[] autocorrelation)
+     {
+          if (signal.length != signal_length)
+               throw new IllegalArgumentException( "Signal of length " + signal.length + " given to an\n" +
+                    "auto-correlation plan for signals of length " + signal_length + "." );
+          if (autocorrelation.length < max_lag - min_lag + 1)
+               throw new IllegalArgumentException( "Output array of length " + autocorrelation.length + " given for\n" +
+                    (max_lag - min_lag + 1) + " lags." );
+
+          if (fft_plan == null)
+          {
+               calculateDirectly(signal, min_lag, max_lag, autocorrelation);
+               return;
+          }
+
+          // Calculate the power spectrum of the zero-padded signal
+          int transform_size = padded_buffer.length;
+          System.arraycopy(signal, 0, padded_buffer, 0, signal_length);
+          java.util.Arrays.fill(padded_buffer, signal_length, transform_size, 0.0);
+          fft_plan.transform(padded_buffer, spectrum_real, spectrum_imaginary);
+
+          // Mirror the power spectrum into the full transform size. As it is
+          // real and symmetric, a forward transform of it is the same as an
+          // inverse transform.
+          for (int bin = 0; bin <= transform_size / 2; bin++)
+               padded_buffer[bin] = spectrum_real[bin] * spectrum_real[bin] +
+                    spectrum_imaginary[bin] * spectrum_imaginary[bin];
+          for (int bin = transform_size / 2 + 1; bin < transform_size; bin++)
+               padded_buffer[bin] = padded_buffer[transform_size - bin];
+          fft_plan.transform(padded_buffer, spectrum_real, spectrum_imaginary);
+
+          // Extract and scale the requested lags. Lags at or beyond the end
+          // of the signal have no overlap.
+          for (int lag = min_lag; lag <= max_lag; lag++)
+          {
+               if (lag < signal_length)
+                    autocorrelation[lag - min_lag] = spectrum_real[lag] / transform_size;
+               else
+                    autocorrelation[lag - min_lag] = 0.0;
+          }
+     }
+
+
+     /**
+      * Returns whether this plan uses the FFT method of calculation.
+      *
+      * @return    True if the FFT method is used, false if the direct method
+      *            is.
+      */
+     public boolean usesFFT()
+     {
+          return fft_plan != null;
+     }
+
+
+     /**
+      * Returns whether the FFT method is expected to be faster than the
+      * direct method for the given parameters.
+      *
+      * @param signal_length  The number of samples in the signal.
+      * @param min_lag        The minimum lag in samples to calculate.
+      * @param max_lag        The maximum lag in samples to calculate.
+      * @return               True if the FFT method should be used.
+      */
+     public static boolean isFFTFaster(int signal_length, int min_lag, int max_lag)
+     {
+          if (min_lag < 0 || max_lag < min_lag || signal_length < 2)
+               return false;
+
+          // Only lags less than the signal length involve any multiplication
+          long last_lag = Math.min(max_lag, signal_length - 1);
+          if (last_lag < min_lag)
+               return false;
+          long number_lags = last_lag - min_lag + 1;
+          double direct_cost = number_lags * (signal_length - (min_lag + last_lag) / 2.0);
+
+          int transform_size = getTransformSize(signal_length, max_lag);
+          double fft_cost = FFT_COST_FACTOR * transform_size * (Math.log(transform_size) / Math.log(2.0));
+          return direct_cost > fft_cost;
+     }
+
+
+     /**
+      * Calculates the auto-correlation of the given signal directly.
+      *
+      * @param signal             The signal to auto-correlate.
+      * @param min_lag            The minimum lag in samples to calculate.
+      * @param max_lag            The maximum lag in samples to calculate.
+      * @param autocorrelation    The array to store the auto-correlation for
+      *                           each lag from min_lag to max_lag in.
+      */
+     static void calculateDirectly( double[] signal,
+          int min_lag,
+          int max_lag,
+          double[] autocorrelation )
+     {
+          for (int lag = min_lag; lag <= max_lag; lag++)
+          {
+               int auto_indice = lag - min_lag;
+               autocorrelation[auto_indice] = 0.0;
+               for (int samp = 0; samp < signal.length - lag; samp++)
+                    autocorrelation[auto_indice] += signal[samp] * signal[samp + lag];
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the FFT size needed so that the circular auto-correlation
+      * calculated with it matches the linear auto-correlation for all lags up
+      * to max_lag.
+      *
+      * @param signal_length  The number of samples in the signal.
+      * @param max_lag        The maximum lag in samples to calculate.
+      * @return               The smallest suitable power of 2.
+      */
+     private static int getTransformSize(int signal_length, int max_lag)
+     {
+          long last_lag = Math.min(max_lag, signal_length - 1);
+          long needed_size = Math.max(2, signal_length + last_lag + 1);
+          int transform_size = 2;
+          while (transform_size < needed_size)
+               transform_size *= 2;
+          return transform_size;
+     }
+}
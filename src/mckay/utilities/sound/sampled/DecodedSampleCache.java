@@ -0,0 +1,914 @@
+/*
+ * DecodedSampleCache.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import javax.sound.sampled.*;
+
+
+/**
+ * A persistent cache on disk of the decoded samples of audio files, so that
+ * files that have not changed need not be decoded again by Java Sound each
+ * time that they are loaded.
+ *
+ * <p>Each cache entry is a single file in the cache directory, holding a
+ * short header followed by the samples as headerless interleaved signed
+ * big-endian integer PCM, with the sampling rate, number of channels and bit
+ * depth of the decoded audio. Entries are read back by memory-mapping them
+ * with a <code>MappedAudioFile</code>, and decode to exactly the same
+ * sample values as the original file. The header records the canonical path,
+ * size and last modification time of the file that the entry was decoded
+ * from, and optionally a SHA-256 hash of its contents. An entry is only used
+ * if all of these still match the file. Content hashes are only checked if
+ * the cache was constructed to verify content, as computing them requires
+ * reading every byte of the file.
+ *
+ * <p>Uncompressed WAV and AIFF files already store their samples as raw PCM,
+ * so they are memory-mapped directly rather than being copied into the
+ * cache. Files whose samples decode to floating point PCM are not cached,
+ * as they cannot be stored as integers without loss. Such files are
+ * remembered, so that they are not opened and parsed again by later requests
+ * while their size and last modification time are unchanged.
+ *
+ * <p>The constructors of the <code>AudioSamples</code> class that read audio
+ * files use the cache returned by the <code>getDefaultCache</code> method, if
+ * there is one. This is set by the <code>setDefaultCache</code> method, or
+ * otherwise by the <code>mckay.utilities.sound.sampled.cache.directory</code>
+ * system property.
+ *
+ * <p>Entries are written to temporary files and then renamed, so several
+ * threads or processes may use the same cache directory at once. Entries
+ * are never removed automatically; the <code>remove</code> and
+ * <code>clear</code> methods may be used to do so.
+ *
+ * <p>The numbers of hits, misses, uncacheable files, invalid entries and
+ * errors are counted, and the most recent error is kept, so that problems
+ * with the cache directory can be detected even though the
+ * <code>AudioSamples</code> class decodes files without the cache when it
+ * fails.
+ *
+ * @author Cory McKay
+ */
+public class DecodedSampleCache
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The name of the system property that may be used to set the directory
+      * of the default cache.
+      */
+     public static final String CACHE_DIRECTORY_PROPERTY = "mckay.utilities.sound.sampled.cache.directory";
+
+     /**
+      * The name of the system property that may be set to true in order for
+      * the default cache to verify the contents of files.
+      */
+     public static final String VERIFY_CONTENT_PROPERTY = "mckay.utilities.sound.sampled.cache.verify";
+
+     /**
+      * The extension of cache entry files.
+      */
+     public static final String ENTRY_EXTENSION = ".pcm";
+
+
+     /**
+      * The bytes that every cache entry begins with.
+      */
+     private static final byte[] MAGIC_NUMBER = "MCKAYPCM".getBytes(StandardCharsets.US_ASCII);
+
+     /**
+      * The version of the cache entry format. Entries with other versions are
+      * ignored and replaced.
+      */
+     private static final int FORMAT_VERSION = 1;
+
+     /**
+      * The byte index in each entry of the number of sample frames stored.
+      */
+     private static final int NUMBER_FRAMES_POSITION = 16;
+
+
+     /**
+      * The cache used by the AudioSamples class. Only meaningful once
+      * default_cache_chosen is true.
+      */
+     private static volatile DecodedSampleCache default_cache = null;
+
+     /**
+      * Whether the default cache has been set or read from the system
+      * properties.
+      */
+     private static volatile boolean default_cache_chosen = false;
+
+
+     /**
+      * The directory that entries are stored in.
+      */
+     private File             cache_directory;
+
+     /**
+      * Whether the contents of files are hashed and compared to the hashes
+      * stored in entries.
+      */
+     private boolean          verify_content;
+
+     /**
+      * The keys of the files whose samples cannot be cached, indexed by
+      * canonical path.
+      */
+     private HashMap<String, SourceKey> uncacheable_files;
+
+     /**
+      * The number of requests for which samples were returned from an
+      * existing entry, or by mapping the file directly.
+      */
+     private long             hit_count;
+
+     /**
+      * The number of requests for which a new entry was written.
+      */
+     private long             miss_count;
+
+     /**
+      * The number of requests for files whose samples cannot be cached.
+      */
+     private long             uncacheable_count;
+
+     /**
+      * The number of entries found to be corrupt or unreadable, which are
+      * then replaced.
+      */
+     private long             invalid_entry_count;
+
+     /**
+      * The number of requests that failed with an exception, and the most
+      * recent such exception. The latter is null if there have been none.
+      */
+     private long             error_count;
+     private Exception        last_error;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares to cache decoded samples in the given directory, creating it
+      * if necessary.
+      *
+      * @param cache_directory     The directory to store entries in.
+      * @param verify_content      Whether entries are only to be used if the
+      *                            SHA-256 hash of the contents of the file
+      *                            matches the hash stored in the entry, as
+      *                            well as its path, size and last
+      *                            modification time.
+      * @throws Exception          Throws an informative exception if the
+      *                            directory cannot be created or written to.
+      */
+     public DecodedSampleCache(File cache_directory, boolean verify_content)
+          throws Exception
+     {
+          if (cache_directory == null)
+               throw new Exception("No cache directory provided.");
+          if (!cache_directory.isDirectory() && !cache_directory.mkdirs())
+               throw new Exception("Cache directory " + cache_directory.getPath() + " could not be created.");
+          if (!cache_directory.canWrite())
+               throw new Exception("Cache directory " + cache_directory.getPath() + " cannot be written to.");
+          this.cache_directory = cache_directory;
+          this.verify_content = verify_content;
+          uncacheable_files = new HashMap<String, SourceKey>();
+          hit_count = 0;
+          miss_count = 0;
+          uncacheable_count = 0;
+          invalid_entry_count = 0;
+          error_count = 0;
+          last_error = null;
+     }
+
+
+     /* PUBLIC STATIC METHODS *************************************************/
+
+
+     /**
+      * Returns the cache used when the AudioSamples class reads audio files.
+      * The first time that this is called, this is created in the directory
+      * given by the <code>CACHE_DIRECTORY_PROPERTY</code> system property if
+      * it is set and if no cache has been set explicitly.
+      *
+      * @return    The cache to use, or null if no cache is to be used.
+      */
+     public static DecodedSampleCache getDefaultCache()
+     {
+          if (!default_cache_chosen)
+          {
+               synchronized (DecodedSampleCache.class)
+               {
+                    if (!default_cache_chosen)
+                    {
+                         String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+                         if (directory != null && !directory.isEmpty())
+                         {
+                              try
+                              {
+                                   default_cache = new DecodedSampleCache( new File(directory),
+                                        Boolean.getBoolean(VERIFY_CONTENT_PROPERTY) );
+                              }
+                              catch (Exception e)
+                              {
+                                   // Files are decoded without a cache
+                              }
+                         }
+                         default_cache_chosen = true;
+                    }
+               }
+          }
+          return default_cache;
+     }
+
+
+     /**
+      * Sets the cache used when the AudioSamples class reads audio files,
+      * overriding any set by the system properties.
+      *
+      * @param cache     The cache to use, or null if no cache is to be used.
+      */
+     public static void setDefaultCache(DecodedSampleCache cache)
+     {
+          synchronized (DecodedSampleCache.class)
+          {
+               default_cache = cache;
+               default_cache_chosen = true;
+          }
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns the directory that entries are stored in.
+      *
+      * @return    The cache directory.
+      */
+     public File getCacheDirectory()
+     {
+          return cache_directory;
+     }
+
+
+     /**
+      * Returns whether the contents of files are verified before entries are
+      * used.
+      *
+      * @return    True if content hashes are compared.
+      */
+     public boolean isVerifyingContent()
+     {
+          return verify_content;
+     }
+
+
+     /**
+      * Returns the decoded samples of the given audio file, memory-mapped from
+      * its cache entry. If there is no valid entry, the file is decoded and a
+      * new entry is stored first. Uncompressed WAV and AIFF files are mapped
+      * directly instead.
+      *
+      * <p>Files whose samples cannot be cached are remembered, and null is
+      * returned for them without opening them again for as long as their
+      * size and last modification time are unchanged. Their contents are not
+      * hashed for this check, even if the cache verifies content.
+      *
+      * <p>Any exception thrown is also counted and kept, so that it may be
+      * retrieved with the <code>getLastError</code> method.
+      *
+      * @param audio_file     The audio file to return the samples of.
+      * @return               The mapped samples, or null if the samples of
+      *                       the file cannot be cached.
+      * @throws Exception     Throws an informative exception if the file
+      *                       cannot be read or decoded, or if its entry
+      *                       cannot be written.
+      */
+     public MappedAudioFile getSamples(File audio_file)
+          throws Exception
+     {
+          try
+          {
+               verifyFile(audio_file);
+               if (isKnownUncacheable(audio_file))
+               {
+                    synchronized (this)
+                    {
+                         uncacheable_count++;
+                    }
+                    return null;
+               }
+
+               // Files that are already raw PCM need no entry
+               try
+               {
+                    MappedAudioFile mapped_file = new MappedAudioFile(audio_file);
+                    synchronized (this)
+                    {
+                         hit_count++;
+                    }
+                    return mapped_file;
+               }
+               catch (Exception e)
+               {
+                    // The file must be decoded
+               }
+
+               SourceKey key = new SourceKey(audio_file, verify_content);
+               File entry_file = getEntryFile(key.path);
+               MappedAudioFile cached_samples = openEntry(entry_file, key);
+               if (cached_samples != null)
+               {
+                    synchronized (this)
+                    {
+                         hit_count++;
+                    }
+                    return cached_samples;
+               }
+               if (!writeEntry(audio_file, key, entry_file))
+               {
+                    synchronized (this)
+                    {
+                         uncacheable_files.put(key.path, key);
+                         uncacheable_count++;
+                    }
+                    return null;
+               }
+               cached_samples = openEntry(entry_file, key);
+               if (cached_samples == null)
+                    throw new Exception("The cache entry for file " + audio_file.getName() + " could not be read after being written.");
+               synchronized (this)
+               {
+                    miss_count++;
+               }
+               return cached_samples;
+          }
+          catch (Exception e)
+          {
+               synchronized (this)
+               {
+                    error_count++;
+                    last_error = e;
+               }
+               throw e;
+          }
+     }
+
+
+     /**
+      * Returns whether there is a valid cache entry for the given file.
+      *
+      * @param audio_file     The audio file to check.
+      * @return               True if the file has an entry whose key still
+      *                       matches the file.
+      * @throws Exception     Throws an informative exception if the file
+      *                       cannot be read.
+      */
+     public boolean contains(File audio_file)
+          throws Exception
+     {
+          verifyFile(audio_file);
+          SourceKey key = new SourceKey(audio_file, verify_content);
+          return openEntry(getEntryFile(key.path), key) != null;
+     }
+
+
+     /**
+      * Deletes the cache entry for the given file, if there is one.
+      *
+      * @param audio_file     The audio file whose entry is to be deleted.
+      * @return               True if an entry was deleted.
+      * @throws Exception     Throws an informative exception if the path of
+      *                       the file cannot be resolved.
+      */
+     public boolean remove(File audio_file)
+          throws Exception
+     {
+          File entry_file = getEntryFile(audio_file.getCanonicalPath());
+          return entry_file.delete();
+     }
+
+
+     /**
+      * Deletes all cache entries in the cache directory, and forgets which
+      * files cannot be cached.
+      *
+      * @return    The number of entries deleted.
+      */
+     public int clear()
+     {
+          synchronized (this)
+          {
+               uncacheable_files.clear();
+          }
+          int number_deleted = 0;
+          File[] entries = cache_directory.listFiles();
+          if (entries != null)
+               for (int i = 0; i < entries.length; i++)
+                    if (entries[i].getName().endsWith(ENTRY_EXTENSION) && entries[i].delete())
+                         number_deleted++;
+          return number_deleted;
+     }
+
+
+     /**
+      * Returns the number of requests for which samples were returned from an
+      * existing entry, or by mapping an uncompressed file directly.
+      *
+      * @return    The number of hits.
+      */
+     public synchronized long getHitCount()
+     {
+          return hit_count;
+     }
+
+
+     /**
+      * Returns the number of requests for which the file was decoded and a
+      * new entry was written.
+      *
+      * @return    The number of misses.
+      */
+     public synchronized long getMissCount()
+     {
+          return miss_count;
+     }
+
+
+     /**
+      * Returns the number of requests for files whose samples cannot be
+      * cached, such as those that decode to floating point PCM.
+      *
+      * @return    The number of requests for uncacheable files.
+      */
+     public synchronized long getUncacheableCount()
+     {
+          return uncacheable_count;
+     }
+
+
+     /**
+      * Returns the number of entries that were found to be corrupt or
+      * unreadable, and were therefore replaced. Entries that are out of date
+      * because their file has changed are not counted.
+      *
+      * @return    The number of invalid entries.
+      */
+     public synchronized long getInvalidEntryCount()
+     {
+          return invalid_entry_count;
+     }
+
+
+     /**
+      * Returns the number of requests that failed with an exception.
+      *
+      * @return    The number of errors.
+      */
+     public synchronized long getErrorCount()
+     {
+          return error_count;
+     }
+
+
+     /**
+      * Returns the exception thrown by the most recent request that failed,
+      * such as because the cache directory can no longer be written to.
+      *
+      * @return    The most recent error, or null if there have been none.
+      */
+     public synchronized Exception getLastError()
+     {
+          return last_error;
+     }
+
+
+     /**
+      * Returns a summary of the state of the cache, such as for logging.
+      *
+      * @return    The formatted summary.
+      */
+     public synchronized String getStatistics()
+     {
+          return "Directory: " + cache_directory.getPath() + "\n" +
+               "Hits: " + hit_count + "\n" +
+               "Misses: " + miss_count + "\n" +
+               "Uncacheable: " + uncacheable_count + " (" + uncacheable_files.size() + " files)\n" +
+               "Invalid entries: " + invalid_entry_count + "\n" +
+               "Errors: " + error_count + (last_error == null ? "" : " (last: " + last_error.getMessage() + ")") + "\n";
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns whether the given file has been found to be uncacheable and
+      * has not changed since.
+      *
+      * @param audio_file     The file to check.
+      * @return               True if the file is known to be uncacheable.
+      * @throws Exception     Throws an exception if the path of the file
+      *                       cannot be resolved.
+      */
+     private boolean isKnownUncacheable(File audio_file)
+          throws Exception
+     {
+          String path = audio_file.getCanonicalPath();
+          synchronized (this)
+          {
+               SourceKey key = uncacheable_files.get(path);
+               if (key == null)
+                    return false;
+               if (key.length == audio_file.length() && key.last_modified == audio_file.lastModified())
+                    return true;
+               uncacheable_files.remove(path);
+               return false;
+          }
+     }
+
+
+     /**
+      * Throws an exception if the given file does not exist or is a
+      * directory.
+      *
+      * @param audio_file     The file to check.
+      * @throws Exception     Throws an informative exception if the file is
+      *                       invalid.
+      */
+     private static void verifyFile(File audio_file)
+          throws Exception
+     {
+          if (audio_file == null)
+               throw new Exception("No audio file provided.");
+          if (!audio_file.exists())
+               throw new Exception("File " + audio_file.getName() + " does not exist.");
+          if (audio_file.isDirectory())
+               throw new Exception("File " + audio_file.getName() + " is a directory.");
+     }
+
+
+     /**
+      * Returns the cache entry file for the file with the given canonical
+      * path. Entries are named after the SHA-1 hash of the path, so that each
+      * file has at most one entry.
+      *
+      * @param canonical_path The canonical path of the file.
+      * @return               The entry file, which may not exist.
+      * @throws Exception     Throws an exception if the name cannot be
+      *                       hashed.
+      */
+     private File getEntryFile(String canonical_path)
+          throws Exception
+     {
+          MessageDigest digest = MessageDigest.getInstance("SHA-1");
+          byte[] hash = digest.digest(canonical_path.getBytes(StandardCharsets.UTF_8));
+          return new File(cache_directory, toHexString(hash) + ENTRY_EXTENSION);
+     }
+
+
+     /**
+      * Maps the samples of the given cache entry if it exists and its key
+      * matches the given key.
+      *
+      * @param entry_file     The entry to open.
+      * @param key            The key of the file that the entry must have
+      *                       been decoded from.
+      * @return               The mapped samples, or null if the entry does
+      *                       not exist, is invalid or does not match. Invalid
+      *                       entries are counted.
+      */
+     private MappedAudioFile openEntry(File entry_file, SourceKey key)
+     {
+          if (!entry_file.isFile())
+               return null;
+          try
+          {
+               long data_offset;
+               long number_frames;
+               float sample_rate;
+               int channels;
+               int bit_depth;
+               try (RandomAccessFile entry = new RandomAccessFile(entry_file, "r"))
+               {
+                    byte[] magic_number = new byte[MAGIC_NUMBER.length];
+                    entry.readFully(magic_number);
+                    if (!java.util.Arrays.equals(magic_number, MAGIC_NUMBER) || entry.readInt() != FORMAT_VERSION)
+                    {
+                         countInvalidEntry();
+                         return null;
+                    }
+                    data_offset = entry.readInt();
+                    number_frames = entry.readLong();
+                    sample_rate = entry.readFloat();
+                    channels = entry.readInt();
+                    bit_depth = entry.readInt();
+                    long source_length = entry.readLong();
+                    long source_last_modified = entry.readLong();
+                    String source_path = readString(entry);
+                    String content_hash = readString(entry);
+                    if ( number_frames < 0 ||
+                         source_length != key.length ||
+                         source_last_modified != key.last_modified ||
+                         !source_path.equals(key.path) ||
+                         (key.content_hash != null && !content_hash.equals(key.content_hash)) )
+                         return null;
+                    if (entry.length() < data_offset + number_frames * channels * (bit_depth / 8))
+                    {
+                         countInvalidEntry();
+                         return null;
+                    }
+               }
+               return new MappedAudioFile(entry_file, data_offset, number_frames, channels, bit_depth, sample_rate);
+          }
+          catch (Exception e)
+          {
+               // Treat unreadable entries as missing, so that they are
+               // replaced, but count them
+               countInvalidEntry();
+               return null;
+          }
+     }
+
+
+     /**
+      * Counts an entry found to be corrupt or unreadable.
+      */
+     private synchronized void countInvalidEntry()
+     {
+          invalid_entry_count++;
+     }
+
+
+     /**
+      * Decodes the given audio file and stores its samples as a new cache
+      * entry, replacing any existing entry.
+      *
+      * @param audio_file     The file to decode.
+      * @param key            The key of the file.
+      * @param entry_file     The entry file to write.
+      * @return               True if the entry was written, false if the
+      *                       samples of the file cannot be cached.
+      * @throws Exception     Throws an informative exception if the file
+      *                       cannot be decoded or the entry cannot be
+      *                       written.
+      */
+     private boolean writeEntry(File audio_file, SourceKey key, File entry_file)
+          throws Exception
+     {
+          AudioInputStream audio_input_stream;
+          try
+          {
+               audio_input_stream = AudioSystem.getAudioInputStream(audio_file);
+          }
+          catch (UnsupportedAudioFileException ex)
+          {
+               throw new Exception("File " + audio_file.getName() + " has an unsupported audio format.");
+          }
+          catch (java.io.IOException ex)
+          {
+               throw new Exception("File " + audio_file.getName() + " is not readable.");
+          }
+
+          File temporary_file = null;
+          try (AudioInputStream decodable_stream = AudioMethodsGeneral.getDecodableAudioStream(audio_input_stream))
+          {
+               AudioFormat audio_format = decodable_stream.getFormat();
+               if ( !AudioMethodsGeneral.isDecodable(audio_format) ||
+                    audio_format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT) )
+                    return false;
+               int bytes_per_sample = audio_format.getSampleSizeInBits() / 8;
+               int frame_size = audio_format.getFrameSize();
+               boolean is_signed = audio_format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED);
+
+               // Write the header, with the number of frames filled in once
+               // the stream has been read
+               ByteBuffer header = createHeader(key, audio_format);
+               temporary_file = File.createTempFile("entry", ".tmp", cache_directory);
+               long number_frames = 0;
+               try (RandomAccessFile entry = new RandomAccessFile(temporary_file, "rw"))
+               {
+                    FileChannel channel = entry.getChannel();
+                    writeFully(channel, header);
+
+                    // Copy the samples, converting them to signed big-endian
+                    byte[] block = new byte[AudioMethodsGeneral.STREAMING_BLOCK_SIZE * frame_size];
+                    int bytes_held = 0;
+                    int bytes_read;
+                    while ((bytes_read = decodable_stream.read(block, bytes_held, block.length - bytes_held)) != -1)
+                    {
+                         bytes_held += bytes_read;
+                         int whole_frame_bytes = bytes_held - (bytes_held % frame_size);
+                         if (whole_frame_bytes == 0)
+                              continue;
+                         convertToSignedBigEndian(block, whole_frame_bytes, bytes_per_sample, is_signed, audio_format.isBigEndian());
+                         writeFully(channel, ByteBuffer.wrap(block, 0, whole_frame_bytes));
+                         number_frames += whole_frame_bytes / frame_size;
+                         System.arraycopy(block, whole_frame_bytes, block, 0, bytes_held - whole_frame_bytes);
+                         bytes_held -= whole_frame_bytes;
+                    }
+
+                    ByteBuffer frame_count = ByteBuffer.allocate(8);
+                    frame_count.putLong(0, number_frames);
+                    channel.position(NUMBER_FRAMES_POSITION);
+                    writeFully(channel, frame_count);
+               }
+
+               // Replace any existing entry only once the new one is complete
+               try
+               {
+                    Files.move(temporary_file.toPath(), entry_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+               }
+               catch (java.nio.file.AtomicMoveNotSupportedException e)
+               {
+                    Files.move(temporary_file.toPath(), entry_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+               }
+               temporary_file = null;
+               return true;
+          }
+          finally
+          {
+               if (temporary_file != null)
+                    temporary_file.delete();
+          }
+     }
+
+
+     /**
+      * Returns the header of a new cache entry, ready to be written. The
+      * number of frames is left as 0.
+      *
+      * @param key            The key of the file that the entry holds.
+      * @param audio_format   The format of the decoded samples.
+      * @return               The header.
+      */
+     private static ByteBuffer createHeader(SourceKey key, AudioFormat audio_format)
+     {
+          byte[] path = key.path.getBytes(StandardCharsets.UTF_8);
+          byte[] content_hash = (key.content_hash == null ? "" : key.content_hash).getBytes(StandardCharsets.UTF_8);
+          int header_size = MAGIC_NUMBER.length + 44 + 2 + path.length + 2 + content_hash.length;
+          ByteBuffer header = ByteBuffer.allocate(header_size);
+          header.put(MAGIC_NUMBER);
+          header.putInt(FORMAT_VERSION);
+          header.putInt(header_size);
+          header.putLong(0L);
+          header.putFloat(audio_format.getSampleRate());
+          header.putInt(audio_format.getChannels());
+          header.putInt(audio_format.getSampleSizeInBits());
+          header.putLong(key.length);
+          header.putLong(key.last_modified);
+          header.putShort((short) path.length);
+          header.put(path);
+          header.putShort((short) content_hash.length);
+          header.put(content_hash);
+          header.flip();
+          return header;
+     }
+
+
+     /**
+      * Reads a string stored as its length in bytes, as an unsigned short,
+      * followed by its UTF-8 encoding.
+      *
+      * @param entry     The file to read from, positioned at the string.
+      * @return          The string.
+      * @throws Exception Throws an exception if the string cannot be read.
+      */
+     private static String readString(RandomAccessFile entry)
+          throws Exception
+     {
+          byte[] bytes = new byte[entry.readUnsignedShort()];
+          entry.readFully(bytes);
+          return new String(bytes, StandardCharsets.UTF_8);
+     }
+
+
+     /**
+      * Converts the given interleaved integer PCM samples in place to signed
+      * big-endian samples of the same bit depth.
+      *
+      * @param bytes               The samples to convert.
+      * @param length              The number of bytes to convert. Must be a
+      *                            multiple of the number of bytes per sample.
+      * @param bytes_per_sample    The number of bytes in each sample.
+      * @param is_signed           Whether the samples are currently signed.
+      * @param is_big_endian       Whether the samples are currently
+      *                            big-endian.
+      */
+     private static void convertToSignedBigEndian( byte[] bytes,
+          int length,
+          int bytes_per_sample,
+          boolean is_signed,
+          boolean is_big_endian )
+     {
+          if (!is_big_endian && bytes_per_sample > 1)
+               for (int samp = 0; samp < length; samp += bytes_per_sample)
+                    for (int low = samp, high = samp + bytes_per_sample - 1; low < high; low++, high--)
+                    {
+                         byte temp = bytes[low];
+                         bytes[low] = bytes[high];
+                         bytes[high] = temp;
+                    }
+          if (!is_signed)
+               for (int samp = 0; samp < length; samp += bytes_per_sample)
+                    bytes[samp] ^= (byte) 0x80;
+     }
+
+
+     /**
+      * Writes all remaining bytes of the given buffer to the given channel.
+      *
+      * @param channel   The channel to write to.
+      * @param buffer    The bytes to write.
+      * @throws Exception Throws an exception if the bytes cannot be written.
+      */
+     private static void writeFully(FileChannel channel, ByteBuffer buffer)
+          throws Exception
+     {
+          while (buffer.hasRemaining())
+               channel.write(buffer);
+     }
+
+
+     /**
+      * Returns the SHA-256 hash of the contents of the given file as a
+      * hexadecimal string.
+      *
+      * @param file      The file to hash.
+      * @return          The hash.
+      * @throws Exception Throws an exception if the file cannot be read.
+      */
+     private static String computeContentHash(File file)
+          throws Exception
+     {
+          MessageDigest digest = MessageDigest.getInstance("SHA-256");
+          byte[] buffer = new byte[65536];
+          try (InputStream input = new FileInputStream(file))
+          {
+               int bytes_read;
+               while ((bytes_read = input.read(buffer)) != -1)
+                    digest.update(buffer, 0, bytes_read);
+          }
+          return toHexString(digest.digest());
+     }
+
+
+     /**
+      * Returns the given bytes as a string of hexadecimal digits.
+      *
+      * @param bytes     The bytes to convert.
+      * @return          The hexadecimal string.
+      */
+     private static String toHexString(byte[] bytes)
+     {
+          StringBuilder hex = new StringBuilder(bytes.length * 2);
+          for (int i = 0; i < bytes.length; i++)
+               hex.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+          return hex.toString();
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * The identity of an audio file, which an entry must match in order to
+      * be used.
+      */
+     private static class SourceKey
+     {
+          String    path;
+          long      length;
+          long      last_modified;
+          String    content_hash;
+
+          SourceKey(File audio_file, boolean hash_content)
+               throws Exception
+          {
+               path = audio_file.getCanonicalPath();
+               length = audio_file.length();
+               last_modified = audio_file.lastModified();
+               content_hash = hash_content ? computeContentHash(audio_file) : null;
+          }
+     }
+}
@@ -0,0 +1,584 @@
+/*
+ * DuplexAudioEngine.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import javax.sound.sampled.*;
+
+
+/**
+ * Passes audio captured from a <code>TargetDataLine</code> through a chain of
+ * <code>AudioBlockProcessor</code> objects and plays it on a
+ * <code>SourceDataLine</code> as it arrives, such as for live monitoring or
+ * effects.
+ *
+ * <p>Audio is handled in blocks of a fixed number of frames on a dedicated
+ * thread. Each block is read from the input line, decoded into preallocated
+ * single precision buffers, processed in place by each processor in turn,
+ * encoded and written to the output line. No memory is allocated once the
+ * engine is running, so the time taken by each block is predictable. Before
+ * the first block, a configurable number of blocks of silence are written to
+ * the output line, so that the output does not run dry while the first
+ * blocks are captured. The latency from input to output is therefore roughly
+ * one block plus the prefilled blocks, plus any audio buffered by the lines
+ * themselves.
+ *
+ * <p>The engine reports the latency that it measures after each block, the
+ * time taken to process blocks, and the number of xruns: input overruns, in
+ * which the input line's buffer filled up and captured audio may have been
+ * lost, and output underruns, in which the output line's buffer ran dry and
+ * silence may have been played. Persistent xruns indicate that the block size
+ * or the number of prefilled blocks is too small, or that the processors take
+ * too long.
+ *
+ * <p>The input and output lines must both be open, must use integer PCM
+ * that can be decoded by the <code>decodeSampleValues</code> method of the
+ * <code>AudioMethodsGeneral</code> class and encoded by a
+ * <code>SampleEncoder</code>, and must have the same sampling rate. The
+ * processors see the channels of the input line. If the output line has a
+ * different number of channels, output channel <i>c</i> plays processed
+ * channel <i>c</i> modulo the number of input channels, so mono input is
+ * played on every output channel. Samples are clipped to between -1 and +1
+ * when they are encoded.
+ *
+ * <p>Processors may be added and removed while the engine is running. They
+ * are called on the engine's thread.
+ *
+ * @author Cory McKay
+ */
+public class DuplexAudioEngine
+     implements Runnable
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The line that audio is captured from.
+      */
+     private final TargetDataLine       input_line;
+
+     /**
+      * The line that processed audio is played on.
+      */
+     private final SourceDataLine       output_line;
+
+     /**
+      * The number of frames in each block.
+      */
+     private final int                  block_size;
+
+     /**
+      * The number of blocks of silence written to the output line before the
+      * first block.
+      */
+     private final int                  prefill_blocks;
+
+     /**
+      * The processors applied to each block, in order. Replaced rather than
+      * modified when processors are added or removed, so that the engine's
+      * thread never sees a partially updated chain.
+      */
+     private volatile AudioBlockProcessor[]   processors;
+
+     /**
+      * The buffer that each block is captured into.
+      */
+     private final byte[]               input_bytes;
+
+     /**
+      * The buffer that each captured block is decoded into.
+      */
+     private final double[][]           decoded_block;
+
+     /**
+      * The buffer that each block is processed in.
+      */
+     private final float[][]            processing_block;
+
+     /**
+      * The buffer that each processed block is arranged into for encoding,
+      * with one channel per output channel.
+      */
+     private final double[][]           output_block;
+
+     /**
+      * The buffer that each block is encoded into.
+      */
+     private final byte[]               output_bytes;
+
+     /**
+      * The encoder for the format of the output line.
+      */
+     private final SampleEncoder        encoder;
+
+     /**
+      * The thread processing audio, or null if the engine is not running.
+      */
+     private Thread                     engine_thread;
+
+     /**
+      * Set to true when the engine is to stop.
+      */
+     private volatile boolean           stop_requested;
+
+     /**
+      * The exception that stopped the engine, or null if none has.
+      */
+     private volatile Exception         error;
+
+     /**
+      * The number of blocks processed since the engine was last started.
+      */
+     private volatile long              blocks_processed;
+
+     /**
+      * The number of input overruns since the engine was last started.
+      */
+     private volatile long              input_overruns;
+
+     /**
+      * The number of output underruns since the engine was last started.
+      */
+     private volatile long              output_underruns;
+
+     /**
+      * The total and longest times taken to process a block, in
+      * nanoseconds.
+      */
+     private volatile long              total_processing_nanoseconds;
+     private volatile long              max_processing_nanoseconds;
+
+     /**
+      * The latency from input to output measured after the most recent block,
+      * in frames.
+      */
+     private volatile long              latency_in_frames;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares to pass audio from the given input line to the given output
+      * line. The engine does not start until the <code>start</code> method
+      * is called.
+      *
+      * @param input_line          The open line to capture audio from.
+      * @param output_line         The open line to play processed audio on.
+      * @param block_size          The number of frames in each block. Must be
+      *                            at least 1, and each block must fit within
+      *                            the buffers of both lines.
+      * @param prefill_blocks      The number of blocks of silence to write to
+      *                            the output line before the first block.
+      *                            Must be at least 0.
+      * @throws Exception          Throws an informative exception if either
+      *                            line is null or not open, if their formats
+      *                            are unsupported or differ in sampling rate,
+      *                            or if the block size is invalid.
+      */
+     public DuplexAudioEngine( TargetDataLine input_line,
+          SourceDataLine output_line,
+          int block_size,
+          int prefill_blocks )
+          throws Exception
+     {
+          if (input_line == null)
+               throw new Exception("Target TargetDataLine for capture is empty.");
+          if (output_line == null)
+               throw new Exception("Target SourceDataLine for playback is empty.");
+          if (!input_line.isOpen() || !output_line.isOpen())
+               throw new Exception("Both the input and output lines must be open.");
+          AudioFormat input_format = input_line.getFormat();
+          AudioFormat output_format = output_line.getFormat();
+          if ( !AudioMethodsGeneral.isDecodable(input_format) ||
+               input_format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT) )
+               throw new Exception( "The input line uses " + input_format + ".\n" +
+                    "Only 8, 16, 24 or 32 bit integer PCM samples can be captured currently." );
+          if (!SampleEncoder.isEncodable(output_format))
+               throw new Exception( "The output line uses " + output_format + ".\n" +
+                    "Only 8, 16, 24 or 32 bit integer PCM samples can be played currently." );
+          if (input_format.getSampleRate() != output_format.getSampleRate())
+               throw new Exception( "The input line samples at " + input_format.getSampleRate() + " Hz and the output line at " + output_format.getSampleRate() + " Hz.\n" +
+                    "Both lines must use the same sampling rate." );
+          if (block_size < 1)
+               throw new Exception( "Block size of " + block_size + " frames specified.\n" +
+                    "This value must be above 0." );
+          if ( (long) block_size * input_format.getFrameSize() > input_line.getBufferSize() ||
+               (long) block_size * output_format.getFrameSize() > output_line.getBufferSize() )
+               throw new Exception( "Block size of " + block_size + " frames specified.\n" +
+                    "Each block must fit within the buffers of both lines." );
+          if (prefill_blocks < 0)
+               throw new Exception( "Number of prefilled blocks of " + prefill_blocks + " specified.\n" +
+                    "This value must be 0 or more." );
+
+          this.input_line = input_line;
+          this.output_line = output_line;
+          this.block_size = block_size;
+          this.prefill_blocks = prefill_blocks;
+          processors = new AudioBlockProcessor[0];
+
+          // Allocate every buffer needed while running
+          int input_channels = input_format.getChannels();
+          int output_channels = output_format.getChannels();
+          input_bytes = new byte[block_size * input_format.getFrameSize()];
+          decoded_block = new double[input_channels][block_size];
+          processing_block = new float[input_channels][block_size];
+          output_block = new double[output_channels][block_size];
+          output_bytes = new byte[block_size * output_format.getFrameSize()];
+          encoder = new SampleEncoder(output_format, false);
+
+          engine_thread = null;
+          stop_requested = false;
+          error = null;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Adds the given processor to the end of the chain.
+      *
+      * @param processor      The processor to add.
+      */
+     public synchronized void addProcessor(AudioBlockProcessor processor)
+     {
+          if (processor == null)
+               throw new IllegalArgumentException("No processor provided.");
+          AudioBlockProcessor[] new_processors = java.util.Arrays.copyOf(processors, processors.length + 1);
+          new_processors[processors.length] = processor;
+          processors = new_processors;
+     }
+
+
+     /**
+      * Removes the given processor from the chain, if it is present.
+      *
+      * @param processor      The processor to remove.
+      * @return               True if the processor was removed.
+      */
+     public synchronized boolean removeProcessor(AudioBlockProcessor processor)
+     {
+          for (int i = 0; i < processors.length; i++)
+               if (processors[i] == processor)
+               {
+                    AudioBlockProcessor[] new_processors = new AudioBlockProcessor[processors.length - 1];
+                    System.arraycopy(processors, 0, new_processors, 0, i);
+                    System.arraycopy(processors, i + 1, new_processors, i, processors.length - i - 1);
+                    processors = new_processors;
+                    return true;
+               }
+          return false;
+     }
+
+
+     /**
+      * Starts both lines and the thread that processes audio. The counters
+      * are reset.
+      *
+      * @throws Exception     Throws an informative exception if the engine
+      *                       is already running or if the prefilled silence
+      *                       cannot be encoded.
+      */
+     public synchronized void start()
+          throws Exception
+     {
+          if (isRunning())
+               throw new Exception("The duplex audio engine is already running.");
+          stop_requested = false;
+          error = null;
+          blocks_processed = 0;
+          input_overruns = 0;
+          output_underruns = 0;
+          total_processing_nanoseconds = 0;
+          max_processing_nanoseconds = 0;
+          latency_in_frames = (long) block_size * (prefill_blocks + 1);
+
+          // Discard stale audio and queue the prefilled silence
+          input_line.flush();
+          output_line.flush();
+          for (int chan = 0; chan < output_block.length; chan++)
+               java.util.Arrays.fill(output_block[chan], 0.0);
+          encoder.encode(output_block, 0, block_size, output_bytes, 0);
+          for (int block = 0; block < prefill_blocks; block++)
+               output_line.write(output_bytes, 0, output_bytes.length);
+          output_line.start();
+          input_line.start();
+
+          engine_thread = new Thread(this, "DuplexAudioEngine");
+          engine_thread.setPriority(Thread.MAX_PRIORITY);
+          engine_thread.start();
+     }
+
+
+     /**
+      * Stops the thread that processes audio and stops both lines, discarding
+      * any audio that they still hold. The lines are left open, so the engine
+      * may be started again.
+      *
+      * @throws InterruptedException    Thrown if the calling thread is
+      *                                 interrupted while waiting for the
+      *                                 engine's thread to finish.
+      */
+     public synchronized void stop()
+          throws InterruptedException
+     {
+          stop_requested = true;
+          if (engine_thread != null)
+          {
+               // Unblock a read waiting for input
+               input_line.stop();
+               input_line.flush();
+               engine_thread.join();
+               engine_thread = null;
+          }
+          input_line.stop();
+          input_line.flush();
+          output_line.stop();
+          output_line.flush();
+     }
+
+
+     /**
+      * Processes audio until the <code>stop</code> method is called or an
+      * error occurs. Called by the engine's thread, and should not be called
+      * directly.
+      */
+     public void run()
+     {
+          AudioFormat input_format = input_line.getFormat();
+          int input_frame_size = input_format.getFrameSize();
+          int output_frame_size = output_line.getFormat().getFrameSize();
+          int input_buffer_size = input_line.getBufferSize();
+          int output_buffer_size = output_line.getBufferSize();
+          try
+          {
+               while (!stop_requested)
+               {
+                    // Capture the next block, noting if the input buffer
+                    // filled while waiting
+                    if (input_line.available() >= input_buffer_size)
+                         input_overruns++;
+                    int bytes_read = 0;
+                    while (bytes_read < input_bytes.length && !stop_requested)
+                    {
+                         int read = input_line.read(input_bytes, bytes_read, input_bytes.length - bytes_read);
+                         if (read <= 0 && !input_line.isOpen())
+                              throw new Exception("The input line was closed.");
+                         bytes_read += Math.max(0, read);
+                    }
+                    if (bytes_read < input_bytes.length)
+                         break;
+
+                    long start_time = System.nanoTime();
+                    processBlock(input_format);
+                    long processing_time = System.nanoTime() - start_time;
+                    total_processing_nanoseconds += processing_time;
+                    if (processing_time > max_processing_nanoseconds)
+                         max_processing_nanoseconds = processing_time;
+
+                    // Play the block, noting if the output ran dry while it
+                    // was being captured and processed
+                    if (output_line.available() >= output_buffer_size)
+                         output_underruns++;
+                    int bytes_written = 0;
+                    while (bytes_written < output_bytes.length && !stop_requested)
+                    {
+                         int written = output_line.write(output_bytes, bytes_written, output_bytes.length - bytes_written);
+                         if (written <= 0 && !output_line.isOpen())
+                              throw new Exception("The output line was closed.");
+                         bytes_written += Math.max(0, written);
+                    }
+
+                    // Audio now takes the captured audio still waiting, plus
+                    // the audio queued for playback, to pass through
+                    long input_queued = input_line.available() / input_frame_size;
+                    long output_queued = (output_buffer_size - output_line.available()) / output_frame_size;
+                    latency_in_frames = input_queued + output_queued;
+                    blocks_processed++;
+               }
+          }
+          catch (Exception e)
+          {
+               error = e;
+          }
+     }
+
+
+     /**
+      * Returns whether the engine's thread is processing audio.
+      *
+      * @return    True if the engine is running.
+      */
+     public boolean isRunning()
+     {
+          Thread thread = engine_thread;
+          return thread != null && thread.isAlive();
+     }
+
+
+     /**
+      * Returns the exception that stopped the engine, such as one thrown by
+      * a processor.
+      *
+      * @return    The exception, or null if none has occurred since the
+      *            engine was last started.
+      */
+     public Exception getError()
+     {
+          return error;
+     }
+
+
+     /**
+      * Returns the number of frames in each block.
+      *
+      * @return    The block size in frames.
+      */
+     public int getBlockSize()
+     {
+          return block_size;
+     }
+
+
+     /**
+      * Returns the duration of each block.
+      *
+      * @return    The block duration in seconds.
+      */
+     public double getBlockDuration()
+     {
+          return block_size / (double) input_line.getFormat().getSampleRate();
+     }
+
+
+     /**
+      * Returns the latency from input to output measured after the most
+      * recent block, which is the duration of the captured audio waiting to be
+      * processed plus that of the audio queued for playback. Before the first
+      * block, this is the duration of the prefilled blocks plus one block.
+      *
+      * @return    The latency in seconds.
+      */
+     public double getLatency()
+     {
+          return latency_in_frames / (double) input_line.getFormat().getSampleRate();
+     }
+
+
+     /**
+      * Returns the number of blocks processed since the engine was last
+      * started.
+      *
+      * @return    The number of blocks.
+      */
+     public long getBlocksProcessed()
+     {
+          return blocks_processed;
+     }
+
+
+     /**
+      * Returns the number of times since the engine was last started that the
+      * input line's buffer was full when a block was to be captured, so that
+      * audio may have been lost.
+      *
+      * @return    The number of input overruns.
+      */
+     public long getInputOverrunCount()
+     {
+          return input_overruns;
+     }
+
+
+     /**
+      * Returns the number of times since the engine was last started that the
+      * output line's buffer was empty when a block was to be played, so that
+      * silence may have been played.
+      *
+      * @return    The number of output underruns.
+      */
+     public long getOutputUnderrunCount()
+     {
+          return output_underruns;
+     }
+
+
+     /**
+      * Returns the total number of input overruns and output underruns since
+      * the engine was last started.
+      *
+      * @return    The number of xruns.
+      */
+     public long getXrunCount()
+     {
+          return input_overruns + output_underruns;
+     }
+
+
+     /**
+      * Returns the average time taken to decode, process and encode a block.
+      *
+      * @return    The average processing time in seconds, or 0 if no blocks
+      *            have been processed.
+      */
+     public double getAverageProcessingTime()
+     {
+          long blocks = blocks_processed;
+          if (blocks == 0)
+               return 0.0;
+          return total_processing_nanoseconds / (double) blocks / 1.0e9;
+     }
+
+
+     /**
+      * Returns the longest time taken to decode, process and encode a block.
+      *
+      * @return    The longest processing time in seconds.
+      */
+     public double getMaximumProcessingTime()
+     {
+          return max_processing_nanoseconds / 1.0e9;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Decodes the captured block, applies every processor to it and encodes
+      * it for the output line.
+      *
+      * @param input_format   The format of the input line.
+      * @throws Exception     Any exception thrown by a processor.
+      */
+     private void processBlock(AudioFormat input_format)
+          throws Exception
+     {
+          AudioMethodsGeneral.decodeSampleValues(input_bytes, 0, input_format, decoded_block, 0, block_size);
+          for (int chan = 0; chan < decoded_block.length; chan++)
+          {
+               double[] decoded_channel = decoded_block[chan];
+               float[] processing_channel = processing_block[chan];
+               for (int samp = 0; samp < block_size; samp++)
+                    processing_channel[samp] = (float) decoded_channel[samp];
+          }
+
+          AudioBlockProcessor[] chain = processors;
+          for (int i = 0; i < chain.length; i++)
+               chain[i].processBlock(processing_block, block_size);
+
+          for (int chan = 0; chan < output_block.length; chan++)
+          {
+               float[] processing_channel = processing_block[chan % processing_block.length];
+               double[] output_channel = output_block[chan];
+               for (int samp = 0; samp < block_size; samp++)
+                    output_channel[samp] = processing_channel[samp];
+          }
+          encoder.encode(output_block, 0, block_size, output_bytes, 0);
+     }
+}
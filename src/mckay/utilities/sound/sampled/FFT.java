@@ -8,16 +8,37 @@
 
 package mckay.utilities.sound.sampled;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
 /**
  * This class performs a complex to complex Fast Fourier Transform. Forward and
  * inverse transforms may both be performed. The transforms may be performed
- * with or without the application of a Hanning window.
+ * with or without the application of a Hanning window. Input signals are
+ * zero-padded to a power of 2 by default, but may optionally be transformed
+ * at their own size, so that the frequency bins match the signal length.
  *
  * <p>The FFT is performed by this class' constructor. The real and imaginary
  * results are both stored, and the magnitude spectrum, power spectrum and phase
  * angles may also be accessed (along with appropriate frequency bin labels for
  * the magnitude and power spectra).
  *
+ * <p>The transform itself is performed by an <code>FFTPlan</code>. Plans are
+ * cached for each thread, so that repeated transforms of the same size do not
+ * repeat the calculation of twiddle factors, bit-reversal tables or window
+ * coefficients. Only the <code>MAXIMUM_CACHED_PLANS</code> most recently used
+ * plans of each kind are kept by each thread, so that callers using many
+ * sizes do not keep every plan alive for the lifetime of the thread. The
+ * <code>FFTPlan</code> class may be used directly in order to also avoid the
+ * allocation of output arrays.
+ *
+ * <p>Forward transforms of entirely real input (i.e. when no imaginary input
+ * is given) are performed with a <code>RealFFTPlan</code>, which calculates
+ * only the unique half of the spectrum using a complex transform of half the
+ * size. The other half is then filled in by symmetry. The
+ * <code>RealFFTPlan</code> class may be used directly when only the unique
+ * half of the spectrum is needed.
+ *
  * @author	Cory McKay
  */
 public class FFT
@@ -25,6 +46,12 @@ public class FFT
      /* FIELDS ****************************************************************/
      
      
+     /**
+      * The maximum number of plans of each kind cached by each thread. The
+      * least recently used plan is discarded when this is exceeded.
+      */
+     public static final int MAXIMUM_CACHED_PLANS = 8;
+     
      // The results of the FFT.
      private   double[]	real_output;
      private   double[]	imaginary_output;
@@ -36,6 +63,28 @@ public class FFT
      private   double[]	output_magnitude;
      private   double[]	output_power;
      
+     // The FFT plans used by each thread, keyed by size and transform options
+     // and ordered from least to most recently used
+     private static final ThreadLocal<LinkedHashMap<Long, FFTPlan>> cached_plans =
+          new ThreadLocal<LinkedHashMap<Long, FFTPlan>>()
+     {
+          protected LinkedHashMap<Long, FFTPlan> initialValue()
+          {
+               return new LinkedHashMap<Long, FFTPlan>(16, 0.75f, true);
+          }
+     };
+     
+     // The real input FFT plans used by each thread, keyed by size and
+     // transform options and ordered from least to most recently used
+     private static final ThreadLocal<LinkedHashMap<Long, RealFFTPlan>> cached_real_plans =
+          new ThreadLocal<LinkedHashMap<Long, RealFFTPlan>>()
+     {
+          protected LinkedHashMap<Long, RealFFTPlan> initialValue()
+          {
+               return new LinkedHashMap<Long, RealFFTPlan>(16, 0.75f, true);
+          }
+     };
+     
      
      /* CONSTRUCTOR ***********************************************************/
      
@@ -67,6 +116,44 @@ public class FFT
           boolean inverse_transform,
           boolean use_hanning_window )
           throws Exception
+     {
+          this(real_input, imaginary_input, inverse_transform, use_hanning_window, true);
+     }
+     
+     
+     /**
+      * Performs the Fourier transform and stores the real and imaginary
+      * results, optionally transforming signals whose length is not a power
+      * of 2 at their own length rather than zero-padding them. Sizes with
+      * only small prime factors are transformed with a mixed-radix algorithm,
+      * and other sizes with Bluestein's algorithm (see the FFTPlan class).
+      *
+      * @param	real_input         The real part of the signal to be
+      *                            transformed.
+      * @param	imaginary_input    The imaginary part of the signal to be
+      *                            transformed. This may be null if the signal
+      *                            is entirely real.
+      * @param	inverse_transform  A value of false implies that a forward
+      *                            transform is to be applied, and a value of
+      *                            true means that an inverse transform is to
+      *                            be applied.
+      * @param	use_hanning_window A value of true means that a Hanning window
+      *                            will be applied to the real_input.
+      * @param	zero_pad           A value of true means that signals are
+      *                            zero-padded to the next power of 2, as with
+      *                            the other constructor. A value of false
+      *                            means that signals are transformed at their
+      *                            own length.
+      * @throws	Exception          Throws an exception if the real and imaginary
+      *                            inputs are of different sizes or if less than
+      *                            three input samples are provided.
+      */
+     public FFT( double[] real_input,
+          double[] imaginary_input,
+          boolean inverse_transform,
+          boolean use_hanning_window,
+          boolean zero_pad )
+          throws Exception
      {
           // Throw an exception if non-matching input signals are provided
           if (imaginary_input != null)
@@ -78,122 +165,38 @@ public class FFT
                throw new Exception( "Only " + real_input.length + " samples provided.\n" +
                     "At least three are needed." );
           
-          // Verify that the input size has a number of samples that is a
-          // power of 2. If not, then increase the size of the array using
-          // zero-padding. Also creates a zero filled imaginary component
-          // of the input if none was specified.
-          int valid_size = mckay.utilities.staticlibraries.MathAndStatsMethods.ensureIsPowerOfN(real_input.length, 2);
-          if (valid_size != real_input.length)
-          {
-               double[] temp = new double[valid_size];
-               for (int i = 0; i < real_input.length; i++)
-                    temp[i] = real_input[i];
-               for (int i = real_input.length; i < valid_size; i++)
-                    temp[i] = 0.0;
-               real_input = temp;
-               
-               if (imaginary_input == null)
-               {
-                    imaginary_input = new double[valid_size];
-                    for (int i = 0; i < imaginary_input.length; i++)
-                         imaginary_input[i] = 0.0;
-               }
-               else
-               {
-                    temp = new double[valid_size];
-                    for (int i = 0; i < imaginary_input.length; i++)
-                         temp[i] = imaginary_input[i];
-                    for (int i = imaginary_input.length; i < valid_size; i++)
-                         temp[i] = 0.0;
-                    imaginary_input = temp;
-               }
-          }
-          else if (imaginary_input == null)
-          {
-               imaginary_input = new double[valid_size];
-               for (int i = 0; i < imaginary_input.length; i++)
-                    imaginary_input[i] = 0.0;
-          }
+          // If requested, verify that the input size has a number of samples
+          // that is a power of 2. If not, then the input is zero-padded as it
+          // is copied into the output arrays. A missing imaginary component is
+          // left zero filled.
+          int valid_size = real_input.length;
+          if (zero_pad)
+               valid_size = mckay.utilities.staticlibraries.MathAndStatsMethods.ensureIsPowerOfN(real_input.length, 2);
           
           // Instantiate the arrays to hold the output and copy the input
           // to them, since the algorithm used here is self-processing
           real_output = new double[valid_size];
-          System.arraycopy(real_input, 0, real_output, 0, valid_size);
+          System.arraycopy(real_input, 0, real_output, 0, real_input.length);
           imaginary_output = new double[valid_size];
-          System.arraycopy(imaginary_input, 0, imaginary_output, 0, valid_size);
-          
-          // Apply a Hanning window to the real values if this option is
-          // selected
-          if (use_hanning_window)
-          {
-               for (int i = 0; i < real_output.length; i++)
-               {
-                    double hanning = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / valid_size);
-                    real_output[i] *= hanning;
-               }
-          }
-          
-          // Determine whether this is a forward or inverse transform
-          int forward_transform = 1;
-          if (inverse_transform)
-               forward_transform = -1;
-          
-          // Reorder the input data into reverse binary order
-          double scale = 1.0;
-          int j = 0;
-          for (int i = 0; i < valid_size; ++i)
-          {
-               if (j >= i)
-               {
-                    double tempr = real_output[j] * scale;
-                    double tempi = imaginary_output[j] * scale;
-                    real_output[j] = real_output[i] * scale;
-                    imaginary_output[j] = imaginary_output[i] * scale;
-                    real_output[i] = tempr;
-                    imaginary_output[i] = tempi;
-               }
-               int m = valid_size / 2;
-               while (m >= 1 && j >= m)
-               {
-                    j -= m;
-                    m /= 2;
-               }
-               j += m;
-          }
+          if (imaginary_input != null)
+               System.arraycopy(imaginary_input, 0, imaginary_output, 0, imaginary_input.length);
           
-          // Perform the spectral recombination stage by stage
-          int stage = 0;
-          int max_spectra_for_stage;
-          int step_size;
-          for( max_spectra_for_stage = 1, step_size = 2 * max_spectra_for_stage;
-          max_spectra_for_stage < valid_size;
-          max_spectra_for_stage = step_size, step_size = 2 * max_spectra_for_stage)
+          // Perform the transform using a cached plan for this size and
+          // direction. Real signals only need the lower half of the spectrum
+          // to be calculated, as the upper half is its complex conjugate. The
+          // real plan copies its input into its own buffers, so it may
+          // transform the padded input in place.
+          if (imaginary_input == null && !inverse_transform)
           {
-               double delta_angle = forward_transform * Math.PI / max_spectra_for_stage;
-               
-               // Loop once for each individual spectra
-               for (int spectra_count = 0; spectra_count < max_spectra_for_stage; ++spectra_count)
+               getRealPlan(valid_size, use_hanning_window).transform(real_output, real_output, imaginary_output);
+               for (int bin = valid_size / 2 + 1; bin < valid_size; bin++)
                {
-                    double angle = spectra_count * delta_angle;
-                    double real_correction = Math.cos(angle);
-                    double imag_correction = Math.sin(angle);
-                    
-                    int right = 0;
-                    for (int left = spectra_count; left < valid_size; left += step_size)
-                    {
-                         right = left + max_spectra_for_stage;
-                         double temp_real = real_correction * real_output[right] -
-                              imag_correction * imaginary_output[right];
-                         double temp_imag = real_correction * imaginary_output[right] +
-                              imag_correction * real_output[right];
-                         real_output[right] = real_output[left] - temp_real;
-                         imaginary_output[right] = imaginary_output[left] - temp_imag;
-                         real_output[left] += temp_real;
-                         imaginary_output[left] += temp_imag;
-                    }
+                    real_output[bin] = real_output[valid_size - bin];
+                    imaginary_output[bin] = -imaginary_output[valid_size - bin];
                }
-               max_spectra_for_stage = step_size;
           }
+          else
+               getPlan(valid_size, inverse_transform, use_hanning_window).transform(real_output, imaginary_output);
           
           // Set the angle and magnitude to null originally
           output_angle = null;
@@ -342,4 +345,91 @@ public class FFT
      {
           return imaginary_output;
      }
+     
+     
+     /**
+      * Returns an FFTPlan with the given size and options. Plans are created
+      * the first time that they are requested by each thread, and are then
+      * reused until they are among the least recently used when more than
+      * <code>MAXIMUM_CACHED_PLANS</code> are cached. The returned plan must
+      * only be used by the calling thread.
+      *
+      * @param	size               The size of the transform. Must be at least
+      *                            1.
+      * @param	inverse_transform  Whether the plan is for inverse transforms.
+      * @param	use_hanning_window Whether the plan applies a Hanning window.
+      * @return                    The plan.
+      * @throws	Exception          Throws an exception if the size is less
+      *                            than 1.
+      */
+     public static FFTPlan getPlan( int size,
+          boolean inverse_transform,
+          boolean use_hanning_window )
+          throws Exception
+     {
+          LinkedHashMap<Long, FFTPlan> plans = cached_plans.get();
+          Long key = Long.valueOf( ((long) size << 2) |
+               (inverse_transform ? 2 : 0) |
+               (use_hanning_window ? 1 : 0) );
+          FFTPlan plan = plans.get(key);
+          if (plan == null)
+          {
+               plan = new FFTPlan(size, inverse_transform, use_hanning_window);
+               plans.put(key, plan);
+               evictLeastRecentlyUsed(plans);
+          }
+          return plan;
+     }
+     
+     
+     /**
+      * Returns a RealFFTPlan with the given size and options. Plans are
+      * created the first time that they are requested by each thread, and are
+      * then reused until they are among the least recently used when more
+      * than <code>MAXIMUM_CACHED_PLANS</code> are cached. The returned plan
+      * must only be used by the calling thread.
+      *
+      * @param	size               The size of the transform. Must be at least
+      *                            2.
+      * @param	use_hanning_window Whether the plan applies a Hanning window.
+      * @return                    The plan.
+      * @throws	Exception          Throws an exception if the size is less
+      *                            than 2.
+      */
+     public static RealFFTPlan getRealPlan(int size, boolean use_hanning_window)
+          throws Exception
+     {
+          LinkedHashMap<Long, RealFFTPlan> plans = cached_real_plans.get();
+          Long key = Long.valueOf(((long) size << 1) | (use_hanning_window ? 1 : 0));
+          RealFFTPlan plan = plans.get(key);
+          if (plan == null)
+          {
+               plan = new RealFFTPlan(size, use_hanning_window);
+               plans.put(key, plan);
+               evictLeastRecentlyUsed(plans);
+          }
+          return plan;
+     }
+     
+     
+     /* PACKAGE-PRIVATE METHODS ***********************************************/
+     
+     
+     /**
+      * Discards the least recently used plans in the given access ordered
+      * cache until no more than <code>MAXIMUM_CACHED_PLANS</code> remain. Is
+      * package-private so that it can also be used for the auto-correlation
+      * plans cached by AudioMethodsDSP.
+      *
+      * @param	plans	The cache of plans.
+      */
+     static void evictLeastRecentlyUsed(LinkedHashMap<?, ?> plans)
+     {
+          Iterator<?> iterator = plans.keySet().iterator();
+          while (plans.size() > MAXIMUM_CACHED_PLANS && iterator.hasNext())
+          {
+               iterator.next();
+               iterator.remove();
+          }
+     }
 }
\ No newline at end of file
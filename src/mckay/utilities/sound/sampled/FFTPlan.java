@@ -0,0 +1,580 @@
+/*
+ * FFTPlan.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * A reusable plan for performing complex to complex Fast Fourier Transforms of
+ * one particular size and direction. The twiddle factors, bit-reversal
+ * permutation and (optionally) Hanning window coefficients are all calculated
+ * once when the plan is created, and each transform is then performed into
+ * arrays supplied by the caller. Repeated transforms therefore involve no
+ * trigonometric calculations and no memory allocation.
+ *
+ * <p>Any size may be used, without zero-padding. Sizes that are powers of 2
+ * are transformed with an iterative radix-2 algorithm. Sizes whose prime
+ * factors are all small are transformed with a recursive mixed-radix
+ * algorithm. All other sizes are transformed with Bluestein's algorithm,
+ * which expresses the transform as a convolution that is performed with
+ * power of 2 transforms.
+ *
+ * <p>The transforms performed follow the same conventions as the
+ * <code>FFT</code> class: forward transforms use a positive exponent, inverse
+ * transforms are not scaled, and the Hanning window, if used, is applied only
+ * to the real part of the input.
+ *
+ * <p>Plans are not thread-safe, as a single plan may be used for only one
+ * transform at a time. Each thread should use its own plan.
+ *
+ * @author Cory McKay
+ */
+public class FFTPlan
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The largest prime factor for which the mixed-radix algorithm is used.
+      * Sizes with larger prime factors use Bluestein's algorithm.
+      */
+     private static final int MAXIMUM_MIXED_RADIX_FACTOR = 31;
+
+
+     /**
+      * The number of samples transformed.
+      */
+     private int              size;
+
+     /**
+      * Whether this plan performs inverse transforms.
+      */
+     private boolean          inverse_transform;
+
+     /**
+      * The cosines of the twiddle factor angles, 2 * pi * i / size, for each
+      * i from 0 to size / 2 - 1, or to size - 1 for mixed-radix sizes.
+      */
+     private double[]         twiddle_real;
+
+     /**
+      * The sines of the twiddle factor angles, with their signs reversed for
+      * inverse transforms.
+      */
+     private double[]         twiddle_imaginary;
+
+     /**
+      * The index that each index is swapped with when reordering the input
+      * into reverse binary order. Is null unless the size is a power of 2.
+      */
+     private int[]            bit_reversed_indices;
+
+     /**
+      * The prime factors of the size, in the order that they are used by the
+      * mixed-radix algorithm. Is null unless the mixed-radix algorithm is
+      * used.
+      */
+     private int[]            factors;
+
+     /**
+      * Copies of the input, and the butterfly inputs, used by the mixed-radix
+      * algorithm. Are null unless the mixed-radix algorithm is used.
+      */
+     private double[]         work_real;
+     private double[]         work_imaginary;
+     private double[]         scratch_real;
+     private double[]         scratch_imaginary;
+
+     /**
+      * The chirp, exp(i * pi * n^2 / size) with the sign of the transform
+      * direction, used by Bluestein's algorithm. Is null unless Bluestein's
+      * algorithm is used.
+      */
+     private double[]         chirp_real;
+     private double[]         chirp_imaginary;
+
+     /**
+      * The transform of the conjugate chirp, zero-padded and wrapped to the
+      * convolution size, used by Bluestein's algorithm.
+      */
+     private double[]         chirp_transform_real;
+     private double[]         chirp_transform_imaginary;
+
+     /**
+      * The buffers holding the convolution used by Bluestein's algorithm.
+      */
+     private double[]         convolution_real;
+     private double[]         convolution_imaginary;
+
+     /**
+      * The power of 2 forward and inverse plans used to perform the
+      * convolution of Bluestein's algorithm.
+      */
+     private FFTPlan          convolution_forward_plan;
+     private FFTPlan          convolution_inverse_plan;
+
+     /**
+      * The Hanning window coefficients applied to the real input. Is null if
+      * no window is applied.
+      */
+     private double[]         window;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Calculates the tables needed to perform transforms of the given size
+      * and direction.
+      *
+      * @param size                The number of samples to transform. Must be
+      *                            at least 1.
+      * @param inverse_transform   A value of false implies that forward
+      *                            transforms are to be applied, and a value of
+      *                            true means that inverse transforms are to be
+      *                            applied.
+      * @param use_hanning_window  A value of true means that a Hanning window
+      *                            will be applied to the real input of each
+      *                            transform.
+      * @throws Exception          Throws an informative exception if the size
+      *                            is less than 1.
+      */
+     public FFTPlan(int size, boolean inverse_transform, boolean use_hanning_window)
+          throws Exception
+     {
+          if (size < 1)
+               throw new Exception( "FFT size of " + size + " specified.\n" +
+                    "This value must be above 0." );
+
+          this.size = size;
+          this.inverse_transform = inverse_transform;
+          double direction = inverse_transform ? -1.0 : 1.0;
+
+          if ((size & (size - 1)) == 0)
+          {
+               // Calculate the twiddle factors
+               calculateTwiddleFactors(size / 2, direction);
+
+               // Calculate the bit reversal permutation
+               bit_reversed_indices = new int[size];
+               int number_bits = Integer.numberOfTrailingZeros(size);
+               for (int i = 0; i < size; i++)
+                    bit_reversed_indices[i] = (number_bits == 0) ? 0 : Integer.reverse(i) >>> (32 - number_bits);
+          }
+          else
+          {
+               int[] prime_factors = getPrimeFactors(size);
+               if (prime_factors[prime_factors.length - 1] <= MAXIMUM_MIXED_RADIX_FACTOR)
+               {
+                    // Prepare the mixed-radix algorithm
+                    factors = prime_factors;
+                    calculateTwiddleFactors(size, direction);
+                    work_real = new double[size];
+                    work_imaginary = new double[size];
+                    scratch_real = new double[factors[factors.length - 1]];
+                    scratch_imaginary = new double[factors[factors.length - 1]];
+               }
+               else
+                    prepareBluestein(direction);
+          }
+
+          // Calculate the window coefficients
+          if (use_hanning_window)
+          {
+               window = new double[size];
+               for (int i = 0; i < size; i++)
+                    window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+          }
+          else
+               window = null;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Transforms the given signal in place.
+      *
+      * @param real         The real part of the signal. Replaced by the real
+      *                     part of the transform. Must have a length equal to
+      *                     the size of this plan.
+      * @param imaginary    The imaginary part of the signal. Replaced by the
+      *                     imaginary part of the transform. Must have a length
+      *                     equal to the size of this plan.
+      * @throws IllegalArgumentException   If either array has the wrong
+      *                                    length.
+      */
+     public void transform(double[] real, double[] imaginary)
+     {
+          verifyLength(real);
+          verifyLength(imaginary);
+
+          // Apply the window to the real values
+          if (window != null)
+               for (int i = 0; i < size; i++)
+                    real[i] *= window[i];
+
+          // Use the appropriate algorithm for sizes that are not powers of 2
+          if (factors != null)
+          {
+               System.arraycopy(real, 0, work_real, 0, size);
+               System.arraycopy(imaginary, 0, work_imaginary, 0, size);
+               transformMixedRadix(real, imaginary, 0, 0, 1, 0);
+               return;
+          }
+          if (chirp_real != null)
+          {
+               transformBluestein(real, imaginary);
+               return;
+          }
+
+          // Reorder the data into reverse binary order
+          for (int i = 0; i < size; i++)
+          {
+               int j = bit_reversed_indices[i];
+               if (j > i)
+               {
+                    double temp = real[j];
+                    real[j] = real[i];
+                    real[i] = temp;
+                    temp = imaginary[j];
+                    imaginary[j] = imaginary[i];
+                    imaginary[i] = temp;
+               }
+          }
+
+          // Perform the spectral recombination stage by stage
+          for (int half_step = 1, twiddle_stride = size / 2; half_step < size; half_step *= 2, twiddle_stride /= 2)
+          {
+               int step_size = 2 * half_step;
+               for (int spectra_count = 0; spectra_count < half_step; spectra_count++)
+               {
+                    double real_correction = twiddle_real[spectra_count * twiddle_stride];
+                    double imag_correction = twiddle_imaginary[spectra_count * twiddle_stride];
+                    for (int left = spectra_count; left < size; left += step_size)
+                    {
+                         int right = left + half_step;
+                         double temp_real = real_correction * real[right] -
+                              imag_correction * imaginary[right];
+                         double temp_imag = real_correction * imaginary[right] +
+                              imag_correction * real[right];
+                         real[right] = real[left] - temp_real;
+                         imaginary[right] = imaginary[left] - temp_imag;
+                         real[left] += temp_real;
+                         imaginary[left] += temp_imag;
+                    }
+               }
+          }
+     }
+
+
+     /**
+      * Transforms the given signal into the given output arrays. The input
+      * arrays are not changed.
+      *
+      * @param real_input        The real part of the signal to transform.
+      *                          Must have a length equal to the size of this
+      *                          plan.
+      * @param imaginary_input   The imaginary part of the signal to
+      *                          transform. This may be null if the signal is
+      *                          entirely real.
+      * @param real_output       The array to store the real part of the
+      *                          transform in. Must have a length equal to the
+      *                          size of this plan.
+      * @param imaginary_output  The array to store the imaginary part of the
+      *                          transform in. Must have a length equal to the
+      *                          size of this plan.
+      * @throws IllegalArgumentException   If any array has the wrong length.
+      */
+     public void transform( double[] real_input,
+          double[] imaginary_input,
+          double[] real_output,
+          double[] imaginary_output )
+     {
+          verifyLength(real_input);
+          verifyLength(real_output);
+          verifyLength(imaginary_output);
+          System.arraycopy(real_input, 0, real_output, 0, size);
+          if (imaginary_input == null)
+               java.util.Arrays.fill(imaginary_output, 0.0);
+          else
+          {
+               verifyLength(imaginary_input);
+               System.arraycopy(imaginary_input, 0, imaginary_output, 0, size);
+          }
+          transform(real_output, imaginary_output);
+     }
+
+
+     /**
+      * Returns the number of samples transformed by this plan.
+      *
+      * @return    The size of this plan.
+      */
+     public int getSize()
+     {
+          return size;
+     }
+
+
+     /**
+      * Returns whether this plan performs inverse transforms.
+      *
+      * @return    True if this plan performs inverse transforms, false if it
+      *            performs forward transforms.
+      */
+     public boolean isInverseTransform()
+     {
+          return inverse_transform;
+     }
+
+
+     /**
+      * Returns whether this plan applies a Hanning window to the real input.
+      *
+      * @return    True if a Hanning window is applied.
+      */
+     public boolean usesHanningWindow()
+     {
+          return window != null;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Calculates the given number of twiddle factors, exp(i * 2 * pi * k /
+      * size) with the sign of the transform direction.
+      *
+      * @param number_twiddles  The number of twiddle factors to calculate.
+      * @param direction        1 for forward transforms, -1 for inverse.
+      */
+     private void calculateTwiddleFactors(int number_twiddles, double direction)
+     {
+          twiddle_real = new double[number_twiddles];
+          twiddle_imaginary = new double[number_twiddles];
+          for (int i = 0; i < number_twiddles; i++)
+          {
+               double angle = 2.0 * Math.PI * i / size;
+               twiddle_real[i] = Math.cos(angle);
+               twiddle_imaginary[i] = direction * Math.sin(angle);
+          }
+     }
+
+
+     /**
+      * Returns the prime factors of the given number in ascending order,
+      * with repeated factors repeated.
+      *
+      * @param number   The number to factor. Must be at least 2.
+      * @return         The prime factors.
+      */
+     private static int[] getPrimeFactors(int number)
+     {
+          int[] found = new int[32];
+          int number_found = 0;
+          for (int factor = 2; (long) factor * factor <= number; factor++)
+               while (number % factor == 0)
+               {
+                    found[number_found++] = factor;
+                    number /= factor;
+               }
+          if (number > 1)
+               found[number_found++] = number;
+          return java.util.Arrays.copyOf(found, number_found);
+     }
+
+
+     /**
+      * Performs one level of the recursive mixed-radix algorithm. The
+      * sub-sequence of the work arrays starting at <i>input_offset</i> with a
+      * spacing of <i>stride</i> is transformed into the output arrays starting
+      * at <i>output_offset</i>.
+      *
+      * @param real_output       The array to store the real output in.
+      * @param imaginary_output  The array to store the imaginary output in.
+      * @param output_offset     The index of the first output.
+      * @param input_offset      The index in the work arrays of the first
+      *                          input.
+      * @param stride            The spacing between inputs in the work arrays.
+      *                          The sub-sequence has size / stride samples.
+      * @param factor_index      The index in factors of the radix to use at
+      *                          this level.
+      */
+     private void transformMixedRadix( double[] real_output,
+          double[] imaginary_output,
+          int output_offset,
+          int input_offset,
+          int stride,
+          int factor_index )
+     {
+          int radix = factors[factor_index];
+          int sub_size = size / stride / radix;
+
+          // Transform each of the radix interleaved sub-sequences into
+          // consecutive blocks of the output, or copy single samples
+          if (sub_size == 1)
+          {
+               for (int q = 0; q < radix; q++)
+               {
+                    real_output[output_offset + q] = work_real[input_offset + q * stride];
+                    imaginary_output[output_offset + q] = work_imaginary[input_offset + q * stride];
+               }
+          }
+          else
+          {
+               for (int q = 0; q < radix; q++)
+                    transformMixedRadix( real_output,
+                         imaginary_output,
+                         output_offset + q * sub_size,
+                         input_offset + q * stride,
+                         stride * radix,
+                         factor_index + 1 );
+          }
+
+          // Combine the sub-transforms with generic radix butterflies, which
+          // also apply the twiddle factors
+          for (int u = 0; u < sub_size; u++)
+          {
+               for (int q = 0; q < radix; q++)
+               {
+                    scratch_real[q] = real_output[output_offset + u + q * sub_size];
+                    scratch_imaginary[q] = imaginary_output[output_offset + u + q * sub_size];
+               }
+               for (int q1 = 0; q1 < radix; q1++)
+               {
+                    int k = u + q1 * sub_size;
+                    int twiddle_step = (int) (((long) stride * k) % size);
+                    int twiddle_index = 0;
+                    double sum_real = scratch_real[0];
+                    double sum_imag = scratch_imaginary[0];
+                    for (int q2 = 1; q2 < radix; q2++)
+                    {
+                         twiddle_index += twiddle_step;
+                         if (twiddle_index >= size)
+                              twiddle_index -= size;
+                         double tw_real = twiddle_real[twiddle_index];
+                         double tw_imag = twiddle_imaginary[twiddle_index];
+                         sum_real += scratch_real[q2] * tw_real - scratch_imaginary[q2] * tw_imag;
+                         sum_imag += scratch_real[q2] * tw_imag + scratch_imaginary[q2] * tw_real;
+                    }
+                    real_output[output_offset + k] = sum_real;
+                    imaginary_output[output_offset + k] = sum_imag;
+               }
+          }
+     }
+
+
+     /**
+      * Calculates the chirp and the tables needed for Bluestein's algorithm.
+      *
+      * @param direction        1 for forward transforms, -1 for inverse.
+      * @throws Exception       Throws an exception if the convolution plans
+      *                         cannot be created.
+      */
+     private void prepareBluestein(double direction)
+          throws Exception
+     {
+          // The convolution must be long enough to avoid wrapping
+          int convolution_size = 1;
+          while (convolution_size < 2 * size - 1)
+               convolution_size *= 2;
+
+          // Calculate the chirp. The exponent n^2 is reduced modulo 2 * size
+          // so that the angles stay accurate for large n.
+          chirp_real = new double[size];
+          chirp_imaginary = new double[size];
+          for (int n = 0; n < size; n++)
+          {
+               long exponent = ((long) n * n) % (2L * size);
+               double angle = Math.PI * exponent / size;
+               chirp_real[n] = Math.cos(angle);
+               chirp_imaginary[n] = direction * Math.sin(angle);
+          }
+
+          // Transform the conjugate chirp, wrapped around for negative
+          // indices
+          convolution_forward_plan = new FFTPlan(convolution_size, false, false);
+          convolution_inverse_plan = new FFTPlan(convolution_size, true, false);
+          chirp_transform_real = new double[convolution_size];
+          chirp_transform_imaginary = new double[convolution_size];
+          for (int n = 0; n < size; n++)
+          {
+               chirp_transform_real[n] = chirp_real[n];
+               chirp_transform_imaginary[n] = -chirp_imaginary[n];
+               if (n > 0)
+               {
+                    chirp_transform_real[convolution_size - n] = chirp_real[n];
+                    chirp_transform_imaginary[convolution_size - n] = -chirp_imaginary[n];
+               }
+          }
+          convolution_forward_plan.transform(chirp_transform_real, chirp_transform_imaginary);
+
+          convolution_real = new double[convolution_size];
+          convolution_imaginary = new double[convolution_size];
+     }
+
+
+     /**
+      * Transforms the given signal in place using Bluestein's algorithm.
+      *
+      * @param real         The real part of the signal.
+      * @param imaginary    The imaginary part of the signal.
+      */
+     private void transformBluestein(double[] real, double[] imaginary)
+     {
+          int convolution_size = convolution_real.length;
+
+          // Multiply the input by the chirp and zero-pad it
+          for (int n = 0; n < size; n++)
+          {
+               convolution_real[n] = real[n] * chirp_real[n] - imaginary[n] * chirp_imaginary[n];
+               convolution_imaginary[n] = real[n] * chirp_imaginary[n] + imaginary[n] * chirp_real[n];
+          }
+          java.util.Arrays.fill(convolution_real, size, convolution_size, 0.0);
+          java.util.Arrays.fill(convolution_imaginary, size, convolution_size, 0.0);
+
+          // Convolve with the conjugate chirp
+          convolution_forward_plan.transform(convolution_real, convolution_imaginary);
+          for (int i = 0; i < convolution_size; i++)
+          {
+               double product_real = convolution_real[i] * chirp_transform_real[i] -
+                    convolution_imaginary[i] * chirp_transform_imaginary[i];
+               double product_imag = convolution_real[i] * chirp_transform_imaginary[i] +
+                    convolution_imaginary[i] * chirp_transform_real[i];
+               convolution_real[i] = product_real;
+               convolution_imaginary[i] = product_imag;
+          }
+          convolution_inverse_plan.transform(convolution_real, convolution_imaginary);
+
+          // Scale the convolution and multiply by the chirp again
+          for (int k = 0; k < size; k++)
+          {
+               double conv_real = convolution_real[k] / convolution_size;
+               double conv_imag = convolution_imaginary[k] / convolution_size;
+               real[k] = conv_real * chirp_real[k] - conv_imag * chirp_imaginary[k];
+               imaginary[k] = conv_real * chirp_imaginary[k] + conv_imag * chirp_real[k];
+          }
+     }
+
+
+     /**
+      * Throws an exception if the given array does not have the length of
+      * this plan.
+      *
+      * @param array    The array to check.
+      * @throws IllegalArgumentException   If the array has the wrong length.
+      */
+     private void verifyLength(double[] array)
+     {
+          if (array.length != size)
+               throw new IllegalArgumentException( "Array of length " + array.length + " given to an FFT\n" +
+                    "of size " + size + "." );
+     }
+}
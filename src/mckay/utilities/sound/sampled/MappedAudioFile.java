@@ -0,0 +1,676 @@
+/*
+ * MappedAudioFile.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import javax.sound.sampled.AudioFormat;
+
+
+/**
+ * Provides random access to the samples of an uncompressed WAV or AIFF file
+ * without reading the file into memory. The PCM data chunk of the file is
+ * memory-mapped using a <code>FileChannel</code>, and only the sample ranges
+ * that are requested are decoded into arrays of doubles. Memory use is
+ * therefore proportional to the ranges requested, not to the length of the
+ * recording.
+ *
+ * <p>Supported files are RIFF WAVE files (including WAVE_FORMAT_EXTENSIBLE)
+ * and AIFF or uncompressed AIFC files containing linear PCM samples with bit
+ * depths of 8, 16, 24 or 32 bits. Decoded samples fall between -1 and +1.
+ *
+ * <p>Objects of this class are immutable once constructed, and may be read
+ * from by multiple threads at once.
+ *
+ * @author Cory McKay
+ */
+public class MappedAudioFile
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The maximum number of bytes mapped by a single MappedByteBuffer. Larger
+      * data chunks are mapped as several consecutive regions.
+      */
+     private static final int MAXIMUM_REGION_SIZE = 1 << 30;
+
+     /**
+      * The file whose samples are mapped.
+      */
+     private final File            audio_file;
+
+     /**
+      * The AudioFormat of the samples as they are encoded in the file.
+      */
+     private final AudioFormat     audio_format;
+
+     /**
+      * The number of channels of audio.
+      */
+     private final int             number_channels;
+
+     /**
+      * The number of bytes used to encode each sample of each channel.
+      */
+     private final int             bytes_per_sample;
+
+     /**
+      * The number of bytes used to encode one sample of every channel.
+      */
+     private final int             frame_size;
+
+     /**
+      * Whether 8-bit samples are stored as unsigned values (as in WAV files).
+      */
+     private final boolean         unsigned_bytes;
+
+     /**
+      * The number of sample frames in the file.
+      */
+     private final long            number_frames;
+
+     /**
+      * The number of sample frames held in each of the mapped regions. Each
+      * region holds a whole number of frames.
+      */
+     private final int             frames_per_region;
+
+     /**
+      * The mapped regions of the data chunk, with their byte order set to that
+      * of the file.
+      */
+     private final ByteBuffer[]    regions;
+
+     /**
+      * The value that decoded integer samples are divided by in order to scale
+      * them to between -1 and +1.
+      */
+     private final double          max_sample_value;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Parses the header of the given file and maps its sample data into
+      * memory.
+      *
+      * @param audio_file     The WAV or AIFF file to map.
+      * @throws Exception     Throws an informative exception if the file does
+      *                       not exist, cannot be read or is not an
+      *                       uncompressed WAV or AIFF file with a supported
+      *                       bit depth.
+      */
+     public MappedAudioFile(File audio_file)
+          throws Exception
+     {
+          this(audio_file, readHeader(audio_file));
+     }
+
+
+     /**
+      * Maps headerless signed big-endian integer PCM samples stored at the
+      * given offset of the given file, such as the entries of a
+      * <code>DecodedSampleCache</code>.
+      *
+      * @param raw_file       The file holding the samples.
+      * @param data_offset    The index of the byte in the file at which the
+      *                       first sample begins.
+      * @param number_frames  The number of sample frames stored.
+      * @param channels       The number of channels of audio.
+      * @param bit_depth      The number of bits in each sample. Must be 8,
+      *                       16, 24 or 32.
+      * @param sample_rate    The sampling rate of the samples.
+      * @throws Exception     Throws an informative exception if the file
+      *                       cannot be mapped or is shorter than specified.
+      */
+     MappedAudioFile( File raw_file,
+          long data_offset,
+          long number_frames,
+          int channels,
+          int bit_depth,
+          float sample_rate )
+          throws Exception
+     {
+          this(raw_file, createRawHeader(data_offset, number_frames, channels, bit_depth, sample_rate));
+     }
+
+
+     /**
+      * Maps the sample data described by the given header information.
+      *
+      * @param audio_file     The file to map.
+      * @param info           The encoding and location of the sample data.
+      * @throws Exception     Throws an informative exception if the file
+      *                       cannot be mapped or has an unsupported bit
+      *                       depth.
+      */
+     private MappedAudioFile(File audio_file, HeaderInfo info)
+          throws Exception
+     {
+          this.audio_file = audio_file;
+          checkEncoding(audio_file, info);
+
+          // Store the encoding details
+          number_channels = info.channels;
+          bytes_per_sample = info.bit_depth / 8;
+          frame_size = number_channels * bytes_per_sample;
+          unsigned_bytes = info.unsigned_bytes;
+          max_sample_value = Math.pow(2.0, info.bit_depth - 1);
+          audio_format = new AudioFormat( unsigned_bytes ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED,
+               info.sample_rate,
+               info.bit_depth,
+               number_channels,
+               frame_size,
+               info.sample_rate,
+               info.big_endian );
+
+          try (RandomAccessFile random_access_file = new RandomAccessFile(audio_file, "r"))
+          {
+               FileChannel channel = random_access_file.getChannel();
+               long file_size = channel.size();
+
+               // Correct the data size if the header overstates it, as is
+               // common for files whose headers were never finalized
+               long data_size = Math.min(info.data_size, file_size - info.data_offset);
+               number_frames = Math.max(0, data_size / frame_size);
+
+               // Map the data chunk in regions that each hold whole frames
+               frames_per_region = MAXIMUM_REGION_SIZE / frame_size;
+               long region_size = (long) frames_per_region * frame_size;
+               int number_regions = (int) ((number_frames + frames_per_region - 1) / frames_per_region);
+               regions = new ByteBuffer[number_regions];
+               ByteOrder byte_order = info.big_endian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+               for (int region = 0; region < number_regions; region++)
+               {
+                    long start = info.data_offset + region * region_size;
+                    long size = Math.min(region_size, number_frames * frame_size - region * region_size);
+                    regions[region] = channel.map(FileChannel.MapMode.READ_ONLY, start, size).order(byte_order);
+               }
+          }
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns the file whose samples are mapped.
+      *
+      * @return    The mapped file.
+      */
+     public File getFile()
+     {
+          return audio_file;
+     }
+
+
+     /**
+      * Returns the AudioFormat of the samples as they are encoded in the file.
+      *
+      * @return    The AudioFormat of the mapped samples.
+      */
+     public AudioFormat getAudioFormat()
+     {
+          return audio_format;
+     }
+
+
+     /**
+      * Returns the number of channels of audio in the file.
+      *
+      * @return    The number of channels.
+      */
+     public int getNumberChannels()
+     {
+          return number_channels;
+     }
+
+
+     /**
+      * Returns the number of samples per channel in the file.
+      *
+      * @return    The number of sample frames.
+      */
+     public long getNumberFrames()
+     {
+          return number_frames;
+     }
+
+
+     /**
+      * Decodes the given range of samples of each channel into the given
+      * arrays. Does not allocate any memory.
+      *
+      * @param start_frame         The index of the first sample to decode.
+      * @param frames_to_read      The number of samples per channel to decode.
+      * @param destination         The arrays to decode into. The first indice
+      *                            corresponds to channel and the second to
+      *                            sample number.
+      * @param destination_offset  The index in each channel of
+      *                            <i>destination</i> at which to store the
+      *                            first decoded sample.
+      * @throws IndexOutOfBoundsException Thrown if the requested range is
+      *                            outside of the file.
+      */
+     public void readFramesChannelSegregated( long start_frame,
+          int frames_to_read,
+          double[][] destination,
+          int destination_offset )
+     {
+          verifyRange(start_frame, frames_to_read);
+          for (int i = 0; i < frames_to_read; i++)
+          {
+               long frame = start_frame + i;
+               ByteBuffer region = regions[(int) (frame / frames_per_region)];
+               int index = (int) (frame % frames_per_region) * frame_size;
+               for (int chan = 0; chan < number_channels; chan++)
+               {
+                    destination[chan][destination_offset + i] = readSample(region, index);
+                    index += bytes_per_sample;
+               }
+          }
+     }
+
+
+     /**
+      * Decodes the given range of samples into the given array after mixing
+      * all channels down, with equal gain, into one channel. Does not allocate
+      * any memory.
+      *
+      * @param start_frame         The index of the first sample to decode.
+      * @param frames_to_read      The number of samples to decode.
+      * @param destination         The array to decode into.
+      * @param destination_offset  The index in <i>destination</i> at which to
+      *                            store the first decoded sample.
+      * @throws IndexOutOfBoundsException Thrown if the requested range is
+      *                            outside of the file.
+      */
+     public void readFramesMixedDown( long start_frame,
+          int frames_to_read,
+          double[] destination,
+          int destination_offset )
+     {
+          verifyRange(start_frame, frames_to_read);
+          double number_channels_double = (double) number_channels;
+          for (int i = 0; i < frames_to_read; i++)
+          {
+               long frame = start_frame + i;
+               ByteBuffer region = regions[(int) (frame / frames_per_region)];
+               int index = (int) (frame % frames_per_region) * frame_size;
+               double total_so_far = 0.0;
+               for (int chan = 0; chan < number_channels; chan++)
+               {
+                    total_so_far += readSample(region, index);
+                    index += bytes_per_sample;
+               }
+               destination[destination_offset + i] = total_so_far / number_channels_double;
+          }
+     }
+
+
+     /* PACKAGE-PRIVATE METHODS ***********************************************/
+
+
+     /**
+      * Returns whether the given file can be mapped, judging from its header
+      * alone. The file is not mapped.
+      *
+      * @param audio_file     The file to check.
+      * @return               Whether the file is an uncompressed WAV or AIFF
+      *                       file of integer samples with a supported bit
+      *                       depth.
+      */
+     static boolean isMappable(File audio_file)
+     {
+          try
+          {
+               checkEncoding(audio_file, readHeader(audio_file));
+               return true;
+          }
+          catch (Exception e)
+          {
+               return false;
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Checks that samples with the given header information can be mapped.
+      *
+      * @param audio_file     The file that the header describes.
+      * @param info           The encoding and location of the sample data.
+      * @throws Exception     Throws an informative exception if the bit depth
+      *                       is not supported or there are no channels.
+      */
+     private static void checkEncoding(File audio_file, HeaderInfo info)
+          throws Exception
+     {
+          if (info.bit_depth != 8 && info.bit_depth != 16 && info.bit_depth != 24 && info.bit_depth != 32)
+               throw new Exception( "File " + audio_file.getName() + " has a bit depth of " + info.bit_depth + ".\n" +
+                    "Only bit depths of 8, 16, 24 or 32 bits can be memory-mapped." );
+          if (info.channels < 1)
+               throw new Exception("File " + audio_file.getName() + " has no channels of audio.");
+     }
+
+
+     /**
+      * Parses the header of the given WAV or AIFF file.
+      *
+      * @param audio_file     The file to parse.
+      * @return               The encoding and location of the sample data.
+      * @throws Exception     Throws an informative exception if the file does
+      *                       not exist, cannot be read or is not an
+      *                       uncompressed WAV or AIFF file.
+      */
+     private static HeaderInfo readHeader(File audio_file)
+          throws Exception
+     {
+          if (audio_file == null)
+               throw new Exception("No audio file provided.");
+          if (!audio_file.exists())
+               throw new Exception("File " + audio_file.getName() + " does not exist.");
+          if (audio_file.isDirectory())
+               throw new Exception("File " + audio_file.getName() + " is a directory.");
+
+          try (RandomAccessFile random_access_file = new RandomAccessFile(audio_file, "r"))
+          {
+               FileChannel channel = random_access_file.getChannel();
+               long file_size = channel.size();
+               ByteBuffer header = ByteBuffer.allocate(12);
+               readFully(audio_file, channel, header, 0);
+               String form_id = getChunkID(header, 0);
+               String form_type = getChunkID(header, 8);
+               if (form_id.equals("RIFF") && form_type.equals("WAVE"))
+                    return parseWaveHeader(audio_file, channel, file_size);
+               else if (form_id.equals("FORM") && (form_type.equals("AIFF") || form_type.equals("AIFC")))
+                    return parseAiffHeader(audio_file, channel, file_size, form_type.equals("AIFC"));
+               else
+                    throw new Exception("File " + audio_file.getName() + " is not a WAV or AIFF file.");
+          }
+     }
+
+
+     /**
+      * Returns header information describing headerless signed big-endian
+      * integer PCM samples.
+      *
+      * @param data_offset    The index of the first byte of the samples.
+      * @param number_frames  The number of sample frames.
+      * @param channels       The number of channels.
+      * @param bit_depth      The number of bits in each sample.
+      * @param sample_rate    The sampling rate.
+      * @return               The header information.
+      */
+     private static HeaderInfo createRawHeader( long data_offset,
+          long number_frames,
+          int channels,
+          int bit_depth,
+          float sample_rate )
+     {
+          HeaderInfo info = new HeaderInfo();
+          info.channels = channels;
+          info.bit_depth = bit_depth;
+          info.sample_rate = sample_rate;
+          info.big_endian = true;
+          info.unsigned_bytes = false;
+          info.data_offset = data_offset;
+          info.data_size = number_frames * channels * (bit_depth / 8);
+          return info;
+     }
+
+
+     /**
+      * Returns the sample encoded at the given byte index of the given region,
+      * scaled to between -1 and +1. Uses only absolute gets, so that the
+      * regions may be read by several threads at once.
+      *
+      * @param region    The region to read from.
+      * @param index     The index of the first byte of the sample.
+      * @return          The decoded sample.
+      */
+     private double readSample(ByteBuffer region, int index)
+     {
+          int value;
+          switch (bytes_per_sample)
+          {
+               case 1:
+                    value = unsigned_bytes ? (region.get(index) & 0xFF) - 128 : region.get(index);
+                    break;
+               case 2:
+                    value = region.getShort(index);
+                    break;
+               case 3:
+                    if (region.order() == ByteOrder.BIG_ENDIAN)
+                         value = (region.get(index) << 16) | ((region.get(index + 1) & 0xFF) << 8) | (region.get(index + 2) & 0xFF);
+                    else
+                         value = (region.get(index + 2) << 16) | ((region.get(index + 1) & 0xFF) << 8) | (region.get(index) & 0xFF);
+                    break;
+               default:
+                    value = region.getInt(index);
+          }
+          return value / max_sample_value;
+     }
+
+
+     /**
+      * Throws an exception if the given range of frames is not entirely within
+      * the file.
+      *
+      * @param start_frame    The first frame of the range.
+      * @param frames_to_read The number of frames in the range.
+      * @throws IndexOutOfBoundsException Thrown if the range is invalid.
+      */
+     private void verifyRange(long start_frame, int frames_to_read)
+     {
+          if (start_frame < 0 || frames_to_read < 0 || start_frame + frames_to_read > number_frames)
+               throw new IndexOutOfBoundsException( "Requested samples " + start_frame + " to " + (start_frame + frames_to_read - 1) + ".\n" +
+                    "File " + audio_file.getName() + " only has " + number_frames + " samples per channel." );
+     }
+
+
+     /**
+      * Parses the chunks of a RIFF WAVE file.
+      *
+      * @param audio_file The file being parsed.
+      * @param channel   The channel to read the file from.
+      * @param file_size The size of the file in bytes.
+      * @return          The encoding and location of the sample data.
+      * @throws Exception Throws an informative exception if the file is not
+      *                   an uncompressed PCM WAV file.
+      */
+     private static HeaderInfo parseWaveHeader(File audio_file, FileChannel channel, long file_size)
+          throws Exception
+     {
+          HeaderInfo info = new HeaderInfo();
+          info.big_endian = false;
+          boolean found_format = false;
+          ByteBuffer chunk_header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+          long position = 12;
+          while (position + 8 <= file_size)
+          {
+               readFully(audio_file, channel, chunk_header, position);
+               String chunk_id = getChunkID(chunk_header, 0);
+               long chunk_size = chunk_header.getInt(4) & 0xFFFFFFFFL;
+               if (chunk_id.equals("fmt "))
+               {
+                    ByteBuffer format_chunk = ByteBuffer.allocate((int) Math.min(chunk_size, 40)).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(audio_file, channel, format_chunk, position + 8);
+                    int format_tag = format_chunk.getShort(0) & 0xFFFF;
+                    if (format_tag == 0xFFFE && format_chunk.capacity() >= 26)
+                         format_tag = format_chunk.getShort(24) & 0xFFFF;
+                    if (format_tag != 1)
+                         throw new Exception("File " + audio_file.getName() + " does not contain linear PCM samples.");
+                    info.channels = format_chunk.getShort(2) & 0xFFFF;
+                    info.sample_rate = (float) (format_chunk.getInt(4) & 0xFFFFFFFFL);
+                    info.bit_depth = format_chunk.getShort(14) & 0xFFFF;
+                    info.unsigned_bytes = (info.bit_depth == 8);
+                    found_format = true;
+               }
+               else if (chunk_id.equals("data"))
+               {
+                    if (!found_format)
+                         throw new Exception("File " + audio_file.getName() + " has no format chunk before its data.");
+                    info.data_offset = position + 8;
+                    info.data_size = chunk_size;
+                    return info;
+               }
+               position += 8 + chunk_size + (chunk_size % 2);
+          }
+          throw new Exception("File " + audio_file.getName() + " has no data chunk.");
+     }
+
+
+     /**
+      * Parses the chunks of an AIFF or AIFC file.
+      *
+      * @param audio_file The file being parsed.
+      * @param channel   The channel to read the file from.
+      * @param file_size The size of the file in bytes.
+      * @param is_aifc   Whether the file is an AIFC file.
+      * @return          The encoding and location of the sample data.
+      * @throws Exception Throws an informative exception if the file is not
+      *                   an uncompressed AIFF or AIFC file.
+      */
+     private static HeaderInfo parseAiffHeader(File audio_file, FileChannel channel, long file_size, boolean is_aifc)
+          throws Exception
+     {
+          HeaderInfo info = new HeaderInfo();
+          info.big_endian = true;
+          info.unsigned_bytes = false;
+          boolean found_common = false;
+          long number_frames_in_header = 0;
+          ByteBuffer chunk_header = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+          long position = 12;
+          while (position + 8 <= file_size)
+          {
+               readFully(audio_file, channel, chunk_header, position);
+               String chunk_id = getChunkID(chunk_header, 0);
+               long chunk_size = chunk_header.getInt(4) & 0xFFFFFFFFL;
+               if (chunk_id.equals("COMM"))
+               {
+                    ByteBuffer common_chunk = ByteBuffer.allocate((int) Math.min(chunk_size, 22)).order(ByteOrder.BIG_ENDIAN);
+                    readFully(audio_file, channel, common_chunk, position + 8);
+                    info.channels = common_chunk.getShort(0) & 0xFFFF;
+                    number_frames_in_header = common_chunk.getInt(2) & 0xFFFFFFFFL;
+                    info.bit_depth = common_chunk.getShort(6) & 0xFFFF;
+                    info.sample_rate = (float) parseExtended(common_chunk, 8);
+                    if (is_aifc && common_chunk.capacity() >= 22)
+                    {
+                         String compression = getChunkID(common_chunk, 18);
+                         if (compression.equals("sowt"))
+                              info.big_endian = false;
+                         else if (!compression.equals("NONE"))
+                              throw new Exception("File " + audio_file.getName() + " uses " + compression + " compression.");
+                    }
+                    found_common = true;
+               }
+               else if (chunk_id.equals("SSND"))
+               {
+                    if (!found_common)
+                         throw new Exception("File " + audio_file.getName() + " has no common chunk before its data.");
+                    ByteBuffer sound_header = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+                    readFully(audio_file, channel, sound_header, position + 8);
+                    long offset = sound_header.getInt(0) & 0xFFFFFFFFL;
+                    info.data_offset = position + 16 + offset;
+                    int bytes_per_frame = info.channels * ((info.bit_depth + 7) / 8);
+                    info.data_size = Math.min(chunk_size - 8 - offset, number_frames_in_header * bytes_per_frame);
+                    return info;
+               }
+               position += 8 + chunk_size + (chunk_size % 2);
+          }
+          throw new Exception("File " + audio_file.getName() + " has no sound data chunk.");
+     }
+
+
+     /**
+      * Fills the given buffer with bytes read from the given channel,
+      * starting at the given position.
+      *
+      * @param audio_file The file being read.
+      * @param channel   The channel to read from.
+      * @param buffer    The buffer to fill.
+      * @param position  The position in the channel to start reading at.
+      * @throws Exception Throws an informative exception if the end of the
+      *                   file is reached before the buffer is filled.
+      */
+     private static void readFully(File audio_file, FileChannel channel, ByteBuffer buffer, long position)
+          throws Exception
+     {
+          buffer.clear();
+          while (buffer.hasRemaining())
+          {
+               int bytes_read = channel.read(buffer, position + buffer.position());
+               if (bytes_read < 0)
+                    throw new Exception("File " + audio_file.getName() + " ends unexpectedly.");
+          }
+     }
+
+
+     /**
+      * Returns the four character chunk identifier stored at the given index
+      * of the given buffer.
+      *
+      * @param buffer    The buffer to read from.
+      * @param index     The index of the first character.
+      * @return          The identifier.
+      */
+     private static String getChunkID(ByteBuffer buffer, int index)
+     {
+          char[] id = new char[4];
+          for (int i = 0; i < 4; i++)
+               id[i] = (char) (buffer.get(index + i) & 0xFF);
+          return new String(id);
+     }
+
+
+     /**
+      * Converts the 80-bit IEEE 754 extended precision number stored at the
+      * given index of the given big-endian buffer to a double. This is the
+      * format used for sampling rates in AIFF files.
+      *
+      * @param buffer    The buffer to read from.
+      * @param index     The index of the first byte of the number.
+      * @return          The converted number.
+      */
+     private static double parseExtended(ByteBuffer buffer, int index)
+     {
+          int sign_and_exponent = buffer.getShort(index) & 0xFFFF;
+          long mantissa = buffer.getLong(index + 2);
+          int exponent = (sign_and_exponent & 0x7FFF) - 16383 - 63;
+          double unsigned_mantissa = (double) (mantissa >>> 1) * 2.0 + (double) (mantissa & 1L);
+          double value = unsigned_mantissa * Math.pow(2.0, exponent);
+          return ((sign_and_exponent & 0x8000) != 0) ? -value : value;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * The encoding and location of the sample data, as parsed from a file
+      * header.
+      */
+     private static class HeaderInfo
+     {
+          int       channels;
+          int       bit_depth;
+          float     sample_rate;
+          boolean   big_endian;
+          boolean   unsigned_bytes;
+          long      data_offset;
+          long      data_size;
+     }
+}
@@ -0,0 +1,672 @@
+/*
+ * PolyphaseResampler.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * Converts samples from one sampling rate to another with a polyphase
+ * windowed-sinc filter, without going through Java Sound format conversion.
+ * Samples may be converted all at once, including whole
+ * <code>AudioSamples</code> objects, or a block at a time as they are
+ * streamed.
+ *
+ * <p>The ratio of the output rate to the input rate is reduced to a fraction
+ * L/M. Each output sample lies at one of L fractional positions between two
+ * input samples, and the filter taps for every position are calculated once
+ * at construction, so producing each output sample takes a single dot
+ * product over the nearest input samples. Common conversions, such as from
+ * 44.1 kHz to 22.05 kHz (L/M = 1/2) or from 48 kHz to 44.1 kHz (L/M =
+ * 147/160), need only a few hundred small filters. Ratios with more than
+ * <code>MAXIMUM_EXACT_PHASES</code> positions instead use that many filters
+ * and interpolate linearly between the two nearest ones.
+ *
+ * <p>The filter is a Kaiser-windowed sinc function whose cutoff is a
+ * fraction of the lower of the two Nyquist frequencies, so that downsampling
+ * does not alias. The number of zero crossings of the sinc function on
+ * either side of its centre sets the steepness of the transition band. Each
+ * filter is normalized to have unity gain at 0 Hz.
+ *
+ * <p>Output sample <i>n</i> corresponds to the input time <i>n</i>M/L, so
+ * converted signals are not delayed, and converting <i>N</i> input samples
+ * gives ceil(<i>N</i>L/M) output samples once the converter is flushed.
+ * Input samples before the first and after the last are taken to be 0.
+ *
+ * <p>Objects of this class hold the state of a stream, and so are not
+ * thread-safe. The filters are shared by copies made with the
+ * <code>getNewInstance</code> method, which may be used on other threads.
+ *
+ * @author Cory McKay
+ */
+public class PolyphaseResampler
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The default number of zero crossings of the sinc function on either
+      * side of its centre.
+      */
+     public static final int DEFAULT_ZERO_CROSSINGS = 32;
+
+     /**
+      * The default cutoff frequency, as a fraction of the lower of the input
+      * and output Nyquist frequencies.
+      */
+     public static final double DEFAULT_CUTOFF = 0.95;
+
+     /**
+      * The largest number of fractional positions for which a filter is
+      * calculated. Ratios with more positions interpolate between filters.
+      */
+     public static final int MAXIMUM_EXACT_PHASES = 1024;
+
+
+     /**
+      * The beta parameter of the Kaiser window, which gives a stopband
+      * attenuation of about 90 dB.
+      */
+     private static final double KAISER_BETA = 9.0;
+
+     /**
+      * The number of input frames copied into the history buffer at a time.
+      */
+     private static final int INPUT_CHUNK_SIZE = 4096;
+
+
+     /**
+      * The filter bank shared by all copies of this converter.
+      */
+     private final FilterBank      filter_bank;
+
+     /**
+      * The number of channels converted.
+      */
+     private final int             number_channels;
+
+     /**
+      * The input samples that have not yet been passed by every filter, per
+      * channel. The first sample held is at absolute input index
+      * buffer_start.
+      */
+     private double[][]            history;
+
+     /**
+      * The absolute input index of the first sample in history.
+      */
+     private long                  buffer_start;
+
+     /**
+      * The number of samples held in each channel of history.
+      */
+     private int                   buffer_length;
+
+     /**
+      * The absolute index of the input sample at or before the position of
+      * the next output sample.
+      */
+     private long                  input_index;
+
+     /**
+      * The position of the next output sample past input_index, in units of
+      * 1/L input samples. Always less than L.
+      */
+     private long                  phase;
+
+     /**
+      * The number of input frames given so far, not including flushing.
+      */
+     private long                  input_frames;
+
+     /**
+      * The number of output frames produced so far.
+      */
+     private long                  output_frames;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to convert samples between the given rates with the default
+      * filter quality.
+      *
+      * @param input_rate          The sampling rate of the input samples.
+      * @param output_rate         The sampling rate to convert to.
+      * @param number_channels     The number of channels to convert.
+      * @throws Exception          Throws an informative exception if a rate
+      *                            or the number of channels is invalid.
+      */
+     public PolyphaseResampler( double input_rate,
+          double output_rate,
+          int number_channels )
+          throws Exception
+     {
+          this(input_rate, output_rate, number_channels, DEFAULT_ZERO_CROSSINGS, DEFAULT_CUTOFF);
+     }
+
+
+     /**
+      * Prepares to convert samples between the given rates with the given
+      * filter quality.
+      *
+      * @param input_rate          The sampling rate of the input samples.
+      * @param output_rate         The sampling rate to convert to.
+      * @param number_channels     The number of channels to convert.
+      * @param zero_crossings      The number of zero crossings of the sinc
+      *                            function on either side of its centre.
+      *                            Higher values give steeper filters at the
+      *                            cost of speed. Must be at least 1.
+      * @param cutoff              The cutoff frequency as a fraction of the
+      *                            lower of the input and output Nyquist
+      *                            frequencies. Must be above 0 and at most 1.
+      * @throws Exception          Throws an informative exception if a
+      *                            parameter is invalid.
+      */
+     public PolyphaseResampler( double input_rate,
+          double output_rate,
+          int number_channels,
+          int zero_crossings,
+          double cutoff )
+          throws Exception
+     {
+          this(new FilterBank(input_rate, output_rate, zero_crossings, cutoff), number_channels);
+     }
+
+
+     /**
+      * Prepares to convert samples using the given filter bank.
+      *
+      * @param filter_bank         The filters to use.
+      * @param number_channels     The number of channels to convert.
+      * @throws Exception          Throws an informative exception if the
+      *                            number of channels is invalid.
+      */
+     private PolyphaseResampler(FilterBank filter_bank, int number_channels)
+          throws Exception
+     {
+          if (number_channels < 1)
+               throw new Exception( "Number of channels of " + number_channels + " specified.\n" +
+                    "This value must be above 0." );
+          this.filter_bank = filter_bank;
+          this.number_channels = number_channels;
+          history = new double[number_channels][3 * filter_bank.half_length + INPUT_CHUNK_SIZE];
+          reset();
+     }
+
+
+     /* PUBLIC STATIC METHODS *************************************************/
+
+
+     /**
+      * Returns a copy of the given samples converted to the given sampling
+      * rate. Samples are read from the given object a block at a time, so
+      * memory-mapped samples are never all decoded at once.
+      *
+      * @param audio_samples  The samples to convert.
+      * @param output_rate    The sampling rate to convert to.
+      * @return               The converted samples, with the same unique
+      *                       identifier as the original.
+      * @throws Exception     Throws an informative exception if the rate is
+      *                       invalid.
+      */
+     public static AudioSamples resample(AudioSamples audio_samples, double output_rate)
+          throws Exception
+     {
+          int number_channels = audio_samples.getNumberChannels();
+          int number_frames = audio_samples.getNumberSamplesPerChannel();
+          PolyphaseResampler resampler = new PolyphaseResampler( audio_samples.getSamplingRateAsDouble(),
+               output_rate,
+               number_channels );
+          double[][] converted = new double[number_channels][resampler.getOutputLength(number_frames)];
+
+          int block_size = AudioMethodsGeneral.STREAMING_BLOCK_SIZE;
+          double[][] block = new double[number_channels][block_size];
+          int output_position = 0;
+          for (int start = 0; start < number_frames; start += block_size)
+          {
+               int frames_in_block = Math.min(block_size, number_frames - start);
+               audio_samples.copySamplesChannelSegregated(start, block, 0, frames_in_block);
+               output_position += resampler.process(block, 0, frames_in_block, converted, output_position);
+          }
+          resampler.flush(converted, output_position);
+
+          return new AudioSamples( converted,
+               (float) output_rate,
+               audio_samples.getUniqueIdentifier(),
+               false,
+               false );
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns a new converter between the same rates, using the same filters,
+      * with no stream in progress. This avoids recalculating the filters, and
+      * allows several streams to be converted on different threads at once.
+      *
+      * @param number_channels     The number of channels to convert.
+      * @return                    The new converter.
+      * @throws Exception          Throws an informative exception if the
+      *                            number of channels is invalid.
+      */
+     public PolyphaseResampler getNewInstance(int number_channels)
+          throws Exception
+     {
+          return new PolyphaseResampler(filter_bank, number_channels);
+     }
+
+
+     /**
+      * Returns the sampling rate of the input samples.
+      *
+      * @return    The input sampling rate.
+      */
+     public double getInputRate()
+     {
+          return filter_bank.input_rate;
+     }
+
+
+     /**
+      * Returns the sampling rate of the output samples.
+      *
+      * @return    The output sampling rate.
+      */
+     public double getOutputRate()
+     {
+          return filter_bank.output_rate;
+     }
+
+
+     /**
+      * Returns the number of channels converted.
+      *
+      * @return    The number of channels.
+      */
+     public int getNumberChannels()
+     {
+          return number_channels;
+     }
+
+
+     /**
+      * Returns the number of output samples per channel that converting the
+      * given number of input samples gives once the converter is flushed.
+      *
+      * @param input_length   The number of input samples per channel.
+      * @return               The number of output samples per channel.
+      */
+     public int getOutputLength(long input_length)
+     {
+          long ratio_numerator = filter_bank.interpolation_factor;
+          long ratio_denominator = filter_bank.decimation_factor;
+          long length = (input_length * ratio_numerator + ratio_denominator - 1) / ratio_denominator;
+          if (length > Integer.MAX_VALUE)
+               throw new IllegalArgumentException( "Converting " + input_length + " samples would give " + length + " samples.\n" +
+                    "At most " + Integer.MAX_VALUE + " samples can be returned." );
+          return (int) length;
+     }
+
+
+     /**
+      * Returns the largest number of output samples per channel that a single
+      * call to <code>process</code> with the given number of input samples,
+      * or to <code>flush</code> after it, can produce.
+      *
+      * @param input_length   The number of input samples per channel.
+      * @return               The maximum number of output samples.
+      */
+     public int getMaximumOutputFrames(int input_length)
+     {
+          return getOutputLength((long) input_length + 2 * filter_bank.half_length) + 1;
+     }
+
+
+     /**
+      * Converts the given block of input samples, storing every output sample
+      * that can be calculated from the input given so far. Output samples
+      * whose filters extend past the end of the input given so far are
+      * produced by later calls, or by the <code>flush</code> method.
+      *
+      * @param input               The input samples. The first indice
+      *                            corresponds to the channel and the second to
+      *                            the sample number.
+      * @param input_offset        The index in each channel of the first
+      *                            sample to convert.
+      * @param input_length        The number of samples per channel to
+      *                            convert.
+      * @param output              The arrays to store the output samples in.
+      *                            Must have room for the number of samples
+      *                            given by the
+      *                            <code>getMaximumOutputFrames</code> method
+      *                            after <i>output_offset</i>.
+      * @param output_offset       The index in each channel of
+      *                            <i>output</i> at which to store the first
+      *                            output sample.
+      * @return                    The number of output samples stored per
+      *                            channel.
+      */
+     public int process( double[][] input,
+          int input_offset,
+          int input_length,
+          double[][] output,
+          int output_offset )
+     {
+          if (input.length != number_channels || output.length != number_channels)
+               throw new IllegalArgumentException( "Samples with " + input.length + " input and " + output.length + " output channels given.\n" +
+                    "This converter converts " + number_channels + " channels." );
+          int frames_produced = 0;
+          int position = input_offset;
+          int end = input_offset + input_length;
+          while (position < end)
+          {
+               int chunk_length = Math.min(INPUT_CHUNK_SIZE, end - position);
+               for (int chan = 0; chan < number_channels; chan++)
+                    System.arraycopy(input[chan], position, history[chan], buffer_length, chunk_length);
+               buffer_length += chunk_length;
+               position += chunk_length;
+               frames_produced += produceOutput(output, output_offset + frames_produced, Long.MAX_VALUE);
+               discardUsedInput();
+          }
+          input_frames += input_length;
+          return frames_produced;
+     }
+
+
+     /**
+      * Stores the remaining output samples of the stream, as though the input
+      * were followed by silence, and then resets the converter so that a new
+      * stream may be converted.
+      *
+      * @param output              The arrays to store the output samples in.
+      *                            Must have room for the number of samples
+      *                            given by the
+      *                            <code>getMaximumOutputFrames</code> method
+      *                            for 0 input samples.
+      * @param output_offset       The index in each channel of
+      *                            <i>output</i> at which to store the first
+      *                            output sample.
+      * @return                    The number of output samples stored per
+      *                            channel.
+      */
+     public int flush(double[][] output, int output_offset)
+     {
+          if (output.length != number_channels)
+               throw new IllegalArgumentException( "Samples with " + output.length + " output channels given.\n" +
+                    "This converter converts " + number_channels + " channels." );
+          int half_length = filter_bank.half_length;
+          for (int chan = 0; chan < number_channels; chan++)
+               java.util.Arrays.fill(history[chan], buffer_length, buffer_length + half_length, 0.0);
+          buffer_length += half_length;
+          long frames_remaining = getOutputLength(input_frames) - output_frames;
+          int frames_produced = produceOutput(output, output_offset, frames_remaining);
+          reset();
+          return frames_produced;
+     }
+
+
+     /**
+      * Discards any stream in progress, so that a new stream may be
+      * converted.
+      */
+     public void reset()
+     {
+          // Treat the samples before the start of the stream as silence
+          int half_length = filter_bank.half_length;
+          for (int chan = 0; chan < number_channels; chan++)
+               java.util.Arrays.fill(history[chan], 0, half_length, 0.0);
+          buffer_start = -half_length;
+          buffer_length = half_length;
+          input_index = 0;
+          phase = 0;
+          input_frames = 0;
+          output_frames = 0;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Calculates every output sample whose filter lies entirely within the
+      * input samples held, up to the given number.
+      *
+      * @param output         The arrays to store the output samples in.
+      * @param output_offset  The index at which to store the first output
+      *                       sample.
+      * @param max_frames     The maximum number of output samples to
+      *                       calculate.
+      * @return               The number of output samples calculated.
+      */
+     private int produceOutput(double[][] output, int output_offset, long max_frames)
+     {
+          FilterBank bank = filter_bank;
+          int half_length = bank.half_length;
+          int filter_length = 2 * half_length;
+          long buffer_end = buffer_start + buffer_length;
+          int frames_produced = 0;
+          while (input_index + half_length < buffer_end && frames_produced < max_frames)
+          {
+               int first_tap = (int) (input_index - half_length + 1 - buffer_start);
+               int output_position = output_offset + frames_produced;
+               if (bank.exact)
+               {
+                    double[] filter = bank.filters[(int) phase];
+                    for (int chan = 0; chan < number_channels; chan++)
+                    {
+                         double[] channel = history[chan];
+                         double total = 0.0;
+                         for (int tap = 0; tap < filter_length; tap++)
+                              total += channel[first_tap + tap] * filter[tap];
+                         output[chan][output_position] = total;
+                    }
+               }
+               else
+               {
+                    // Interpolate between the two nearest filters
+                    double table_position = (double) phase * (bank.filters.length - 1) / (double) bank.interpolation_factor;
+                    int lower_index = (int) table_position;
+                    double upper_weight = table_position - lower_index;
+                    double[] lower_filter = bank.filters[lower_index];
+                    double[] upper_filter = bank.filters[lower_index + 1];
+                    for (int chan = 0; chan < number_channels; chan++)
+                    {
+                         double[] channel = history[chan];
+                         double lower_total = 0.0;
+                         double upper_total = 0.0;
+                         for (int tap = 0; tap < filter_length; tap++)
+                         {
+                              lower_total += channel[first_tap + tap] * lower_filter[tap];
+                              upper_total += channel[first_tap + tap] * upper_filter[tap];
+                         }
+                         output[chan][output_position] = lower_total + upper_weight * (upper_total - lower_total);
+                    }
+               }
+
+               // Advance by M/L input samples
+               phase += bank.decimation_factor;
+               input_index += phase / bank.interpolation_factor;
+               phase %= bank.interpolation_factor;
+               frames_produced++;
+          }
+          output_frames += frames_produced;
+          return frames_produced;
+     }
+
+
+     /**
+      * Moves the input samples still needed by later output samples to the
+      * start of the history buffer.
+      */
+     private void discardUsedInput()
+     {
+          long first_needed = input_index - filter_bank.half_length + 1;
+          int discard = (int) Math.min(buffer_length, Math.max(0, first_needed - buffer_start));
+          if (discard == 0)
+               return;
+          for (int chan = 0; chan < number_channels; chan++)
+               System.arraycopy(history[chan], discard, history[chan], 0, buffer_length - discard);
+          buffer_start += discard;
+          buffer_length -= discard;
+     }
+
+
+     /**
+      * Returns the normalized sinc function of the given value.
+      *
+      * @param x    The value.
+      * @return     sin(pi x) / (pi x), or 1 if x is 0.
+      */
+     private static double sinc(double x)
+     {
+          if (x == 0.0)
+               return 1.0;
+          double pi_x = Math.PI * x;
+          return Math.sin(pi_x) / pi_x;
+     }
+
+
+     /**
+      * Returns the zeroth order modified Bessel function of the first kind of
+      * the given value, as used by the Kaiser window.
+      *
+      * @param x    The value.
+      * @return     I0(x).
+      */
+     private static double besselI0(double x)
+     {
+          double total = 1.0;
+          double term = 1.0;
+          double half_x = x / 2.0;
+          for (int k = 1; k < 50; k++)
+          {
+               term *= (half_x / k) * (half_x / k);
+               total += term;
+               if (term < total * 1e-17)
+                    break;
+          }
+          return total;
+     }
+
+
+     /**
+      * Returns the greatest common divisor of the given positive values.
+      *
+      * @param a    The first value.
+      * @param b    The second value.
+      * @return     The greatest common divisor.
+      */
+     private static long greatestCommonDivisor(long a, long b)
+     {
+          while (b != 0)
+          {
+               long remainder = a % b;
+               a = b;
+               b = remainder;
+          }
+          return a;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * The filters for every fractional position for a given rate ratio.
+      * Immutable once constructed.
+      */
+     private static class FilterBank
+     {
+          double         input_rate;
+          double         output_rate;
+
+          /**
+           * L and M, the reduced numerator and denominator of the ratio of
+           * the output rate to the input rate.
+           */
+          long           interpolation_factor;
+          long           decimation_factor;
+
+          /**
+           * The number of taps of each filter on either side of its centre.
+           */
+          int            half_length;
+
+          /**
+           * Whether there is a filter for each of the L positions, rather
+           * than filters to interpolate between.
+           */
+          boolean        exact;
+
+          /**
+           * The filters. Filter p holds the weights of input samples
+           * i - half_length + 1 to i + half_length for an output sample at
+           * the input position i + p/L, or at i + p/(filters.length - 1) if
+           * the filters are not exact.
+           */
+          double[][]     filters;
+
+          FilterBank( double input_rate,
+               double output_rate,
+               int zero_crossings,
+               double cutoff )
+               throws Exception
+          {
+               if (!(input_rate > 0.0) || Double.isInfinite(input_rate) || !(output_rate > 0.0) || Double.isInfinite(output_rate))
+                    throw new Exception( "Sampling rates of " + input_rate + " and " + output_rate + " specified.\n" +
+                         "Both rates must be above 0." );
+               if (zero_crossings < 1)
+                    throw new Exception( "Number of zero crossings of " + zero_crossings + " specified.\n" +
+                         "This value must be above 0." );
+               if (!(cutoff > 0.0 && cutoff <= 1.0))
+                    throw new Exception( "Cutoff of " + cutoff + " specified.\n" +
+                         "This value must be above 0 and at most 1." );
+               this.input_rate = input_rate;
+               this.output_rate = output_rate;
+
+               // Reduce the ratio of the rates, to the nearest thousandth of
+               // a Hz
+               long input_millihertz = Math.max(1L, Math.round(input_rate * 1000.0));
+               long output_millihertz = Math.max(1L, Math.round(output_rate * 1000.0));
+               long divisor = greatestCommonDivisor(input_millihertz, output_millihertz);
+               interpolation_factor = output_millihertz / divisor;
+               decimation_factor = input_millihertz / divisor;
+
+               // Scale the filter to the lower Nyquist frequency, widening it
+               // when downsampling
+               double relative_cutoff = cutoff * Math.min(1.0, (double) interpolation_factor / (double) decimation_factor);
+               half_length = (int) Math.ceil(zero_crossings / relative_cutoff);
+
+               exact = interpolation_factor <= MAXIMUM_EXACT_PHASES;
+               int number_filters = exact ? (int) interpolation_factor : MAXIMUM_EXACT_PHASES + 1;
+               double positions = exact ? (double) interpolation_factor : (double) MAXIMUM_EXACT_PHASES;
+               filters = new double[number_filters][2 * half_length];
+               double window_scale = 1.0 / besselI0(KAISER_BETA);
+               for (int filter = 0; filter < number_filters; filter++)
+               {
+                    double fraction = filter / positions;
+                    double total = 0.0;
+                    for (int tap = 0; tap < 2 * half_length; tap++)
+                    {
+                         // The distance in input samples from the output
+                         // position to this tap
+                         double distance = (tap - half_length + 1) - fraction;
+                         double x = distance / half_length;
+                         double window = (Math.abs(x) >= 1.0) ? 0.0 : besselI0(KAISER_BETA * Math.sqrt(1.0 - x * x)) * window_scale;
+                         double weight = relative_cutoff * sinc(relative_cutoff * distance) * window;
+                         filters[filter][tap] = weight;
+                         total += weight;
+                    }
+                    for (int tap = 0; tap < 2 * half_length; tap++)
+                         filters[filter][tap] /= total;
+               }
+          }
+     }
+}
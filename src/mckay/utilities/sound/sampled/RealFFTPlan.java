@@ -0,0 +1,279 @@
+/*
+ * RealFFTPlan.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * A reusable plan for performing forward Fast Fourier Transforms of entirely
+ * real signals of one particular size. The spectrum of a real signal is
+ * Hermitian symmetric, so only the N/2+1 bins from 0 Hz up to and including
+ * the Nyquist frequency are unique. This class calculates only those bins, by
+ * packing the N real samples into N/2 complex samples, performing a complex
+ * transform of half the size and then separating the results. This roughly
+ * halves the computation and memory needed compared with a full complex
+ * transform.
+ *
+ * <p>Any size of at least 2 may be used, as the half size transform is
+ * performed by an <code>FFTPlan</code>, which supports any size. Odd sizes
+ * cannot be packed, and so are performed as full complex transforms, of which
+ * the (N+1)/2 unique bins are kept. N/2 is rounded down throughout for odd
+ * sizes.
+ *
+ * <p>The transforms performed follow the same conventions as the
+ * <code>FFT</code> class: a positive exponent is used, and magnitudes and
+ * powers are divided by the transform size. The Hanning window, if used, is
+ * applied as the input is packed, so the input itself is never changed.
+ *
+ * <p>Plans are not thread-safe, as a single plan may be used for only one
+ * transform at a time. Each thread should use its own plan.
+ *
+ * @author Cory McKay
+ */
+public class RealFFTPlan
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The number of real samples transformed.
+      */
+     private int              size;
+
+     /**
+      * The plan for the complex transform of half the size, or of the full
+      * size for odd sizes.
+      */
+     private FFTPlan          half_size_plan;
+
+     /**
+      * Holds the packed input and the result of the half size transform, or
+      * the input and result of the full size transform for odd sizes.
+      */
+     private double[]         packed_real;
+     private double[]         packed_imaginary;
+
+     /**
+      * Holds the imaginary part of the spectrum when only magnitudes or
+      * powers are requested.
+      */
+     private double[]         spectrum_imaginary;
+
+     /**
+      * The cosines and sines of the angles 2 * pi * k / size, for each k from
+      * 0 to size / 2, used to separate the half size transform.
+      */
+     private double[]         twiddle_real;
+     private double[]         twiddle_imaginary;
+
+     /**
+      * The Hanning window coefficients applied to the input. Is null if no
+      * window is applied.
+      */
+     private double[]         window;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Calculates the tables needed to perform forward transforms of real
+      * signals of the given size.
+      *
+      * @param size                The number of samples to transform. Must be
+      *                            at least 2.
+      * @param use_hanning_window  A value of true means that a Hanning window
+      *                            will be applied to the input of each
+      *                            transform.
+      * @throws Exception          Throws an informative exception if the size
+      *                            is less than 2.
+      */
+     public RealFFTPlan(int size, boolean use_hanning_window)
+          throws Exception
+     {
+          if (size < 2)
+               throw new Exception( "Real FFT size of " + size + " specified.\n" +
+                    "This value must be at least 2." );
+
+          this.size = size;
+          int half_size = size / 2;
+          int packed_size = (size % 2 == 0) ? half_size : size;
+          half_size_plan = new FFTPlan(packed_size, false, false);
+          packed_real = new double[packed_size];
+          packed_imaginary = new double[packed_size];
+          spectrum_imaginary = new double[half_size + 1];
+
+          twiddle_real = new double[half_size + 1];
+          twiddle_imaginary = new double[half_size + 1];
+          for (int k = 0; k <= half_size; k++)
+          {
+               double angle = 2.0 * Math.PI * k / size;
+               twiddle_real[k] = Math.cos(angle);
+               twiddle_imaginary[k] = Math.sin(angle);
+          }
+
+          if (use_hanning_window)
+          {
+               window = new double[size];
+               for (int i = 0; i < size; i++)
+                    window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+          }
+          else
+               window = null;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Transforms the given real signal, storing the N/2+1 unique bins of the
+      * result. The remaining bins of the full spectrum are the complex
+      * conjugates of these, in reverse order.
+      *
+      * @param input             The signal to transform. Must have a length
+      *                          equal to the size of this plan. Is not
+      *                          changed, unless it is also given as
+      *                          <i>real_output</i>, which is permitted as
+      *                          the input is copied into the plan's own
+      *                          buffers before any output is stored.
+      * @param real_output       The array to store the real part of bins 0 to
+      *                          N/2 in. Must have a length of at least N/2+1.
+      * @param imaginary_output  The array to store the imaginary part of bins
+      *                          0 to N/2 in. Must have a length of at least
+      *                          N/2+1.
+      * @throws IllegalArgumentException   If any array has the wrong length.
+      */
+     public void transform( double[] input,
+          double[] real_output,
+          double[] imaginary_output )
+     {
+          int half_size = size / 2;
+          if (input.length != size)
+               throw new IllegalArgumentException( "Array of length " + input.length + " given to a real FFT\n" +
+                    "of size " + size + "." );
+          if (real_output.length < half_size + 1 || imaginary_output.length < half_size + 1)
+               throw new IllegalArgumentException( "Output arrays for a real FFT of size " + size + " must\n" +
+                    "have a length of at least " + (half_size + 1) + "." );
+
+          // Odd sizes are transformed in full
+          if (size % 2 != 0)
+          {
+               for (int i = 0; i < size; i++)
+                    packed_real[i] = (window == null) ? input[i] : input[i] * window[i];
+               java.util.Arrays.fill(packed_imaginary, 0.0);
+               half_size_plan.transform(packed_real, packed_imaginary);
+               System.arraycopy(packed_real, 0, real_output, 0, half_size + 1);
+               System.arraycopy(packed_imaginary, 0, imaginary_output, 0, half_size + 1);
+               return;
+          }
+
+          // Pack even samples into the real part and odd samples into the
+          // imaginary part, applying the window if needed
+          if (window == null)
+               for (int i = 0; i < half_size; i++)
+               {
+                    packed_real[i] = input[2 * i];
+                    packed_imaginary[i] = input[2 * i + 1];
+               }
+          else
+               for (int i = 0; i < half_size; i++)
+               {
+                    packed_real[i] = input[2 * i] * window[2 * i];
+                    packed_imaginary[i] = input[2 * i + 1] * window[2 * i + 1];
+               }
+
+          // Transform the packed samples
+          half_size_plan.transform(packed_real, packed_imaginary);
+
+          // Separate the transforms of the even and odd samples and combine
+          // them into the bins of the full transform
+          for (int k = 0; k <= half_size; k++)
+          {
+               int this_bin = (k == half_size) ? 0 : k;
+               int mirror_bin = (k == 0) ? 0 : half_size - k;
+               double z_real = packed_real[this_bin];
+               double z_imag = packed_imaginary[this_bin];
+               double mirror_real = packed_real[mirror_bin];
+               double mirror_imag = -packed_imaginary[mirror_bin];
+
+               double even_real = 0.5 * (z_real + mirror_real);
+               double even_imag = 0.5 * (z_imag + mirror_imag);
+               double odd_real = 0.5 * (z_imag - mirror_imag);
+               double odd_imag = -0.5 * (z_real - mirror_real);
+
+               real_output[k] = even_real + twiddle_real[k] * odd_real - twiddle_imaginary[k] * odd_imag;
+               imaginary_output[k] = even_imag + twiddle_real[k] * odd_imag + twiddle_imaginary[k] * odd_real;
+          }
+     }
+
+
+     /**
+      * Calculates the magnitude spectrum of the given real signal, scaled in
+      * the same way as the <code>getMagnitudeSpectrum</code> method of the
+      * <code>FFT</code> class.
+      *
+      * @param input        The signal to transform. Must have a length equal
+      *                     to the size of this plan. Is not changed.
+      * @param magnitudes   The array to store the magnitudes of bins 0 to N/2
+      *                     in. Must have a length of at least N/2+1.
+      * @throws IllegalArgumentException   If any array has the wrong length.
+      */
+     public void getMagnitudeSpectrum(double[] input, double[] magnitudes)
+     {
+          getPowerSpectrum(input, magnitudes);
+          for (int k = 0; k <= size / 2; k++)
+               magnitudes[k] = Math.sqrt(magnitudes[k] * size) / size;
+     }
+
+
+     /**
+      * Calculates the power spectrum of the given real signal, scaled in the
+      * same way as the <code>getPowerSpectrum</code> method of the
+      * <code>FFT</code> class.
+      *
+      * @param input        The signal to transform. Must have a length equal
+      *                     to the size of this plan. Is not changed.
+      * @param powers       The array to store the powers of bins 0 to N/2 in.
+      *                     Must have a length of at least N/2+1.
+      * @throws IllegalArgumentException   If any array has the wrong length.
+      */
+     public void getPowerSpectrum(double[] input, double[] powers)
+     {
+          int half_size = size / 2;
+          if (powers.length < half_size + 1)
+               throw new IllegalArgumentException( "Output array for a real FFT of size " + size + " must\n" +
+                    "have a length of at least " + (half_size + 1) + "." );
+
+          transform(input, powers, spectrum_imaginary);
+          for (int k = 0; k <= half_size; k++)
+               powers[k] = (powers[k] * powers[k] + spectrum_imaginary[k] * spectrum_imaginary[k]) / size;
+     }
+
+
+     /**
+      * Returns the number of real samples transformed by this plan.
+      *
+      * @return    The size of this plan.
+      */
+     public int getSize()
+     {
+          return size;
+     }
+
+
+     /**
+      * Returns the number of unique bins produced by this plan, which is N/2+1
+      * rounded down.
+      *
+      * @return    The number of output bins.
+      */
+     public int getNumberBins()
+     {
+          return size / 2 + 1;
+     }
+}
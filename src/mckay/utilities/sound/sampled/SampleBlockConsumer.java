@@ -0,0 +1,43 @@
+/*
+ * SampleBlockConsumer.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+/**
+ * An interface for objects that receive decoded audio one block at a time, as
+ * it is pulled from an <code>AudioInputStream</code> by the
+ * <code>streamSampleValues</code> method of the
+ * <code>AudioMethodsGeneral</code> class. This allows audio to be processed at
+ * constant memory, and before the entire stream has been decoded.
+ *
+ * @author Cory McKay
+ */
+public interface SampleBlockConsumer
+{
+     /**
+      * Processes one block of decoded samples.
+      *
+      * <p><b>WARNING:</b> The <i>block</i> array is reused for every block of
+      * the stream, so its contents are only valid until this method returns.
+      * Implementing classes must copy any samples that they wish to keep.
+      *
+      * @param block               The decoded samples. The first indice
+      *                            corresponds to channel and the second to
+      *                            sample number. All samples should fall
+      *                            between -1 and +1.
+      * @param number_frames       The number of valid samples per channel in
+      *                            <i>block</i>. This may be less than the
+      *                            length of the arrays in <i>block</i> for the
+      *                            final block of a stream.
+      * @param first_frame         The index, relative to the start of the
+      *                            stream, of the first sample in <i>block</i>.
+      * @throws Exception          An informative exception may be thrown to
+      *                            abort decoding of the rest of the stream.
+      */
+     public void processBlock(double[][] block, int number_frames, long first_frame)
+          throws Exception;
+}
@@ -0,0 +1,239 @@
+/*
+ * SampleBlockReader.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import javax.sound.sampled.*;
+
+
+/**
+ * Pulls fixed-size blocks of sample frames from an
+ * <code>AudioInputStream</code> and decodes them into arrays of doubles. Only
+ * one block's worth of encoded bytes is held in memory at a time, so
+ * arbitrarily long streams may be decoded at constant memory.
+ *
+ * <p>Blocks may either be decoded into an internal block that is reused for
+ * each call to <code>readBlock</code>, or decoded directly into arrays
+ * supplied by the caller using <code>readFrames</code>.
+ *
+ * <p>The <code>AudioInputStream</code> must use an encoding that can be
+ * decoded by the <code>decodeSampleValues</code> method of the
+ * <code>AudioMethodsGeneral</code> class. The
+ * <code>getDecodableAudioStream</code> method of that class may be used to
+ * convert other streams before they are passed here.
+ *
+ * @author Cory McKay
+ */
+public class SampleBlockReader
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The stream from which samples are read.
+      */
+     private AudioInputStream      audio_input_stream;
+
+     /**
+      * The AudioFormat of audio_input_stream.
+      */
+     private AudioFormat           audio_format;
+
+     /**
+      * The number of bytes in each sample frame.
+      */
+     private int                   frame_size;
+
+     /**
+      * Holds encoded bytes between reading and decoding. Sized to hold one
+      * block of frames.
+      */
+     private byte[]                byte_buffer;
+
+     /**
+      * The number of bytes at the start of byte_buffer that were read but
+      * did not make up a complete frame on the last read, and must be decoded
+      * as part of the next block.
+      */
+     private int                   leftover_bytes;
+
+     /**
+      * The reusable block filled by readBlock. The first indice corresponds to
+      * channel and the second to sample number.
+      */
+     private double[][]            block;
+
+     /**
+      * The total number of frames decoded so far.
+      */
+     private long                  frames_read;
+
+     /**
+      * Set to true once the end of audio_input_stream has been reached.
+      */
+     private boolean               end_of_stream;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to read from the given stream in blocks of the given size.
+      *
+      * @param audio_input_stream  The stream to decode.
+      * @param frames_per_block    The maximum number of sample frames to
+      *                            decode with each read.
+      * @throws Exception          Throws an informative exception if the
+      *                            stream is null, if the block size is not
+      *                            positive or if the stream's encoding cannot
+      *                            be decoded.
+      */
+     public SampleBlockReader( AudioInputStream audio_input_stream,
+          int frames_per_block )
+          throws Exception
+     {
+          if (audio_input_stream == null)
+               throw new Exception("Given AudioInputStream is empty.");
+          if (frames_per_block < 1)
+               throw new Exception( "Block size of " + frames_per_block + " frames specified.\n" +
+                    "This value must be above 0." );
+
+          audio_format = audio_input_stream.getFormat();
+          if (!AudioMethodsGeneral.isDecodable(audio_format))
+               throw new Exception( "Only 8, 16, 24 or 32 bit integer PCM samples or 32 or 64 bit\n" +
+                    "floating point PCM samples can be analyzed currently." );
+
+          this.audio_input_stream = audio_input_stream;
+          frame_size = audio_format.getFrameSize();
+          byte_buffer = new byte[frames_per_block * frame_size];
+          block = new double[audio_format.getChannels()][frames_per_block];
+          leftover_bytes = 0;
+          frames_read = 0;
+          end_of_stream = false;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Decodes the next block of frames into the internal block, which can
+      * then be accessed with <code>getBlock</code>. The contents of the
+      * internal block are overwritten by each call.
+      *
+      * @return               The number of frames decoded into the block, or
+      *                       -1 if the end of the stream has been reached.
+      * @throws Exception     Throws an exception if the stream cannot be read.
+      */
+     public int readBlock()
+          throws Exception
+     {
+          return readFrames(block, 0, block[0].length);
+     }
+
+
+     /**
+      * Decodes up to <i>max_frames</i> frames directly into the given arrays,
+      * starting at the given offset. Fewer frames are only decoded if the end
+      * of the stream is reached.
+      *
+      * @param destination    The arrays to decode into. The first indice
+      *                       corresponds to channel and the second to sample
+      *                       number. Must have at least as many channels as
+      *                       the stream.
+      * @param offset         The sample index in <i>destination</i> at which
+      *                       to store the first decoded frame.
+      * @param max_frames     The maximum number of frames to decode.
+      * @return               The number of frames decoded, or -1 if the end of
+      *                       the stream has already been reached.
+      * @throws Exception     Throws an exception if the stream cannot be read.
+      */
+     public int readFrames(double[][] destination, int offset, int max_frames)
+          throws Exception
+     {
+          if (end_of_stream)
+               return -1;
+
+          int frames_per_block = byte_buffer.length / frame_size;
+          int total_decoded = 0;
+          while (total_decoded < max_frames && !end_of_stream)
+          {
+               // Fill the byte buffer with as many whole frames as are needed
+               int frames_wanted = Math.min(frames_per_block, max_frames - total_decoded);
+               int bytes_wanted = frames_wanted * frame_size;
+               int bytes_available = leftover_bytes;
+               while (bytes_available < bytes_wanted)
+               {
+                    int bytes_just_read = audio_input_stream.read( byte_buffer,
+                         bytes_available,
+                         bytes_wanted - bytes_available );
+                    if (bytes_just_read < 0)
+                    {
+                         end_of_stream = true;
+                         break;
+                    }
+                    bytes_available += bytes_just_read;
+               }
+
+               // Decode all complete frames
+               int complete_frames = bytes_available / frame_size;
+               if (complete_frames > 0)
+                    AudioMethodsGeneral.decodeSampleValues( byte_buffer,
+                         0,
+                         audio_format,
+                         destination,
+                         offset + total_decoded,
+                         complete_frames );
+               total_decoded += complete_frames;
+
+               // Keep any partial frame for the next read
+               leftover_bytes = bytes_available - complete_frames * frame_size;
+               if (leftover_bytes > 0)
+                    System.arraycopy(byte_buffer, complete_frames * frame_size, byte_buffer, 0, leftover_bytes);
+          }
+
+          frames_read += total_decoded;
+          if (total_decoded == 0 && end_of_stream)
+               return -1;
+          return total_decoded;
+     }
+
+
+     /**
+      * Returns the internal block filled by <code>readBlock</code>. The same
+      * array is returned (and overwritten) for every block.
+      *
+      * @return    The internal block. The first indice corresponds to channel
+      *            and the second to sample number.
+      */
+     public double[][] getBlock()
+     {
+          return block;
+     }
+
+
+     /**
+      * Returns the number of frames decoded so far.
+      *
+      * @return    The number of frames decoded so far.
+      */
+     public long getFramesRead()
+     {
+          return frames_read;
+     }
+
+
+     /**
+      * Returns the <code>AudioFormat</code> of the stream being decoded.
+      *
+      * @return    The <code>AudioFormat</code> of the stream being decoded.
+      */
+     public AudioFormat getAudioFormat()
+     {
+          return audio_format;
+     }
+}
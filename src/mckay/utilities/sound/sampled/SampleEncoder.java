@@ -0,0 +1,341 @@
+/*
+ * SampleEncoder.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import javax.sound.sampled.*;
+
+
+/**
+ * Encodes samples stored as doubles into interleaved integer PCM bytes. The
+ * samples of each channel are clipped to between -1 and +1, scaled and
+ * quantized a small block at a time, and then stored directly into the
+ * destination array, so no clipped or quantized copy of all of the samples
+ * is ever made. Any number of channels, bit depths of 8, 16, 24 or 32 bits,
+ * signed or unsigned encoding and either byte order may be used.
+ *
+ * <p>Without dithering, samples are multiplied by the value returned by the
+ * <code>findMaximumSampleValue</code> method of the
+ * <code>AudioMethodsDSP</code> class and truncated towards zero, as the
+ * <code>writeSamplesToBuffer</code> method of the
+ * <code>AudioMethodsGeneral</code> class always has. This is done by the
+ * <code>quantize</code> kernel of the <code>SampleKernels</code> class. With
+ * dithering, triangular probability density function (TPDF) noise with a
+ * peak amplitude of one quantization step is added to each scaled sample
+ * before it is rounded to the nearest step. This decorrelates the
+ * quantization error from the signal, which avoids audible distortion of
+ * quiet passages at low bit depths.
+ *
+ * <p>Encoders that dither are not thread-safe, as they hold the state of
+ * their noise generator. Each thread should use its own encoder.
+ *
+ * @author Cory McKay
+ */
+public class SampleEncoder
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The number of samples of each channel that are quantized at once.
+      */
+     private static final int QUANTIZATION_BLOCK_SIZE = 1024;
+
+     /**
+      * The number of bytes in each encoded sample.
+      */
+     private int              bytes_per_sample;
+
+     /**
+      * Whether the most significant byte of each sample is stored first.
+      */
+     private boolean          big_endian;
+
+     /**
+      * The value added to each quantized sample so that it is stored
+      * unsigned. Is 0 for signed encoding.
+      */
+     private int              unsigned_offset;
+
+     /**
+      * The value that a sample of +1 is quantized to without dithering.
+      */
+     private double           max_sample_value;
+
+     /**
+      * The lowest and highest values that a quantized sample may have.
+      */
+     private double           lowest_quantized_value;
+     private double           highest_quantized_value;
+
+     /**
+      * Whether TPDF dither is added before quantization.
+      */
+     private boolean          dither;
+
+     /**
+      * The state of the xorshift generator used to produce the dither noise.
+      */
+     private long             random_state;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares to encode samples in the given format.
+      *
+      * @param audio_format   The format to encode in. Must use signed or
+      *                       unsigned integer PCM with a bit depth of 8, 16,
+      *                       24 or 32 bits.
+      * @param dither         True if TPDF dither is to be added before
+      *                       quantization.
+      * @throws Exception     Throws an informative exception if the format
+      *                       cannot be encoded.
+      */
+     public SampleEncoder(AudioFormat audio_format, boolean dither)
+          throws Exception
+     {
+          this( audio_format.getSampleSizeInBits(),
+               !audio_format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED),
+               audio_format.isBigEndian(),
+               dither );
+          if (!isEncodable(audio_format))
+               throw new Exception( "Only 8, 16, 24 or 32 bit integer PCM samples with no padding\n" +
+                    "can be encoded currently." );
+     }
+
+
+     /**
+      * Prepares to encode samples with the given bit depth and encoding.
+      *
+      * @param bit_depth      The number of bits in each sample. Must be 8,
+      *                       16, 24 or 32.
+      * @param signed         True for signed samples, false for unsigned.
+      * @param big_endian     True if the most significant byte of each
+      *                       sample is to be stored first.
+      * @param dither         True if TPDF dither is to be added before
+      *                       quantization.
+      * @throws Exception     Throws an informative exception if the bit depth
+      *                       is not supported.
+      */
+     public SampleEncoder( int bit_depth,
+          boolean signed,
+          boolean big_endian,
+          boolean dither )
+          throws Exception
+     {
+          if (bit_depth != 8 && bit_depth != 16 && bit_depth != 24 && bit_depth != 32)
+               throw new Exception( "Bit depth of " + bit_depth + " specified.\n" +
+                    "Only bit depths of 8, 16, 24 or 32 can be encoded currently." );
+
+          bytes_per_sample = bit_depth / 8;
+          this.big_endian = big_endian;
+          unsigned_offset = signed ? 0 : 1 << (bit_depth - 1);
+          max_sample_value = AudioMethodsDSP.findMaximumSampleValue(bit_depth);
+          lowest_quantized_value = -Math.pow(2.0, bit_depth - 1);
+          highest_quantized_value = Math.pow(2.0, bit_depth - 1) - 1.0;
+          this.dither = dither;
+          random_state = System.nanoTime() | 1L;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns whether samples can be encoded in the given format.
+      *
+      * @param audio_format   The format to check.
+      * @return               True if samples can be encoded in the format.
+      */
+     public static boolean isEncodable(AudioFormat audio_format)
+     {
+          AudioFormat.Encoding encoding = audio_format.getEncoding();
+          if (!encoding.equals(AudioFormat.Encoding.PCM_SIGNED) && !encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+               return false;
+          int bit_depth = audio_format.getSampleSizeInBits();
+          if (bit_depth != 8 && bit_depth != 16 && bit_depth != 24 && bit_depth != 32)
+               return false;
+          return audio_format.getChannels() > 0 &&
+               audio_format.getFrameSize() == audio_format.getChannels() * (bit_depth / 8);
+     }
+
+
+     /**
+      * Returns the number of bytes in each encoded sample of one channel.
+      *
+      * @return    The number of bytes per sample.
+      */
+     public int getBytesPerSample()
+     {
+          return bytes_per_sample;
+     }
+
+
+     /**
+      * Encodes the given block of samples into interleaved frames.
+      *
+      * @param samples        The samples to encode. The first indice
+      *                       corresponds to the channel and the second to the
+      *                       sample number. Values outside of -1 to +1 are
+      *                       clipped.
+      * @param sample_offset  The index in each channel of the first sample to
+      *                       encode.
+      * @param number_frames  The number of samples per channel to encode.
+      * @param buffer         The array to store the encoded frames in. Must
+      *                       have room for <i>number_frames</i> frames of
+      *                       <i>samples.length</i> channels after
+      *                       <i>byte_offset</i>.
+      * @param byte_offset    The index in <i>buffer</i> at which to store the
+      *                       first byte of the first frame.
+      */
+     public void encode( double[][] samples,
+          int sample_offset,
+          int number_frames,
+          byte[] buffer,
+          int byte_offset )
+     {
+          // Quantize each channel a block at a time, so that the quantized
+          // values of a block stay in the cache while they are stored
+          int[] quantized = new int[Math.min(number_frames, QUANTIZATION_BLOCK_SIZE)];
+          int frame_size = samples.length * bytes_per_sample;
+          for (int chan = 0; chan < samples.length; chan++)
+          {
+               int position = byte_offset + chan * bytes_per_sample;
+               for (int block_start = 0; block_start < number_frames; block_start += quantized.length)
+               {
+                    int block_length = Math.min(quantized.length, number_frames - block_start);
+                    quantize(samples[chan], sample_offset + block_start, block_length, quantized);
+                    store(quantized, block_length, buffer, position, frame_size);
+                    position += block_length * frame_size;
+               }
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Clips, scales and quantizes the given block of samples, adding dither
+      * if requested. Samples are quantized without dither by the
+      * <code>quantize</code> kernel of the <code>SampleKernels</code> class.
+      *
+      * @param samples        The samples to quantize.
+      * @param offset         The index of the first sample to quantize.
+      * @param length         The number of samples to quantize.
+      * @param destination    The array to store the signed quantized values
+      *                       in, starting at index 0.
+      */
+     private void quantize(double[] samples, int offset, int length, int[] destination)
+     {
+          if (!dither)
+          {
+               SampleKernels.getInstance().quantize(samples, offset, length, max_sample_value, destination, 0);
+               return;
+          }
+
+          for (int samp = 0; samp < length; samp++)
+          {
+               // Add the difference of two uniform random values, which has a
+               // triangular distribution between -1 and +1 quantization steps
+               double value = Math.min(1.0, Math.max(-1.0, samples[offset + samp])) * max_sample_value;
+               value += nextUniform() - nextUniform();
+               value = Math.floor(value + 0.5);
+               destination[samp] = (int) Math.min(highest_quantized_value, Math.max(lowest_quantized_value, value));
+          }
+     }
+
+
+     /**
+      * Stores the given quantized values of one channel into every frame of
+      * a block of frames, in the encoding of this encoder.
+      *
+      * @param quantized      The signed quantized values to store.
+      * @param length         The number of values to store.
+      * @param buffer         The array to store the encoded values in.
+      * @param position       The index in <i>buffer</i> of the first byte of
+      *                       the first value.
+      * @param frame_size     The number of bytes between the values of
+      *                       successive frames.
+      */
+     private void store( int[] quantized,
+          int length,
+          byte[] buffer,
+          int position,
+          int frame_size )
+     {
+          switch (bytes_per_sample)
+          {
+               case 1:
+                    for (int samp = 0; samp < length; samp++)
+                    {
+                         buffer[position] = (byte) (quantized[samp] + unsigned_offset);
+                         position += frame_size;
+                    }
+                    break;
+               case 2:
+               {
+                    int high = big_endian ? 0 : 1;
+                    int low = 1 - high;
+                    for (int samp = 0; samp < length; samp++)
+                    {
+                         int value = quantized[samp] + unsigned_offset;
+                         buffer[position + high] = (byte) (value >> 8);
+                         buffer[position + low] = (byte) value;
+                         position += frame_size;
+                    }
+                    break;
+               }
+               case 3:
+               {
+                    int high = big_endian ? 0 : 2;
+                    int low = 2 - high;
+                    for (int samp = 0; samp < length; samp++)
+                    {
+                         int value = quantized[samp] + unsigned_offset;
+                         buffer[position + high] = (byte) (value >> 16);
+                         buffer[position + 1] = (byte) (value >> 8);
+                         buffer[position + low] = (byte) value;
+                         position += frame_size;
+                    }
+                    break;
+               }
+               default:
+               {
+                    int first = big_endian ? 0 : 3;
+                    int step = big_endian ? 1 : -1;
+                    for (int samp = 0; samp < length; samp++)
+                    {
+                         int value = quantized[samp] + unsigned_offset;
+                         buffer[position + first] = (byte) (value >> 24);
+                         buffer[position + first + step] = (byte) (value >> 16);
+                         buffer[position + first + 2 * step] = (byte) (value >> 8);
+                         buffer[position + first + 3 * step] = (byte) value;
+                         position += frame_size;
+                    }
+               }
+          }
+     }
+
+
+     /**
+      * Returns a pseudo-random value uniformly distributed between 0 and 1,
+      * using a xorshift generator, which is much cheaper than
+      * <code>java.util.Random</code> and needs no synchronization.
+      *
+      * @return    The random value.
+      */
+     private double nextUniform()
+     {
+          random_state ^= random_state << 13;
+          random_state ^= random_state >>> 7;
+          random_state ^= random_state << 17;
+          return (random_state >>> 11) * 0x1.0p-53;
+     }
+}
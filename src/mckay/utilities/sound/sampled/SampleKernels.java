@@ -0,0 +1,280 @@
+/*
+ * SampleKernels.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * The element-wise loops over arrays of samples that dominate the cost of
+ * mixing down, applying gain and panning, clipping, finding peaks and
+ * quantizing. The methods of this class are scalar implementations, written
+ * as simple counted loops over single arrays so that the JIT compiler can
+ * unroll them and, where it is able, vectorize them.
+ *
+ * <p>The implementation actually used by this package is the one returned by
+ * the <code>getInstance</code> method. This is an instance of the class named
+ * by the <code>mckay.utilities.sound.sampled.kernels</code> system property
+ * if it is set, or otherwise of the class named by
+ * <code>VECTOR_KERNELS_CLASS_NAME</code> if it is on the class path. Either
+ * must be a subclass of this class with a public no-argument constructor.
+ * This allows the optionally built implementation based on the JDK Vector API,
+ * whose source is kept in the separate <code>src-vector</code> source root, to
+ * be used on platforms that support it without this package depending on the
+ * incubator module. That implementation is only loaded if the JVM is started
+ * with <code>--add-modules jdk.incubator.vector</code>. If neither class can
+ * be loaded, the scalar implementation is used. Setting the property to
+ * <code>scalar</code> forces the scalar implementation.
+ *
+ * <p>Subclasses must produce the same results as the scalar implementation,
+ * apart from differences in rounding where this is documented, and must be
+ * thread-safe.
+ *
+ * @author Cory McKay
+ */
+public class SampleKernels
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The name of the optional vectorized implementation that is used if it
+      * is present on the class path.
+      */
+     public static final String VECTOR_KERNELS_CLASS_NAME = "mckay.utilities.sound.sampled.vector.VectorSampleKernels";
+
+     /**
+      * The name of the system property that may be used to choose the
+      * implementation.
+      */
+     public static final String KERNELS_PROPERTY = "mckay.utilities.sound.sampled.kernels";
+
+
+     /**
+      * The implementation used by this package. Is null until first
+      * requested.
+      */
+     private static volatile SampleKernels instance = null;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Creates the scalar implementation. The <code>getInstance</code> method
+      * will usually be used rather than this constructor.
+      */
+     public SampleKernels()
+     {
+     }
+
+
+     /* PUBLIC STATIC METHODS *************************************************/
+
+
+     /**
+      * Returns the implementation used by this package, choosing it the first
+      * time that this is called.
+      *
+      * @return    The implementation to use.
+      */
+     public static SampleKernels getInstance()
+     {
+          SampleKernels kernels = instance;
+          if (kernels == null)
+          {
+               String class_name = System.getProperty(KERNELS_PROPERTY, VECTOR_KERNELS_CLASS_NAME);
+               kernels = loadImplementation(class_name);
+               if (kernels == null)
+                    kernels = new SampleKernels();
+               instance = kernels;
+          }
+          return kernels;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns a short description of this implementation, such as for
+      * reporting which implementation is in use.
+      *
+      * @return    The name of this implementation.
+      */
+     public String getName()
+     {
+          return "scalar";
+     }
+
+
+     /**
+      * Mixes the given block of channels down into one channel with equal
+      * gain. Each destination sample is the sum of the channels, added in
+      * channel order, divided by the number of channels.
+      *
+      * @param channels            The samples to mix down. The first indice
+      *                            corresponds to the channel and the second
+      *                            to the sample number. Must contain at least
+      *                            one channel.
+      * @param offset              The index in each channel of the first
+      *                            sample to mix down.
+      * @param destination         The array to store the mixed down samples
+      *                            in. May be one of the channels.
+      * @param destination_offset  The index in <i>destination</i> at which to
+      *                            store the first mixed down sample.
+      * @param length              The number of samples to mix down.
+      */
+     public void mixDown( double[][] channels,
+          int offset,
+          double[] destination,
+          int destination_offset,
+          int length )
+     {
+          double[] first_channel = channels[0];
+          if (first_channel != destination || offset != destination_offset)
+               System.arraycopy(first_channel, offset, destination, destination_offset, length);
+          for (int chan = 1; chan < channels.length; chan++)
+          {
+               double[] channel = channels[chan];
+               for (int samp = 0; samp < length; samp++)
+                    destination[destination_offset + samp] += channel[offset + samp];
+          }
+          if (channels.length > 1)
+          {
+               double number_channels = (double) channels.length;
+               for (int samp = 0; samp < length; samp++)
+                    destination[destination_offset + samp] /= number_channels;
+          }
+     }
+
+
+     /**
+      * Multiplies the given block of samples in place by the given value.
+      *
+      * @param samples        The samples to modify.
+      * @param offset         The index of the first sample to modify.
+      * @param length         The number of samples to modify.
+      * @param multiplier     The value to multiply each sample by.
+      */
+     public void scale(double[] samples, int offset, int length, double multiplier)
+     {
+          for (int samp = offset; samp < offset + length; samp++)
+               samples[samp] *= multiplier;
+     }
+
+
+     /**
+      * Multiplies the given block of samples in place by the given value,
+      * clips the results to between -1 and +1 and then multiplies them by the
+      * given scale.
+      *
+      * @param samples        The samples to modify.
+      * @param offset         The index of the first sample to modify.
+      * @param length         The number of samples to modify.
+      * @param multiplier     The value to multiply each sample by before
+      *                       clipping.
+      * @param scale          The value to multiply each sample by after
+      *                       clipping.
+      */
+     public void scaleAndClip( double[] samples,
+          int offset,
+          int length,
+          double multiplier,
+          double scale )
+     {
+          for (int samp = offset; samp < offset + length; samp++)
+               samples[samp] = Math.min(1.0, Math.max(-1.0, samples[samp] * multiplier)) * scale;
+     }
+
+
+     /**
+      * Returns the highest absolute value in the given block of samples, or
+      * the given starting value if it is higher. NaN samples are ignored.
+      *
+      * @param samples        The samples to search.
+      * @param offset         The index of the first sample to search.
+      * @param length         The number of samples to search.
+      * @param peak_so_far    The highest absolute value found so far, such as
+      *                       in other blocks or channels.
+      * @return               The highest absolute value found.
+      */
+     public double findPeak(double[] samples, int offset, int length, double peak_so_far)
+     {
+          double peak = peak_so_far;
+          for (int samp = offset; samp < offset + length; samp++)
+          {
+               double value = Math.abs(samples[samp]);
+               if (value > peak)
+                    peak = value;
+          }
+          return peak;
+     }
+
+
+     /**
+      * Clips the given block of samples to between -1 and +1, multiplies them
+      * by the given maximum sample value and truncates the results towards
+      * zero to give integer PCM sample values. NaN samples are quantized to
+      * 0. The samples are not changed.
+      *
+      * @param samples             The samples to quantize.
+      * @param offset              The index of the first sample to quantize.
+      * @param length              The number of samples to quantize.
+      * @param max_sample_value    The value that a sample of +1 is quantized
+      *                            to, as given by the
+      *                            <code>findMaximumSampleValue</code> method
+      *                            of the <code>AudioMethodsDSP</code> class.
+      * @param destination         The array to store the quantized samples
+      *                            in.
+      * @param destination_offset  The index in <i>destination</i> at which to
+      *                            store the first quantized sample.
+      */
+     public void quantize( double[] samples,
+          int offset,
+          int length,
+          double max_sample_value,
+          int[] destination,
+          int destination_offset )
+     {
+          for (int samp = 0; samp < length; samp++)
+          {
+               double value = Math.min(1.0, Math.max(-1.0, samples[offset + samp]));
+               destination[destination_offset + samp] = (int) (value * max_sample_value);
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Creates an instance of the named implementation.
+      *
+      * @param class_name     The fully qualified name of the implementation,
+      *                       or "scalar".
+      * @return               The implementation, or null if it could not be
+      *                       loaded or is not a subclass of this class.
+      */
+     private static SampleKernels loadImplementation(String class_name)
+     {
+          if (class_name == null || class_name.equals("scalar"))
+               return null;
+          try
+          {
+               Class<?> implementation = Class.forName(class_name);
+               if (!SampleKernels.class.isAssignableFrom(implementation))
+                    return null;
+               return (SampleKernels) implementation.getDeclaredConstructor().newInstance();
+          }
+          catch (Throwable t)
+          {
+               // The implementation is absent or its module is not available
+               // on this platform
+               return null;
+          }
+     }
+}
@@ -0,0 +1,407 @@
+/*
+ * SampleProcessingChain.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * Applies a gain, stereo panning, clipping and normalization to blocks of
+ * samples in place, in that order. The operations are fused, so each block is
+ * written only once no matter how many of the operations are enabled, and no
+ * memory is allocated. This makes objects of this class suitable for render
+ * loops that process many blocks in caller-owned buffers, unlike the
+ * <code>applyGain</code>, <code>clipSamples</code> and
+ * <code>normalizeSamples</code> methods of the <code>AudioMethodsDSP</code>
+ * class, which each return a new copy of the samples.
+ *
+ * <p>The gain and panning are applied as by the
+ * <code>applyGainAndPanning</code> method of the <code>AudioMethodsDSP</code>
+ * class, except that any gain may be used. Clipping limits samples to between
+ * -1 and +1. Normalization scales each processed block dependantly across
+ * channels so that the absolute value of its highest sample is 1, and does
+ * nothing if all of its samples are 0. As the peak of a block must be known
+ * before any of it can be normalized, enabling normalization adds one
+ * read-only pass over each block.
+ *
+ * <p>A typical use is:
+ *
+ * <pre>
+ *     SampleProcessingChain chain = new SampleProcessingChain();
+ *     chain.setGain(0.8);
+ *     chain.setPanning(-0.25);
+ *     chain.setClipping(true);
+ *     while (...)
+ *     {
+ *          ... fill buffer ...
+ *          chain.process(buffer, 0, block_length);
+ *     }
+ * </pre>
+ *
+ * <p>Double precision blocks are processed with the kernels returned by the
+ * <code>getInstance</code> method of the <code>SampleKernels</code> class.
+ * Single precision blocks are processed by loops in this class that apply
+ * the same operations in the same order, with the arithmetic done in double
+ * precision, since the kernels only operate on arrays of doubles and
+ * converting each block to doubles and back would cost more than the loops
+ * themselves. Adding single precision kernels would instead require every
+ * implementation of <code>SampleKernels</code> to provide them. The results
+ * of the two precisions therefore differ only in the final rounding to
+ * single precision.
+ *
+ * <p>Chains are also <code>AudioBlockProcessor</code> objects, and so may be
+ * added directly to a <code>DuplexAudioEngine</code>.
+ *
+ * <p>Objects of this class hold no per-block state, so one chain may be used
+ * by several threads at once as long as its settings are not changed.
+ *
+ * @author Cory McKay
+ */
+public class SampleProcessingChain
+     implements AudioBlockProcessor
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The gain applied to all channels.
+      */
+     private double           gain;
+
+     /**
+      * The relative strength of the two channels of stereo samples, from -1
+      * (left only) to +1 (right only).
+      */
+     private double           panning;
+
+     /**
+      * Whether samples are clipped to between -1 and +1.
+      */
+     private boolean          clipping;
+
+     /**
+      * Whether each processed block is normalized.
+      */
+     private boolean          normalization;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Creates a chain that leaves samples unchanged until its settings are
+      * changed. The gain is 1, the panning is 0 and clipping and
+      * normalization are disabled.
+      */
+     public SampleProcessingChain()
+     {
+          gain = 1.0;
+          panning = 0.0;
+          clipping = false;
+          normalization = false;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Sets the gain applied to all channels. A negative gain effectively
+      * applies a phase shift of pi.
+      *
+      * @param gain           The gain to apply.
+      * @throws Exception     Throws an informative exception if the gain is
+      *                       not a finite number.
+      */
+     public void setGain(double gain)
+          throws Exception
+     {
+          if (Double.isNaN(gain) || Double.isInfinite(gain))
+               throw new Exception( "Gain of " + gain + " specified.\n" +
+                    "This value must be a finite number." );
+          this.gain = gain;
+     }
+
+
+     /**
+      * Sets the relative strength of the two stereo channels. This setting is
+      * ignored for samples that do not have exactly two channels.
+      *
+      * @param panning        Value between -1 and +1, with -1 corresponding
+      *                       to full amplitude on the left channel and
+      *                       silence on the right, and +1 corresponding to
+      *                       the reverse. A value of 0 attenuates neither
+      *                       channel.
+      * @throws Exception     Throws an informative exception if the panning
+      *                       is not between -1 and +1.
+      */
+     public void setPanning(double panning)
+          throws Exception
+     {
+          if (!(panning >= -1.0 && panning <= 1.0))
+               throw new Exception( "Panning of " + panning + " specified.\n" +
+                    "This value must be between -1.0 and 1.0." );
+          this.panning = panning;
+     }
+
+
+     /**
+      * Sets whether samples are clipped to between -1 and +1 after the gain
+      * and panning are applied.
+      *
+      * @param clipping  True if samples are to be clipped.
+      */
+     public void setClipping(boolean clipping)
+     {
+          this.clipping = clipping;
+     }
+
+
+     /**
+      * Sets whether each processed block is normalized after the gain,
+      * panning and clipping are applied.
+      *
+      * @param normalization   True if blocks are to be normalized.
+      */
+     public void setNormalization(boolean normalization)
+     {
+          this.normalization = normalization;
+     }
+
+
+     /**
+      * Returns the gain applied to all channels.
+      *
+      * @return    The gain.
+      */
+     public double getGain()
+     {
+          return gain;
+     }
+
+
+     /**
+      * Returns the relative strength of the two stereo channels.
+      *
+      * @return    The panning.
+      */
+     public double getPanning()
+     {
+          return panning;
+     }
+
+
+     /**
+      * Returns whether samples are clipped.
+      *
+      * @return    True if samples are clipped.
+      */
+     public boolean isClipping()
+     {
+          return clipping;
+     }
+
+
+     /**
+      * Returns whether each processed block is normalized.
+      *
+      * @return    True if blocks are normalized.
+      */
+     public boolean isNormalizing()
+     {
+          return normalization;
+     }
+
+
+     /**
+      * Processes all of the given samples in place.
+      *
+      * @param samples   The samples to process. The first indice corresponds
+      *                  to the channel and the second to the sample number.
+      *                  All channels must be the same length.
+      * @throws IllegalArgumentException   If any channel is shorter than the
+      *                                    first.
+      */
+     public void process(double[][] samples)
+     {
+          if (samples.length > 0)
+               process(samples, 0, samples[0].length);
+     }
+
+
+     /**
+      * Processes the given block of samples in place. Only the samples in the
+      * block are read or written, and normalization is based on the peak of
+      * the block alone.
+      *
+      * @param samples   The samples to process. The first indice corresponds
+      *                  to the channel and the second to the sample number.
+      * @param offset    The index in each channel of the first sample of the
+      *                  block.
+      * @param length    The number of samples per channel in the block.
+      * @throws IllegalArgumentException   If the block does not fall within
+      *                                    every channel.
+      */
+     public void process(double[][] samples, int offset, int length)
+     {
+          for (int chan = 0; chan < samples.length; chan++)
+               verifyBlock(chan, samples[chan].length, offset, length);
+
+          SampleKernels kernels = SampleKernels.getInstance();
+
+          // Find the peak that the block would have before normalization
+          double scale = 1.0;
+          if (normalization)
+          {
+               double peak = 0.0;
+               for (int chan = 0; chan < samples.length; chan++)
+               {
+                    double multiplier = Math.abs(getChannelMultiplier(chan, samples.length));
+                    double channel_peak = kernels.findPeak(samples[chan], offset, length, 0.0) * multiplier;
+                    if (channel_peak > peak)
+                         peak = channel_peak;
+               }
+               if (clipping && peak > 1.0)
+                    peak = 1.0;
+               if (peak != 0.0)
+                    scale = 1.0 / peak;
+          }
+
+          // Apply all operations in one pass
+          for (int chan = 0; chan < samples.length; chan++)
+          {
+               double multiplier = getChannelMultiplier(chan, samples.length);
+               if (clipping)
+                    kernels.scaleAndClip(samples[chan], offset, length, multiplier, scale);
+               else
+                    kernels.scale(samples[chan], offset, length, multiplier * scale);
+          }
+     }
+
+
+     /**
+      * Processes the given block of single precision samples in place, so
+      * that chains may be used as stages of a <code>DuplexAudioEngine</code>.
+      * This is the same as calling <code>process(block, 0,
+      * number_frames)</code>.
+      *
+      * @param block          The samples to process. The first indice
+      *                       corresponds to the channel and the second to the
+      *                       sample number.
+      * @param number_frames  The number of samples per channel in the block.
+      */
+     public void processBlock(float[][] block, int number_frames)
+     {
+          process(block, 0, number_frames);
+     }
+
+
+     /**
+      * Processes the given block of single precision samples in place. This
+      * is the same as the double precision version of this method, except
+      * that the results are stored with single precision.
+      *
+      * @param samples   The samples to process. The first indice corresponds
+      *                  to the channel and the second to the sample number.
+      * @param offset    The index in each channel of the first sample of the
+      *                  block.
+      * @param length    The number of samples per channel in the block.
+      * @throws IllegalArgumentException   If the block does not fall within
+      *                                    every channel.
+      */
+     public void process(float[][] samples, int offset, int length)
+     {
+          for (int chan = 0; chan < samples.length; chan++)
+               verifyBlock(chan, samples[chan].length, offset, length);
+
+          // Find the peak that the block would have before normalization
+          double scale = 1.0;
+          if (normalization)
+          {
+               double peak = 0.0;
+               for (int chan = 0; chan < samples.length; chan++)
+               {
+                    double multiplier = Math.abs(getChannelMultiplier(chan, samples.length));
+                    float[] channel = samples[chan];
+                    for (int samp = offset; samp < offset + length; samp++)
+                    {
+                         double value = Math.abs(channel[samp]) * multiplier;
+                         if (value > peak)
+                              peak = value;
+                    }
+               }
+               if (clipping && peak > 1.0)
+                    peak = 1.0;
+               if (peak != 0.0)
+                    scale = 1.0 / peak;
+          }
+
+          // Apply all operations in one pass
+          for (int chan = 0; chan < samples.length; chan++)
+          {
+               double multiplier = getChannelMultiplier(chan, samples.length);
+               float[] channel = samples[chan];
+               if (clipping)
+                    for (int samp = offset; samp < offset + length; samp++)
+                    {
+                         double value = channel[samp] * multiplier;
+                         if (value < -1.0)
+                              value = -1.0;
+                         else if (value > 1.0)
+                              value = 1.0;
+                         channel[samp] = (float) (value * scale);
+                    }
+               else
+               {
+                    double total_multiplier = multiplier * scale;
+                    for (int samp = offset; samp < offset + length; samp++)
+                         channel[samp] = (float) (channel[samp] * total_multiplier);
+               }
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the combined gain and panning multiplier of the given channel.
+      *
+      * @param channel             The index of the channel.
+      * @param number_channels     The total number of channels.
+      * @return                    The multiplier to apply to the channel.
+      */
+     private double getChannelMultiplier(int channel, int number_channels)
+     {
+          if (number_channels != 2)
+               return gain;
+          if (channel == 0 && panning > 0.0)
+               return gain * (1.0 - panning);
+          if (channel == 1 && panning < 0.0)
+               return gain * (panning + 1.0);
+          return gain;
+     }
+
+
+     /**
+      * Throws an exception if the given block does not fall within the given
+      * channel.
+      *
+      * @param channel             The index of the channel.
+      * @param channel_length      The number of samples in the channel.
+      * @param offset              The index of the first sample of the block.
+      * @param length              The number of samples in the block.
+      * @throws IllegalArgumentException   If the offset or length is
+      *                                    negative, or if the block extends
+      *                                    past the end of the channel.
+      */
+     private static void verifyBlock(int channel, int channel_length, int offset, int length)
+     {
+          if (offset < 0 || length < 0 || offset > channel_length - length)
+               throw new IllegalArgumentException( "Block of " + length + " samples starting at sample " + offset + " requested.\n" +
+                    "Channel " + channel + " has only " + channel_length + " samples." );
+     }
+}
@@ -0,0 +1,344 @@
+/*
+ * SampleWindowIterator.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+
+/**
+ * Steps through the samples of an <code>AudioSamples</code> object in windows
+ * of a fixed size, where consecutive windows begin a fixed hop size apart.
+ * Windows overlap if the hop size is less than the window size. The windows
+ * are views onto the stored samples, described by the index of their first
+ * sample and their length, so no window is ever copied unless requested.
+ *
+ * <p>Windows begin at sample 0 and continue until a window reaches the end of
+ * the samples. The last window may therefore be shorter than the window size.
+ * If the hop size is greater than the window size, the samples between
+ * windows are skipped, and no window begins past the end of the samples, so
+ * the end may not be reached.
+ * Its samples can be accessed directly through the arrays returned by the
+ * <code>getSignalMixedDown</code> and <code>getSignalChannelSegregated</code>
+ * methods, using the window's start sample and length. Alternatively, the
+ * <code>fillMixedDown</code> and <code>fillChannelSegregated</code> methods
+ * copy the current window into arrays supplied by the caller, zero-padding
+ * any short final window, so that the same buffers can be reused for every
+ * window.
+ *
+ * <p>A typical use is:
+ *
+ * <pre>
+ *     SampleWindowIterator windows = audio_samples.getSampleWindowIterator(1024, 512);
+ *     double[] buffer = new double[1024];
+ *     while (windows.next())
+ *     {
+ *          windows.fillMixedDown(buffer, 0);
+ *          ...
+ *     }
+ * </pre>
+ *
+ * <p>Objects of this class become invalid if the samples of the underlying
+ * <code>AudioSamples</code> object are changed.
+ *
+ * @author Cory McKay
+ */
+public class SampleWindowIterator
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The samples that are divided into windows.
+      */
+     private AudioSamples     audio_samples;
+
+     /**
+      * The number of samples in each full window.
+      */
+     private int              window_size;
+
+     /**
+      * The number of samples between the starts of consecutive windows.
+      */
+     private int              hop_size;
+
+     /**
+      * The number of samples per channel in audio_samples.
+      */
+     private int              number_samples;
+
+     /**
+      * The total number of windows.
+      */
+     private int              number_windows;
+
+     /**
+      * The index of the current window. Is -1 before the first call to next.
+      */
+     private int              current_window;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares to step through the given samples. The
+      * <code>getSampleWindowIterator</code> method of the
+      * <code>AudioSamples</code> class will usually be used rather than this
+      * constructor.
+      *
+      * @param audio_samples  The samples to divide into windows.
+      * @param window_size    The number of samples in each window.
+      * @param hop_size       The number of samples between the starts of
+      *                       consecutive windows.
+      * @throws Exception     Throws an informative exception if the window or
+      *                       hop size is not above 0.
+      */
+     public SampleWindowIterator( AudioSamples audio_samples,
+          int window_size,
+          int hop_size )
+          throws Exception
+     {
+          if (audio_samples == null)
+               throw new Exception("Given AudioSamples object is empty.");
+          if (window_size < 1)
+               throw new Exception( "Window size of " + window_size + " specified.\n" +
+                    "This value must be above 0." );
+          if (hop_size < 1)
+               throw new Exception( "Hop size of " + hop_size + " specified.\n" +
+                    "This value must be above 0." );
+
+          this.audio_samples = audio_samples;
+          this.window_size = window_size;
+          this.hop_size = hop_size;
+          number_samples = audio_samples.getNumberSamplesPerChannel();
+
+          // Windows continue until one reaches the end of the samples, or
+          // until the next would begin past it if windows skip samples
+          if (number_samples == 0)
+               number_windows = 0;
+          else if (number_samples <= window_size)
+               number_windows = 1;
+          else
+          {
+               long windows_to_end = 1L + ((long) number_samples - window_size + hop_size - 1) / hop_size;
+               long windows_starting = ((long) number_samples + hop_size - 1) / hop_size;
+               number_windows = (int) Math.min(windows_to_end, windows_starting);
+          }
+
+          current_window = -1;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Advances to the next window.
+      *
+      * @return    True if there is a next window, false if all windows have
+      *            already been visited.
+      */
+     public boolean next()
+     {
+          if (current_window + 1 >= number_windows)
+          {
+               current_window = number_windows;
+               return false;
+          }
+          current_window++;
+          return true;
+     }
+
+
+     /**
+      * Moves to the given window, so that it becomes the current window.
+      * Setting a window of -1 returns to the state before the first window,
+      * so that the next call to <code>next</code> moves to window 0.
+      *
+      * @param window    The index of the window to move to.
+      * @throws IndexOutOfBoundsException    If the given index is not between
+      *                                      -1 and the number of windows minus
+      *                                      one.
+      */
+     public void setWindow(int window)
+     {
+          if (window < -1 || window >= number_windows)
+               throw new IndexOutOfBoundsException( "Window " + window + " requested.\n" +
+                    "Only " + number_windows + " windows are present." );
+          current_window = window;
+     }
+
+
+     /**
+      * Returns the index of the current window.
+      *
+      * @return    The index of the current window.
+      */
+     public int getWindow()
+     {
+          return current_window;
+     }
+
+
+     /**
+      * Returns the total number of windows.
+      *
+      * @return    The total number of windows.
+      */
+     public int getNumberWindows()
+     {
+          return number_windows;
+     }
+
+
+     /**
+      * Returns the number of samples in each full window.
+      *
+      * @return    The window size.
+      */
+     public int getWindowSize()
+     {
+          return window_size;
+     }
+
+
+     /**
+      * Returns the number of samples between the starts of consecutive
+      * windows.
+      *
+      * @return    The hop size.
+      */
+     public int getHopSize()
+     {
+          return hop_size;
+     }
+
+
+     /**
+      * Returns the index, in the underlying samples, of the first sample of
+      * the current window.
+      *
+      * @return    The start sample of the current window.
+      */
+     public int getStartSample()
+     {
+          verifyCurrentWindow();
+          return current_window * hop_size;
+     }
+
+
+     /**
+      * Returns the number of samples in the current window that fall within
+      * the underlying samples. This is the window size for all windows except
+      * possibly the last.
+      *
+      * @return    The number of samples in the current window.
+      */
+     public int getLength()
+     {
+          return Math.min(window_size, number_samples - getStartSample());
+     }
+
+
+     /**
+      * Returns the array of mixed down samples that the windows are views
+      * onto. The samples of the current window run from index
+      * <code>getStartSample()</code> for <code>getLength()</code> samples.
+      *
+      * <p><b>WARNING:</b> The array is only shared with the underlying
+      * <code>AudioSamples</code> object if it stores its samples as doubles.
+      * Otherwise all samples are decoded into a new array each time this is
+      * called, and the fill methods should be used instead. The array must
+      * not be modified.
+      *
+      * @return    The mixed down samples.
+      */
+     public double[] getSignalMixedDown()
+     {
+          return audio_samples.getSamplesMixedDown();
+     }
+
+
+     /**
+      * Returns the arrays of channel segregated samples that the windows are
+      * views onto. The samples of the current window run from index
+      * <code>getStartSample()</code> for <code>getLength()</code> samples.
+      *
+      * <p><b>WARNING:</b> The arrays are only shared with the underlying
+      * <code>AudioSamples</code> object if it stores its samples as doubles.
+      * Otherwise all samples are decoded into new arrays each time this is
+      * called, and the fill methods should be used instead. The arrays must
+      * not be modified.
+      *
+      * @return    The channel segregated samples. The first indice
+      *            corresponds to the channel and the second to the sample
+      *            number.
+      */
+     public double[][] getSignalChannelSegregated()
+     {
+          return audio_samples.getSamplesChannelSegregated();
+     }
+
+
+     /**
+      * Copies the mixed down samples of the current window into the given
+      * array. If the window is shorter than the window size, then the rest
+      * of the window size is filled with zeros.
+      *
+      * @param buffer    The array to copy the window into.
+      * @param offset    The index in <i>buffer</i> at which to store the first
+      *                  sample of the window. <i>buffer</i> must have room for
+      *                  a full window after this index.
+      */
+     public void fillMixedDown(double[] buffer, int offset)
+     {
+          int length = getLength();
+          audio_samples.copySamplesMixedDown(getStartSample(), buffer, offset, length);
+          for (int samp = offset + length; samp < offset + window_size; samp++)
+               buffer[samp] = 0.0;
+     }
+
+
+     /**
+      * Copies the channel segregated samples of the current window into the
+      * given arrays. If the window is shorter than the window size, then the
+      * rest of the window size is filled with zeros.
+      *
+      * @param buffer    The arrays to copy the window into. The first indice
+      *                  corresponds to the channel and the second to the
+      *                  sample number. Must have at least as many channels as
+      *                  the underlying samples.
+      * @param offset    The index in each channel of <i>buffer</i> at which to
+      *                  store the first sample of the window. Each channel of
+      *                  <i>buffer</i> must have room for a full window after
+      *                  this index.
+      */
+     public void fillChannelSegregated(double[][] buffer, int offset)
+     {
+          int length = getLength();
+          audio_samples.copySamplesChannelSegregated(getStartSample(), buffer, offset, length);
+          for (int chan = 0; chan < audio_samples.getNumberChannels(); chan++)
+               for (int samp = offset + length; samp < offset + window_size; samp++)
+                    buffer[chan][samp] = 0.0;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Throws an exception if there is no current window.
+      *
+      * @throws IllegalStateException   If next has not been called, or if all
+      *                                 windows have been visited.
+      */
+     private void verifyCurrentWindow()
+     {
+          if (current_window < 0 || current_window >= number_windows)
+               throw new IllegalStateException("There is no current window.");
+     }
+}
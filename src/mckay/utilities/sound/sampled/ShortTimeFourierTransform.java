@@ -0,0 +1,409 @@
+/*
+ * ShortTimeFourierTransform.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Calculates spectrograms of the samples stored in an <code>AudioSamples</code>
+ * object, mixed down into one channel. The samples are divided into frames of
+ * a fixed size that begin a fixed hop size apart, each frame is multiplied by
+ * a window function, and the magnitude or power spectrum of each frame is
+ * calculated.
+ *
+ * <p>Frames are divided into groups that are transformed in parallel using
+ * fork/join. Each worker thread uses the <code>RealFFTPlan</code> cached for
+ * it by the <code>FFT</code> class, and each group of frames has its own
+ * frame buffer, so no memory is allocated per frame.
+ *
+ * <p>Spectrograms are returned as one contiguous array in frame-major order:
+ * the <i>b</i>th bin of the <i>f</i>th frame is stored at index
+ * <code>f * getNumberBins() + b</code>. There are N/2+1 bins per frame
+ * (rounded down), from 0 Hz up to the Nyquist frequency, where N is the frame
+ * size.
+ * Magnitudes and powers are scaled in the same way as by the
+ * <code>FFT</code> class.
+ *
+ * <p>Frames are laid out as by the <code>SampleWindowIterator</code> class,
+ * with the final frame zero-padded if it extends past the end of the samples.
+ *
+ * @author Cory McKay
+ */
+public class ShortTimeFourierTransform
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * Window type code indicating that frames are not windowed.
+      */
+     public static final int WINDOW_RECTANGULAR = 0;
+
+     /**
+      * Window type code indicating that frames are multiplied by a Hanning
+      * window.
+      */
+     public static final int WINDOW_HANNING = 1;
+
+     /**
+      * Window type code indicating that frames are multiplied by a Hamming
+      * window.
+      */
+     public static final int WINDOW_HAMMING = 2;
+
+     /**
+      * Window type code indicating that frames are multiplied by a Blackman
+      * window.
+      */
+     public static final int WINDOW_BLACKMAN = 3;
+
+
+     /**
+      * The maximum number of frames transformed by a single fork/join task
+      * without further division.
+      */
+     private static final int FRAMES_PER_TASK = 32;
+
+
+     /**
+      * The samples to transform.
+      */
+     private AudioSamples               audio_samples;
+
+     /**
+      * The number of samples in each frame.
+      */
+     private int                        frame_size;
+
+     /**
+      * The number of samples between the starts of consecutive frames.
+      */
+     private int                        hop_size;
+
+     /**
+      * The number of samples per channel in audio_samples.
+      */
+     private int                        number_samples;
+
+     /**
+      * The number of frames.
+      */
+     private int                        number_frames;
+
+     /**
+      * The window coefficients applied to each frame.
+      */
+     private double[]                   window;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares to calculate spectrograms of the given samples.
+      *
+      * @param audio_samples  The samples to transform. These must not be
+      *                       changed while spectrograms are being
+      *                       calculated.
+      * @param frame_size     The number of samples in each frame. Must be at
+      *                       least 2. Sizes that are not powers of 2 are
+      *                       transformed without zero-padding.
+      * @param hop_size       The number of samples between the starts of
+      *                       consecutive frames.
+      * @param window_type    The window applied to each frame. Must be one of
+      *                       the WINDOW_ constants of this class.
+      * @throws Exception     Throws an informative exception if an invalid
+      *                       parameter is given or if the spectrogram would
+      *                       be too large to store in one array.
+      */
+     public ShortTimeFourierTransform( AudioSamples audio_samples,
+          int frame_size,
+          int hop_size,
+          int window_type )
+          throws Exception
+     {
+          if (audio_samples == null)
+               throw new Exception("Given AudioSamples object is empty.");
+          if (frame_size < 2)
+               throw new Exception( "Frame size of " + frame_size + " specified.\n" +
+                    "This value must be at least 2." );
+
+          // Use the same frame layout as SampleWindowIterator
+          SampleWindowIterator frames = new SampleWindowIterator(audio_samples, frame_size, hop_size);
+
+          this.audio_samples = audio_samples;
+          this.frame_size = frame_size;
+          this.hop_size = hop_size;
+          number_samples = audio_samples.getNumberSamplesPerChannel();
+          number_frames = frames.getNumberWindows();
+          if ((long) number_frames * getNumberBins() > Integer.MAX_VALUE)
+               throw new Exception( "A spectrogram of " + number_frames + " frames of " + getNumberBins() + " bins\n" +
+                    "is too large to be stored in one array." );
+          window = getWindow(window_type, frame_size);
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Calculates the magnitude spectrogram using the common fork/join pool.
+      *
+      * @return    The magnitude of each bin of each frame, in frame-major
+      *            order.
+      */
+     public double[] getMagnitudeSpectrogram()
+     {
+          double[] spectrogram = new double[number_frames * getNumberBins()];
+          calculateSpectrogram(false, spectrogram, ForkJoinPool.commonPool());
+          return spectrogram;
+     }
+
+
+     /**
+      * Calculates the power spectrogram using the common fork/join pool.
+      *
+      * @return    The power of each bin of each frame, in frame-major order.
+      */
+     public double[] getPowerSpectrogram()
+     {
+          double[] spectrogram = new double[number_frames * getNumberBins()];
+          calculateSpectrogram(true, spectrogram, ForkJoinPool.commonPool());
+          return spectrogram;
+     }
+
+
+     /**
+      * Calculates the magnitude or power spectrogram into the given array,
+      * using the given fork/join pool. This allows a single array to be
+      * reused for the spectrograms of many recordings.
+      *
+      * @param power          True if the power spectrogram is to be
+      *                       calculated, false if the magnitude spectrogram
+      *                       is.
+      * @param spectrogram    The array to store the spectrogram in, in
+      *                       frame-major order. Must have a length of at least
+      *                       <code>getNumberFrames() * getNumberBins()</code>.
+      * @param pool           The pool to perform the transforms with.
+      * @throws IllegalArgumentException   If the given array is too short.
+      */
+     public void calculateSpectrogram( boolean power,
+          double[] spectrogram,
+          ForkJoinPool pool )
+     {
+          if (spectrogram.length < number_frames * getNumberBins())
+               throw new IllegalArgumentException( "Array of length " + spectrogram.length + " given for a spectrogram\n" +
+                    "of " + number_frames + " frames of " + getNumberBins() + " bins." );
+
+          // Any lazily calculated mixdown is calculated now, before it is
+          // shared by the worker threads
+          audio_samples.prepareMixdown();
+
+          pool.invoke(new FrameTask(0, number_frames, power, spectrogram));
+     }
+
+
+     /**
+      * Returns the number of frames in each spectrogram.
+      *
+      * @return    The number of frames.
+      */
+     public int getNumberFrames()
+     {
+          return number_frames;
+     }
+
+
+     /**
+      * Returns the number of bins per frame of each spectrogram, which is
+      * half the frame size plus one.
+      *
+      * @return    The number of bins per frame.
+      */
+     public int getNumberBins()
+     {
+          return frame_size / 2 + 1;
+     }
+
+
+     /**
+      * Returns the number of samples in each frame.
+      *
+      * @return    The frame size.
+      */
+     public int getFrameSize()
+     {
+          return frame_size;
+     }
+
+
+     /**
+      * Returns the number of samples between the starts of consecutive
+      * frames.
+      *
+      * @return    The hop size.
+      */
+     public int getHopSize()
+     {
+          return hop_size;
+     }
+
+
+     /**
+      * Returns the frequency in Hz of each bin.
+      *
+      * @return    The bin labels.
+      */
+     public double[] getBinLabels()
+     {
+          double bin_width = audio_samples.getSamplingRateAsDouble() / frame_size;
+          double[] labels = new double[getNumberBins()];
+          for (int bin = 0; bin < labels.length; bin++)
+               labels[bin] = bin * bin_width;
+          return labels;
+     }
+
+
+     /**
+      * Returns the time in seconds of the first sample of each frame.
+      *
+      * @return    The frame start times.
+      */
+     public double[] getFrameTimes()
+     {
+          double[] times = new double[number_frames];
+          for (int frame = 0; frame < number_frames; frame++)
+               times[frame] = (double) frame * hop_size / audio_samples.getSamplingRateAsDouble();
+          return times;
+     }
+
+
+     /**
+      * Returns the coefficients of the given window type for frames of the
+      * given size.
+      *
+      * @param window_type    One of the WINDOW_ constants of this class.
+      * @param size           The number of coefficients.
+      * @return               The window coefficients.
+      * @throws Exception     Throws an exception if an unknown window type is
+      *                       given.
+      */
+     public static double[] getWindow(int window_type, int size)
+          throws Exception
+     {
+          double[] window = new double[size];
+          for (int i = 0; i < size; i++)
+          {
+               double phase = 2.0 * Math.PI * i / size;
+               if (window_type == WINDOW_RECTANGULAR)
+                    window[i] = 1.0;
+               else if (window_type == WINDOW_HANNING)
+                    window[i] = 0.5 - 0.5 * Math.cos(phase);
+               else if (window_type == WINDOW_HAMMING)
+                    window[i] = 0.54 - 0.46 * Math.cos(phase);
+               else if (window_type == WINDOW_BLACKMAN)
+                    window[i] = 0.42 - 0.5 * Math.cos(phase) + 0.08 * Math.cos(2.0 * phase);
+               else
+                    throw new Exception("Unknown window type " + window_type + " specified.");
+          }
+          return window;
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Calculates the spectra of the given range of frames using the calling
+      * thread's cached plan and a buffer shared by the range.
+      *
+      * @param first_frame    The first frame to transform.
+      * @param end_frame      One past the last frame to transform.
+      * @param power          Whether to calculate powers rather than
+      *                       magnitudes.
+      * @param spectrogram    The array to store the spectra in.
+      */
+     private void transformFrames( int first_frame,
+          int end_frame,
+          boolean power,
+          double[] spectrogram )
+     {
+          RealFFTPlan plan;
+          try
+          {
+               plan = FFT.getRealPlan(frame_size, false);
+          }
+          catch (Exception e)
+          {
+               // The frame size is verified by the constructor
+               throw new IllegalStateException(e.getMessage());
+          }
+          int number_bins = getNumberBins();
+          double[] frame_buffer = new double[frame_size];
+          double[] spectrum = new double[number_bins];
+          for (int frame = first_frame; frame < end_frame; frame++)
+          {
+               // Copy and window the frame, zero-padding past the end
+               int start_sample = frame * hop_size;
+               int length = Math.min(frame_size, number_samples - start_sample);
+               audio_samples.copySamplesMixedDown(start_sample, frame_buffer, 0, length);
+               for (int samp = 0; samp < length; samp++)
+                    frame_buffer[samp] *= window[samp];
+               for (int samp = length; samp < frame_size; samp++)
+                    frame_buffer[samp] = 0.0;
+
+               // Transform the frame into the spectrogram
+               if (power)
+                    plan.getPowerSpectrum(frame_buffer, spectrum);
+               else
+                    plan.getMagnitudeSpectrum(frame_buffer, spectrum);
+               System.arraycopy(spectrum, 0, spectrogram, frame * number_bins, number_bins);
+          }
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A fork/join task that transforms a range of frames, dividing the range
+      * in two if it is large.
+      */
+     private class FrameTask
+          extends RecursiveAction
+     {
+          private static final long serialVersionUID = 1L;
+
+          private int         first_frame;
+          private int         end_frame;
+          private boolean     power;
+          private double[]    spectrogram;
+
+          FrameTask(int first_frame, int end_frame, boolean power, double[] spectrogram)
+          {
+               this.first_frame = first_frame;
+               this.end_frame = end_frame;
+               this.power = power;
+               this.spectrogram = spectrogram;
+          }
+
+          protected void compute()
+          {
+               if (end_frame - first_frame <= FRAMES_PER_TASK)
+                    transformFrames(first_frame, end_frame, power, spectrogram);
+               else
+               {
+                    int middle_frame = (first_frame + end_frame) >>> 1;
+                    invokeAll( new FrameTask(first_frame, middle_frame, power, spectrogram),
+                         new FrameTask(middle_frame, end_frame, power, spectrogram) );
+               }
+          }
+     }
+}
@@ -0,0 +1,413 @@
+/*
+ * VirtualDataLine.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.ArrayList;
+import javax.sound.sampled.*;
+
+
+/**
+ * The parts shared by the <code>VirtualTargetDataLine</code> and
+ * <code>VirtualSourceDataLine</code> classes, which are in-process
+ * implementations of data lines that need no sound hardware. They allow
+ * capture and playback code to be run and benchmarked on machines without
+ * sound devices, such as headless build servers.
+ *
+ * <p>A virtual line runs on one of two clocks. A real-time line captures or
+ * plays frames at the sampling rate of its format while it is running, so
+ * reads and writes block just as they would on a hardware line, and buffer
+ * overruns and underruns occur if the code using the line falls behind. An
+ * as-fast-as-possible line never blocks: it always has a full buffer of
+ * frames ready to be read or free space for frames to be written, so the
+ * code using it runs as quickly as it is able to.
+ *
+ * <p>Virtual lines have no controls. They send open, start, stop and close
+ * events to any attached listeners. All methods are synchronized, and
+ * threads blocked reading or writing release the line while they wait, so a
+ * line may be stopped, flushed or closed from another thread to interrupt
+ * them, as with hardware lines.
+ *
+ * @author Cory McKay
+ */
+public abstract class VirtualDataLine
+     implements DataLine
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The buffer duration used when a line is opened without a buffer size,
+      * in seconds.
+      */
+     public static final double    DEFAULT_BUFFER_DURATION = 0.5;
+
+     /**
+      * The format used when the line is opened without one.
+      */
+     protected final AudioFormat   default_format;
+
+     /**
+      * Whether the line captures or plays at the sampling rate of its format
+      * rather than as fast as possible.
+      */
+     protected final boolean       real_time;
+
+     /**
+      * The format of the line while it is open.
+      */
+     protected AudioFormat         format;
+
+     /**
+      * The size of the line's buffer while it is open, in bytes. Always a
+      * whole number of frames.
+      */
+     protected int                 buffer_size;
+
+     /**
+      * Whether the line is open and running.
+      */
+     protected boolean             open;
+     protected boolean             running;
+
+     /**
+      * The value of <code>System.nanoTime()</code> and the number of frames
+      * that had passed on the line's clock when the clock was last set. Only
+      * used by real-time lines.
+      */
+     private long                  clock_start_nanoseconds;
+     private long                  clock_start_frames;
+
+     /**
+      * The objects notified of open, start, stop and close events.
+      */
+     private final ArrayList<LineListener>   listeners;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares a closed line.
+      *
+      * @param default_format The format to use if the line is opened without
+      *                       one.
+      * @param real_time      Whether the line runs at the sampling rate of its
+      *                       format rather than as fast as possible.
+      * @throws Exception     Throws an informative exception if the format is
+      *                       null, or if a real-time line is requested and the
+      *                       format does not specify a frame rate.
+      */
+     protected VirtualDataLine(AudioFormat default_format, boolean real_time)
+          throws Exception
+     {
+          if (default_format == null)
+               throw new Exception("No AudioFormat provided for the virtual line.");
+          if (real_time && !(default_format.getFrameRate() > 0.0f))
+               throw new Exception( "The AudioFormat " + default_format + " does not specify a frame rate.\n" +
+                    "Real-time virtual lines need a frame rate to run their clock." );
+          this.default_format = default_format;
+          this.real_time = real_time;
+          format = default_format;
+          buffer_size = 0;
+          open = false;
+          running = false;
+          listeners = new ArrayList<LineListener>();
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Returns whether the line runs at the sampling rate of its format rather
+      * than as fast as possible.
+      *
+      * @return    True if the line runs in real time.
+      */
+     public boolean isRealTime()
+     {
+          return real_time;
+     }
+
+
+     public synchronized void open()
+          throws LineUnavailableException
+     {
+          open(default_format);
+     }
+
+
+     public synchronized void open(AudioFormat format)
+          throws LineUnavailableException
+     {
+          int frame_size = format.getFrameSize() > 0 ? format.getFrameSize() : 1;
+          int frames = AudioMethodsGeneral.STREAMING_BLOCK_SIZE;
+          if (format.getFrameRate() > 0.0f)
+               frames = Math.max(1, (int) (format.getFrameRate() * DEFAULT_BUFFER_DURATION));
+          open(format, frames * frame_size);
+     }
+
+
+     /**
+      * Opens the line with the given format and buffer size, and sends an open
+      * event. Does nothing if the line is already open.
+      *
+      * @param format                        The format of the line.
+      * @param buffer_size                   The size of the line's buffer in
+      *                                      bytes. Rounded down to a whole
+      *                                      number of frames, but never below
+      *                                      one frame.
+      * @throws LineUnavailableException     Never thrown. Declared to match the
+      *                                      <code>DataLine</code> interfaces.
+      * @throws IllegalArgumentException     Thrown if the line cannot use the
+      *                                      given format.
+      */
+     public synchronized void open(AudioFormat format, int buffer_size)
+          throws LineUnavailableException
+     {
+          if (open)
+               return;
+          if (format == null)
+               throw new IllegalArgumentException("No AudioFormat provided for the virtual line.");
+          if (real_time && !(format.getFrameRate() > 0.0f))
+               throw new IllegalArgumentException("Real-time virtual lines need a frame rate to run their clock.");
+          int frame_size = format.getFrameSize() > 0 ? format.getFrameSize() : 1;
+          prepare(format);
+          this.format = format;
+          this.buffer_size = Math.max(frame_size, buffer_size - buffer_size % frame_size);
+          open = true;
+          running = false;
+          sendEvent(LineEvent.Type.OPEN);
+     }
+
+
+     public synchronized void close()
+     {
+          if (!open)
+               return;
+          running = false;
+          open = false;
+          release();
+          notifyAll();
+          sendEvent(LineEvent.Type.CLOSE);
+     }
+
+
+     public synchronized void start()
+     {
+          if (!open || running)
+               return;
+          long position = getLongFramePosition();
+          running = true;
+          setClock(position);
+          notifyAll();
+          sendEvent(LineEvent.Type.START);
+     }
+
+
+     public synchronized void stop()
+     {
+          if (!running)
+               return;
+          if (real_time)
+               advance();
+          running = false;
+          notifyAll();
+          sendEvent(LineEvent.Type.STOP);
+     }
+
+
+     public synchronized boolean isOpen()
+     {
+          return open;
+     }
+
+
+     public synchronized boolean isRunning()
+     {
+          return running;
+     }
+
+
+     public synchronized AudioFormat getFormat()
+     {
+          return format;
+     }
+
+
+     public synchronized int getBufferSize()
+     {
+          return buffer_size;
+     }
+
+
+     public int getFramePosition()
+     {
+          return (int) getLongFramePosition();
+     }
+
+
+     public long getMicrosecondPosition()
+     {
+          AudioFormat line_format = getFormat();
+          if (!(line_format.getFrameRate() > 0.0f))
+               return 0;
+          return (long) (getLongFramePosition() * 1000000.0 / line_format.getFrameRate());
+     }
+
+
+     public float getLevel()
+     {
+          return AudioSystem.NOT_SPECIFIED;
+     }
+
+
+     public synchronized Line.Info getLineInfo()
+     {
+          return new DataLine.Info(getLineClass(), format);
+     }
+
+
+     public Control[] getControls()
+     {
+          return new Control[0];
+     }
+
+
+     public boolean isControlSupported(Control.Type control)
+     {
+          return false;
+     }
+
+
+     public Control getControl(Control.Type control)
+     {
+          throw new IllegalArgumentException("Virtual lines do not support the " + control + " control.");
+     }
+
+
+     public void addLineListener(LineListener listener)
+     {
+          synchronized (listeners)
+          {
+               if (listener != null && !listeners.contains(listener))
+                    listeners.add(listener);
+          }
+     }
+
+
+     public void removeLineListener(LineListener listener)
+     {
+          synchronized (listeners)
+          {
+               listeners.remove(listener);
+          }
+     }
+
+
+     /* PROTECTED METHODS *****************************************************/
+
+
+     /**
+      * Returns the interface that the line implements, for use in its
+      * <code>Line.Info</code>.
+      *
+      * @return    <code>TargetDataLine.class</code> or
+      *            <code>SourceDataLine.class</code>.
+      */
+     protected abstract Class<?> getLineClass();
+
+
+     /**
+      * Prepares to use the given format when the line is opened.
+      *
+      * @param format                        The format of the line.
+      * @throws IllegalArgumentException     Thrown if the line cannot use the
+      *                                      format.
+      */
+     protected abstract void prepare(AudioFormat format);
+
+
+     /**
+      * Releases anything held by the line when it is closed.
+      */
+     protected abstract void release();
+
+
+     /**
+      * Brings the line's state up to date with its clock, such as by counting
+      * the frames captured or played since this was last called. Only called
+      * on real-time lines and with the line's lock held.
+      */
+     protected abstract void advance();
+
+
+     /**
+      * Sets the line's clock so that the given number of frames have passed
+      * now.
+      *
+      * @param frames    The number of frames that have passed.
+      */
+     protected void setClock(long frames)
+     {
+          clock_start_nanoseconds = System.nanoTime();
+          clock_start_frames = frames;
+     }
+
+
+     /**
+      * Returns the number of frames that have passed on the line's clock. Only
+      * meaningful for real-time lines that are running.
+      *
+      * @return    The number of frames that have passed.
+      */
+     protected long getClock()
+     {
+          double elapsed = (System.nanoTime() - clock_start_nanoseconds) / 1.0e9;
+          return clock_start_frames + (long) (elapsed * format.getFrameRate());
+     }
+
+
+     /**
+      * Waits, with the line's lock released, for roughly the time that the
+      * given number of frames take to pass on the line's clock, or until the
+      * line is stopped, flushed or closed. Waits at least one millisecond, so
+      * that callers polling for frames do not spin.
+      *
+      * @param frames              The number of frames to wait for.
+      * @throws InterruptedException    Thrown if the waiting thread is
+      *                                 interrupted.
+      */
+     protected void waitForFrames(long frames)
+          throws InterruptedException
+     {
+          long nanoseconds = (long) (frames * 1.0e9 / format.getFrameRate());
+          nanoseconds = Math.max(1000000L, nanoseconds);
+          wait(nanoseconds / 1000000L, (int) (nanoseconds % 1000000L));
+     }
+
+
+     /**
+      * Sends an event of the given type to every attached listener.
+      *
+      * @param type      The type of event.
+      */
+     protected void sendEvent(LineEvent.Type type)
+     {
+          LineListener[] to_notify;
+          synchronized (listeners)
+          {
+               to_notify = listeners.toArray(new LineListener[listeners.size()]);
+          }
+          if (to_notify.length == 0)
+               return;
+          LineEvent event = new LineEvent(this, type, getLongFramePosition());
+          for (int i = 0; i < to_notify.length; i++)
+               to_notify[i].update(event);
+     }
+}
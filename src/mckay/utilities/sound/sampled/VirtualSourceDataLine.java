@@ -0,0 +1,393 @@
+/*
+ * VirtualSourceDataLine.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import javax.sound.sampled.*;
+
+
+/**
+ * A <code>SourceDataLine</code> that needs no sound hardware. Audio written
+ * to it is consumed without being played, and may optionally be kept in
+ * memory so that it can be inspected afterwards. It can be used wherever a
+ * hardware line would be, such as with the <code>AudioMethodsPlayback</code>
+ * class or a <code>DuplexAudioEngine</code>, in order to run or benchmark
+ * playback code on machines without sound devices.
+ *
+ * <p>A real-time line (see <code>VirtualDataLine</code>) plays frames at the
+ * sampling rate of its format while it is running. Writes block while the
+ * buffer is full, and the <code>drain</code> method blocks until the buffer
+ * has been played. If the buffer runs dry, the line's clock pauses until
+ * more frames are written, and an underrun is counted. An
+ * as-fast-as-possible line plays frames as soon as they are written, so
+ * writes and drains never block. So that code checking for underruns does
+ * not see them, its <code>available</code> method reports one frame as still
+ * queued while it is running.
+ *
+ * @author Cory McKay
+ */
+public class VirtualSourceDataLine
+     extends VirtualDataLine
+     implements SourceDataLine
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * Whether audio written to the line is kept.
+      */
+     private final boolean         keep_output;
+
+     /**
+      * The audio written to the line and not flushed since the output was
+      * last cleared, if it is kept. Only the first <i>output_length</i> bytes
+      * are used.
+      */
+     private byte[]                output;
+     private int                   output_length;
+
+     /**
+      * The number of frames written to the line and not flushed, and the
+      * number played.
+      */
+     private long                  frames_written;
+     private long                  frames_played;
+
+     /**
+      * The number of underruns, and whether the buffer has run dry since
+      * frames were last written.
+      */
+     private long                  underruns;
+     private boolean               ran_dry;
+
+     /**
+      * Incremented whenever the line is flushed, so that blocked writes and
+      * drains can tell that they should return.
+      */
+     private long                  flush_count;
+
+
+     /* CONSTRUCTOR ***********************************************************/
+
+
+     /**
+      * Prepares a line that consumes audio written to it.
+      *
+      * @param format         The format used when the line is opened without
+      *                       one.
+      * @param real_time      Whether the line runs at the sampling rate of its
+      *                       format rather than as fast as possible.
+      * @param keep_output    Whether to keep the audio written to the line, so
+      *                       that it can be retrieved with the
+      *                       <code>getOutput</code> or
+      *                       <code>getOutputAudioInputStream</code> methods.
+      *                       This is not advisable for long benchmarks, as
+      *                       all of the audio is kept in memory.
+      * @throws Exception     Throws an informative exception if the format is
+      *                       null or a real-time line cannot be run at its
+      *                       rate.
+      */
+     public VirtualSourceDataLine( AudioFormat format,
+          boolean real_time,
+          boolean keep_output )
+          throws Exception
+     {
+          super(format, real_time);
+          this.keep_output = keep_output;
+          output = new byte[0];
+          output_length = 0;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Queues the given audio to be played. A real-time line blocks while its
+      * buffer is full, unless it is stopped, flushed or closed first. A line
+      * that is not running only accepts as many frames as fit in its buffer.
+      *
+      * @param buffer                        The array to write from.
+      * @param offset                        The index of the first byte to
+      *                                      write.
+      * @param length                        The number of bytes to write. Must
+      *                                      be a whole number of frames.
+      * @return                              The number of bytes written.
+      * @throws IllegalArgumentException     Thrown if <i>length</i> is not a
+      *                                      whole number of frames.
+      */
+     public synchronized int write(byte[] buffer, int offset, int length)
+     {
+          int frame_size = getFrameSize();
+          if (length % frame_size != 0)
+               throw new IllegalArgumentException( "Requested " + length + " bytes.\n" +
+                    "Writes must be of a whole number of " + frame_size + " byte frames." );
+          if (!open)
+               return 0;
+
+          long buffer_frames = buffer_size / frame_size;
+          long frames_wanted = length / frame_size;
+          long frames_done = 0;
+          long flushes = flush_count;
+          while (frames_done < frames_wanted)
+          {
+               update();
+               long frames_free = buffer_frames - (frames_written - frames_played);
+               int number_frames = (int) Math.min(frames_free, frames_wanted - frames_done);
+               if (number_frames > 0)
+               {
+                    if (keep_output)
+                         keep(buffer, offset + (int) (frames_done * frame_size), number_frames * frame_size);
+                    frames_written += number_frames;
+                    frames_done += number_frames;
+                    if (ran_dry)
+                    {
+                         underruns++;
+                         ran_dry = false;
+                    }
+                    update();
+               }
+               if (frames_done == frames_wanted || !running || !open || flushes != flush_count)
+                    break;
+               if (!real_time)
+                    continue;
+
+               // The buffer is now full, so wait for room for the rest, but
+               // not so long that the buffer runs dry
+               try
+               {
+                    waitForFrames(Math.min(frames_wanted - frames_done, buffer_frames / 2));
+               }
+               catch (InterruptedException e)
+               {
+                    Thread.currentThread().interrupt();
+                    break;
+               }
+          }
+          return (int) (frames_done * frame_size);
+     }
+
+
+     public synchronized int available()
+     {
+          if (!open)
+               return 0;
+          update();
+          if (running && !real_time)
+               return buffer_size - getFrameSize();
+          return buffer_size - (int) (frames_written - frames_played) * getFrameSize();
+     }
+
+
+     /**
+      * Blocks until every frame written to a real-time line has been played,
+      * unless the line is stopped, flushed or closed first.
+      */
+     public synchronized void drain()
+     {
+          long flushes = flush_count;
+          while (open && running && flushes == flush_count)
+          {
+               update();
+               if (frames_played >= frames_written)
+                    break;
+               try
+               {
+                    waitForFrames(frames_written - frames_played);
+               }
+               catch (InterruptedException e)
+               {
+                    Thread.currentThread().interrupt();
+                    break;
+               }
+          }
+     }
+
+
+     /**
+      * Discards any frames written but not yet played, and causes any blocked
+      * writes or drains to return.
+      */
+     public synchronized void flush()
+     {
+          if (open)
+          {
+               update();
+               long frames_discarded = frames_written - frames_played;
+               frames_written = frames_played;
+               // The output may have been cleared since the discarded frames
+               // were kept
+               if (keep_output)
+                    output_length = (int) Math.max(0L, output_length - frames_discarded * getFrameSize());
+               if (running && real_time)
+                    setClock(frames_played);
+          }
+          flush_count++;
+          notifyAll();
+     }
+
+
+     public synchronized boolean isActive()
+     {
+          update();
+          return running && frames_played < frames_written;
+     }
+
+
+     /**
+      * Returns the number of frames played since the line was opened.
+      *
+      * @return    The number of frames played.
+      */
+     public synchronized long getLongFramePosition()
+     {
+          update();
+          return frames_played;
+     }
+
+
+     /**
+      * Returns the number of times since the line was opened that its buffer
+      * ran dry and more frames were then written. Only real-time lines
+      * underrun.
+      *
+      * @return    The number of underruns.
+      */
+     public synchronized long getUnderrunCount()
+     {
+          return underruns;
+     }
+
+
+     /**
+      * Returns a copy of the audio written to the line since it was opened or
+      * the output was last cleared, less any that was flushed.
+      *
+      * @return    The audio in the line's format, or an empty array if the
+      *            output is not kept.
+      */
+     public synchronized byte[] getOutput()
+     {
+          return java.util.Arrays.copyOf(output, output_length);
+     }
+
+
+     /**
+      * Returns the audio that the <code>getOutput</code> method would, as an
+      * <code>AudioInputStream</code>.
+      *
+      * @return    The audio written to the line.
+      */
+     public synchronized AudioInputStream getOutputAudioInputStream()
+     {
+          return new AudioInputStream( new ByteArrayInputStream(getOutput()),
+               format,
+               output_length / getFrameSize() );
+     }
+
+
+     /**
+      * Discards the kept audio, such as to limit memory use during long
+      * benchmarks.
+      */
+     public synchronized void clearOutput()
+     {
+          output = new byte[0];
+          output_length = 0;
+     }
+
+
+     /* PROTECTED METHODS *****************************************************/
+
+
+     protected Class<?> getLineClass()
+     {
+          return SourceDataLine.class;
+     }
+
+
+     protected void prepare(AudioFormat format)
+     {
+          if (format.getFrameSize() < 1)
+               throw new IllegalArgumentException( "Virtual lines cannot play " + format + ".\n" +
+                    "The format must specify its frame size." );
+          frames_written = 0;
+          frames_played = 0;
+          underruns = 0;
+          ran_dry = false;
+     }
+
+
+     protected void release()
+     {
+     }
+
+
+     /**
+      * Counts the frames played since this was last called. If every frame
+      * written has been played, the clock is paused until more are written.
+      */
+     protected void advance()
+     {
+          long clock = getClock();
+          if (clock < frames_written)
+               frames_played = clock;
+          else
+          {
+               if (clock > frames_written && frames_written > 0)
+                    ran_dry = true;
+               frames_played = frames_written;
+               setClock(frames_written);
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Brings the number of frames played up to date.
+      */
+     private void update()
+     {
+          if (!open || !running)
+               return;
+          if (real_time)
+               advance();
+          else
+               frames_played = frames_written;
+     }
+
+
+     /**
+      * Returns the size of the line's frames in bytes.
+      */
+     private int getFrameSize()
+     {
+          return Math.max(1, format.getFrameSize());
+     }
+
+
+     /**
+      * Adds the given bytes to the kept output.
+      *
+      * @param buffer    The array holding the bytes.
+      * @param offset    The index of the first byte to keep.
+      * @param length    The number of bytes to keep.
+      */
+     private void keep(byte[] buffer, int offset, int length)
+     {
+          if (output_length + length > output.length)
+          {
+               long new_length = Math.max((long) output_length + length, 2L * output.length);
+               output = java.util.Arrays.copyOf(output, (int) Math.min(new_length, Integer.MAX_VALUE - 8));
+          }
+          System.arraycopy(buffer, offset, output, output_length, length);
+          output_length += length;
+     }
+}
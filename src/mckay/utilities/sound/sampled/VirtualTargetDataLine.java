@@ -0,0 +1,562 @@
+/*
+ * VirtualTargetDataLine.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import javax.sound.sampled.*;
+
+
+/**
+ * A <code>TargetDataLine</code> that needs no sound hardware. It captures
+ * audio from an <code>AudioInputStream</code>, such as one reading an audio
+ * file, or from a generator that synthesizes blocks of samples. It can be
+ * used wherever a hardware line would be, such as with the
+ * <code>AudioMethodsRecording</code> class or a
+ * <code>DuplexAudioEngine</code>, in order to run or benchmark capture code on
+ * machines without sound devices.
+ *
+ * <p>Audio is only taken from the source when it is read or lost, so a
+ * source need not keep up with the line. Once the source is exhausted, or if
+ * it throws an exception, the line captures silence.
+ *
+ * <p>A real-time line (see <code>VirtualDataLine</code>) captures frames at
+ * the sampling rate of its format while it is running. Reads block until the
+ * requested frames have been captured. If the buffer fills, the oldest frames
+ * are lost and an overrun is counted. An as-fast-as-possible line captures
+ * frames as they are read, so reads never block and no frames are lost. So
+ * that code checking for overruns does not see them, its
+ * <code>available</code> method reports the buffer as full less one frame
+ * while it is running.
+ *
+ * @author Cory McKay
+ */
+public class VirtualTargetDataLine
+     extends VirtualDataLine
+     implements TargetDataLine
+{
+     /* FIELDS ****************************************************************/
+
+
+     /**
+      * The number of frames synthesized at a time by a generator.
+      */
+     private static final int      GENERATOR_BLOCK_SIZE = 1024;
+
+     /**
+      * The stream that audio is captured from, or null if a generator is
+      * used.
+      */
+     private final AudioInputStream     source;
+
+     /**
+      * Whether the line opened the source, and should close it when the line
+      * is closed.
+      */
+     private final boolean              owns_source;
+
+     /**
+      * The generator that audio is captured from, or null if a stream is used.
+      * Each call to its <code>processBlock</code> method is given a block of
+      * silence to fill with the next samples.
+      */
+     private final AudioBlockProcessor  generator;
+
+     /**
+      * The source converted to the line's format while it is open.
+      */
+     private AudioInputStream           line_stream;
+
+     /**
+      * Buffers used to synthesize and encode blocks from a generator.
+      */
+     private SampleEncoder              encoder;
+     private float[][]                  generator_block;
+     private double[][]                 encoding_block;
+
+     /**
+      * Buffer that lost frames are discarded into.
+      */
+     private byte[]                     discard_buffer;
+
+     /**
+      * Whether the source has run out of audio or failed, and the exception
+      * that it threw, if any.
+      */
+     private boolean                    source_exhausted;
+     private Exception                  source_error;
+
+     /**
+      * The number of frames captured, and the number read or lost.
+      */
+     private long                       frames_captured;
+     private long                       frames_consumed;
+
+     /**
+      * The number of overruns and the total number of frames they lost.
+      */
+     private long                       overruns;
+     private long                       frames_lost;
+
+     /**
+      * Incremented whenever the line is flushed, so that blocked reads can
+      * tell that they should return.
+      */
+     private long                       flush_count;
+
+
+     /* CONSTRUCTORS **********************************************************/
+
+
+     /**
+      * Prepares a line that captures audio from the given stream. The stream
+      * is not closed by the line.
+      *
+      * @param source         The stream to capture. Its format is used when
+      *                       the line is opened without one. Otherwise it is
+      *                       converted to the line's format.
+      * @param real_time      Whether the line runs at the sampling rate of its
+      *                       format rather than as fast as possible.
+      * @throws Exception     Throws an informative exception if the stream is
+      *                       null or a real-time line cannot be run at its
+      *                       rate.
+      */
+     public VirtualTargetDataLine(AudioInputStream source, boolean real_time)
+          throws Exception
+     {
+          this(source, false, real_time);
+     }
+
+
+     /**
+      * Prepares a line that captures audio from the given file. The file is
+      * read until the line is closed.
+      *
+      * @param source         The audio file to capture. Its format is used
+      *                       when the line is opened without one. Otherwise
+      *                       it is converted to the line's format.
+      * @param real_time      Whether the line runs at the sampling rate of its
+      *                       format rather than as fast as possible.
+      * @throws Exception     Throws an informative exception if the file
+      *                       cannot be read.
+      */
+     public VirtualTargetDataLine(File source, boolean real_time)
+          throws Exception
+     {
+          this(AudioMethodsGeneral.getDecodableAudioStream(AudioSystem.getAudioInputStream(source)), true, real_time);
+     }
+
+
+     /**
+      * Prepares a line that captures audio synthesized by the given generator.
+      * The generator is passed blocks of silence in the line's channels, which
+      * it should fill with consecutive samples between -1 and +1. It is called
+      * by whatever thread reads from the line.
+      *
+      * @param format         The format used when the line is opened without
+      *                       one. The line may only be opened with integer
+      *                       PCM formats.
+      * @param generator      The generator to capture.
+      * @param real_time      Whether the line runs at the sampling rate of its
+      *                       format rather than as fast as possible.
+      * @throws Exception     Throws an informative exception if the generator
+      *                       is null or a real-time line cannot be run at the
+      *                       format's rate.
+      */
+     public VirtualTargetDataLine( AudioFormat format,
+          AudioBlockProcessor generator,
+          boolean real_time )
+          throws Exception
+     {
+          super(format, real_time);
+          if (generator == null)
+               throw new Exception("No generator provided for the virtual line.");
+          source = null;
+          owns_source = false;
+          this.generator = generator;
+     }
+
+
+     /**
+      * Prepares a line that captures audio from the given stream.
+      */
+     private VirtualTargetDataLine( AudioInputStream source,
+          boolean owns_source,
+          boolean real_time )
+          throws Exception
+     {
+          super(source == null ? null : source.getFormat(), real_time);
+          this.source = source;
+          this.owns_source = owns_source;
+          generator = null;
+     }
+
+
+     /* PUBLIC METHODS ********************************************************/
+
+
+     /**
+      * Reads captured audio into the given array. A real-time line blocks
+      * until the requested frames have been captured, unless it is stopped,
+      * flushed or closed first. A line that is not running only returns
+      * frames that it has already captured.
+      *
+      * @param buffer                        The array to read into.
+      * @param offset                        The index to start writing at.
+      * @param length                        The number of bytes to read. Must
+      *                                      be a whole number of frames.
+      * @return                              The number of bytes read.
+      * @throws IllegalArgumentException     Thrown if <i>length</i> is not a
+      *                                      whole number of frames.
+      */
+     public synchronized int read(byte[] buffer, int offset, int length)
+     {
+          int frame_size = getFrameSize();
+          if (length % frame_size != 0)
+               throw new IllegalArgumentException( "Requested " + length + " bytes.\n" +
+                    "Reads must be of a whole number of " + frame_size + " byte frames." );
+          if (!open)
+               return 0;
+
+          long frames_wanted = length / frame_size;
+          long frames_read = 0;
+          long flushes = flush_count;
+          while (frames_read < frames_wanted)
+          {
+               long frames_ready;
+               if (real_time)
+               {
+                    if (running)
+                         advance();
+                    frames_ready = frames_captured - frames_consumed;
+               }
+               else
+                    frames_ready = running ? frames_wanted - frames_read : 0;
+
+               int number_frames = (int) Math.min(frames_ready, frames_wanted - frames_read);
+               if (number_frames > 0)
+               {
+                    capture(buffer, offset + (int) (frames_read * frame_size), number_frames);
+                    frames_consumed += number_frames;
+                    if (!real_time)
+                         frames_captured += number_frames;
+                    frames_read += number_frames;
+               }
+               if (frames_read == frames_wanted || !running || !open || flushes != flush_count)
+                    break;
+
+               try
+               {
+                    waitForFrames(frames_wanted - frames_read);
+               }
+               catch (InterruptedException e)
+               {
+                    Thread.currentThread().interrupt();
+                    break;
+               }
+          }
+          return (int) (frames_read * frame_size);
+     }
+
+
+     public synchronized int available()
+     {
+          if (!open)
+               return 0;
+          if (!real_time)
+               return running ? buffer_size - getFrameSize() : 0;
+          if (running)
+               advance();
+          return (int) (frames_captured - frames_consumed) * getFrameSize();
+     }
+
+
+     /**
+      * Returns immediately, as captured frames do not need to be drained.
+      */
+     public void drain()
+     {
+     }
+
+
+     /**
+      * Discards any frames captured but not yet read, and causes any blocked
+      * reads to return.
+      */
+     public synchronized void flush()
+     {
+          if (open && real_time)
+          {
+               if (running)
+                    advance();
+               discard(frames_captured - frames_consumed);
+               frames_consumed = frames_captured;
+          }
+          flush_count++;
+          notifyAll();
+     }
+
+
+     public synchronized boolean isActive()
+     {
+          return running;
+     }
+
+
+     /**
+      * Returns the number of frames captured since the line was opened. For
+      * an as-fast-as-possible line, this is the number of frames read.
+      *
+      * @return    The number of frames captured.
+      */
+     public synchronized long getLongFramePosition()
+     {
+          if (open && running && real_time)
+               advance();
+          return frames_captured;
+     }
+
+
+     /**
+      * Returns the number of times since the line was opened that its buffer
+      * overflowed, losing frames. Only real-time lines overrun.
+      *
+      * @return    The number of overruns.
+      */
+     public synchronized long getOverrunCount()
+     {
+          if (open && running && real_time)
+               advance();
+          return overruns;
+     }
+
+
+     /**
+      * Returns the total number of frames lost to overruns since the line was
+      * opened.
+      *
+      * @return    The number of frames lost.
+      */
+     public synchronized long getLostFrameCount()
+     {
+          if (open && running && real_time)
+               advance();
+          return frames_lost;
+     }
+
+
+     /**
+      * Returns whether the source has run out of audio or failed, so that the
+      * line is capturing silence.
+      *
+      * @return    True if the source is exhausted.
+      */
+     public synchronized boolean isSourceExhausted()
+     {
+          return source_exhausted;
+     }
+
+
+     /**
+      * Returns the exception thrown by the source, if any.
+      *
+      * @return    The exception that stopped the source, or that was thrown
+      *            when it was closed on release, or null if it has not
+      *            failed.
+      */
+     public synchronized Exception getSourceError()
+     {
+          return source_error;
+     }
+
+
+     /* PROTECTED METHODS *****************************************************/
+
+
+     protected Class<?> getLineClass()
+     {
+          return TargetDataLine.class;
+     }
+
+
+     protected void prepare(AudioFormat format)
+     {
+          if (generator != null)
+          {
+               if (!SampleEncoder.isEncodable(format))
+                    throw new IllegalArgumentException( "Virtual lines capturing from a generator cannot use " + format + ".\n" +
+                         "Only 8, 16, 24 or 32 bit integer PCM samples are supported." );
+               try
+               {
+                    encoder = new SampleEncoder(format, false);
+               }
+               catch (Exception e)
+               {
+                    throw new IllegalArgumentException(e.getMessage());
+               }
+               generator_block = new float[format.getChannels()][GENERATOR_BLOCK_SIZE];
+               encoding_block = new double[format.getChannels()][GENERATOR_BLOCK_SIZE];
+          }
+          else if (format.matches(source.getFormat()))
+               line_stream = source;
+          else if (AudioSystem.isConversionSupported(format, source.getFormat()))
+               line_stream = AudioSystem.getAudioInputStream(format, source);
+          else
+               throw new IllegalArgumentException( "Cannot convert " + source.getFormat() + "\n" +
+                    "to " + format + "." );
+          discard_buffer = new byte[GENERATOR_BLOCK_SIZE * Math.max(1, format.getFrameSize())];
+          frames_captured = 0;
+          frames_consumed = 0;
+          overruns = 0;
+          frames_lost = 0;
+     }
+
+
+     protected void release()
+     {
+          if (owns_source)
+          {
+               try
+               {
+                    source.close();
+               }
+               catch (Exception e)
+               {
+                    // Keep any earlier error, which is what stopped the source
+                    if (source_error == null)
+                         source_error = e;
+               }
+               source_exhausted = true;
+          }
+     }
+
+
+     /**
+      * Counts the frames captured since this was last called, losing the
+      * oldest if the buffer has overflowed.
+      */
+     protected void advance()
+     {
+          frames_captured = getClock();
+          long buffer_frames = buffer_size / getFrameSize();
+          long frames_over = frames_captured - frames_consumed - buffer_frames;
+          if (frames_over > 0)
+          {
+               discard(frames_over);
+               frames_consumed += frames_over;
+               frames_lost += frames_over;
+               overruns++;
+          }
+     }
+
+
+     /* PRIVATE METHODS *******************************************************/
+
+
+     /**
+      * Returns the size of the line's frames in bytes.
+      */
+     private int getFrameSize()
+     {
+          return Math.max(1, format.getFrameSize());
+     }
+
+
+     /**
+      * Takes the given number of frames from the source, discarding them.
+      *
+      * @param number_frames  The number of frames to discard.
+      */
+     private void discard(long number_frames)
+     {
+          int buffer_frames = discard_buffer.length / getFrameSize();
+          while (number_frames > 0)
+          {
+               int frames = (int) Math.min(number_frames, buffer_frames);
+               capture(discard_buffer, 0, frames);
+               number_frames -= frames;
+          }
+     }
+
+
+     /**
+      * Takes the given number of frames from the source into the given array.
+      * Silence is stored once the source is exhausted.
+      *
+      * @param buffer         The array to store the frames in.
+      * @param offset         The index to store the first byte at.
+      * @param number_frames  The number of frames to take.
+      */
+     private void capture(byte[] buffer, int offset, int number_frames)
+     {
+          int frame_size = getFrameSize();
+          int start = offset;
+          int end = offset + number_frames * frame_size;
+          try
+          {
+               if (generator != null)
+               {
+                    while (!source_exhausted && offset < end)
+                    {
+                         int frames = Math.min(GENERATOR_BLOCK_SIZE, (end - offset) / frame_size);
+                         for (int chan = 0; chan < generator_block.length; chan++)
+                              java.util.Arrays.fill(generator_block[chan], 0, frames, 0.0f);
+                         generator.processBlock(generator_block, frames);
+                         for (int chan = 0; chan < generator_block.length; chan++)
+                              for (int samp = 0; samp < frames; samp++)
+                                   encoding_block[chan][samp] = generator_block[chan][samp];
+                         encoder.encode(encoding_block, 0, frames, buffer, offset);
+                         offset += frames * frame_size;
+                    }
+               }
+               else
+               {
+                    while (!source_exhausted && offset < end)
+                    {
+                         int bytes_read = line_stream.read(buffer, offset, end - offset);
+                         if (bytes_read == -1)
+                              source_exhausted = true;
+                         else
+                              offset += bytes_read;
+                    }
+               }
+          }
+          catch (Exception e)
+          {
+               source_error = e;
+               source_exhausted = true;
+          }
+          if (offset < end)
+          {
+               // Replace any partial frame along with the rest
+               offset -= (offset - start) % frame_size;
+               storeSilence(buffer, offset, end);
+          }
+     }
+
+
+     /**
+      * Stores silence in the given range of the given array, taking the
+      * line's encoding into account.
+      *
+      * @param buffer    The array to store silence in.
+      * @param start     The index of the first byte to store.
+      * @param end       The index after the last byte to store.
+      */
+     private void storeSilence(byte[] buffer, int start, int end)
+     {
+          java.util.Arrays.fill(buffer, start, end, (byte) 0);
+          if (!format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED))
+               return;
+
+          // Unsigned samples are silent at the middle of their range
+          int bytes_per_sample = Math.max(1, format.getSampleSizeInBits() / 8);
+          int most_significant = format.isBigEndian() ? 0 : bytes_per_sample - 1;
+          for (int i = start + most_significant; i < end; i += bytes_per_sample)
+               buffer[i] = (byte) 0x80;
+     }
+}
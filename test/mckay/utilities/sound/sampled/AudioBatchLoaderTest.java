@@ -0,0 +1,271 @@
+/*
+ * AudioBatchLoaderTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the AudioBatchLoader class for the order in which files are passed to
+ * the consumer, the limit on the number of bytes in flight, the reporting of
+ * files that cannot be loaded and the shutdown of its workers when the
+ * consumer aborts.
+ *
+ * @author Cory McKay
+ */
+public class AudioBatchLoaderTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Checks that every file is passed exactly once with its own samples,
+      * in the given order if order is preserved and in any order otherwise.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testDeliveryOrder()
+          throws Exception
+     {
+          // Files of very different lengths, so that they finish out of order
+          int[] lengths = {200000, 100, 50000, 10, 3000, 100000, 1, 700};
+          File[] files = new File[lengths.length];
+          for (int i = 0; i < files.length; i++)
+               files[i] = writeTestFile(2, lengths[i], false);
+
+          for (boolean preserve_order : new boolean[] {true, false})
+          {
+               RecordingConsumer consumer = new RecordingConsumer(files, lengths);
+               AudioBatchLoader loader = new AudioBatchLoader(4, Long.MAX_VALUE, AudioSamples.STORAGE_DOUBLE, false);
+               assertEquals(files.length, loader.loadFiles(files, preserve_order, consumer));
+               assertEquals(files.length, consumer.delivered_indices.size());
+               assertEquals(files.length, new HashSet<Integer>(consumer.delivered_indices).size());
+               if (preserve_order)
+                    for (int i = 0; i < files.length; i++)
+                         assertEquals(i, (int) consumer.delivered_indices.get(i));
+          }
+     }
+
+
+     /**
+      * Checks that no more files are started than fit within the maximum
+      * number of bytes in flight, which includes files held for the consumer.
+      * Every file but the first two is silent until the consumer writes its
+      * samples, which it does only once the file may be started. A file
+      * started too early is loaded silent.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testBytesInFlight()
+          throws Exception
+     {
+          final int number_frames = 5000;
+          final File[] files = new File[10];
+          int[] lengths = new int[files.length];
+          for (int i = 0; i < files.length; i++)
+          {
+               files[i] = writeTestFile(1, number_frames, i >= 2);
+               lengths[i] = number_frames;
+          }
+
+          // Each file is estimated at 8 bytes per sample stored as doubles,
+          // so two files fit
+          long estimated_size = 8L * number_frames;
+          for (boolean preserve_order : new boolean[] {true, false})
+          {
+               for (int i = 2; i < files.length; i++)
+                    writeTestFile(files[i], 1, number_frames, true);
+               RecordingConsumer consumer = new RecordingConsumer(files, lengths)
+               {
+                    public void processAudio(File file, int file_index, AudioSamples audio_samples)
+                         throws Exception
+                    {
+                         super.processAudio(file, file_index, audio_samples);
+                         int next_to_start = delivered_indices.size() + 1;
+                         if (next_to_start < files.length)
+                              writeTestFile(files[next_to_start], 1, number_frames, false);
+                    }
+               };
+               AudioBatchLoader loader = new AudioBatchLoader(4, 2 * estimated_size, AudioSamples.STORAGE_DOUBLE, false);
+               assertEquals(files.length, loader.loadFiles(files, preserve_order, consumer));
+               assertTrue(consumer.silent_indices.isEmpty());
+          }
+
+          // Files that will be memory-mapped are estimated at nothing, so all
+          // are started at once
+          for (int i = 2; i < files.length; i++)
+               writeTestFile(files[i], 1, number_frames, true);
+          RecordingConsumer mapped_consumer = new RecordingConsumer(files, lengths);
+          AudioBatchLoader mapped_loader = new AudioBatchLoader(files.length, 1, AudioSamples.STORAGE_MEMORY_MAPPED, false);
+          assertEquals(files.length, mapped_loader.loadFiles(files, true, mapped_consumer));
+          assertTrue(mapped_consumer.silent_indices.contains(files.length - 1));
+     }
+
+
+     /**
+      * Checks that files that cannot be loaded are passed to processFailure
+      * with their index, in order, and are not counted as loaded.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFailures()
+          throws Exception
+     {
+          File not_audio = temp_folder.newFile();
+          java.nio.file.Files.write(not_audio.toPath(), new byte[1000]);
+          File[] files = { writeTestFile(1, 100, false),
+               not_audio,
+               writeTestFile(2, 300, false),
+               new File(temp_folder.getRoot(), "missing.wav") };
+          int[] lengths = {100, 0, 300, 0};
+          RecordingConsumer consumer = new RecordingConsumer(files, lengths);
+          AudioBatchLoader loader = new AudioBatchLoader(2, Long.MAX_VALUE, AudioSamples.STORAGE_FLOAT, false);
+          assertEquals(2, loader.loadFiles(files, true, consumer));
+          assertEquals(4, consumer.delivered_indices.size());
+          for (int i = 0; i < 4; i++)
+               assertEquals(i, (int) consumer.delivered_indices.get(i));
+          assertEquals(2, consumer.failed_indices.size());
+          assertTrue(consumer.failed_indices.contains(1));
+          assertTrue(consumer.failed_indices.contains(3));
+     }
+
+
+     /**
+      * Checks that an exception thrown by the consumer stops loading, reaches
+      * the caller, and leaves no worker threads running.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testConsumerAbort()
+          throws Exception
+     {
+          File[] files = new File[20];
+          int[] lengths = new int[files.length];
+          for (int i = 0; i < files.length; i++)
+          {
+               files[i] = writeTestFile(1, 20000, false);
+               lengths[i] = 20000;
+          }
+          Set<Thread> threads_before = Thread.getAllStackTraces().keySet();
+          RecordingConsumer consumer = new RecordingConsumer(files, lengths)
+          {
+               public void processAudio(File file, int file_index, AudioSamples audio_samples)
+                    throws Exception
+               {
+                    super.processAudio(file, file_index, audio_samples);
+                    if (delivered_indices.size() == 3)
+                         throw new Exception("Abort");
+               }
+          };
+          AudioBatchLoader loader = new AudioBatchLoader(3, Long.MAX_VALUE, AudioSamples.STORAGE_DOUBLE, false);
+          try
+          {
+               loader.loadFiles(files, false, consumer);
+               fail("The consumer's exception was not thrown.");
+          }
+          catch (Exception e)
+          {
+               assertEquals("Abort", e.getMessage());
+          }
+          assertEquals(3, consumer.delivered_indices.size());
+
+          long deadline = System.currentTimeMillis() + 5000;
+          for (Thread thread : Thread.getAllStackTraces().keySet())
+               if (!threads_before.contains(thread))
+               {
+                    thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+                    assertFalse(thread.getName() + " is still running.", thread.isAlive());
+               }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Writes a new WAVE file of random or silent 16-bit samples.
+      */
+     private File writeTestFile(int channels, int number_frames, boolean silent)
+          throws Exception
+     {
+          File file = temp_folder.newFile();
+          writeTestFile(file, channels, number_frames, silent);
+          return file;
+     }
+
+
+     /**
+      * Overwrites the given file with a WAVE file of random or silent 16-bit
+      * samples. The random samples depend only on the number of channels and
+      * frames.
+      */
+     private static void writeTestFile(File file, int channels, int number_frames, boolean silent)
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(11025.0f, 16, channels, true, false);
+          double[][] samples = silent ? new double[channels][number_frames] : AudioSamplesTest.getRandomSamples(channels, number_frames);
+          try (AudioFileWriter writer = new AudioFileWriter(file, format, AudioFileFormat.Type.WAVE))
+          {
+               writer.writeSamples(samples);
+          }
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * Records the files passed to it, and checks that each file that is
+      * loaded has the expected length and is not silent.
+      */
+     private static class RecordingConsumer
+          implements AudioBatchConsumer
+     {
+          File[]                   files;
+          int[]                    lengths;
+          ArrayList<Integer>       delivered_indices = new ArrayList<Integer>();
+          ArrayList<Integer>       failed_indices = new ArrayList<Integer>();
+          ArrayList<Integer>       silent_indices = new ArrayList<Integer>();
+
+          RecordingConsumer(File[] files, int[] lengths)
+          {
+               this.files = files;
+               this.lengths = lengths;
+          }
+
+          public void processAudio(File file, int file_index, AudioSamples audio_samples)
+               throws Exception
+          {
+               assertSame(files[file_index], file);
+               assertEquals(lengths[file_index], audio_samples.getNumberSamplesPerChannel());
+               if (audio_samples.getMaximumAmplitude() == 0.0)
+                    silent_indices.add(file_index);
+               delivered_indices.add(file_index);
+          }
+
+          public void processFailure(File file, int file_index, Exception error)
+          {
+               assertSame(files[file_index], file);
+               assertNotNull(error);
+               delivered_indices.add(file_index);
+               failed_indices.add(file_index);
+          }
+     }
+}
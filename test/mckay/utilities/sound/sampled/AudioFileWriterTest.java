@@ -0,0 +1,226 @@
+/*
+ * AudioFileWriterTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the AudioFileWriter class by writing WAVE and AIFF files and reading
+ * them back with Java Sound.
+ *
+ * @author Cory McKay
+ */
+public class AudioFileWriterTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Writes samples of each bit depth to each file type, in several blocks,
+      * and checks that Java Sound reads back the format, the length and
+      * exactly the bytes that a SampleEncoder produces in the file's format.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testWriteSamplesRoundTrip()
+          throws Exception
+     {
+          for (AudioFileFormat.Type file_type : new AudioFileFormat.Type[] {AudioFileFormat.Type.WAVE, AudioFileFormat.Type.AIFF})
+               for (int bit_depth : new int[] {8, 16, 24, 32})
+                    for (int channels : new int[] {1, 2})
+                    {
+                         // An odd number of mono 8 bit frames needs a pad byte
+                         int number_frames = 10007;
+                         double[][] samples = getRandomSamples(channels, number_frames);
+                         File file = temp_folder.newFile();
+                         AudioFormat format = new AudioFormat(22050.0f, bit_depth, channels, true, true);
+                         try (AudioFileWriter writer = new AudioFileWriter(file, format, file_type))
+                         {
+                              writer.writeSamples(samples, 0, 5000);
+                              writer.writeSamples(samples, 5000, number_frames - 5000);
+                              assertEquals(number_frames, writer.getFramesWritten());
+                         }
+
+                         AudioInputStream stream = AudioSystem.getAudioInputStream(file);
+                         AudioFormat file_format = stream.getFormat();
+                         String description = file_type + ", " + bit_depth + " bits, " + channels + " channels";
+                         assertEquals(description, 22050.0f, file_format.getSampleRate(), 0.0f);
+                         assertEquals(description, bit_depth, file_format.getSampleSizeInBits());
+                         assertEquals(description, channels, file_format.getChannels());
+                         assertEquals(description, number_frames, stream.getFrameLength());
+                         byte[] bytes_read = AudioMethodsGeneral.getBytesFromAudioInputStream(stream);
+                         stream.close();
+
+                         byte[] expected_bytes = new byte[number_frames * file_format.getFrameSize()];
+                         new SampleEncoder(file_format, false).encode(samples, 0, number_frames, expected_bytes, 0);
+                         assertArrayEquals(description, expected_bytes, bytes_read);
+
+                         // The file holds the header, the audio and any pad
+                         // byte, and nothing else
+                         assertEquals(description, 0, Files.size(file.toPath()) % 2);
+                    }
+     }
+
+
+     /**
+      * Writes bytes in each byte order and signedness to each file type, and
+      * checks that they are converted to the file's encoding without
+      * changing the samples.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testWriteBytesConversion()
+          throws Exception
+     {
+          int number_frames = 999;
+          double[][] samples = getRandomSamples(2, number_frames);
+          for (AudioFileFormat.Type file_type : new AudioFileFormat.Type[] {AudioFileFormat.Type.WAVE, AudioFileFormat.Type.AIFF})
+               for (int bit_depth : new int[] {8, 16, 24})
+                    for (boolean signed : new boolean[] {true, false})
+                         for (boolean big_endian : new boolean[] {true, false})
+                         {
+                              AudioFormat format = new AudioFormat(8000.0f, bit_depth, 2, signed, big_endian);
+                              byte[] bytes = new byte[number_frames * format.getFrameSize()];
+                              new SampleEncoder(format, false).encode(samples, 0, number_frames, bytes, 0);
+                              File file = temp_folder.newFile();
+                              try (AudioFileWriter writer = new AudioFileWriter(file, format, file_type))
+                              {
+                                   writer.writeBytes(bytes, 0, bytes.length);
+                              }
+
+                              double[][] expected = new double[2][number_frames];
+                              AudioMethodsGeneral.decodeSampleValues(bytes, 0, format, expected, 0, number_frames);
+                              AudioInputStream stream = AudioSystem.getAudioInputStream(file);
+                              AudioFormat file_format = stream.getFormat();
+                              byte[] bytes_read = AudioMethodsGeneral.getBytesFromAudioInputStream(stream);
+                              stream.close();
+                              double[][] decoded = new double[2][number_frames];
+                              AudioMethodsGeneral.decodeSampleValues(bytes_read, 0, file_format, decoded, 0, number_frames);
+                              for (int chan = 0; chan < 2; chan++)
+                                   assertArrayEquals(file_type + ", " + format, expected[chan], decoded[chan], 0.0);
+                         }
+     }
+
+
+     /**
+      * Checks that the sampling rate of AIFF files is stored as the expected
+      * 80 bit extended precision number, and that Java Sound reads it back.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testAiffSampleRate()
+          throws Exception
+     {
+          float[] rates = {8000.0f, 11025.0f, 22050.0f, 44100.0f, 48000.0f, 96000.0f, 192000.0f, 11025.25f};
+          long[][] expected_fields = {
+               {0x400B, 0xFA00000000000000L},
+               {0x400C, 0xAC44000000000000L},
+               {0x400D, 0xAC44000000000000L},
+               {0x400E, 0xAC44000000000000L},
+               {0x400E, 0xBB80000000000000L},
+               {0x400F, 0xBB80000000000000L},
+               {0x4010, 0xBB80000000000000L},
+               {0x400C, 0xAC45000000000000L}
+          };
+          for (int i = 0; i < rates.length; i++)
+          {
+               File file = temp_folder.newFile();
+               AudioFormat format = new AudioFormat(rates[i], 16, 1, true, true);
+               try (AudioFileWriter writer = new AudioFileWriter(file, format, AudioFileFormat.Type.AIFF))
+               {
+                    writer.writeSamples(new double[][] {{0.0, 0.5, -0.5}});
+               }
+
+               // The rate follows the number of channels, frames and bit
+               // depth in the COMM chunk, which follows the 12 byte header
+               ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+               assertEquals("COMM", new String(header.array(), 12, 4, "US-ASCII"));
+               assertEquals(3, header.getInt(22));
+               assertEquals("Rate " + rates[i], expected_fields[i][0], header.getShort(28) & 0xFFFF);
+               assertEquals("Rate " + rates[i], expected_fields[i][1], header.getLong(30));
+
+               AudioInputStream stream = AudioSystem.getAudioInputStream(file);
+               assertEquals(rates[i], stream.getFormat().getSampleRate(), 0.0f);
+               stream.close();
+          }
+     }
+
+
+     /**
+      * Checks that unsupported formats are rejected, and that closing twice
+      * and writing after closing behave as documented.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testInvalidUse()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(44100.0f, 16, 2, true, false);
+          assertFalse(AudioFileWriter.isWritable(format, AudioFileFormat.Type.AU));
+          assertFalse(AudioFileWriter.isWritable(new AudioFormat(44100.0f, 12, 2, true, false), AudioFileFormat.Type.WAVE));
+          assertTrue(AudioFileWriter.isWritable(format, AudioFileFormat.Type.WAVE));
+
+          AudioFileWriter writer = new AudioFileWriter(temp_folder.newFile(), format, AudioFileFormat.Type.WAVE);
+          try
+          {
+               writer.writeBytes(new byte[6], 0, 6);
+               fail("A partial frame was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+          writer.close();
+          writer.close();
+          try
+          {
+               writer.writeSamples(new double[2][1]);
+               fail("Samples were written after the writer was closed.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns reproducible random samples, including the extremes and a
+      * clipped sample.
+      */
+     private static double[][] getRandomSamples(int channels, int number_frames)
+     {
+          Random random = new Random(channels * 31 + number_frames);
+          double[][] samples = new double[channels][number_frames];
+          for (int chan = 0; chan < channels; chan++)
+          {
+               for (int samp = 0; samp < number_frames; samp++)
+                    samples[chan][samp] = 2.0 * random.nextDouble() - 1.0;
+               samples[chan][0] = 1.0;
+               samples[chan][1] = -1.0;
+               samples[chan][2] = 1.5;
+          }
+          return samples;
+     }
+}
@@ -0,0 +1,182 @@
+/*
+ * AudioMethodsGeneralTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the getBytesFromAudioInputStream method of the AudioMethodsGeneral
+ * class on streams of known length, streams that end before their declared
+ * length and streams of unknown length, checking both the bytes returned and
+ * the arrays that the stream is read into.
+ *
+ * @author Cory McKay
+ */
+public class AudioMethodsGeneralTest
+{
+     /**
+      * Checks that a stream of known length is read directly into one array
+      * of exactly its length, which is returned.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testKnownLength()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(44100.0f, 16, 2, true, false);
+          for (int number_frames : new int[] {0, 1, 25000})
+          {
+               byte[] bytes = getRandomBytes(number_frames * 4);
+               RecordingInputStream source = new RecordingInputStream(bytes, 4000);
+               AudioInputStream stream = new AudioInputStream(source, format, number_frames);
+               byte[] results = AudioMethodsGeneral.getBytesFromAudioInputStream(stream);
+               assertArrayEquals(bytes, results);
+               for (byte[] buffer : source.buffers)
+                    assertSame("The stream was read into an intermediate buffer.", results, buffer);
+          }
+     }
+
+
+     /**
+      * Checks that a stream that ends before its declared length is trimmed
+      * to the bytes that were actually read.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testShortStream()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 24, 1, true, true);
+          for (int number_frames : new int[] {0, 7, 10000})
+          {
+               byte[] bytes = getRandomBytes(number_frames * 3);
+               AudioInputStream stream = new AudioInputStream(new RecordingInputStream(bytes, 999), format, number_frames + 500);
+               byte[] results = AudioMethodsGeneral.getBytesFromAudioInputStream(stream);
+               assertArrayEquals(bytes, results);
+          }
+     }
+
+
+     /**
+      * Checks that a stream of unknown length is read into arrays that start
+      * with room for 0.25 seconds of audio and double in size whenever they
+      * fill, and that the result is trimmed to the bytes read, including for
+      * formats whose frame rate is not specified.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testUnknownLength()
+          throws Exception
+     {
+          // 5 seconds of audio, delivered in small pieces
+          AudioFormat format = new AudioFormat(44100.0f, 16, 2, true, false);
+          byte[] bytes = getRandomBytes(44100 * 4 * 5);
+          RecordingInputStream source = new RecordingInputStream(bytes, 1000);
+          AudioInputStream stream = new AudioInputStream(source, format, AudioSystem.NOT_SPECIFIED);
+          byte[] results = AudioMethodsGeneral.getBytesFromAudioInputStream(stream);
+          assertArrayEquals(bytes, results);
+
+          ArrayList<Integer> capacities = new ArrayList<>();
+          byte[] last_buffer = null;
+          for (byte[] buffer : source.buffers)
+               if (buffer != last_buffer)
+               {
+                    capacities.add(buffer.length);
+                    last_buffer = buffer;
+               }
+          assertEquals(Integer.valueOf(44100), capacities.get(0));
+          for (int i = 1; i < capacities.size(); i++)
+               assertEquals(2 * capacities.get(i - 1), (int) capacities.get(i));
+          assertEquals(6, capacities.size());
+
+          // Streams that end at and just after the end of the first array
+          for (int number_bytes : new int[] {44100, 44104})
+          {
+               bytes = getRandomBytes(number_bytes);
+               source = new RecordingInputStream(bytes, 44100);
+               results = AudioMethodsGeneral.getBytesFromAudioInputStream(new AudioInputStream(source, format, AudioSystem.NOT_SPECIFIED));
+               assertArrayEquals(bytes, results);
+          }
+
+          // Without a frame rate, the first array holds one frame
+          AudioFormat unknown_rate = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, AudioSystem.NOT_SPECIFIED, 24, 2, 6, AudioSystem.NOT_SPECIFIED, false);
+          for (int number_frames : new int[] {0, 1, 1000})
+          {
+               bytes = getRandomBytes(number_frames * 6);
+               source = new RecordingInputStream(bytes, 600);
+               results = AudioMethodsGeneral.getBytesFromAudioInputStream(new AudioInputStream(source, unknown_rate, AudioSystem.NOT_SPECIFIED));
+               assertArrayEquals(bytes, results);
+               assertEquals(6, source.buffers.get(0).length);
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns reproducible random bytes.
+      */
+     private static byte[] getRandomBytes(int number_bytes)
+     {
+          byte[] bytes = new byte[number_bytes];
+          new Random(number_bytes).nextBytes(bytes);
+          return bytes;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A stream of bytes that returns at most a given number of bytes from
+      * each read, and records the array that each read was into.
+      */
+     private static class RecordingInputStream
+          extends ByteArrayInputStream
+     {
+          /**
+           * The most bytes returned by one read. Should be a whole number of
+           * frames.
+           */
+          private final int max_read;
+
+          /**
+           * The array passed to each read, in order.
+           */
+          final ArrayList<byte[]> buffers;
+
+
+          /**
+           * Creates a stream of the given bytes.
+           */
+          RecordingInputStream(byte[] bytes, int max_read)
+          {
+               super(bytes);
+               this.max_read = max_read;
+               buffers = new ArrayList<>();
+          }
+
+
+          @Override
+          public synchronized int read(byte[] buffer, int offset, int length)
+          {
+               buffers.add(buffer);
+               return super.read(buffer, offset, Math.min(length, max_read));
+          }
+     }
+}
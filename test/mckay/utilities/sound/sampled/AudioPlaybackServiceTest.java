@@ -0,0 +1,427 @@
+/*
+ * AudioPlaybackServiceTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Set;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the AudioPlaybackService class using virtual lines, for the pooling
+ * of lines per format, the starting of lines once they are full, stopping
+ * playbacks, shutting the service down while sounds are playing and the
+ * counting of underruns.
+ *
+ * @author Cory McKay
+ */
+public class AudioPlaybackServiceTest
+{
+     /**
+      * A 16-bit mono format at 8000 Hz. With a buffer duration of 0.1
+      * seconds, lines in this format buffer 1600 bytes, in chunks of 800.
+      */
+     private static final AudioFormat MONO = new AudioFormat(8000.0f, 16, 1, true, false);
+
+     /**
+      * A 16-bit stereo format at 8000 Hz.
+      */
+     private static final AudioFormat STEREO = new AudioFormat(8000.0f, 16, 2, true, false);
+
+
+     /**
+      * Checks that idle lines are reused only for sounds in their own format,
+      * that no more lines are kept per format than allowed, and that each
+      * playback plays its whole stream.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testPooling()
+          throws Exception
+     {
+          VirtualPlaybackService service = new VirtualPlaybackService(0.1, 1, false);
+          byte[] sound = getSequence(3000);
+          AudioPlaybackService.Playback playback = service.play(getStream(MONO, sound, 0, 0));
+          playback.waitUntilFinished();
+          assertNull(playback.getError());
+          RecordingLine mono_line = service.lines.get(0);
+          assertArrayEquals(sound, mono_line.getOutput());
+          assertEquals(1600, mono_line.getBufferSize());
+          assertTrue(mono_line.isOpen());
+          assertFalse(mono_line.isRunning());
+          mono_line.clearOutput();
+
+          // The idle line is reused for the same format only
+          service.play(getStream(MONO, sound, 0, 0)).waitUntilFinished();
+          assertEquals(1, service.lines.size());
+          assertArrayEquals(sound, mono_line.getOutput());
+          service.play(getStream(STEREO, sound, 0, 0)).waitUntilFinished();
+          assertEquals(2, service.lines.size());
+          assertEquals(STEREO, service.lines.get(1).getFormat());
+          assertEquals(1, service.getPoolHitCount());
+          assertEquals(2, service.getPoolMissCount());
+
+          // Overlapping sounds each need a line, but only one is kept
+          AudioPlaybackService.Playback paused = service.play(getStream(MONO, sound, 800, 200));
+          AudioPlaybackService.Playback overlapping = service.play(getStream(MONO, sound, 0, 0));
+          paused.waitUntilFinished();
+          overlapping.waitUntilFinished();
+          assertEquals(3, service.lines.size());
+          assertEquals(2, service.getPoolHitCount());
+          assertEquals(3, service.getPoolMissCount());
+          assertEquals(1, getNumberClosed(service.lines));
+
+          // Preloading opens no more lines than are kept
+          service.preload(MONO, 3);
+          assertEquals(3, service.lines.size());
+          AudioFormat other = new AudioFormat(8000.0f, 8, 1, true, false);
+          service.preload(other, 3);
+          assertEquals(4, service.lines.size());
+          assertEquals(other, service.lines.get(3).getFormat());
+          service.play(getStream(other, sound, 0, 0)).waitUntilFinished();
+          assertEquals(3, service.getPoolHitCount());
+          assertEquals(6, service.getPlaybackCount());
+          assertTrue(service.getMaximumStartLatency() >= service.getAverageStartLatency());
+          service.shutDown();
+          assertEquals(4, getNumberClosed(service.lines));
+     }
+
+
+     /**
+      * Checks that a line is started only once two chunks have been written
+      * to it, or once the stream has ended if it is shorter.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testLineStart()
+          throws Exception
+     {
+          // No lines are kept, so each playback has its own
+          VirtualPlaybackService service = new VirtualPlaybackService(0.1, 0, false);
+          int[] lengths = {4000, 1600, 1200, 300};
+          int[] expected_bytes_at_start = {1600, 1600, 1200, 300};
+          for (int i = 0; i < lengths.length; i++)
+          {
+               byte[] sound = getSequence(lengths[i]);
+               AudioPlaybackService.Playback playback = service.play(getStream(MONO, sound, 0, 0));
+               playback.waitUntilFinished();
+               RecordingLine line = service.lines.get(i);
+               assertEquals(lengths[i] + " bytes", expected_bytes_at_start[i], line.bytes_written_at_start);
+               assertArrayEquals(sound, line.getOutput());
+               assertTrue(playback.getStartLatency() >= 0.0);
+               assertFalse(line.isOpen());
+          }
+
+          // The line is not started while waiting for the second chunk
+          AudioPlaybackService.Playback playback = service.play(getStream(MONO, getSequence(4000), 800, 200));
+          Thread.sleep(100);
+          assertEquals(-1.0, playback.getStartLatency(), 0.0);
+          assertFalse(service.lines.get(4).isRunning());
+          playback.waitUntilFinished();
+          assertTrue(playback.getStartLatency() >= 0.2);
+          assertEquals(1600, service.lines.get(4).bytes_written_at_start);
+          service.shutDown();
+     }
+
+
+     /**
+      * Checks that stopping a playback part way through returns its line to
+      * the pool stopped and empty, and that stopping a playback that has
+      * already released its line does not flush the line once another
+      * playback is using it.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testStop()
+          throws Exception
+     {
+          VirtualPlaybackService service = new VirtualPlaybackService(0.1, 1, true);
+          byte[] long_sound = getSequence(32000);
+          AudioPlaybackService.Playback playback = service.play(getStream(MONO, long_sound, 0, 0));
+          Thread.sleep(150);
+          long start_time = System.nanoTime();
+          playback.stop();
+          playback.waitUntilFinished();
+          double elapsed = (System.nanoTime() - start_time) / 1.0e9;
+          assertTrue("Stopped in " + elapsed + " seconds.", elapsed < 0.5);
+          RecordingLine line = service.lines.get(0);
+          assertTrue(line.isOpen());
+          assertFalse(line.isRunning());
+          assertEquals(line.getBufferSize(), line.available());
+          assertTrue(line.getOutput().length < long_sound.length);
+
+          // The stopped playback's line is reused, and stopping it again
+          // must not affect the new playback
+          line.clearOutput();
+          byte[] sound = getSequence(8000);
+          AudioPlaybackService.Playback next_playback = service.play(getStream(MONO, sound, 0, 0));
+          Thread.sleep(100);
+          playback.stop();
+          next_playback.waitUntilFinished();
+          assertEquals(1, service.lines.size());
+          assertEquals(1, service.getPoolHitCount());
+          assertNull(next_playback.getError());
+          assertArrayEquals(sound, line.getOutput());
+          service.shutDown();
+     }
+
+
+     /**
+      * Checks that shutting the service down lets playbacks in progress
+      * finish, closes their lines afterwards, refuses new playbacks and ends
+      * the service's threads.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testShutDown()
+          throws Exception
+     {
+          Set<Thread> threads_before = Thread.getAllStackTraces().keySet();
+          VirtualPlaybackService service = new VirtualPlaybackService(0.1, 2, true);
+          service.preload(STEREO, 1);
+          byte[] sound = getSequence(8000);
+          AudioPlaybackService.Playback first = service.play(getStream(MONO, sound, 0, 0));
+          AudioPlaybackService.Playback second = service.play(getStream(STEREO, sound, 0, 0));
+          Thread.sleep(50);
+          service.shutDown();
+          assertFalse(first.isFinished());
+          assertFalse(second.isFinished());
+          try
+          {
+               service.play(getStream(MONO, sound, 0, 0));
+               fail("A playback was started after the service was shut down.");
+          }
+          catch (Exception e)
+          {
+               assertEquals("The audio playback service has been shut down.", e.getMessage());
+          }
+          try
+          {
+               service.preload(MONO, 1);
+               fail("A line was preloaded after the service was shut down.");
+          }
+          catch (Exception e)
+          {
+          }
+
+          first.waitUntilFinished();
+          second.waitUntilFinished();
+          assertNull(first.getError());
+          assertNull(second.getError());
+          for (RecordingLine line : service.lines)
+               assertArrayEquals(sound, line.getOutput());
+          assertEquals(service.lines.size(), getNumberClosed(service.lines));
+          assertEquals(2, service.getPlaybackCount());
+
+          long deadline = System.currentTimeMillis() + 5000;
+          for (Thread thread : Thread.getAllStackTraces().keySet())
+               if (!threads_before.contains(thread) && thread.getName().equals("AudioPlaybackService worker"))
+               {
+                    thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+                    assertFalse(thread.getName() + " is still running.", thread.isAlive());
+               }
+     }
+
+
+     /**
+      * Checks that a stream that pauses for longer than the line's buffer
+      * causes an underrun, and that a stream that keeps up does not.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testUnderruns()
+          throws Exception
+     {
+          VirtualPlaybackService service = new VirtualPlaybackService(0.1, 1, true);
+          byte[] sound = getSequence(8000);
+          AudioPlaybackService.Playback playback = service.play(getStream(MONO, sound, 0, 0));
+          playback.waitUntilFinished();
+          assertEquals(0, playback.getUnderrunCount());
+          assertEquals(0, service.getUnderrunCount());
+
+          // Pausing for 0.3 seconds after the third chunk drains the line
+          playback = service.play(getStream(MONO, sound, 2400, 300));
+          playback.waitUntilFinished();
+          assertNull(playback.getError());
+          assertTrue(playback.getUnderrunCount() >= 1);
+          assertEquals(playback.getUnderrunCount(), service.getUnderrunCount());
+          assertTrue(service.lines.get(0).getUnderrunCount() >= 1);
+          service.shutDown();
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns bytes counting up from 0.
+      */
+     private static byte[] getSequence(int length)
+     {
+          byte[] bytes = new byte[length];
+          for (int i = 0; i < length; i++)
+               bytes[i] = (byte) i;
+          return bytes;
+     }
+
+
+     /**
+      * Returns a stream of the given bytes in the given format, which pauses
+      * for the given number of milliseconds once the given number of bytes
+      * has been read.
+      */
+     private static AudioInputStream getStream( AudioFormat format,
+          byte[] bytes,
+          int pause_position,
+          long pause_milliseconds )
+     {
+          return new AudioInputStream( new PausingInputStream(bytes, pause_position, pause_milliseconds),
+               format,
+               bytes.length / format.getFrameSize() );
+     }
+
+
+     /**
+      * Returns the number of the given lines that have been closed.
+      */
+     private static int getNumberClosed(ArrayList<RecordingLine> lines)
+     {
+          int closed = 0;
+          synchronized (lines)
+          {
+               for (RecordingLine line : lines)
+                    if (!line.isOpen())
+                         closed++;
+          }
+          return closed;
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A service that plays sounds on virtual lines that keep their output,
+      * and records the lines that it opens.
+      */
+     private static class VirtualPlaybackService
+          extends AudioPlaybackService
+     {
+          final boolean                      real_time;
+          final ArrayList<RecordingLine>     lines = new ArrayList<RecordingLine>();
+
+          VirtualPlaybackService(double buffer_duration, int lines_per_format, boolean real_time)
+          {
+               super(buffer_duration, lines_per_format);
+               this.real_time = real_time;
+          }
+
+          protected SourceDataLine openLine(AudioFormat format, int buffer_size)
+               throws Exception
+          {
+               RecordingLine line = new RecordingLine(format, real_time);
+               line.open(format, buffer_size);
+               synchronized (lines)
+               {
+                    lines.add(line);
+               }
+               return line;
+          }
+     }
+
+
+     /**
+      * A virtual line that keeps its output and records how many bytes had
+      * been written to it when it was last started.
+      */
+     private static class RecordingLine
+          extends VirtualSourceDataLine
+     {
+          int  bytes_written = 0;
+          int  bytes_written_at_start = -1;
+
+          RecordingLine(AudioFormat format, boolean real_time)
+               throws Exception
+          {
+               super(format, real_time, true);
+          }
+
+          public synchronized int write(byte[] buffer, int offset, int length)
+          {
+               int written = super.write(buffer, offset, length);
+               bytes_written += written;
+               return written;
+          }
+
+          public synchronized void start()
+          {
+               bytes_written_at_start = bytes_written;
+               super.start();
+          }
+     }
+
+
+     /**
+      * A stream of bytes that pauses once, part way through.
+      */
+     private static class PausingInputStream
+          extends InputStream
+     {
+          private final byte[]     bytes;
+          private final int        pause_position;
+          private final long       pause_milliseconds;
+          private int              position = 0;
+          private boolean          paused = false;
+
+          PausingInputStream(byte[] bytes, int pause_position, long pause_milliseconds)
+          {
+               this.bytes = bytes;
+               this.pause_position = pause_position;
+               this.pause_milliseconds = pause_milliseconds;
+          }
+
+          public int read()
+          {
+               byte[] one_byte = new byte[1];
+               return read(one_byte, 0, 1) == -1 ? -1 : one_byte[0] & 0xFF;
+          }
+
+          public int read(byte[] buffer, int offset, int length)
+          {
+               if (position == bytes.length)
+                    return -1;
+               if (position == pause_position && !paused)
+               {
+                    paused = true;
+                    try
+                    {
+                         Thread.sleep(pause_milliseconds);
+                    }
+                    catch (InterruptedException e)
+                    {
+                         Thread.currentThread().interrupt();
+                    }
+               }
+               int end = bytes.length;
+               if (position < pause_position)
+                    end = pause_position;
+               int number_bytes = Math.min(length, end - position);
+               System.arraycopy(bytes, position, buffer, offset, number_bytes);
+               position += number_bytes;
+               return number_bytes;
+          }
+     }
+}
@@ -0,0 +1,355 @@
+/*
+ * AudioRingBufferTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the AudioRingBuffer class for wrapping around its end, the
+ * accounting of overruns, and the semantics of closing and of blocking
+ * reads, including with a producer on another thread, and the recording of
+ * a line into it.
+ *
+ * @author Cory McKay
+ */
+public class AudioRingBufferTest
+{
+     /**
+      * Writes and reads blocks of varying sizes many times around a small
+      * buffer, and checks that the bytes come out in order and that the
+      * counts stay consistent.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testWrapAround()
+          throws Exception
+     {
+          AudioRingBuffer ring_buffer = new AudioRingBuffer(10, 4);
+          assertEquals(40, ring_buffer.getCapacity());
+          assertEquals(4, ring_buffer.getFrameSize());
+
+          int[] write_frames = {3, 7, 1, 5, 10, 2};
+          int[] read_frames = {2, 9, 4, 1, 6};
+          int next_written = 0;
+          int next_read = 0;
+          byte[] read_bytes = new byte[40];
+          for (int i = 0; i < 200; i++)
+          {
+               int length = 4 * Math.min(write_frames[i % write_frames.length], 10 - ring_buffer.getAvailableBytes() / 4);
+               assertEquals(length, ring_buffer.write(getSequence(next_written, length), 0, length));
+               next_written += length;
+
+               int read = ring_buffer.read(read_bytes, 0, 4 * read_frames[i % read_frames.length]);
+               assertEquals(0, read % 4);
+               for (int j = 0; j < read; j++)
+                    assertEquals((byte) (next_read + j), read_bytes[j]);
+               next_read += read;
+               assertEquals(next_written - next_read, ring_buffer.getAvailableBytes());
+          }
+          assertEquals(next_written, ring_buffer.getTotalBytesWritten());
+          assertEquals(next_read, ring_buffer.getTotalBytesRead());
+          assertTrue(next_written > 10 * 40);
+          assertEquals(0, ring_buffer.getOverrunBytes());
+          assertEquals(0, ring_buffer.getOverrunCount());
+
+          // Reads are rounded down to whole frames
+          ring_buffer.write(new byte[8], 0, 8);
+          assertEquals(ring_buffer.getAvailableBytes() / 4 * 4, ring_buffer.read(new byte[40], 0, 39));
+          assertEquals(0, ring_buffer.getAvailableBytes());
+          ring_buffer.write(new byte[8], 0, 8);
+          assertEquals(0, ring_buffer.read(new byte[3], 0, 3));
+     }
+
+
+     /**
+      * Checks that the part of each write that does not fit is discarded in
+      * whole frames and counted, and that the stored part is unchanged.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testOverrunAccounting()
+          throws Exception
+     {
+          AudioRingBuffer ring_buffer = new AudioRingBuffer(4, 3);
+          assertEquals(9, ring_buffer.write(getSequence(0, 9), 0, 9));
+          assertEquals(0, ring_buffer.getOverrunCount());
+
+          // Only one of these three frames fits
+          assertEquals(3, ring_buffer.write(getSequence(9, 9), 0, 9));
+          assertEquals(6, ring_buffer.getOverrunBytes());
+          assertEquals(1, ring_buffer.getOverrunCount());
+
+          // Nothing fits
+          assertEquals(0, ring_buffer.write(getSequence(18, 6), 0, 6));
+          assertEquals(12, ring_buffer.getOverrunBytes());
+          assertEquals(2, ring_buffer.getOverrunCount());
+          assertEquals(12, ring_buffer.getTotalBytesWritten());
+
+          byte[] read_bytes = new byte[12];
+          assertEquals(12, ring_buffer.read(read_bytes, 0, 12));
+          assertArrayEquals(getSequence(0, 12), read_bytes);
+
+          // Once there is room again, writes are stored in full
+          assertEquals(6, ring_buffer.write(getSequence(50, 6), 0, 6));
+          assertEquals(2, ring_buffer.getOverrunCount());
+          assertEquals(6, ring_buffer.read(read_bytes, 0, 12));
+          for (int i = 0; i < 6; i++)
+               assertEquals((byte) (50 + i), read_bytes[i]);
+     }
+
+
+     /**
+      * Checks the results of reads after the buffer is closed, and that
+      * writes after closing and blocks larger than the buffer are rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testCloseAndReadBlock()
+          throws Exception
+     {
+          AudioRingBuffer ring_buffer = new AudioRingBuffer(8, 2);
+          byte[] read_bytes = new byte[16];
+          ring_buffer.write(getSequence(0, 10), 0, 10);
+          assertEquals(6, ring_buffer.readBlock(read_bytes, 0, 6));
+          assertFalse(ring_buffer.isClosed());
+
+          // A timed read that cannot be satisfied returns 0 without reading
+          assertEquals(0, ring_buffer.readBlock(read_bytes, 0, 8, 20, TimeUnit.MILLISECONDS));
+          assertEquals(4, ring_buffer.getAvailableBytes());
+          assertEquals(0, ring_buffer.read(read_bytes, 0, 0));
+
+          ring_buffer.close();
+          assertTrue(ring_buffer.isClosed());
+          try
+          {
+               ring_buffer.write(new byte[2], 0, 2);
+               fail("Bytes were written to a closed buffer.");
+          }
+          catch (IllegalStateException e)
+          {
+               // Expected
+          }
+
+          // The remaining bytes are returned by a short block, then the end
+          // of the stream is reported
+          assertEquals(4, ring_buffer.readBlock(read_bytes, 0, 8));
+          for (int i = 0; i < 4; i++)
+               assertEquals((byte) (6 + i), read_bytes[i]);
+          assertEquals(-1, ring_buffer.readBlock(read_bytes, 0, 8));
+          assertEquals(-1, ring_buffer.readBlock(read_bytes, 0, 8, 1, TimeUnit.SECONDS));
+          assertEquals(-1, ring_buffer.read(read_bytes, 0, 8));
+
+          try
+          {
+               ring_buffer.readBlock(read_bytes, 0, 17);
+               fail("A block larger than the buffer was accepted.");
+          }
+          catch (IllegalArgumentException e)
+          {
+               // Expected
+          }
+          try
+          {
+               new AudioRingBuffer(0, 4);
+               fail("A capacity of 0 frames was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+     }
+
+
+     /**
+      * Checks that a blocked read is woken by a write and by closing from
+      * another thread, and is ended by interruption without reading.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testBlockedReads()
+          throws Exception
+     {
+          final AudioRingBuffer ring_buffer = new AudioRingBuffer(16, 1);
+          Thread producer = new Thread(() -> {
+               try
+               {
+                    Thread.sleep(50);
+                    ring_buffer.write(getSequence(0, 5), 0, 5);
+                    Thread.sleep(50);
+                    ring_buffer.write(getSequence(5, 5), 0, 5);
+                    Thread.sleep(50);
+                    ring_buffer.close();
+               }
+               catch (InterruptedException e)
+               {
+                    // The test fails on the consumer side
+               }
+          });
+          producer.start();
+          byte[] read_bytes = new byte[16];
+          assertEquals(8, ring_buffer.readBlock(read_bytes, 0, 8));
+          assertEquals(2, ring_buffer.readBlock(read_bytes, 8, 8));
+          assertArrayEquals(getSequence(0, 10), java.util.Arrays.copyOf(read_bytes, 10));
+          assertEquals(-1, ring_buffer.readBlock(read_bytes, 0, 8));
+          producer.join();
+
+          final AudioRingBuffer waiting_buffer = new AudioRingBuffer(16, 1);
+          waiting_buffer.write(new byte[3], 0, 3);
+          final AtomicReference<Object> result = new AtomicReference<Object>();
+          Thread consumer = new Thread(() -> {
+               try
+               {
+                    result.set(waiting_buffer.readBlock(new byte[16], 0, 16));
+               }
+               catch (InterruptedException e)
+               {
+                    result.set(e);
+               }
+          });
+          consumer.start();
+          Thread.sleep(50);
+          consumer.interrupt();
+          consumer.join(5000);
+          assertTrue(result.get() instanceof InterruptedException);
+          assertEquals(3, waiting_buffer.getAvailableBytes());
+     }
+
+
+     /**
+      * Streams bytes from a producer thread to the consumer through a small
+      * buffer, and checks that every byte stored arrives in order and that
+      * every byte written is either stored or counted as discarded.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testConcurrentStreaming()
+          throws Exception
+     {
+          final AudioRingBuffer ring_buffer = new AudioRingBuffer(64, 4);
+          final int number_writes = 20000;
+          Thread producer = new Thread(() -> {
+               java.nio.ByteBuffer block = java.nio.ByteBuffer.allocate(32);
+               for (int i = 0; i < number_writes; i++)
+               {
+                    for (int frame = 0; frame < 8; frame++)
+                         block.putInt(4 * frame, i);
+                    ring_buffer.write(block.array(), 0, 32);
+                    if (i % 100 == 0)
+                         Thread.yield();
+               }
+               ring_buffer.close();
+          });
+          producer.start();
+
+          // Each frame holds the index of the write it came from, and as
+          // writes are stored in whole frames and in order, these indices
+          // never decrease
+          byte[] read_bytes = new byte[32];
+          java.nio.ByteBuffer frames = java.nio.ByteBuffer.wrap(read_bytes);
+          long bytes_read = 0;
+          int last_write = -1;
+          int read;
+          while ((read = ring_buffer.readBlock(read_bytes, 0, 32, 10, TimeUnit.MILLISECONDS)) != -1)
+          {
+               assertEquals(0, read % 4);
+               for (int frame = 0; frame < read / 4; frame++)
+               {
+                    int write = frames.getInt(4 * frame);
+                    assertTrue(write >= last_write);
+                    last_write = write;
+               }
+               bytes_read += read;
+          }
+          producer.join();
+          assertEquals(ring_buffer.getTotalBytesWritten(), bytes_read);
+          assertEquals(32L * number_writes, ring_buffer.getTotalBytesWritten() + ring_buffer.getOverrunBytes());
+          assertEquals(0, ring_buffer.getOverrunBytes() % 4);
+          assertTrue(last_write < number_writes);
+     }
+
+
+     /**
+      * Checks that recording from a line into a ring buffer closes both the
+      * buffer and the line when recording is stopped, and also when reading
+      * from the line fails, so that a consumer blocked on the buffer is
+      * released.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRecordToRingBuffer()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 16, 1, true, false);
+          for (final boolean fail : new boolean[] {false, true})
+          {
+               final VirtualTargetDataLine line = new VirtualTargetDataLine(format, (block, number_frames) -> {}, true)
+               {
+                    int reads = 0;
+
+                    public synchronized int read(byte[] buffer, int offset, int length)
+                    {
+                         if (fail && ++reads == 3)
+                              throw new IllegalStateException("Line failed");
+                         return super.read(buffer, offset, length);
+                    }
+               };
+               line.open(format);
+               line.start();
+               AudioMethodsRecording.RecordThread record_thread = AudioMethodsRecording.recordToRingBuffer(line, 0.5);
+               final AtomicReference<Throwable> uncaught = new AtomicReference<Throwable>();
+               record_thread.setUncaughtExceptionHandler((thread, e) -> uncaught.set(e));
+               AudioRingBuffer ring_buffer = record_thread.getRingBuffer();
+               if (!fail)
+               {
+                    Thread.sleep(100);
+                    record_thread.stopRecording();
+               }
+
+               // Reads return the recorded audio and then the end of the
+               // stream
+               byte[] read_bytes = new byte[ring_buffer.getCapacity()];
+               long deadline = System.currentTimeMillis() + 5000;
+               while (ring_buffer.readBlock(read_bytes, 0, read_bytes.length, 100, TimeUnit.MILLISECONDS) != -1)
+                    assertTrue("The ring buffer was not closed.", System.currentTimeMillis() < deadline);
+               record_thread.join(5000);
+               assertFalse(record_thread.isAlive());
+               assertTrue(ring_buffer.isClosed());
+               assertFalse(line.isOpen());
+               if (fail)
+                    assertEquals("Line failed", uncaught.get().getMessage());
+               else
+                    assertNull(uncaught.get());
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns bytes counting up from the given value.
+      */
+     private static byte[] getSequence(int first, int length)
+     {
+          byte[] bytes = new byte[length];
+          for (int i = 0; i < length; i++)
+               bytes[i] = (byte) (first + i);
+          return bytes;
+     }
+}
@@ -0,0 +1,244 @@
+/*
+ * AudioSamplesCacheTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the AudioSamplesCache class for hits and misses, the eviction of the
+ * least recently used objects, soft-reference spill and the accounting of
+ * its size when shared by several threads.
+ *
+ * @author Cory McKay
+ */
+public class AudioSamplesCacheTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Checks that repeated requests return the cached object, and that
+      * other storage modes, changed files and invalidated files are loaded
+      * again.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testHitsAndMisses()
+          throws Exception
+     {
+          AudioSamplesCache cache = new AudioSamplesCache(Long.MAX_VALUE, false);
+          File file = writeTestFile(2, 1000);
+          AudioSamples first = cache.getAudioSamples(file, false, AudioSamples.STORAGE_DOUBLE);
+          assertSame(first, cache.getAudioSamples(file, false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(1, cache.getMissCount());
+          assertEquals(1, cache.getHitCount());
+
+          AudioSamples floats = cache.getAudioSamples(file, false, AudioSamples.STORAGE_FLOAT);
+          assertNotSame(first, floats);
+          assertEquals(AudioSamples.STORAGE_FLOAT, floats.getStorageMode());
+          assertEquals(2, cache.getMissCount());
+          assertEquals(2, cache.getNumberEntries());
+
+          // A file whose size changes is loaded again
+          writeTestFile(file, 2, 500);
+          AudioSamples reloaded = cache.getAudioSamples(file, false, AudioSamples.STORAGE_DOUBLE);
+          assertNotSame(first, reloaded);
+          assertEquals(500, reloaded.getNumberSamplesPerChannel());
+          assertEquals(3, cache.getMissCount());
+          assertEquals(2, cache.getNumberEntries());
+
+          cache.invalidate(file);
+          assertEquals(0, cache.getNumberEntries());
+          assertEquals(0, cache.getSize());
+          assertNotSame(reloaded, cache.getAudioSamples(file, false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(4, cache.getMissCount());
+          assertEquals(1, cache.getHitCount());
+     }
+
+
+     /**
+      * Checks that the size of the cache includes the mixdown of each object
+      * when it is cached and does not change when the mixdown is used, and
+      * that the least recently used objects are evicted when it is full.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testEviction()
+          throws Exception
+     {
+          // Stereo samples stored as doubles take 8 bytes per sample for each
+          // channel and for the mixdown
+          long object_bytes = 8L * 3 * 1000;
+          AudioSamplesCache cache = new AudioSamplesCache(2 * object_bytes, false);
+          File[] files = {writeTestFile(2, 1000), writeTestFile(2, 1000), writeTestFile(2, 1000)};
+          AudioSamples a = cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE);
+          AudioSamples b = cache.getAudioSamples(files[1], false, AudioSamples.STORAGE_DOUBLE);
+          assertEquals(2 * object_bytes, cache.getSize());
+          a.getSamplesMixedDown();
+          b.getSamplesMixedDown();
+          assertEquals(2 * object_bytes, cache.getSize());
+          assertEquals(object_bytes, a.getStoredSampleBytes());
+
+          // Using a makes b the least recently used
+          assertSame(a, cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE));
+          cache.getAudioSamples(files[2], false, AudioSamples.STORAGE_DOUBLE);
+          assertEquals(1, cache.getEvictionCount());
+          assertEquals(2, cache.getNumberEntries());
+          assertEquals(2 * object_bytes, cache.getSize());
+          assertSame(a, cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE));
+          assertNotSame(b, cache.getAudioSamples(files[1], false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(2, cache.getEvictionCount());
+
+          // An object larger than the cache is returned but not cached
+          AudioSamplesCache small_cache = new AudioSamplesCache(object_bytes - 1, false);
+          AudioSamples large = small_cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE);
+          assertEquals(1000, large.getNumberSamplesPerChannel());
+          assertEquals(0, small_cache.getNumberEntries());
+          assertEquals(0, small_cache.getSize());
+          assertNotSame(large, small_cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(2, small_cache.getMissCount());
+     }
+
+
+     /**
+      * Checks that evicted objects are returned while they are still
+      * referenced when soft-reference spill is enabled, and are then cached
+      * again.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testSpill()
+          throws Exception
+     {
+          long object_bytes = 8L * 1000;
+          AudioSamplesCache cache = new AudioSamplesCache(object_bytes, true);
+          File[] files = {writeTestFile(1, 1000), writeTestFile(1, 1000)};
+          AudioSamples a = cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE);
+          AudioSamples b = cache.getAudioSamples(files[1], false, AudioSamples.STORAGE_DOUBLE);
+          assertEquals(1, cache.getEvictionCount());
+          assertEquals(1, cache.getNumberEntries());
+          assertEquals(object_bytes, cache.getSize());
+
+          // a is strongly referenced here, so it cannot have been reclaimed
+          assertSame(a, cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(1, cache.getSpillHitCount());
+          assertEquals(1, cache.getHitCount());
+          assertEquals(2, cache.getEvictionCount());
+          assertSame(b, cache.getAudioSamples(files[1], false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(2, cache.getSpillHitCount());
+          assertEquals(2, cache.getMissCount());
+
+          // Spilled objects of changed files are not returned
+          writeTestFile(files[0], 1, 999);
+          assertNotSame(a, cache.getAudioSamples(files[0], false, AudioSamples.STORAGE_DOUBLE));
+          assertEquals(3, cache.getMissCount());
+     }
+
+
+     /**
+      * Has several threads request and read the mixdowns of more files than
+      * fit in the cache at once, and checks that each receives the samples
+      * of the file it requested and that the size of the cache is accounted
+      * for exactly.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testConcurrentRequests()
+          throws Exception
+     {
+          final int number_threads = 8;
+          final int requests_per_thread = 200;
+          final File[] files = new File[6];
+          final double[][] expected_mixdowns = new double[files.length][];
+          for (int i = 0; i < files.length; i++)
+          {
+               files[i] = writeTestFile(2, 500 + 100 * i);
+               expected_mixdowns[i] = new AudioSamples(files[i], "expected", false).getSamplesMixedDown();
+          }
+          final AudioSamplesCache cache = new AudioSamplesCache(8L * 3 * 2000, false);
+          final CyclicBarrier barrier = new CyclicBarrier(number_threads);
+          final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+          Thread[] threads = new Thread[number_threads];
+          for (int t = 0; t < number_threads; t++)
+          {
+               final int seed = t;
+               threads[t] = new Thread(() -> {
+                    try
+                    {
+                         barrier.await();
+                         for (int request = 0; request < requests_per_thread; request++)
+                         {
+                              int index = (seed + request * (seed + 1)) % files.length;
+                              AudioSamples audio_samples = cache.getAudioSamples(files[index], false, AudioSamples.STORAGE_DOUBLE);
+                              assertArrayEquals(expected_mixdowns[index], audio_samples.getSamplesMixedDown(), 0.0);
+                         }
+                    }
+                    catch (Throwable e)
+                    {
+                         failure.compareAndSet(null, e);
+                    }
+               });
+               threads[t].start();
+          }
+          for (Thread thread : threads)
+               thread.join();
+          if (failure.get() != null)
+               throw new AssertionError(failure.get());
+
+          assertEquals(number_threads * requests_per_thread, cache.getHitCount() + cache.getMissCount());
+          assertTrue(cache.getSize() <= cache.getMaximumSize());
+
+          // Invalidating every file leaves nothing, as the size of each
+          // object was fixed when it was cached
+          for (File file : files)
+               cache.invalidate(file);
+          assertEquals(0, cache.getNumberEntries());
+          assertEquals(0, cache.getSize());
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Writes a new WAVE file of random 16-bit samples.
+      */
+     private File writeTestFile(int channels, int number_frames)
+          throws Exception
+     {
+          File file = temp_folder.newFile();
+          writeTestFile(file, channels, number_frames);
+          return file;
+     }
+
+
+     /**
+      * Overwrites the given file with a WAVE file of random 16-bit samples.
+      */
+     private static void writeTestFile(File file, int channels, int number_frames)
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(11025.0f, 16, channels, true, false);
+          try (AudioFileWriter writer = new AudioFileWriter(file, format, AudioFileFormat.Type.WAVE))
+          {
+               writer.writeSamples(AudioSamplesTest.getRandomSamples(channels, number_frames));
+          }
+     }
+}
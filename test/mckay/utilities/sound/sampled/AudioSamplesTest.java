@@ -0,0 +1,377 @@
+/*
+ * AudioSamplesTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Random;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the AudioSamples class, comparing each storage mode with samples
+ * stored as doubles.
+ *
+ * @author Cory McKay
+ */
+public class AudioSamplesTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Checks that samples stored as floats match the samples stored as
+      * doubles to single precision through every access method, and use
+      * half the memory.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFloatStorageMatchesDoubleStorage()
+          throws Exception
+     {
+          for (int channels : new int[] {1, 2})
+          {
+               File file = writeTestFile(16, channels, 5000);
+               AudioSamples doubles = new AudioSamples(file, "doubles", false, AudioSamples.STORAGE_DOUBLE);
+               AudioSamples floats = new AudioSamples(file, "floats", false, AudioSamples.STORAGE_FLOAT);
+               assertEquals(AudioSamples.STORAGE_FLOAT, floats.getStorageMode());
+               assertFalse(floats.isMemoryMapped());
+               assertEquals(channels, floats.getNumberChannels());
+               assertEquals(5000, floats.getNumberSamplesPerChannel());
+               assertEquals(doubles.getAudioFormat().toString(), floats.getAudioFormat().toString());
+               assertEquals(4L * channels * 5000, floats.getStoredSampleBytes());
+
+               assertSamplesEqual(doubles.getSamplesChannelSegregated(), floats.getSamplesChannelSegregated(), 0.0);
+               assertArrayEquals(doubles.getSamplesMixedDown(), floats.getSamplesMixedDown(), 1E-7);
+               assertSamplesEqual( doubles.getSamplesChannelSegregated(1000, 1999),
+                    floats.getSamplesChannelSegregated(1000, 1999),
+                    0.0 );
+               assertArrayEquals(doubles.getSamplesMixedDown(10, 20), floats.getSamplesMixedDown(10, 20), 1E-7);
+               assertEquals(doubles.getMaximumAmplitude(), floats.getMaximumAmplitude(), 0.0);
+
+               double[][][] double_windows = doubles.getSampleWindowsChannelSegregated(512);
+               double[][][] float_windows = floats.getSampleWindowsChannelSegregated(512);
+               assertEquals(double_windows.length, float_windows.length);
+               for (int win = 0; win < double_windows.length; win++)
+                    assertSamplesEqual(double_windows[win], float_windows[win], 0.0);
+          }
+     }
+
+
+     /**
+      * Checks that streams can be stored as floats, and that only the double
+      * and float storage modes are accepted for them.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFloatStorageFromStream()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 24, 2, true, false);
+          double[][] original = getRandomSamples(2, 3000);
+          byte[] bytes = new byte[3000 * format.getFrameSize()];
+          new SampleEncoder(format, false).encode(original, 0, 3000, bytes, 0);
+
+          AudioSamples floats = new AudioSamples( new AudioInputStream(new ByteArrayInputStream(bytes), format, 3000),
+               "stream",
+               false,
+               AudioSamples.STORAGE_FLOAT );
+          AudioSamples doubles = new AudioSamples( new AudioInputStream(new ByteArrayInputStream(bytes), format, 3000),
+               "stream",
+               false );
+          assertEquals(AudioSamples.STORAGE_FLOAT, floats.getStorageMode());
+          double[][] expected = doubles.getSamplesChannelSegregated();
+          double[][] stored = floats.getSamplesChannelSegregated();
+          for (int chan = 0; chan < 2; chan++)
+               for (int samp = 0; samp < 3000; samp++)
+                    assertEquals((float) expected[chan][samp], stored[chan][samp], 0.0);
+
+          try
+          {
+               new AudioSamples( new AudioInputStream(new ByteArrayInputStream(bytes), format, 3000),
+                    "stream",
+                    false,
+                    AudioSamples.STORAGE_MEMORY_MAPPED );
+               fail("A stream was accepted for memory-mapping.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+     }
+
+
+     /**
+      * Checks that copies of samples stored as floats are stored as floats,
+      * and are independent of the original.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testCopyOfFloatStorage()
+          throws Exception
+     {
+          for (int channels : new int[] {1, 3})
+          {
+               AudioSamples floats = new AudioSamples(writeTestFile(16, channels, 2000), "floats", false, AudioSamples.STORAGE_FLOAT);
+               double[][] original_samples = floats.getSamplesChannelSegregated();
+               double[] original_mixdown = floats.getSamplesMixedDown();
+
+               AudioSamples copy = floats.getCopyOfAudioSamples();
+               assertEquals(AudioSamples.STORAGE_FLOAT, copy.getStorageMode());
+               assertEquals(floats.getStoredSampleBytes() - (channels == 1 ? 0 : 4L * 2000), copy.getStoredSampleBytes());
+               assertEquals(floats.getAudioFormat().toString(), copy.getAudioFormat().toString());
+               assertSamplesEqual(original_samples, copy.getSamplesChannelSegregated(), 0.0);
+               assertArrayEquals(original_mixdown, copy.getSamplesMixedDown(), 0.0);
+
+               double[][] silence = new double[channels][2000];
+               copy.setSamples(silence);
+               assertEquals(AudioSamples.STORAGE_FLOAT, copy.getStorageMode());
+               assertSamplesEqual(silence, copy.getSamplesChannelSegregated(), 0.0);
+               assertSamplesEqual(original_samples, floats.getSamplesChannelSegregated(), 0.0);
+          }
+     }
+
+
+     /**
+      * Checks that samples stored as floats stay floats when normalized and
+      * when replaced, and are saved as the samples stored as doubles are.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFloatStorageModificationAndSaving()
+          throws Exception
+     {
+          double[][] loud = getRandomSamples(2, 1000);
+          loud[1][500] = 2.0;
+          File file = writeTestFile(16, 2, 1000);
+          AudioSamples floats = new AudioSamples(file, "floats", false, AudioSamples.STORAGE_FLOAT);
+          floats.setSamples(loud);
+          assertEquals(AudioSamples.STORAGE_FLOAT, floats.getStorageMode());
+          assertEquals(1.0, floats.checkChannelSegregatedSamplesForClipping(), 0.0);
+          floats.normalize();
+          assertEquals(AudioSamples.STORAGE_FLOAT, floats.getStorageMode());
+          assertEquals(1.0, floats.getMaximumAmplitude(), 1E-7);
+          assertEquals(-1.0, floats.checkChannelSegregatedSamplesForClipping(), 0.0);
+
+          File saved = temp_folder.newFile();
+          floats.saveAudio(saved, true, AudioFileFormat.Type.WAVE, false);
+          AudioSamples reloaded = new AudioSamples(saved, "reloaded", false);
+          assertSamplesEqual(floats.getSamplesChannelSegregated(), reloaded.getSamplesChannelSegregated(), 2.0 / 32768.0);
+     }
+
+
+     /**
+      * Checks that the mixdown of multi-channel samples is only calculated
+      * when first needed, is the average of the channels, is kept, and is
+      * recalculated when the samples are replaced.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testLazyMixdown()
+          throws Exception
+     {
+          double[][] original = getRandomSamples(3, 1000);
+          AudioSamples audio_samples = new AudioSamples(original, 8000.0f, "lazy", false, true);
+          assertEquals(8L * 3 * 1000, audio_samples.getStoredSampleBytes());
+
+          double[] mixdown = audio_samples.getSamplesMixedDown();
+          assertEquals(8L * 4 * 1000, audio_samples.getStoredSampleBytes());
+          for (int samp = 0; samp < 1000; samp++)
+               assertEquals((original[0][samp] + original[1][samp] + original[2][samp]) / 3.0, mixdown[samp], 1E-15);
+          assertSame(mixdown, audio_samples.getSamplesMixedDown());
+          assertArrayEquals(java.util.Arrays.copyOfRange(mixdown, 100, 200), audio_samples.getSamplesMixedDown(100, 199), 0.0);
+
+          // Replacing the samples discards the mixdown until it is needed
+          double[][] replacement = getRandomSamples(3, 500);
+          audio_samples.setSamples(replacement);
+          assertEquals(8L * 3 * 500, audio_samples.getStoredSampleBytes());
+          double[] new_mixdown = audio_samples.getSamplesMixedDown();
+          assertEquals(500, new_mixdown.length);
+          assertEquals((replacement[0][7] + replacement[1][7] + replacement[2][7]) / 3.0, new_mixdown[7], 1E-15);
+
+          // Normalizing the channels does not normalize the mixdown
+          AudioSamples quiet = new AudioSamples(new double[][] {{0.25, -0.5}, {0.25, 0.0}}, 8000.0f, "quiet", false);
+          quiet.normalizeChannelSegretatedSamples();
+          assertArrayEquals(new double[] {0.25, -0.25}, quiet.getSamplesMixedDown(), 0.0);
+          assertArrayEquals(new double[] {0.5, -1.0}, quiet.getSamplesChannelSegregated()[0], 0.0);
+     }
+
+
+     /**
+      * Checks that threads that share an object and all request its mixdown
+      * at once receive the same, complete mixdown.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testConcurrentMixdown()
+          throws Exception
+     {
+          final int number_threads = 8;
+          File file = writeTestFile(16, 2, 200000);
+          for (int storage_mode : new int[] {AudioSamples.STORAGE_DOUBLE, AudioSamples.STORAGE_FLOAT})
+               for (int trial = 0; trial < 5; trial++)
+               {
+                    final AudioSamples shared = new AudioSamples(file, "shared", false, storage_mode);
+                    double[] expected = AudioMethodsDSP.getSamplesMixedDownIntoOneChannel(shared.getSamplesChannelSegregated());
+                    final double[][] results = new double[number_threads][];
+                    final java.util.concurrent.CyclicBarrier barrier = new java.util.concurrent.CyclicBarrier(number_threads);
+                    Thread[] threads = new Thread[number_threads];
+                    for (int i = 0; i < number_threads; i++)
+                    {
+                         final int index = i;
+                         threads[i] = new Thread(() -> {
+                              try
+                              {
+                                   barrier.await();
+                                   results[index] = shared.getSamplesMixedDown();
+                              }
+                              catch (Exception e)
+                              {
+                                   // The missing result fails the test
+                              }
+                         });
+                         threads[i].start();
+                    }
+                    for (Thread thread : threads)
+                         thread.join();
+                    for (int i = 0; i < number_threads; i++)
+                         assertArrayEquals(expected, results[i], storage_mode == AudioSamples.STORAGE_FLOAT ? 1E-7 : 0.0);
+               }
+     }
+
+
+     /**
+      * Checks that the arrays given to the constructors are copied when
+      * copy_samples is true, for both mono and multi-channel samples, and
+      * are stored directly otherwise.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testCopiedAndAdoptedArrays()
+          throws Exception
+     {
+          AudioFormat mono_format = new AudioFormat(8000.0f, 16, 1, true, true);
+          AudioFormat stereo_format = new AudioFormat(8000.0f, 16, 2, true, true);
+          for (int channels : new int[] {1, 2})
+          {
+               AudioFormat format = channels == 1 ? mono_format : stereo_format;
+               double[][] given = getRandomSamples(channels, 100);
+               AudioSamples[] copied = {
+                    new AudioSamples(given, 8000.0f, "copied", false),
+                    new AudioSamples(given, 8000.0f, "copied", false, true),
+                    new AudioSamples(given, format, "copied", false),
+                    new AudioSamples(given, format, "copied", false, true)
+               };
+               AudioSamples[] adopted = {
+                    new AudioSamples(given, 8000.0f, "adopted", false, false),
+                    new AudioSamples(given, format, "adopted", false, false)
+               };
+               double before = given[channels - 1][10];
+               given[channels - 1][10] = 0.123;
+               for (AudioSamples audio_samples : copied)
+               {
+                    double[][] stored = audio_samples.getSamplesChannelSegregated();
+                    assertNotSame(given[channels - 1], stored[channels - 1]);
+                    assertEquals(before, stored[channels - 1][10], 0.0);
+               }
+               for (AudioSamples audio_samples : adopted)
+               {
+                    double[][] stored = audio_samples.getSamplesChannelSegregated();
+                    for (int chan = 0; chan < channels; chan++)
+                         assertSame(given[chan], stored[chan]);
+                    assertEquals(0.123, stored[channels - 1][10], 0.0);
+               }
+          }
+     }
+
+
+     /**
+      * Checks that memory-mapped samples can be saved over the file they are
+      * mapped from, with and without mixing down, and that they can still be
+      * read afterwards.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testSaveMappedSamplesOverSource()
+          throws Exception
+     {
+          for (boolean multi_channel : new boolean[] {true, false})
+          {
+               File file = writeTestFile(16, 2, 3 * AudioMethodsGeneral.STREAMING_BLOCK_SIZE + 5);
+               AudioSamples original = new AudioSamples(file, "original", false);
+               AudioSamples mapped = new AudioSamples(file, "mapped", false, AudioSamples.STORAGE_MEMORY_MAPPED);
+               assertTrue(mapped.isMemoryMapped());
+
+               mapped.saveAudio(file, multi_channel, AudioFileFormat.Type.WAVE, false);
+               AudioSamples reloaded = new AudioSamples(file, "reloaded", false);
+               if (multi_channel)
+                    assertSamplesEqual(original.getSamplesChannelSegregated(), reloaded.getSamplesChannelSegregated(), 2.0 / 32768.0);
+               else
+                    assertArrayEquals(original.getSamplesMixedDown(), reloaded.getSamplesMixedDown(), 4.0 / 32768.0);
+               assertSamplesEqual(original.getSamplesChannelSegregated(), mapped.getSamplesChannelSegregated(), 0.0);
+               assertEquals(1, file.getParentFile().listFiles().length);
+               file.delete();
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Checks that two sets of channels hold the same samples.
+      */
+     static void assertSamplesEqual(double[][] expected, double[][] actual, double tolerance)
+     {
+          assertEquals(expected.length, actual.length);
+          for (int chan = 0; chan < expected.length; chan++)
+               assertArrayEquals("Channel " + chan, expected[chan], actual[chan], tolerance);
+     }
+
+
+     /**
+      * Returns reproducible random samples.
+      */
+     static double[][] getRandomSamples(int channels, int number_frames)
+     {
+          Random random = new Random(channels * 131 + number_frames);
+          double[][] samples = new double[channels][number_frames];
+          for (int chan = 0; chan < channels; chan++)
+               for (int samp = 0; samp < number_frames; samp++)
+                    samples[chan][samp] = 1.8 * random.nextDouble() - 0.9;
+          return samples;
+     }
+
+
+     /**
+      * Writes reproducible random samples to a new WAVE file.
+      */
+     private File writeTestFile(int bit_depth, int channels, int number_frames)
+          throws Exception
+     {
+          File file = temp_folder.newFile();
+          AudioFormat format = new AudioFormat(11025.0f, bit_depth, channels, true, false);
+          try (AudioFileWriter writer = new AudioFileWriter(file, format, AudioFileFormat.Type.WAVE))
+          {
+               writer.writeSamples(getRandomSamples(channels, number_frames));
+          }
+          return file;
+     }
+}
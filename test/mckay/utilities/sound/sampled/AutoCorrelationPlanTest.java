@@ -0,0 +1,214 @@
+/*
+ * AutoCorrelationPlanTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the AutoCorrelationPlan class, on both its direct and FFT paths,
+ * against the direct calculation of the auto-correlation, as well as the
+ * auto-correlation methods of the AudioMethodsDSP class that use it.
+ *
+ * @author Cory McKay
+ */
+public class AutoCorrelationPlanTest
+{
+     /**
+      * Checks that plans whose parameters make the FFT method faster use it,
+      * and give the results of the direct calculation, including for a
+      * minimum lag above 0 and for lags at and beyond the end of the signal.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFFTPath()
+          throws Exception
+     {
+          int[][] parameters = { {4096, 0, 2000},
+               {4096, 100, 3000},
+               {1000, 0, 1500},
+               {1000, 400, 999},
+               {777, 3, 2000} };
+          for (int[] parameter : parameters)
+          {
+               AutoCorrelationPlan plan = new AutoCorrelationPlan(parameter[0], parameter[1], parameter[2]);
+               assertTrue(java.util.Arrays.toString(parameter), plan.usesFFT());
+               checkPlan(plan, parameter[0], parameter[1], parameter[2]);
+          }
+     }
+
+
+     /**
+      * Checks that plans whose parameters make the direct method faster use
+      * it, including for signals of 0 and 1 samples and for lags that all
+      * lie beyond the end of the signal.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testDirectPath()
+          throws Exception
+     {
+          int[][] parameters = { {100, 0, 10},
+               {100, 5, 20},
+               {50, 60, 70},
+               {0, 0, 5},
+               {1, 0, 3},
+               {1, 2, 4},
+               {2, 0, 0} };
+          for (int[] parameter : parameters)
+          {
+               AutoCorrelationPlan plan = new AutoCorrelationPlan(parameter[0], parameter[1], parameter[2]);
+               assertFalse(java.util.Arrays.toString(parameter), plan.usesFFT());
+               checkPlan(plan, parameter[0], parameter[1], parameter[2]);
+          }
+
+          // A single sample only correlates with itself
+          double[] autocorrelation = new AutoCorrelationPlan(1, 0, 3).calculate(new double[] {-3.0});
+          assertArrayEquals(new double[] {9.0, 0.0, 0.0, 0.0}, autocorrelation, 0.0);
+     }
+
+
+     /**
+      * Checks that the getAutoCorrelation and getAutoCorrelations methods of
+      * the AudioMethodsDSP class give the results of the direct calculation
+      * whichever method they choose, that plans are cached, and that invalid
+      * arguments are rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testAudioMethodsDSP()
+          throws Exception
+     {
+          for (int[] parameter : new int[][] {{4096, 10, 2500}, {100, 5, 20}, {1, 0, 2}})
+          {
+               double[] signal = getRandomSignal(parameter[0], 7);
+               assertClose( getDirectAutoCorrelation(signal, parameter[1], parameter[2]),
+                    AudioMethodsDSP.getAutoCorrelation(signal, parameter[1], parameter[2]),
+                    signal );
+          }
+          assertSame( AudioMethodsDSP.getAutoCorrelationPlan(4096, 10, 2500),
+               AudioMethodsDSP.getAutoCorrelationPlan(4096, 10, 2500) );
+
+          // Each signal of a batch gets its own auto-correlation
+          for (int length : new int[] {3000, 64, 0})
+          {
+               double[][] signals = {getRandomSignal(length, 1), getRandomSignal(length, 2), getRandomSignal(length, 3)};
+               double[][] autocorrelations = AudioMethodsDSP.getAutoCorrelations(signals, 2, 1800);
+               assertEquals(3, autocorrelations.length);
+               for (int i = 0; i < signals.length; i++)
+                    assertClose(getDirectAutoCorrelation(signals[i], 2, 1800), autocorrelations[i], signals[i]);
+          }
+          assertEquals(0, AudioMethodsDSP.getAutoCorrelations(new double[0][], 0, 10).length);
+
+          try
+          {
+               AudioMethodsDSP.getAutoCorrelations(new double[][] {new double[10], new double[11]}, 0, 5);
+               fail("Signals of different lengths were accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+          try
+          {
+               AudioMethodsDSP.getAutoCorrelation(new double[10], 5, 4);
+               fail("A maximum lag below the minimum lag was accepted.");
+          }
+          catch (IllegalArgumentException e)
+          {
+               // Expected
+          }
+          try
+          {
+               new AutoCorrelationPlan(10, -1, 4);
+               fail("A negative minimum lag was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+          try
+          {
+               new AutoCorrelationPlan(10, 0, 4).calculate(new double[11]);
+               fail("A signal of the wrong length was accepted.");
+          }
+          catch (IllegalArgumentException e)
+          {
+               // Expected
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Checks the given plan against the direct calculation for several
+      * signals in turn, so that buffers left over from earlier signals would
+      * be noticed, and with an output array longer than needed.
+      */
+     private static void checkPlan(AutoCorrelationPlan plan, int signal_length, int min_lag, int max_lag)
+     {
+          for (long seed = 1; seed <= 3; seed++)
+          {
+               double[] signal = getRandomSignal(signal_length, seed);
+               double[] expected = getDirectAutoCorrelation(signal, min_lag, max_lag);
+               assertClose(expected, plan.calculate(signal), signal);
+
+               double[] output = new double[expected.length + 2];
+               java.util.Arrays.fill(output, 99.0);
+               plan.calculate(signal, output);
+               assertClose(expected, java.util.Arrays.copyOf(output, expected.length), signal);
+               assertEquals(99.0, output[expected.length], 0.0);
+          }
+     }
+
+
+     /**
+      * Returns the auto-correlation of the given signal calculated directly.
+      */
+     private static double[] getDirectAutoCorrelation(double[] signal, int min_lag, int max_lag)
+     {
+          double[] autocorrelation = new double[max_lag - min_lag + 1];
+          AutoCorrelationPlan.calculateDirectly(signal, min_lag, max_lag, autocorrelation);
+          return autocorrelation;
+     }
+
+
+     /**
+      * Checks that the given auto-correlations agree to within rounding
+      * error relative to the energy of the signal they were calculated from.
+      */
+     private static void assertClose(double[] expected, double[] actual, double[] signal)
+     {
+          double energy = 0.0;
+          for (double sample : signal)
+               energy += sample * sample;
+          assertEquals(expected.length, actual.length);
+          for (int lag = 0; lag < expected.length; lag++)
+               assertEquals("Lag index " + lag, expected[lag], actual[lag], 1.0e-10 * Math.max(1.0, energy));
+     }
+
+
+     /**
+      * Returns reproducible random samples between -1 and +1.
+      */
+     private static double[] getRandomSignal(int length, long seed)
+     {
+          Random random = new Random(seed);
+          double[] signal = new double[length];
+          for (int samp = 0; samp < length; samp++)
+               signal[samp] = 2.0 * random.nextDouble() - 1.0;
+          return signal;
+     }
+}
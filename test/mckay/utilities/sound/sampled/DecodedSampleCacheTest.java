@@ -0,0 +1,169 @@
+/*
+ * DecodedSampleCacheTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the DecodedSampleCache class, including the remembering of files
+ * that cannot be cached and the counting of errors and invalid entries.
+ *
+ * @author Cory McKay
+ */
+public class DecodedSampleCacheTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Checks that an entry is written for a file that must be decoded, that
+      * it is used by later requests and that it holds the decoded samples.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testHitsAndMisses()
+          throws Exception
+     {
+          DecodedSampleCache cache = new DecodedSampleCache(temp_folder.newFolder(), true);
+          File file = writeTestFile(new AudioFormat(8000.0f, 16, 1, true, true), AudioFileFormat.Type.AU);
+          double[] expected = new AudioSamples(file, "", false).getSamplesMixedDown();
+
+          MappedAudioFile first = cache.getSamples(file);
+          MappedAudioFile second = cache.getSamples(file);
+          assertNotNull(first);
+          assertNotNull(second);
+          assertEquals(1, cache.getMissCount());
+          assertEquals(1, cache.getHitCount());
+          assertEquals(0, cache.getErrorCount());
+
+          double[] cached = new double[expected.length];
+          second.readFramesMixedDown(0, expected.length, cached, 0);
+          assertArrayEquals(expected, cached, 0.0);
+     }
+
+
+     /**
+      * Checks that a file that decodes to floating point samples is only
+      * opened once, and is tried again once it changes.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testUncacheableFilesAreRemembered()
+          throws Exception
+     {
+          DecodedSampleCache cache = new DecodedSampleCache(temp_folder.newFolder(), false);
+          AudioFormat float_format = new AudioFormat( AudioFormat.Encoding.PCM_FLOAT,
+               8000.0f, 32, 1, 4, 8000.0f, false );
+          File file = writeTestFile(float_format, AudioFileFormat.Type.WAVE);
+
+          assertNull(cache.getSamples(file));
+          assertNull(cache.getSamples(file));
+          assertEquals(2, cache.getUncacheableCount());
+          assertEquals(0, cache.getMissCount());
+
+          // Make the file unreadable without changing its size or time, so
+          // that only the remembered result can avoid an error
+          long last_modified = file.lastModified();
+          byte[] junk = new byte[(int) file.length()];
+          Files.write(file.toPath(), junk);
+          assertTrue(file.setLastModified(last_modified));
+          assertNull(cache.getSamples(file));
+          assertEquals(0, cache.getErrorCount());
+
+          // Once the file has changed it is opened again
+          assertTrue(file.setLastModified(last_modified - 10000));
+          try
+          {
+               cache.getSamples(file);
+               fail("A file that is not audio was accepted.");
+          }
+          catch (Exception e)
+          {
+               assertEquals(1, cache.getErrorCount());
+               assertSame(e, cache.getLastError());
+          }
+     }
+
+
+     /**
+      * Checks that corrupt entries are counted and replaced, and that
+      * failed requests are counted.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testErrorsAndInvalidEntries()
+          throws Exception
+     {
+          File cache_directory = temp_folder.newFolder();
+          DecodedSampleCache cache = new DecodedSampleCache(cache_directory, false);
+          File file = writeTestFile(new AudioFormat(8000.0f, 16, 2, true, true), AudioFileFormat.Type.AU);
+          assertNotNull(cache.getSamples(file));
+
+          for (File entry : cache_directory.listFiles())
+               Files.write(entry.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+          assertNotNull(cache.getSamples(file));
+          assertEquals(1, cache.getInvalidEntryCount());
+          assertEquals(2, cache.getMissCount());
+
+          assertNull(cache.getLastError());
+          try
+          {
+               cache.getSamples(new File(temp_folder.getRoot(), "missing.au"));
+               fail("A missing file was accepted.");
+          }
+          catch (Exception e)
+          {
+               assertEquals(1, cache.getErrorCount());
+               assertSame(e, cache.getLastError());
+          }
+          assertTrue(cache.getStatistics().contains("Errors: 1"));
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Writes one second of a quiet ramp in the given format to a new file.
+      */
+     private File writeTestFile(AudioFormat format, AudioFileFormat.Type file_type)
+          throws Exception
+     {
+          int number_frames = (int) format.getFrameRate();
+          double[][] samples = new double[format.getChannels()][number_frames];
+          for (int chan = 0; chan < samples.length; chan++)
+               for (int samp = 0; samp < number_frames; samp++)
+                    samples[chan][samp] = 0.5 * samp / number_frames - 0.25 * chan;
+          byte[] bytes = new byte[number_frames * format.getFrameSize()];
+          if (format.getEncoding() == AudioFormat.Encoding.PCM_FLOAT)
+          {
+               java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap(bytes).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+               for (int samp = 0; samp < number_frames; samp++)
+                    for (int chan = 0; chan < samples.length; chan++)
+                         buffer.putFloat((float) samples[chan][samp]);
+          }
+          else
+               new SampleEncoder(format, false).encode(samples, 0, number_frames, bytes, 0);
+
+          File file = temp_folder.newFile();
+          AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(bytes), format, number_frames);
+          AudioSystem.write(stream, file_type, file);
+          return file;
+     }
+}
@@ -0,0 +1,304 @@
+/*
+ * DuplexAudioEngineTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the DuplexAudioEngine class using virtual lines, for the samples it
+ * plays, the mapping of input channels to output channels, the prefilled
+ * latency, the counting of xruns, stopping while a block is being captured
+ * and the reporting of errors thrown by processors.
+ *
+ * @author Cory McKay
+ */
+public class DuplexAudioEngineTest
+{
+     /**
+      * The format of the input lines: 16-bit mono at 8000 Hz.
+      */
+     private static final AudioFormat MONO = new AudioFormat(8000.0f, 16, 1, true, false);
+
+     /**
+      * The format of the output lines: 16-bit stereo at 8000 Hz.
+      */
+     private static final AudioFormat STEREO = new AudioFormat(8000.0f, 16, 2, true, false);
+
+
+     /**
+      * Checks that the output holds the prefilled silence followed by the
+      * captured audio as changed by each processor in order, with the mono
+      * input played on both output channels.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testOutputSamples()
+          throws Exception
+     {
+          int block_size = 80;
+          int prefill_blocks = 3;
+          short[] source = new short[800];
+          for (int samp = 0; samp < source.length; samp++)
+               source[samp] = (short) ((samp * 37) % 2000 * 16 - 16000);
+          VirtualTargetDataLine input = new VirtualTargetDataLine(getStream(source), true);
+          input.open(MONO, 4 * block_size * 2);
+          VirtualSourceDataLine output = new VirtualSourceDataLine(STEREO, false, true);
+          output.open(STEREO, 4 * block_size * 4);
+
+          // Halving and then offsetting differs from the reverse order
+          DuplexAudioEngine engine = new DuplexAudioEngine(input, output, block_size, prefill_blocks);
+          engine.addProcessor((block, number_frames) -> {
+               for (int samp = 0; samp < number_frames; samp++)
+                    block[0][samp] *= 0.5f;
+          });
+          AudioBlockProcessor offset = (block, number_frames) -> {
+               for (int samp = 0; samp < number_frames; samp++)
+                    block[0][samp] += 0.25f;
+          };
+          engine.addProcessor(offset);
+          engine.start();
+          waitForBlocks(engine, source.length / block_size + 2);
+          engine.stop();
+          assertNull(engine.getError());
+          assertEquals(0, engine.getXrunCount());
+
+          double[][] played = AudioMethodsGeneral.extractSampleValues(output.getOutputAudioInputStream());
+          assertEquals(2, played.length);
+          assertEquals(block_size * (prefill_blocks + engine.getBlocksProcessed()), played[0].length);
+          int prefill_frames = block_size * prefill_blocks;
+          for (int samp = 0; samp < played[0].length; samp++)
+          {
+               double expected;
+               if (samp < prefill_frames)
+                    expected = 0.0;
+               else if (samp < prefill_frames + source.length)
+                    expected = source[samp - prefill_frames] / 32768.0 * 0.5 + 0.25;
+               else
+                    expected = 0.25;
+               assertEquals("Frame " + samp, expected, played[0][samp], 1.5 / 32768.0);
+               assertEquals("Frame " + samp, played[0][samp], played[1][samp], 0.0);
+          }
+
+          // Removed processors are no longer applied
+          assertTrue(engine.removeProcessor(offset));
+          assertFalse(engine.removeProcessor(offset));
+          output.clearOutput();
+          engine.start();
+          waitForBlocks(engine, 1);
+          engine.stop();
+          double[][] silence = AudioMethodsGeneral.extractSampleValues(output.getOutputAudioInputStream());
+          for (int chan = 0; chan < 2; chan++)
+               for (int samp = 0; samp < silence[chan].length; samp++)
+                    assertEquals(0.0, silence[chan][samp], 0.0);
+          input.close();
+          output.close();
+     }
+
+
+     /**
+      * Checks that the latency before the first block is that of the
+      * prefilled blocks plus one block, and that stopping the engine ends a
+      * read still waiting for its block to be captured.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testPrefillAndStop()
+          throws Exception
+     {
+          // Each block takes half a second to capture
+          int block_size = 4000;
+          VirtualTargetDataLine input = new VirtualTargetDataLine(MONO, (block, number_frames) -> {}, true);
+          input.open(MONO, 2 * block_size * 2);
+          VirtualSourceDataLine output = new VirtualSourceDataLine(STEREO, true, false);
+          output.open(STEREO, 3 * block_size * 4);
+          DuplexAudioEngine engine = new DuplexAudioEngine(input, output, block_size, 2);
+          assertEquals(0.5, engine.getBlockDuration(), 0.0);
+          engine.start();
+          assertEquals(1.5, engine.getLatency(), 0.0);
+          assertTrue(engine.isRunning());
+
+          Thread.sleep(100);
+          long start_time = System.nanoTime();
+          engine.stop();
+          double elapsed = (System.nanoTime() - start_time) / 1.0e9;
+          assertTrue("Stopped in " + elapsed + " seconds.", elapsed < 0.3);
+          assertFalse(engine.isRunning());
+          assertEquals(0, engine.getBlocksProcessed());
+          assertNull(engine.getError());
+          assertEquals(0.0, engine.getAverageProcessingTime(), 0.0);
+
+          // The prefilled silence was discarded and both lines were stopped
+          assertFalse(input.isRunning());
+          assertFalse(output.isRunning());
+          assertEquals(output.getBufferSize(), output.available());
+          input.close();
+          output.close();
+     }
+
+
+     /**
+      * Checks that real-time lines with enough prefilled blocks run without
+      * xruns at a latency of roughly the prefilled blocks plus one block,
+      * and that a processor that stalls causes both an input overrun and an
+      * output underrun.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testXruns()
+          throws Exception
+     {
+          // Blocks of 20 milliseconds
+          int block_size = 160;
+          VirtualTargetDataLine input = new VirtualTargetDataLine(MONO, (block, number_frames) -> {}, true);
+          input.open(MONO, 4 * block_size * 2);
+          VirtualSourceDataLine output = new VirtualSourceDataLine(STEREO, true, false);
+          output.open(STEREO, 4 * block_size * 4);
+          DuplexAudioEngine engine = new DuplexAudioEngine(input, output, block_size, 2);
+          engine.start();
+          waitForBlocks(engine, 20);
+          assertEquals(0, engine.getInputOverrunCount());
+          assertEquals(0, engine.getOutputUnderrunCount());
+          double latency = engine.getLatency();
+          assertTrue("Latency of " + latency + " seconds.", latency > 0.02 && latency < 0.1);
+          assertTrue(engine.getAverageProcessingTime() > 0.0);
+          assertTrue(engine.getMaximumProcessingTime() >= engine.getAverageProcessingTime());
+          engine.stop();
+          input.close();
+          output.close();
+
+          // Without prefilled blocks the output is empty when the first block
+          // is played, and stalling for five blocks overflows an input buffer
+          // of two blocks and drains the output
+          input = new VirtualTargetDataLine(MONO, (block, number_frames) -> {}, true);
+          input.open(MONO, 2 * block_size * 2);
+          output = new VirtualSourceDataLine(STEREO, true, false);
+          output.open(STEREO, 4 * block_size * 4);
+          engine = new DuplexAudioEngine(input, output, block_size, 0);
+          final int[] blocks_seen = {0};
+          engine.addProcessor((block, number_frames) -> {
+               if (++blocks_seen[0] == 5)
+                    Thread.sleep(100);
+          });
+          engine.start();
+          waitForBlocks(engine, 10);
+          engine.stop();
+          assertTrue(engine.getInputOverrunCount() >= 1);
+          assertTrue(engine.getOutputUnderrunCount() >= 2);
+          assertEquals(engine.getInputOverrunCount() + engine.getOutputUnderrunCount(), engine.getXrunCount());
+          assertTrue(engine.getMaximumProcessingTime() >= 0.1);
+
+          // Starting again resets the counters
+          blocks_seen[0] = 0;
+          engine.start();
+          assertEquals(0, engine.getXrunCount());
+          assertEquals(0, engine.getBlocksProcessed());
+          engine.stop();
+          input.close();
+          output.close();
+     }
+
+
+     /**
+      * Checks that an exception thrown by a processor stops the engine and
+      * is returned by getError, and that it is cleared when the engine is
+      * started again.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testProcessorError()
+          throws Exception
+     {
+          VirtualTargetDataLine input = new VirtualTargetDataLine(MONO, (block, number_frames) -> {}, false);
+          input.open(MONO, 800);
+          VirtualSourceDataLine output = new VirtualSourceDataLine(STEREO, false, false);
+          output.open(STEREO, 1600);
+          DuplexAudioEngine engine = new DuplexAudioEngine(input, output, 100, 1);
+          final int[] blocks_seen = {0};
+          engine.addProcessor((block, number_frames) -> {
+               if (++blocks_seen[0] == 3)
+                    throw new Exception("Processor failed");
+          });
+          engine.start();
+          waitForEnd(engine);
+          assertNotNull(engine.getError());
+          assertEquals("Processor failed", engine.getError().getMessage());
+          assertEquals(2, engine.getBlocksProcessed());
+
+          // The failed block was not played
+          assertEquals(300, output.getLongFramePosition());
+          engine.stop();
+
+          blocks_seen[0] = -1000000;
+          engine.start();
+          assertNull(engine.getError());
+          waitForBlocks(engine, 5);
+          engine.stop();
+          assertNull(engine.getError());
+          input.close();
+          output.close();
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Waits up to 5 seconds for the engine to process the given number of
+      * blocks, failing if it does not or if it stops first.
+      */
+     private static void waitForBlocks(DuplexAudioEngine engine, long number_blocks)
+          throws Exception
+     {
+          long deadline = System.currentTimeMillis() + 5000;
+          while (engine.getBlocksProcessed() < number_blocks)
+          {
+               assertTrue("The engine stopped: " + engine.getError(), engine.isRunning());
+               assertTrue("Only " + engine.getBlocksProcessed() + " blocks processed.", System.currentTimeMillis() < deadline);
+               Thread.sleep(1);
+          }
+     }
+
+
+     /**
+      * Waits up to 5 seconds for the engine to stop by itself, failing if it
+      * does not.
+      */
+     private static void waitForEnd(DuplexAudioEngine engine)
+          throws Exception
+     {
+          long deadline = System.currentTimeMillis() + 5000;
+          while (engine.isRunning())
+          {
+               assertTrue("The engine did not stop.", System.currentTimeMillis() < deadline);
+               Thread.sleep(1);
+          }
+     }
+
+
+     /**
+      * Returns a mono stream of the given 16-bit samples.
+      */
+     private static AudioInputStream getStream(short[] samples)
+     {
+          byte[] bytes = new byte[2 * samples.length];
+          for (int samp = 0; samp < samples.length; samp++)
+          {
+               bytes[2 * samp] = (byte) samples[samp];
+               bytes[2 * samp + 1] = (byte) (samples[samp] >> 8);
+          }
+          return new AudioInputStream(new ByteArrayInputStream(bytes), MONO, samples.length);
+     }
+}
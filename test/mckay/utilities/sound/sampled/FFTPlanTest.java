@@ -0,0 +1,351 @@
+/*
+ * FFTPlanTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the FFTPlan, RealFFTPlan and FFT classes against a directly
+ * calculated discrete Fourier transform, for sizes performed with each of the
+ * radix-2, mixed-radix and Bluestein algorithms.
+ *
+ * @author Cory McKay
+ */
+public class FFTPlanTest
+{
+     /**
+      * Compares power of 2 forward transforms with the direct DFT.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRadix2Forward()
+          throws Exception
+     {
+          for (int size = 1; size <= 1024; size *= 2)
+               checkComplexTransform(size, false);
+     }
+
+
+     /**
+      * Compares power of 2 inverse transforms with the direct DFT.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRadix2Inverse()
+          throws Exception
+     {
+          for (int size = 1; size <= 1024; size *= 2)
+               checkComplexTransform(size, true);
+     }
+
+
+     /**
+      * Compares mixed-radix transforms, of sizes whose prime factors are all
+      * small, with the direct DFT.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testMixedRadix()
+          throws Exception
+     {
+          int[] sizes = {3, 5, 6, 7, 9, 12, 15, 30, 31, 45, 60, 100, 210, 441, 961, 1000};
+          for (int size : sizes)
+          {
+               checkComplexTransform(size, false);
+               checkComplexTransform(size, true);
+          }
+     }
+
+
+     /**
+      * Compares Bluestein transforms, of sizes with large prime factors, with
+      * the direct DFT.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testBluestein()
+          throws Exception
+     {
+          int[] sizes = {37, 74, 101, 127, 257, 509, 997, 1021};
+          for (int size : sizes)
+          {
+               checkComplexTransform(size, false);
+               checkComplexTransform(size, true);
+          }
+     }
+
+
+     /**
+      * Checks that a forward transform followed by an inverse transform
+      * returns the original signal multiplied by the size, for each
+      * algorithm.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRoundTrip()
+          throws Exception
+     {
+          for (int size : new int[] {512, 360, 499})
+          {
+               double[] real = randomSignal(size, 11);
+               double[] imaginary = randomSignal(size, 12);
+               double[] real_copy = real.clone();
+               double[] imaginary_copy = imaginary.clone();
+               new FFTPlan(size, false, false).transform(real, imaginary);
+               new FFTPlan(size, true, false).transform(real, imaginary);
+               for (int i = 0; i < size; i++)
+               {
+                    assertEquals("Size " + size, real_copy[i], real[i] / size, 1E-12);
+                    assertEquals("Size " + size, imaginary_copy[i], imaginary[i] / size, 1E-12);
+               }
+          }
+     }
+
+
+     /**
+      * Checks that unpadded transforms performed by the FFT class match the
+      * direct DFT for a size that is not a power of 2.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFFTWithoutZeroPadding()
+          throws Exception
+     {
+          int size = 441;
+          double[] real = randomSignal(size, 5);
+          double[] imaginary = randomSignal(size, 6);
+          double[][] expected = naiveDFT(real, imaginary, false);
+          FFT fft = new FFT(real, imaginary, false, false, false);
+          assertArrayEquals(expected[0], fft.getRealValues(), tolerance(size));
+          assertArrayEquals(expected[1], fft.getImaginaryValues(), tolerance(size));
+     }
+
+
+     /**
+      * Compares the Hanning windowed transform with the direct DFT of the
+      * windowed signal.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRadix2HanningWindow()
+          throws Exception
+     {
+          int size = 256;
+          double[] real = randomSignal(size, 1);
+          double[] imaginary = randomSignal(size, 2);
+          double[] windowed = new double[size];
+          for (int i = 0; i < size; i++)
+               windowed[i] = real[i] * (0.5 - 0.5 * Math.cos(2 * Math.PI * i / size));
+          double[][] expected = naiveDFT(windowed, imaginary, false);
+
+          new FFTPlan(size, false, true).transform(real, imaginary);
+          assertArrayEquals(expected[0], real, tolerance(size));
+          assertArrayEquals(expected[1], imaginary, tolerance(size));
+     }
+
+
+     /**
+      * Compares the unique bins from real transforms of even and odd sizes
+      * with the direct DFT.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRealFFTPlan()
+          throws Exception
+     {
+          int[] sizes = {2, 3, 4, 8, 15, 64, 100, 512, 1000, 1024};
+          for (int size : sizes)
+          {
+               double[] input = randomSignal(size, size);
+               double[] original_input = input.clone();
+               double[][] expected = naiveDFT(input, new double[size], false);
+
+               RealFFTPlan plan = new RealFFTPlan(size, false);
+               double[] real_output = new double[plan.getNumberBins()];
+               double[] imaginary_output = new double[plan.getNumberBins()];
+               plan.transform(input, real_output, imaginary_output);
+               assertArrayEquals(original_input, input, 0.0);
+               for (int k = 0; k < plan.getNumberBins(); k++)
+               {
+                    assertEquals("Size " + size + ", bin " + k, expected[0][k], real_output[k], tolerance(size));
+                    assertEquals("Size " + size + ", bin " + k, expected[1][k], imaginary_output[k], tolerance(size));
+               }
+
+               double[] powers = new double[plan.getNumberBins()];
+               plan.getPowerSpectrum(input, powers);
+               for (int k = 0; k < plan.getNumberBins(); k++)
+               {
+                    double expected_power = (expected[0][k] * expected[0][k] + expected[1][k] * expected[1][k]) / size;
+                    assertEquals("Size " + size + ", bin " + k, expected_power, powers[k], tolerance(size));
+               }
+          }
+     }
+
+
+     /**
+      * Checks that a real transform may be performed in place, as the FFT
+      * class does.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRealFFTPlanInPlace()
+          throws Exception
+     {
+          for (int size : new int[] {64, 99})
+          {
+               double[] input = randomSignal(size, 7);
+               double[][] expected = naiveDFT(input, new double[size], false);
+               double[] imaginary_output = new double[size / 2 + 1];
+               new RealFFTPlan(size, false).transform(input, input, imaginary_output);
+               for (int k = 0; k <= size / 2; k++)
+               {
+                    assertEquals(expected[0][k], input[k], tolerance(size));
+                    assertEquals(expected[1][k], imaginary_output[k], tolerance(size));
+               }
+          }
+     }
+
+
+     /**
+      * Checks that the FFT class fills in the full spectrum of a real signal
+      * by symmetry.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFFTRealInput()
+          throws Exception
+     {
+          int size = 128;
+          double[] input = randomSignal(size, 3);
+          double[][] expected = naiveDFT(input, new double[size], false);
+          FFT fft = new FFT(input, null, false, false);
+          assertArrayEquals(expected[0], fft.getRealValues(), tolerance(size));
+          assertArrayEquals(expected[1], fft.getImaginaryValues(), tolerance(size));
+     }
+
+
+     /**
+      * Checks that cached plans are reused, that the least recently used
+      * plans are discarded and that large sizes do not share keys.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testPlanCache()
+          throws Exception
+     {
+          FFTPlan first_plan = FFT.getPlan(16, false, false);
+          assertSame(first_plan, FFT.getPlan(16, false, false));
+          assertNotSame(first_plan, FFT.getPlan(16, true, false));
+          assertNotSame(first_plan, FFT.getPlan(16, false, true));
+
+          // Keep the first plan in use while filling the cache
+          for (int i = 0; i < FFT.MAXIMUM_CACHED_PLANS * 2; i++)
+          {
+               FFT.getPlan(32 + i, false, false);
+               assertSame(first_plan, FFT.getPlan(16, false, false));
+          }
+
+          // Let the first plan become the least recently used
+          for (int i = 0; i < FFT.MAXIMUM_CACHED_PLANS; i++)
+               FFT.getPlan(64 + i, false, false);
+          assertNotSame(first_plan, FFT.getPlan(16, false, false));
+
+          RealFFTPlan real_plan = FFT.getRealPlan(16, false);
+          assertSame(real_plan, FFT.getRealPlan(16, false));
+          assertNotSame(real_plan, FFT.getRealPlan(16, true));
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Compares a complex transform of the given size and direction with the
+      * direct DFT.
+      */
+     static void checkComplexTransform(int size, boolean inverse_transform)
+          throws Exception
+     {
+          double[] real = randomSignal(size, 2 * size);
+          double[] imaginary = randomSignal(size, 2 * size + 1);
+          double[][] expected = naiveDFT(real, imaginary, inverse_transform);
+
+          FFTPlan plan = new FFTPlan(size, inverse_transform, false);
+          double[] real_output = new double[size];
+          double[] imaginary_output = new double[size];
+          plan.transform(real, imaginary, real_output, imaginary_output);
+          assertArrayEquals("Size " + size, expected[0], real_output, tolerance(size));
+          assertArrayEquals("Size " + size, expected[1], imaginary_output, tolerance(size));
+
+          // Transform in place as well
+          plan.transform(real, imaginary);
+          assertArrayEquals("Size " + size, expected[0], real, tolerance(size));
+          assertArrayEquals("Size " + size, expected[1], imaginary, tolerance(size));
+     }
+
+
+     /**
+      * Calculates the unscaled DFT directly, with a positive exponent for
+      * forward transforms as used by the FFT class.
+      *
+      * @return    The real and imaginary parts of the transform.
+      */
+     static double[][] naiveDFT(double[] real, double[] imaginary, boolean inverse_transform)
+     {
+          int size = real.length;
+          double direction = inverse_transform ? -1.0 : 1.0;
+          double[][] result = new double[2][size];
+          for (int k = 0; k < size; k++)
+               for (int n = 0; n < size; n++)
+               {
+                    double angle = direction * 2.0 * Math.PI * ((long) k * n % size) / size;
+                    double cos = Math.cos(angle);
+                    double sin = Math.sin(angle);
+                    result[0][k] += real[n] * cos - imaginary[n] * sin;
+                    result[1][k] += real[n] * sin + imaginary[n] * cos;
+               }
+          return result;
+     }
+
+
+     /**
+      * Returns a reproducible random signal between -1 and 1.
+      */
+     static double[] randomSignal(int size, long seed)
+     {
+          Random random = new Random(seed);
+          double[] signal = new double[size];
+          for (int i = 0; i < size; i++)
+               signal[i] = 2.0 * random.nextDouble() - 1.0;
+          return signal;
+     }
+
+
+     /**
+      * Returns the absolute error allowed for a transform of the given size
+      * of a signal between -1 and 1.
+      */
+     static double tolerance(int size)
+     {
+          return 1E-10 * Math.max(1, size);
+     }
+}
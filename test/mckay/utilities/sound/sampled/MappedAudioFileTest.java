@@ -0,0 +1,175 @@
+/*
+ * MappedAudioFileTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import java.util.Random;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the MappedAudioFile class against the samples decoded by the
+ * AudioSamples(File) constructor, for WAVE and AIFF files of each supported
+ * bit depth.
+ *
+ * @author Cory McKay
+ */
+public class MappedAudioFileTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Checks that the format, length and every sample of each channel match
+      * those decoded into memory, including reads that start part way through
+      * the file.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testMatchesAudioSamples()
+          throws Exception
+     {
+          for (AudioFileFormat.Type file_type : new AudioFileFormat.Type[] {AudioFileFormat.Type.WAVE, AudioFileFormat.Type.AIFF})
+               for (int bit_depth : new int[] {8, 16, 24, 32})
+               {
+                    File file = writeTestFile(file_type, bit_depth, 2, 4001);
+                    String description = file_type + ", " + bit_depth + " bits";
+                    double[][] expected = new AudioSamples(file, "", false).getSamplesChannelSegregated();
+
+                    MappedAudioFile mapped_file = new MappedAudioFile(file);
+                    assertEquals(description, 2, mapped_file.getNumberChannels());
+                    assertEquals(description, 4001, mapped_file.getNumberFrames());
+                    assertEquals(description, bit_depth, mapped_file.getAudioFormat().getSampleSizeInBits());
+                    assertEquals(description, 11025.0f, mapped_file.getAudioFormat().getSampleRate(), 0.0f);
+
+                    double[][] mapped = new double[2][4001];
+                    mapped_file.readFramesChannelSegregated(0, 4001, mapped, 0);
+                    for (int chan = 0; chan < 2; chan++)
+                         assertArrayEquals(description, expected[chan], mapped[chan], 0.0);
+
+                    // Read a range part way through into an offset
+                    double[][] part = new double[2][110];
+                    mapped_file.readFramesChannelSegregated(1234, 100, part, 10);
+                    for (int chan = 0; chan < 2; chan++)
+                         for (int i = 0; i < 100; i++)
+                              assertEquals(description, expected[chan][1234 + i], part[chan][10 + i], 0.0);
+               }
+     }
+
+
+     /**
+      * Checks that mixed down samples match those of AudioSamples, and that
+      * AudioSamples maps the file when asked to.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testMixedDownAndMemoryMappedStorage()
+          throws Exception
+     {
+          for (AudioFileFormat.Type file_type : new AudioFileFormat.Type[] {AudioFileFormat.Type.WAVE, AudioFileFormat.Type.AIFF})
+          {
+               File file = writeTestFile(file_type, 16, 3, 5000);
+               AudioSamples in_memory = new AudioSamples(file, "", false);
+               double[] expected = in_memory.getSamplesMixedDown();
+
+               double[] mixed_down = new double[5000];
+               new MappedAudioFile(file).readFramesMixedDown(0, 5000, mixed_down, 0);
+               assertArrayEquals(file_type.toString(), expected, mixed_down, 1E-15);
+
+               AudioSamples mapped = new AudioSamples(file, "", false, AudioSamples.STORAGE_MEMORY_MAPPED);
+               assertTrue(mapped.isMemoryMapped());
+               assertEquals(in_memory.getNumberSamplesPerChannel(), mapped.getNumberSamplesPerChannel());
+               assertArrayEquals(file_type.toString(), expected, mapped.getSamplesMixedDown(), 1E-15);
+               double[][] expected_channels = in_memory.getSamplesChannelSegregated();
+               double[][] mapped_channels = mapped.getSamplesChannelSegregated();
+               for (int chan = 0; chan < 3; chan++)
+                    assertArrayEquals(file_type.toString(), expected_channels[chan], mapped_channels[chan], 0.0);
+          }
+     }
+
+
+     /**
+      * Checks that reads outside of the file and files that are not WAVE or
+      * AIFF files are rejected, and that isMappable reports which files can
+      * be mapped.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testInvalidUse()
+          throws Exception
+     {
+          File wave_file = writeTestFile(AudioFileFormat.Type.WAVE, 16, 1, 100);
+          MappedAudioFile mapped_file = new MappedAudioFile(wave_file);
+          assertTrue(MappedAudioFile.isMappable(wave_file));
+          assertTrue(MappedAudioFile.isMappable(writeTestFile(AudioFileFormat.Type.AIFF, 24, 2, 100)));
+          try
+          {
+               mapped_file.readFramesChannelSegregated(50, 51, new double[1][51], 0);
+               fail("A read past the end of the file was accepted.");
+          }
+          catch (IndexOutOfBoundsException e)
+          {
+               // Expected
+          }
+
+          File not_audio = temp_folder.newFile();
+          java.nio.file.Files.write(not_audio.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+          try
+          {
+               new MappedAudioFile(not_audio);
+               fail("A file that is not audio was mapped.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+          assertFalse(MappedAudioFile.isMappable(not_audio));
+          assertFalse(MappedAudioFile.isMappable(new File(temp_folder.getRoot(), "missing.wav")));
+
+          File au_file = temp_folder.newFile();
+          AudioFormat format = new AudioFormat(8000.0f, 16, 1, true, true);
+          AudioSystem.write( new AudioInputStream(new java.io.ByteArrayInputStream(new byte[200]), format, 100),
+               AudioFileFormat.Type.AU,
+               au_file );
+          assertFalse(MappedAudioFile.isMappable(au_file));
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Writes reproducible random samples to a new file.
+      */
+     private File writeTestFile( AudioFileFormat.Type file_type,
+          int bit_depth,
+          int channels,
+          int number_frames )
+          throws Exception
+     {
+          Random random = new Random(bit_depth * 7 + channels);
+          double[][] samples = new double[channels][number_frames];
+          for (int chan = 0; chan < channels; chan++)
+               for (int samp = 0; samp < number_frames; samp++)
+                    samples[chan][samp] = 2.0 * random.nextDouble() - 1.0;
+          File file = temp_folder.newFile();
+          AudioFormat format = new AudioFormat(11025.0f, bit_depth, channels, true, false);
+          try (AudioFileWriter writer = new AudioFileWriter(file, format, file_type))
+          {
+               writer.writeSamples(samples);
+          }
+          return file;
+     }
+}
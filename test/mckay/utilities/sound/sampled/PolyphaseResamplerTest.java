@@ -0,0 +1,221 @@
+/*
+ * PolyphaseResamplerTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the PolyphaseResampler class for the lengths of its output, the
+ * accuracy of sine waves in the passband, the rejection of frequencies that
+ * would alias and the equivalence of streamed and whole conversions.
+ *
+ * @author Cory McKay
+ */
+public class PolyphaseResamplerTest
+{
+     /**
+      * Pairs of input and output rates, including exact ratios, a ratio with
+      * more than MAXIMUM_EXACT_PHASES positions and a non-integer rate.
+      */
+     private static final double[][] RATES = {
+          {44100.0, 22050.0},
+          {22050.0, 44100.0},
+          {48000.0, 44100.0},
+          {44100.0, 48000.0},
+          {44100.0, 16000.0},
+          {8000.0, 44100.0},
+          {44100.0, 44099.0},
+          {11025.5, 8000.0}
+     };
+
+
+     /**
+      * Checks that converting N samples gives ceil(N L/M) samples, both as
+      * reported by getOutputLength and as produced by process and flush.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testOutputLength()
+          throws Exception
+     {
+          for (double[] rates : RATES)
+               for (int input_length : new int[] {0, 1, 2, 7, 100, 1000, 44101})
+               {
+                    PolyphaseResampler resampler = new PolyphaseResampler(rates[0], rates[1], 1);
+                    long expected = (long) Math.ceil(input_length * rates[1] / rates[0] - 1E-9);
+                    String description = rates[0] + " to " + rates[1] + " Hz, " + input_length + " samples";
+                    assertEquals(description, expected, resampler.getOutputLength(input_length));
+
+                    double[][] output = new double[1][resampler.getMaximumOutputFrames(input_length)];
+                    int produced = resampler.process(new double[1][input_length], 0, input_length, output, 0);
+                    assertTrue(description, produced <= expected);
+                    produced += resampler.flush(output, produced);
+                    assertEquals(description, expected, produced);
+               }
+     }
+
+
+     /**
+      * Checks that sine waves well inside the passband are converted to sine
+      * waves of the same frequency and amplitude at the new rate.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testSinePassband()
+          throws Exception
+     {
+          for (double[] rates : RATES)
+          {
+               double lower_nyquist = Math.min(rates[0], rates[1]) / 2.0;
+               for (double frequency : new double[] {100.0, 1000.0, 0.5 * lower_nyquist})
+               {
+                    double[] input = getSine(frequency, rates[0], (int) rates[0]);
+                    double[] output = convert(new PolyphaseResampler(rates[0], rates[1], 1), input);
+                    double[] expected = getSine(frequency, rates[1], output.length);
+
+                    // Ignore the edges, where the input is preceded and
+                    // followed by silence
+                    int margin = output.length / 10;
+                    double maximum_error = 0.0;
+                    for (int samp = margin; samp < output.length - margin; samp++)
+                         maximum_error = Math.max(maximum_error, Math.abs(output[samp] - expected[samp]));
+                    assertEquals(rates[0] + " to " + rates[1] + " Hz, " + frequency + " Hz sine", 0.0, maximum_error, 1E-3);
+               }
+          }
+     }
+
+
+     /**
+      * Checks that a sine wave above the output Nyquist frequency is removed
+      * when downsampling rather than aliased.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testStopband()
+          throws Exception
+     {
+          double[] input = getSine(18000.0, 44100.0, 44100);
+          double[] output = convert(new PolyphaseResampler(44100.0, 22050.0, 1), input);
+          int margin = output.length / 10;
+          double peak = 0.0;
+          for (int samp = margin; samp < output.length - margin; samp++)
+               peak = Math.max(peak, Math.abs(output[samp]));
+          assertEquals(0.0, peak, 1E-3);
+     }
+
+
+     /**
+      * Checks that converting a stream in uneven blocks, and with the
+      * resample method, gives the same samples as converting it all at once,
+      * for each channel.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testStreamingMatchesWholeConversion()
+          throws Exception
+     {
+          double[][] input = {getSine(440.0, 48000.0, 30011), getSine(3000.0, 48000.0, 30011)};
+          PolyphaseResampler resampler = new PolyphaseResampler(48000.0, 44100.0, 2);
+          double[][] whole = new double[2][resampler.getMaximumOutputFrames(input[0].length)];
+          int whole_length = resampler.process(input, 0, input[0].length, whole, 0);
+          whole_length += resampler.flush(whole, whole_length);
+
+          PolyphaseResampler streaming = resampler.getNewInstance(2);
+          double[][] streamed = new double[2][whole_length + streaming.getMaximumOutputFrames(0)];
+          int streamed_length = 0;
+          int[] block_sizes = {1, 17, 4096, 3, 999};
+          int position = 0;
+          for (int i = 0; position < input[0].length; i++)
+          {
+               int block_size = Math.min(block_sizes[i % block_sizes.length], input[0].length - position);
+               streamed_length += streaming.process(input, position, block_size, streamed, streamed_length);
+               position += block_size;
+          }
+          streamed_length += streaming.flush(streamed, streamed_length);
+          assertEquals(whole_length, streamed_length);
+          for (int chan = 0; chan < 2; chan++)
+               for (int samp = 0; samp < whole_length; samp++)
+                    assertEquals(whole[chan][samp], streamed[chan][samp], 1E-12);
+
+          AudioSamples resampled = PolyphaseResampler.resample(new AudioSamples(input, 48000.0f, "sines", false, false), 44100.0);
+          assertEquals(44100.0f, resampled.getSamplingRate(), 0.0f);
+          double[][] resampled_samples = resampled.getSamplesChannelSegregated();
+          for (int chan = 0; chan < 2; chan++)
+          {
+               assertEquals(whole_length, resampled_samples[chan].length);
+               for (int samp = 0; samp < whole_length; samp++)
+                    assertEquals(whole[chan][samp], resampled_samples[chan][samp], 1E-12);
+          }
+     }
+
+
+     /**
+      * Checks that invalid rates and mismatched channels are rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testInvalidUse()
+          throws Exception
+     {
+          for (double[] rates : new double[][] {{0.0, 44100.0}, {44100.0, -1.0}, {Double.NaN, 44100.0}})
+               try
+               {
+                    new PolyphaseResampler(rates[0], rates[1], 1);
+                    fail("The rates " + rates[0] + " and " + rates[1] + " were accepted.");
+               }
+               catch (Exception e)
+               {
+                    // Expected
+               }
+
+          PolyphaseResampler resampler = new PolyphaseResampler(44100.0, 22050.0, 2);
+          try
+          {
+               resampler.process(new double[1][10], 0, 10, new double[1][10], 0);
+               fail("A single channel was accepted by a stereo converter.");
+          }
+          catch (IllegalArgumentException e)
+          {
+               // Expected
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns a sine wave with an amplitude of 0.8 at the given frequency.
+      */
+     private static double[] getSine(double frequency, double sampling_rate, int length)
+     {
+          double[] samples = new double[length];
+          for (int samp = 0; samp < length; samp++)
+               samples[samp] = 0.8 * Math.sin(2.0 * Math.PI * frequency * samp / sampling_rate);
+          return samples;
+     }
+
+
+     /**
+      * Converts the given mono samples all at once.
+      */
+     private static double[] convert(PolyphaseResampler resampler, double[] input)
+     {
+          double[][] output = new double[1][resampler.getMaximumOutputFrames(input.length)];
+          int length = resampler.process(new double[][] {input}, 0, input.length, output, 0);
+          length += resampler.flush(output, length);
+          return java.util.Arrays.copyOf(output[0], length);
+     }
+}
@@ -0,0 +1,283 @@
+/*
+ * SampleBlockReaderTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the SampleBlockReader class and the streamSampleValues method of the
+ * AudioMethodsGeneral class, which passes blocks to a SampleBlockConsumer,
+ * for block sizes that do not divide the stream, streams of unknown length,
+ * reads that split frames and streams that end part way through a frame.
+ *
+ * @author Cory McKay
+ */
+public class SampleBlockReaderTest
+{
+     /**
+      * Checks that every block but the last is full, that the last holds the
+      * remainder, and that the end of the stream is then reported, for block
+      * sizes that do and do not divide the stream.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testBlockSizes()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 16, 2, true, false);
+          int number_frames = 1000;
+          byte[] bytes = getEncodedSamples(format, number_frames);
+          double[][] expected = decode(format, bytes, number_frames);
+          for (int frames_per_block : new int[] {1, 7, 300, 1000, 1001, 4096})
+          {
+               SampleBlockReader reader = new SampleBlockReader(getStream(format, bytes, number_frames), frames_per_block);
+               double[][] block = reader.getBlock();
+               int frames_so_far = 0;
+               int frames_read;
+               while ((frames_read = reader.readBlock()) != -1)
+               {
+                    assertEquals(Math.min(frames_per_block, number_frames - frames_so_far), frames_read);
+                    assertSame(block, reader.getBlock());
+                    for (int chan = 0; chan < 2; chan++)
+                         for (int samp = 0; samp < frames_read; samp++)
+                              assertEquals(expected[chan][frames_so_far + samp], block[chan][samp], 0.0);
+                    frames_so_far += frames_read;
+               }
+               assertEquals(number_frames, frames_so_far);
+               assertEquals(number_frames, reader.getFramesRead());
+               assertEquals(-1, reader.readBlock());
+          }
+     }
+
+
+     /**
+      * Checks that readFrames decodes at the given offset, fills requests
+      * larger than a block and decodes nothing outside the requested range.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testReadFrames()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 24, 1, true, true);
+          int number_frames = 777;
+          byte[] bytes = getEncodedSamples(format, number_frames);
+          double[][] expected = decode(format, bytes, number_frames);
+          SampleBlockReader reader = new SampleBlockReader(getStream(format, bytes, number_frames), 100);
+
+          double[][] destination = new double[1][800];
+          destination[0][0] = 9.0;
+          destination[0][551] = 9.0;
+          assertEquals(550, reader.readFrames(destination, 1, 550));
+          assertEquals(9.0, destination[0][0], 0.0);
+          assertEquals(9.0, destination[0][551], 0.0);
+          assertEquals(227, reader.readFrames(destination, 551, 1000));
+          assertEquals(-1, reader.readFrames(destination, 0, 1));
+          for (int samp = 0; samp < number_frames; samp++)
+               assertEquals(expected[0][samp], destination[0][1 + samp], 0.0);
+     }
+
+
+     /**
+      * Checks that frames split across reads of the underlying stream are
+      * put back together, and that a partial frame at the end of the stream
+      * is discarded.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testPartialFrames()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 24, 2, true, false);
+          int number_frames = 500;
+          byte[] bytes = getEncodedSamples(format, number_frames);
+          double[][] expected = decode(format, bytes, number_frames);
+
+          // Append half a frame, and return at most 5 bytes per read, so that
+          // nearly every read ends part way through a frame. The bytes are
+          // returned directly, as AudioInputStream only returns whole frames
+          final ByteArrayInputStream with_partial_frame = new ByteArrayInputStream(java.util.Arrays.copyOf(bytes, bytes.length + 3));
+          AudioInputStream trickle = new AudioInputStream( with_partial_frame,
+               format,
+               AudioSystem.NOT_SPECIFIED )
+          {
+               public int read(byte[] buffer, int offset, int length)
+                    throws IOException
+               {
+                    return with_partial_frame.read(buffer, offset, Math.min(length, 5));
+               }
+          };
+          SampleBlockReader reader = new SampleBlockReader(trickle, 64);
+          double[][] decoded = new double[2][number_frames + 1];
+          int frames_so_far = 0;
+          int frames_read;
+          while ((frames_read = reader.readFrames(decoded, frames_so_far, 64)) != -1)
+               frames_so_far += frames_read;
+          assertEquals(number_frames, frames_so_far);
+          for (int chan = 0; chan < 2; chan++)
+               for (int samp = 0; samp < number_frames; samp++)
+                    assertEquals(expected[chan][samp], decoded[chan][samp], 0.0);
+     }
+
+
+     /**
+      * Checks that streams of unknown length are decoded in full, by
+      * streamSampleValues and by extractSampleValues and
+      * extractSampleValuesAsFloats, which must then grow their arrays.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testUnknownLength()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 8, 1, true, false);
+          int number_frames = 3 * AudioMethodsGeneral.STREAMING_BLOCK_SIZE + 17;
+          byte[] bytes = getEncodedSamples(format, number_frames);
+          double[][] expected = decode(format, bytes, number_frames);
+
+          final ArrayList<double[]> blocks = new ArrayList<double[]>();
+          final ArrayList<Long> first_frames = new ArrayList<Long>();
+          long total = AudioMethodsGeneral.streamSampleValues( getStream(format, bytes, AudioSystem.NOT_SPECIFIED),
+               5000,
+               new SampleBlockConsumer()
+               {
+                    public void processBlock(double[][] block, int number_frames, long first_frame)
+                    {
+                         blocks.add(java.util.Arrays.copyOf(block[0], number_frames));
+                         first_frames.add(first_frame);
+                    }
+               } );
+          assertEquals(number_frames, total);
+          long next_frame = 0;
+          for (int i = 0; i < blocks.size(); i++)
+          {
+               assertEquals(next_frame, (long) first_frames.get(i));
+               assertEquals(i < blocks.size() - 1 ? 5000 : number_frames % 5000, blocks.get(i).length);
+               for (int samp = 0; samp < blocks.get(i).length; samp++)
+                    assertEquals(expected[0][(int) next_frame + samp], blocks.get(i)[samp], 0.0);
+               next_frame += blocks.get(i).length;
+          }
+
+          double[][] extracted = AudioMethodsGeneral.extractSampleValues(getStream(format, bytes, AudioSystem.NOT_SPECIFIED));
+          assertArrayEquals(expected[0], extracted[0], 0.0);
+          float[][] extracted_floats = AudioMethodsGeneral.extractSampleValuesAsFloats(getStream(format, bytes, AudioSystem.NOT_SPECIFIED));
+          assertEquals(number_frames, extracted_floats[0].length);
+          for (int samp = 0; samp < number_frames; samp++)
+               assertEquals((float) expected[0][samp], extracted_floats[0][samp], 0.0f);
+     }
+
+
+     /**
+      * Checks that an exception thrown by the consumer stops decoding and
+      * reaches the caller, and that invalid readers are rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testInvalidUse()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 16, 1, true, false);
+          byte[] bytes = getEncodedSamples(format, 100);
+          final int[] blocks_seen = {0};
+          try
+          {
+               AudioMethodsGeneral.streamSampleValues( getStream(format, bytes, 100),
+                    10,
+                    new SampleBlockConsumer()
+                    {
+                         public void processBlock(double[][] block, int number_frames, long first_frame)
+                              throws Exception
+                         {
+                              blocks_seen[0]++;
+                              if (first_frame == 30)
+                                   throw new Exception("Stop");
+                         }
+                    } );
+               fail("The consumer's exception was not thrown.");
+          }
+          catch (Exception e)
+          {
+               assertEquals("Stop", e.getMessage());
+               assertEquals(4, blocks_seen[0]);
+          }
+
+          try
+          {
+               new SampleBlockReader(getStream(format, bytes, 100), 0);
+               fail("A block size of 0 was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+          AudioFormat ulaw = new AudioFormat(AudioFormat.Encoding.ULAW, 8000.0f, 8, 1, 1, 8000.0f, false);
+          try
+          {
+               new SampleBlockReader(getStream(ulaw, new byte[10], 10), 10);
+               fail("A stream that cannot be decoded was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns reproducible random samples encoded in the given format.
+      */
+     private static byte[] getEncodedSamples(AudioFormat format, int number_frames)
+          throws Exception
+     {
+          Random random = new Random(number_frames);
+          double[][] samples = new double[format.getChannels()][number_frames];
+          for (int chan = 0; chan < samples.length; chan++)
+               for (int samp = 0; samp < number_frames; samp++)
+                    samples[chan][samp] = 2.0 * random.nextDouble() - 1.0;
+          byte[] bytes = new byte[number_frames * format.getFrameSize()];
+          new SampleEncoder(format, false).encode(samples, 0, number_frames, bytes, 0);
+          return bytes;
+     }
+
+
+     /**
+      * Decodes the given bytes all at once.
+      */
+     private static double[][] decode(AudioFormat format, byte[] bytes, int number_frames)
+          throws Exception
+     {
+          double[][] samples = new double[format.getChannels()][number_frames];
+          AudioMethodsGeneral.decodeSampleValues(bytes, 0, format, samples, 0, number_frames);
+          return samples;
+     }
+
+
+     /**
+      * Returns a stream of the given bytes with the given frame length, which
+      * may be AudioSystem.NOT_SPECIFIED.
+      */
+     private static AudioInputStream getStream(AudioFormat format, byte[] bytes, long frame_length)
+     {
+          return new AudioInputStream(new ByteArrayInputStream(bytes), format, frame_length);
+     }
+}
@@ -0,0 +1,249 @@
+/*
+ * SampleEncoderTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import javax.sound.sampled.AudioFormat;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the decodeSampleValues method of the AudioMethodsGeneral class and
+ * the SampleEncoder class, for every supported bit depth, signed and unsigned
+ * encoding and byte order.
+ *
+ * @author Cory McKay
+ */
+public class SampleEncoderTest
+{
+     private static final int[] BIT_DEPTHS = {8, 16, 24, 32};
+
+
+     /**
+      * Checks that known integer values, stored by hand in each format, are
+      * decoded to the value divided by 2 to the power of one less than the
+      * bit depth.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testDecodeKnownValues()
+          throws Exception
+     {
+          for (int bit_depth : BIT_DEPTHS)
+               for (boolean signed : new boolean[] {true, false})
+                    for (boolean big_endian : new boolean[] {true, false})
+                    {
+                         long full_scale = 1L << (bit_depth - 1);
+                         long[] values = {-full_scale, -full_scale + 1, -1, 0, 1, 0x5A, full_scale / 3, full_scale - 1};
+                         AudioFormat format = getFormat(bit_depth, signed, big_endian, 1);
+                         byte[] bytes = new byte[values.length * bit_depth / 8];
+                         for (int i = 0; i < values.length; i++)
+                              storeInteger(values[i] + (signed ? 0 : full_scale), bytes, i * bit_depth / 8, bit_depth / 8, big_endian);
+
+                         double[][] decoded = new double[1][values.length];
+                         AudioMethodsGeneral.decodeSampleValues(bytes, 0, format, decoded, 0, values.length);
+                         for (int i = 0; i < values.length; i++)
+                              assertEquals( format + ", value " + values[i],
+                                   (double) values[i] / full_scale,
+                                   decoded[0][i],
+                                   0.0 );
+                    }
+     }
+
+
+     /**
+      * Checks that samples encoded by SampleEncoder and decoded again differ
+      * from the originals by no more than the encoder's scaling and
+      * truncation allow, including clipped samples.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRoundTrip()
+          throws Exception
+     {
+          for (int bit_depth : BIT_DEPTHS)
+               for (boolean signed : new boolean[] {true, false})
+                    for (boolean big_endian : new boolean[] {true, false})
+                         for (boolean dither : new boolean[] {false, true})
+                              checkRoundTrip(getFormat(bit_depth, signed, big_endian, 2), dither);
+     }
+
+
+     /**
+      * Checks that frames are decoded from and encoded at the given offsets
+      * without touching the neighbouring bytes or samples.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testOffsets()
+          throws Exception
+     {
+          AudioFormat format = getFormat(24, true, false, 2);
+          double[][] samples = {{0.0, 0.25, -0.5, 0.75}, {0.0, -0.25, 0.5, -0.75}};
+          byte[] bytes = new byte[3 + 3 * 6 + 3];
+          java.util.Arrays.fill(bytes, (byte) 0x7F);
+          new SampleEncoder(format, false).encode(samples, 1, 3, bytes, 3);
+          for (int i : new int[] {0, 1, 2, 21, 22, 23})
+               assertEquals((byte) 0x7F, bytes[i]);
+
+          double[][] decoded = new double[2][5];
+          decoded[0][0] = 9.0;
+          decoded[1][4] = 9.0;
+          AudioMethodsGeneral.decodeSampleValues(bytes, 3, format, decoded, 1, 3);
+          assertEquals(9.0, decoded[0][0], 0.0);
+          assertEquals(9.0, decoded[1][4], 0.0);
+          for (int chan = 0; chan < 2; chan++)
+               for (int samp = 1; samp <= 3; samp++)
+                    assertEquals(samples[chan][samp], decoded[chan][samp], 3.0 / (1 << 23));
+     }
+
+
+     /**
+      * Checks that 32 and 64 bit floating point samples are decoded unchanged
+      * with both byte orders.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testDecodeFloatingPoint()
+          throws Exception
+     {
+          double[] values = {0.0, -1.0, 1.0, 0.125, -0.333, 1.5, 1E-7};
+          for (int bit_depth : new int[] {32, 64})
+               for (boolean big_endian : new boolean[] {true, false})
+               {
+                    AudioFormat format = new AudioFormat( AudioFormat.Encoding.PCM_FLOAT,
+                         44100.0f, bit_depth, 1, bit_depth / 8, 44100.0f, big_endian );
+                    ByteBuffer buffer = ByteBuffer.allocate(values.length * bit_depth / 8)
+                         .order(big_endian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                    for (double value : values)
+                         if (bit_depth == 32)
+                              buffer.putFloat((float) value);
+                         else
+                              buffer.putDouble(value);
+
+                    double[][] decoded = new double[1][values.length];
+                    AudioMethodsGeneral.decodeSampleValues(buffer.array(), 0, format, decoded, 0, values.length);
+                    for (int i = 0; i < values.length; i++)
+                         assertEquals( format.toString(),
+                              bit_depth == 32 ? (double) (float) values[i] : values[i],
+                              decoded[0][i],
+                              0.0 );
+               }
+     }
+
+
+     /**
+      * Checks that formats that cannot be handled are rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testUnsupportedFormats()
+          throws Exception
+     {
+          assertFalse(SampleEncoder.isEncodable(new AudioFormat(44100.0f, 12, 1, true, false)));
+          assertFalse(SampleEncoder.isEncodable(new AudioFormat( AudioFormat.Encoding.PCM_FLOAT,
+               44100.0f, 32, 1, 4, 44100.0f, false )));
+          assertFalse(AudioMethodsGeneral.isDecodable(new AudioFormat( AudioFormat.Encoding.ULAW,
+               8000.0f, 8, 1, 1, 8000.0f, false )));
+          try
+          {
+               new SampleEncoder(20, true, false, false);
+               fail("A bit depth of 20 was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Encodes random samples, the extremes and out of range samples in the
+      * given format, decodes them and compares them with the originals.
+      */
+     private static void checkRoundTrip(AudioFormat format, boolean dither)
+          throws Exception
+     {
+          int number_frames = 1000;
+          int bit_depth = format.getSampleSizeInBits();
+          Random random = new Random(bit_depth);
+          double[][] samples = new double[format.getChannels()][number_frames];
+          for (int chan = 0; chan < samples.length; chan++)
+          {
+               for (int samp = 0; samp < number_frames; samp++)
+                    samples[chan][samp] = 2.0 * random.nextDouble() - 1.0;
+               samples[chan][0] = -1.0;
+               samples[chan][1] = 1.0;
+               samples[chan][2] = 0.0;
+               samples[chan][3] = 3.0;
+               samples[chan][4] = -3.0;
+          }
+
+          SampleEncoder encoder = new SampleEncoder(format, dither);
+          assertEquals(bit_depth / 8, encoder.getBytesPerSample());
+          byte[] bytes = new byte[number_frames * format.getFrameSize()];
+          encoder.encode(samples, 0, number_frames, bytes, 0);
+          double[][] decoded = new double[samples.length][number_frames];
+          AudioMethodsGeneral.decodeSampleValues(bytes, 0, format, decoded, 0, number_frames);
+
+          // Samples are scaled by slightly less than full scale and
+          // truncated, and dither adds up to one further step
+          double step = 1.0 / Math.pow(2.0, bit_depth - 1);
+          double tolerance = (dither ? 4.0 : 3.0) * step;
+          for (int chan = 0; chan < samples.length; chan++)
+               for (int samp = 0; samp < number_frames; samp++)
+               {
+                    double expected = Math.min(1.0, Math.max(-1.0, samples[chan][samp]));
+                    assertEquals( format + (dither ? " with dither" : "") + ", sample " + samp,
+                         expected,
+                         decoded[chan][samp],
+                         tolerance );
+                    assertTrue(decoded[chan][samp] >= -1.0 && decoded[chan][samp] < 1.0);
+               }
+     }
+
+
+     /**
+      * Returns an integer PCM format with the given properties.
+      */
+     private static AudioFormat getFormat( int bit_depth,
+          boolean signed,
+          boolean big_endian,
+          int channels )
+     {
+          return new AudioFormat(44100.0f, bit_depth, channels, signed, big_endian);
+     }
+
+
+     /**
+      * Stores the lowest bytes of the given value in the given byte order.
+      */
+     private static void storeInteger( long value,
+          byte[] bytes,
+          int offset,
+          int number_bytes,
+          boolean big_endian )
+     {
+          for (int i = 0; i < number_bytes; i++)
+          {
+               int shift = big_endian ? 8 * (number_bytes - 1 - i) : 8 * i;
+               bytes[offset + i] = (byte) (value >> shift);
+          }
+     }
+}
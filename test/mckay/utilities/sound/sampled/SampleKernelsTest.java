@@ -0,0 +1,232 @@
+/*
+ * SampleKernelsTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Assume;
+import org.junit.Test;
+
+
+/**
+ * Tests the SampleKernels class and the methods that use it, and checks that
+ * the optional Vector API implementation gives results identical to the
+ * scalar implementation, including for blocks that end part way through a
+ * vector and for NaN, infinite and negative zero samples. The comparison is
+ * skipped unless the vector implementation is on the class path and the JVM
+ * was started with <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * @author Cory McKay
+ */
+public class SampleKernelsTest
+{
+     /**
+      * The block lengths compared, which include lengths shorter than a
+      * vector and lengths that end part way through one for every vector
+      * size up to 8 doubles.
+      */
+     private static final int[] LENGTHS = {0, 1, 2, 3, 4, 5, 7, 8, 9, 15, 16, 17, 31, 33, 100, 1027};
+
+
+     /**
+      * Checks that every kernel of the vector implementation gives exactly
+      * the results of the scalar implementation, for each block length and
+      * for offsets that do not align the blocks with vectors.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testVectorMatchesScalar()
+          throws Exception
+     {
+          SampleKernels vector = loadVectorKernels();
+          Assume.assumeTrue("The vector kernels are not available.", vector != null);
+          SampleKernels scalar = new SampleKernels();
+          assertEquals("scalar", scalar.getName());
+
+          for (int length : LENGTHS)
+               for (int offset : new int[] {0, 3})
+               {
+                    String description = length + " samples at offset " + offset;
+                    double[][] channels = {getTestSamples(offset + length, 1), getTestSamples(offset + length, 2), getTestSamples(offset + length, 3)};
+
+                    // Mix down into a separate array and into the first channel
+                    double[] scalar_mix = new double[length + 5];
+                    double[] vector_mix = new double[length + 5];
+                    scalar.mixDown(channels, offset, scalar_mix, 5, length);
+                    vector.mixDown(channels, offset, vector_mix, 5, length);
+                    assertIdentical(description, scalar_mix, vector_mix);
+                    double[][] scalar_channels = copy(channels);
+                    double[][] vector_channels = copy(channels);
+                    scalar.mixDown(scalar_channels, offset, scalar_channels[0], offset, length);
+                    vector.mixDown(vector_channels, offset, vector_channels[0], offset, length);
+                    assertIdentical(description, scalar_channels[0], vector_channels[0]);
+
+                    double[] scalar_samples = channels[0].clone();
+                    double[] vector_samples = channels[0].clone();
+                    scalar.scale(scalar_samples, offset, length, 0.37);
+                    vector.scale(vector_samples, offset, length, 0.37);
+                    assertIdentical(description, scalar_samples, vector_samples);
+
+                    scalar.scaleAndClip(scalar_samples, offset, length, 3.5, 32767.0);
+                    vector.scaleAndClip(vector_samples, offset, length, 3.5, 32767.0);
+                    assertIdentical(description, scalar_samples, vector_samples);
+
+                    for (double peak_so_far : new double[] {0.0, 2.5})
+                         assertEquals( description,
+                              scalar.findPeak(channels[1], offset, length, peak_so_far),
+                              vector.findPeak(channels[1], offset, length, peak_so_far),
+                              0.0 );
+
+                    for (double max_sample_value : new double[] {127.0, 32767.0, 8388607.0, 2147483647.0})
+                    {
+                         int[] scalar_quantized = new int[length + 2];
+                         int[] vector_quantized = new int[length + 2];
+                         scalar.quantize(channels[2], offset, length, max_sample_value, scalar_quantized, 1);
+                         vector.quantize(channels[2], offset, length, max_sample_value, vector_quantized, 1);
+                         assertArrayEquals(description, scalar_quantized, vector_quantized);
+                    }
+               }
+     }
+
+
+     /**
+      * Checks the results of the scalar kernels for special values.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testScalarKernels()
+          throws Exception
+     {
+          SampleKernels scalar = new SampleKernels();
+          double[] samples = {0.5, -2.0, Double.NaN, Double.POSITIVE_INFINITY, -0.0, 1.0};
+          assertEquals(Double.POSITIVE_INFINITY, scalar.findPeak(samples, 0, 6, 0.0), 0.0);
+          assertEquals(2.0, scalar.findPeak(samples, 0, 3, 0.0), 0.0);
+          assertEquals(3.0, scalar.findPeak(samples, 0, 3, 3.0), 0.0);
+
+          int[] quantized = new int[6];
+          scalar.quantize(samples, 0, 6, 127.0, quantized, 0);
+          assertArrayEquals(new int[] {63, -127, 0, 127, 0, 127}, quantized);
+
+          double[] clipped = samples.clone();
+          scalar.scaleAndClip(clipped, 0, 6, 1.0, 10.0);
+          assertEquals(5.0, clipped[0], 0.0);
+          assertEquals(-10.0, clipped[1], 0.0);
+          assertTrue(Double.isNaN(clipped[2]));
+          assertEquals(10.0, clipped[3], 0.0);
+          assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(clipped[4]));
+     }
+
+
+     /**
+      * Checks that applyGainAndPanning and clipSamples of the AudioMethodsDSP
+      * class, which use the kernels, give the results of applying gain and
+      * panning and clipping one sample at a time.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testAudioMethodsDSP()
+          throws Exception
+     {
+          double[][] original = {getTestSamples(1000, 4), getTestSamples(1000, 5)};
+          for (double panning : new double[] {-0.6, 0.0, 0.25})
+          {
+               double[][] samples = copy(original);
+               AudioMethodsDSP.applyGainAndPanning(samples, 0.8, panning);
+               for (int samp = 0; samp < 1000; samp++)
+               {
+                    double left = original[0][samp] * 0.8;
+                    double right = original[1][samp] * 0.8;
+                    if (panning > 0.0)
+                         left *= 1.0 - panning;
+                    if (panning < 0.0)
+                         right *= panning + 1.0;
+                    assertEquals(Double.doubleToLongBits(left), Double.doubleToLongBits(samples[0][samp]));
+                    assertEquals(Double.doubleToLongBits(right), Double.doubleToLongBits(samples[1][samp]));
+               }
+          }
+
+          double[][] clipped = AudioMethodsDSP.clipSamples(original);
+          for (int chan = 0; chan < 2; chan++)
+          {
+               assertNotSame(original[chan], clipped[chan]);
+               for (int samp = 0; samp < 1000; samp++)
+               {
+                    double value = original[chan][samp];
+                    double expected = value < -1.0 ? -1.0 : (value > 1.0 ? 1.0 : value);
+                    assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(clipped[chan][samp]));
+               }
+          }
+          assertArrayEquals(getTestSamples(1000, 4), original[0], 0.0);
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns the vector implementation, or null if it cannot be loaded.
+      */
+     private static SampleKernels loadVectorKernels()
+     {
+          try
+          {
+               return (SampleKernels) Class.forName(SampleKernels.VECTOR_KERNELS_CLASS_NAME).getDeclaredConstructor().newInstance();
+          }
+          catch (Throwable t)
+          {
+               return null;
+          }
+     }
+
+
+     /**
+      * Returns reproducible random samples mostly between -2 and +2, with
+      * NaN, infinite and negative zero samples scattered among them.
+      */
+     private static double[] getTestSamples(int length, long seed)
+     {
+          Random random = new Random(seed);
+          double[] special_values = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, 1.0, -1.0};
+          double[] samples = new double[length];
+          for (int samp = 0; samp < length; samp++)
+          {
+               if (random.nextInt(10) == 0)
+                    samples[samp] = special_values[random.nextInt(special_values.length)];
+               else
+                    samples[samp] = 4.0 * random.nextDouble() - 2.0;
+          }
+          return samples;
+     }
+
+
+     /**
+      * Returns a copy of each channel of the given samples.
+      */
+     private static double[][] copy(double[][] samples)
+     {
+          double[][] copy = new double[samples.length][];
+          for (int chan = 0; chan < samples.length; chan++)
+               copy[chan] = samples[chan].clone();
+          return copy;
+     }
+
+
+     /**
+      * Checks that the given arrays hold exactly the same values, telling
+      * negative from positive zero.
+      */
+     private static void assertIdentical(String description, double[] expected, double[] actual)
+     {
+          assertEquals(description, expected.length, actual.length);
+          for (int i = 0; i < expected.length; i++)
+               assertEquals(description + ", index " + i, Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]));
+     }
+}
@@ -0,0 +1,276 @@
+/*
+ * SampleProcessingChainTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the SampleProcessingChain class against the separate gain and
+ * panning, clipping and normalization methods of the AudioMethodsDSP class,
+ * applied to each block in turn, for both double and single precision
+ * samples.
+ *
+ * @author Cory McKay
+ */
+public class SampleProcessingChainTest
+{
+     /**
+      * Checks every combination of settings on mono, stereo and three
+      * channel samples, some of which exceed the range of -1 to +1, processed
+      * in sub-blocks of different lengths including a final short block.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testMatchesAudioMethodsDSP()
+          throws Exception
+     {
+          for (int channels = 1; channels <= 3; channels++)
+               for (double gain : new double[] {1.0, 0.6})
+                    for (double panning : new double[] {0.0, -0.4, 0.7})
+                         for (int flags = 0; flags < 4; flags++)
+                         {
+                              SampleProcessingChain chain = new SampleProcessingChain();
+                              chain.setGain(gain);
+                              chain.setPanning(panning);
+                              chain.setClipping((flags & 1) != 0);
+                              chain.setNormalization((flags & 2) != 0);
+                              String description = channels + " channels, gain " + gain + ", panning " + panning +
+                                   ", clipping " + chain.isClipping() + ", normalization " + chain.isNormalizing();
+
+                              double[][] original = getLoudSamples(channels, 1000);
+                              double[][] samples = copy(original);
+                              float[][] floats = toFloats(original);
+                              double[][] floats_in_doubles = toDoubles(floats);
+                              for (int[] block : new int[][] {{5, 37}, {42, 500}, {542, 0}, {542, 451}})
+                              {
+                                   chain.process(samples, block[0], block[1]);
+                                   chain.process(floats, block[0], block[1]);
+                                   setBlock(original, getExpectedBlock(chain, original, block[0], block[1]), block[0]);
+                                   setBlock(floats_in_doubles, getExpectedBlock(chain, floats_in_doubles, block[0], block[1]), block[0]);
+                              }
+
+                              // Samples outside of the blocks are left alone
+                              AudioSamplesTest.assertSamplesEqual(original, samples, 1.0e-12);
+                              for (int chan = 0; chan < channels; chan++)
+                                   for (int samp = 0; samp < 1000; samp++)
+                                        assertEquals( description + ", channel " + chan + ", sample " + samp,
+                                             (float) floats_in_doubles[chan][samp],
+                                             floats[chan][samp],
+                                             1.0e-6f );
+
+                              // Whole arrays and engine blocks are one block
+                              double[][] whole = getLoudSamples(channels, 300);
+                              double[][] expected = getExpectedBlock(chain, whole, 0, 300);
+                              float[][] whole_floats = toFloats(whole);
+                              chain.process(whole);
+                              chain.processBlock(whole_floats, 300);
+                              AudioSamplesTest.assertSamplesEqual(expected, whole, 1.0e-12);
+                              AudioSamplesTest.assertSamplesEqual(expected, toDoubles(whole_floats), 1.0e-6);
+                         }
+     }
+
+
+     /**
+      * Checks gains outside of the range accepted by the applyGainAndPanning
+      * method of the AudioMethodsDSP class, and that silent blocks are not
+      * changed by normalization.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testOtherGains()
+          throws Exception
+     {
+          double[][] original = getLoudSamples(2, 200);
+          for (double gain : new double[] {2.5, -0.5, 0.0})
+          {
+               SampleProcessingChain chain = new SampleProcessingChain();
+               chain.setGain(gain);
+               chain.setPanning(0.5);
+               chain.setClipping(true);
+               double[][] samples = copy(original);
+               chain.process(samples);
+               for (int chan = 0; chan < 2; chan++)
+                    for (int samp = 0; samp < 200; samp++)
+                    {
+                         double multiplier = chan == 0 ? gain * 0.5 : gain;
+                         double expected = Math.min(1.0, Math.max(-1.0, original[chan][samp] * multiplier));
+                         assertEquals("Gain " + gain, expected, samples[chan][samp], 1.0e-15);
+                    }
+          }
+
+          SampleProcessingChain chain = new SampleProcessingChain();
+          chain.setNormalization(true);
+          double[][] silence = new double[2][50];
+          chain.process(silence, 10, 30);
+          AudioSamplesTest.assertSamplesEqual(new double[2][50], silence, 0.0);
+          float[][] float_silence = new float[2][50];
+          chain.process(float_silence, 10, 30);
+          for (float[] channel : float_silence)
+               assertArrayEquals(new float[50], channel, 0.0f);
+          chain.process(new double[0][]);
+     }
+
+
+     /**
+      * Checks that invalid settings and blocks are rejected and leave the
+      * chain and samples unchanged.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testInvalidArguments()
+          throws Exception
+     {
+          SampleProcessingChain chain = new SampleProcessingChain();
+          for (double gain : new double[] {Double.NaN, Double.POSITIVE_INFINITY})
+          {
+               try
+               {
+                    chain.setGain(gain);
+                    fail("A gain of " + gain + " was accepted.");
+               }
+               catch (Exception e)
+               {
+                    // Expected
+               }
+          }
+          for (double panning : new double[] {-1.5, 1.01, Double.NaN})
+          {
+               try
+               {
+                    chain.setPanning(panning);
+                    fail("A panning of " + panning + " was accepted.");
+               }
+               catch (Exception e)
+               {
+                    // Expected
+               }
+          }
+          assertEquals(1.0, chain.getGain(), 0.0);
+          assertEquals(0.0, chain.getPanning(), 0.0);
+          assertFalse(chain.isClipping());
+          assertFalse(chain.isNormalizing());
+
+          chain.setGain(0.5);
+          double[][] samples = {new double[10], new double[8]};
+          samples[0][0] = 1.0;
+          int[][] blocks = {{-1, 5}, {0, -1}, {5, 4}, {0, 11}};
+          for (int[] block : blocks)
+          {
+               try
+               {
+                    chain.process(samples, block[0], block[1]);
+                    fail("Block " + java.util.Arrays.toString(block) + " was accepted.");
+               }
+               catch (IllegalArgumentException e)
+               {
+                    // Expected
+               }
+               try
+               {
+                    chain.process(new float[][] {new float[10], new float[8]}, block[0], block[1]);
+                    fail("Block " + java.util.Arrays.toString(block) + " was accepted.");
+               }
+               catch (IllegalArgumentException e)
+               {
+                    // Expected
+               }
+          }
+          assertEquals(1.0, samples[0][0], 0.0);
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns the given block of the given samples processed as the given
+      * chain should process it, using the methods of the AudioMethodsDSP
+      * class. The samples are not changed.
+      */
+     private static double[][] getExpectedBlock(SampleProcessingChain chain, double[][] samples, int offset, int length)
+          throws Exception
+     {
+          double[][] block = new double[samples.length][];
+          for (int chan = 0; chan < samples.length; chan++)
+               block[chan] = java.util.Arrays.copyOfRange(samples[chan], offset, offset + length);
+          AudioMethodsDSP.applyGainAndPanning(block, chain.getGain(), chain.getPanning());
+          if (chain.isClipping())
+               block = AudioMethodsDSP.clipSamples(block);
+          if (chain.isNormalizing() && length > 0)
+               block = AudioMethodsDSP.normalizeSamples(block);
+          return block;
+     }
+
+
+     /**
+      * Copies the given block into the given samples, starting at the given
+      * offset.
+      */
+     private static void setBlock(double[][] samples, double[][] block, int offset)
+     {
+          for (int chan = 0; chan < samples.length; chan++)
+               System.arraycopy(block[chan], 0, samples[chan], offset, block[chan].length);
+     }
+
+
+     /**
+      * Returns reproducible random samples between -1.35 and +1.35, so that
+      * some must be clipped.
+      */
+     private static double[][] getLoudSamples(int channels, int number_frames)
+     {
+          double[][] samples = AudioSamplesTest.getRandomSamples(channels, number_frames);
+          for (double[] channel : samples)
+               for (int samp = 0; samp < channel.length; samp++)
+                    channel[samp] *= 1.5;
+          return samples;
+     }
+
+
+     /**
+      * Returns a copy of the given samples.
+      */
+     private static double[][] copy(double[][] samples)
+     {
+          double[][] copy = new double[samples.length][];
+          for (int chan = 0; chan < samples.length; chan++)
+               copy[chan] = samples[chan].clone();
+          return copy;
+     }
+
+
+     /**
+      * Returns the given samples rounded to single precision.
+      */
+     private static float[][] toFloats(double[][] samples)
+     {
+          float[][] floats = new float[samples.length][samples.length == 0 ? 0 : samples[0].length];
+          for (int chan = 0; chan < samples.length; chan++)
+               for (int samp = 0; samp < samples[chan].length; samp++)
+                    floats[chan][samp] = (float) samples[chan][samp];
+          return floats;
+     }
+
+
+     /**
+      * Returns the given single precision samples as doubles.
+      */
+     private static double[][] toDoubles(float[][] samples)
+     {
+          double[][] doubles = new double[samples.length][samples.length == 0 ? 0 : samples[0].length];
+          for (int chan = 0; chan < samples.length; chan++)
+               for (int samp = 0; samp < samples[chan].length; samp++)
+                    doubles[chan][samp] = samples[chan][samp];
+          return doubles;
+     }
+}
@@ -0,0 +1,256 @@
+/*
+ * SampleWindowIteratorTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.File;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+/**
+ * Tests the SampleWindowIterator class for the number and layout of windows,
+ * including a final partial window and hops longer than the windows, moving
+ * between windows, and copying windows out of samples stored as doubles, as
+ * floats and memory-mapped.
+ *
+ * @author Cory McKay
+ */
+public class SampleWindowIteratorTest
+{
+     @Rule public TemporaryFolder temp_folder = new TemporaryFolder();
+
+
+     /**
+      * Checks the number, start and length of the windows for sample counts
+      * that are shorter than a window, that are and are not covered exactly
+      * by the windows, and for hops shorter than, equal to and longer than
+      * the windows.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testWindowLayout()
+          throws Exception
+     {
+          // Each entry is the number of samples, the window size, the hop
+          // size and the expected number of windows
+          int[][] cases = { {0, 10, 5, 0},
+               {5, 10, 5, 1},
+               {10, 10, 5, 1},
+               {11, 10, 5, 2},
+               {100, 10, 10, 10},
+               {101, 10, 10, 11},
+               {100, 10, 3, 31},
+               {7, 3, 7, 1},
+               {995, 10, 100, 10},
+               {1000, 10, 100, 10},
+               {1005, 10, 100, 11},
+               {1009, 10, 100, 11} };
+          for (int[] test_case : cases)
+          {
+               String description = java.util.Arrays.toString(test_case);
+               int number_samples = test_case[0];
+               int window_size = test_case[1];
+               int hop_size = test_case[2];
+               SampleWindowIterator windows = new SampleWindowIterator(getAudioSamples(1, number_samples), window_size, hop_size);
+               assertEquals(description, test_case[3], windows.getNumberWindows());
+               assertEquals(window_size, windows.getWindowSize());
+               assertEquals(hop_size, windows.getHopSize());
+               assertEquals(-1, windows.getWindow());
+               assertNoCurrentWindow(windows);
+
+               int covered_to = 0;
+               for (int window = 0; window < test_case[3]; window++)
+               {
+                    assertTrue(description, windows.next());
+                    assertEquals(window, windows.getWindow());
+                    int start = windows.getStartSample();
+                    int length = windows.getLength();
+                    assertEquals(description, window * hop_size, start);
+                    assertTrue(description, start < number_samples);
+                    assertEquals(description, Math.min(window_size, number_samples - start), length);
+                    covered_to = start + length;
+               }
+               assertFalse(description, windows.next());
+               assertFalse(description, windows.next());
+               assertEquals(test_case[3], windows.getWindow());
+               assertNoCurrentWindow(windows);
+
+               // The windows reach the end unless they skip samples and the
+               // next would begin past it
+               if (hop_size <= window_size)
+                    assertEquals(description, number_samples, covered_to);
+               else
+                    assertTrue(description, covered_to == number_samples || covered_to + hop_size - window_size >= number_samples);
+          }
+
+          try
+          {
+               new SampleWindowIterator(getAudioSamples(1, 10), 0, 5);
+               fail("A window size of 0 was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+          try
+          {
+               new SampleWindowIterator(getAudioSamples(1, 10), 5, 0);
+               fail("A hop size of 0 was accepted.");
+          }
+          catch (Exception e)
+          {
+               // Expected
+          }
+     }
+
+
+     /**
+      * Checks that setWindow moves to the given window, that -1 returns to
+      * the state before the first window, and that other windows are
+      * rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testSetWindow()
+          throws Exception
+     {
+          SampleWindowIterator windows = getAudioSamples(2, 1000).getSampleWindowIterator(64, 48);
+          assertEquals(21, windows.getNumberWindows());
+          windows.setWindow(20);
+          assertEquals(960, windows.getStartSample());
+          assertEquals(40, windows.getLength());
+          assertFalse(windows.next());
+
+          windows.setWindow(5);
+          assertEquals(240, windows.getStartSample());
+          assertTrue(windows.next());
+          assertEquals(6, windows.getWindow());
+
+          windows.setWindow(-1);
+          assertNoCurrentWindow(windows);
+          assertTrue(windows.next());
+          assertEquals(0, windows.getStartSample());
+
+          for (int window : new int[] {-2, 21})
+          {
+               try
+               {
+                    windows.setWindow(window);
+                    fail("Window " + window + " was accepted.");
+               }
+               catch (IndexOutOfBoundsException e)
+               {
+                    // Expected
+               }
+          }
+          assertEquals(0, windows.getWindow());
+     }
+
+
+     /**
+      * Checks that filling buffers with each window, at an offset, copies
+      * the right samples whether they are stored as doubles, as floats or
+      * memory-mapped, and zero-pads the final window.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFillWindows()
+          throws Exception
+     {
+          File file = temp_folder.newFile();
+          AudioFormat format = new AudioFormat(11025.0f, 16, 2, true, false);
+          try (AudioFileWriter writer = new AudioFileWriter(file, format, AudioFileFormat.Type.WAVE))
+          {
+               writer.writeSamples(AudioSamplesTest.getRandomSamples(2, 1000));
+          }
+          AudioSamples doubles = new AudioSamples(file, "doubles", false, AudioSamples.STORAGE_DOUBLE);
+          double[][] channels = doubles.getSamplesChannelSegregated();
+          double[] mixed_down = doubles.getSamplesMixedDown();
+
+          int[] storage_modes = {AudioSamples.STORAGE_DOUBLE, AudioSamples.STORAGE_FLOAT, AudioSamples.STORAGE_MEMORY_MAPPED};
+          for (int storage_mode : storage_modes)
+          {
+               String description = "Storage mode " + storage_mode;
+               AudioSamples audio_samples = new AudioSamples(file, description, false, storage_mode);
+               assertEquals(storage_mode == AudioSamples.STORAGE_MEMORY_MAPPED, audio_samples.isMemoryMapped());
+               double tolerance = storage_mode == AudioSamples.STORAGE_FLOAT ? 1.0e-7 : 0.0;
+               SampleWindowIterator windows = audio_samples.getSampleWindowIterator(64, 48);
+               double[] mixed_down_buffer = new double[3 + 64];
+               double[][] channel_buffer = new double[2][3 + 64];
+               int number_windows = 0;
+               while (windows.next())
+               {
+                    // Stale values must be overwritten, including by padding
+                    java.util.Arrays.fill(mixed_down_buffer, 99.0);
+                    for (double[] channel : channel_buffer)
+                         java.util.Arrays.fill(channel, 99.0);
+                    windows.fillMixedDown(mixed_down_buffer, 3);
+                    windows.fillChannelSegregated(channel_buffer, 3);
+
+                    int start = windows.getStartSample();
+                    for (int samp = 0; samp < 64; samp++)
+                    {
+                         int index = start + samp;
+                         double expected = index < 1000 ? mixed_down[index] : 0.0;
+                         assertEquals(description, expected, mixed_down_buffer[3 + samp], tolerance);
+                         for (int chan = 0; chan < 2; chan++)
+                              assertEquals(description, index < 1000 ? channels[chan][index] : 0.0, channel_buffer[chan][3 + samp], tolerance);
+                    }
+                    assertEquals(99.0, mixed_down_buffer[0], 0.0);
+                    assertEquals(99.0, channel_buffer[1][2], 0.0);
+                    number_windows++;
+               }
+               assertEquals(21, number_windows);
+
+               // Only doubles are shared rather than decoded again
+               if (storage_mode == AudioSamples.STORAGE_DOUBLE)
+                    assertSame(audio_samples.getSamplesMixedDown(), windows.getSignalMixedDown());
+               else
+                    assertNotSame(windows.getSignalMixedDown(), windows.getSignalMixedDown());
+               assertArrayEquals(mixed_down, windows.getSignalMixedDown(), tolerance);
+               AudioSamplesTest.assertSamplesEqual(channels, windows.getSignalChannelSegregated(), tolerance);
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns an object holding reproducible random samples.
+      */
+     private static AudioSamples getAudioSamples(int channels, int number_frames)
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(11025.0f, 16, channels, true, false);
+          return new AudioSamples(AudioSamplesTest.getRandomSamples(channels, number_frames), format, "windows", false);
+     }
+
+
+     /**
+      * Checks that the given iterator has no current window.
+      */
+     private static void assertNoCurrentWindow(SampleWindowIterator windows)
+     {
+          try
+          {
+               windows.getStartSample();
+               fail("A current window was reported.");
+          }
+          catch (IllegalStateException e)
+          {
+               // Expected
+          }
+     }
+}
@@ -0,0 +1,193 @@
+/*
+ * ShortTimeFourierTransformTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.util.concurrent.ForkJoinPool;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the ShortTimeFourierTransform class against frames that are laid
+ * out, windowed and transformed one at a time with the FFT class, for frame
+ * sizes that are powers of 2, have only small prime factors, or are prime.
+ *
+ * @author Cory McKay
+ */
+public class ShortTimeFourierTransformTest
+{
+     /**
+      * The window types tested.
+      */
+     private static final int[] WINDOW_TYPES = { ShortTimeFourierTransform.WINDOW_RECTANGULAR,
+          ShortTimeFourierTransform.WINDOW_HANNING,
+          ShortTimeFourierTransform.WINDOW_HAMMING,
+          ShortTimeFourierTransform.WINDOW_BLACKMAN };
+
+
+     /**
+      * Checks that the frames, hop and windows of the parallel spectrograms
+      * match those of a serial per-frame FFT, including a final frame that
+      * is zero-padded and hops longer than the frames.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testMatchesSerialFFT()
+          throws Exception
+     {
+          AudioFormat format = new AudioFormat(8000.0f, 16, 2, true, false);
+          AudioSamples audio_samples = new AudioSamples(AudioSamplesTest.getRandomSamples(2, 5000), format, "stft", false);
+          double[] mixed_down = audio_samples.getSamplesMixedDown();
+          ForkJoinPool pool = new ForkJoinPool(3);
+          try
+          {
+               for (int frame_size : new int[] {256, 300, 97})
+                    for (int hop_size : new int[] {50, frame_size, 400})
+                         for (int window_type : WINDOW_TYPES)
+                         {
+                              String description = "Frame size " + frame_size + ", hop size " + hop_size + ", window " + window_type;
+                              ShortTimeFourierTransform stft = new ShortTimeFourierTransform(audio_samples, frame_size, hop_size, window_type);
+                              double[][][] expected = getSerialSpectrograms(mixed_down, frame_size, hop_size, window_type);
+                              assertEquals(description, expected[0].length, stft.getNumberFrames());
+                              assertEquals(frame_size / 2 + 1, stft.getNumberBins());
+                              assertSpectrogram(description, expected[0], stft.getMagnitudeSpectrogram());
+                              assertSpectrogram(description, expected[1], stft.getPowerSpectrogram());
+
+                              // A reused array longer than needed, filled by another
+                              // pool
+                              double[] spectrogram = new double[stft.getNumberFrames() * stft.getNumberBins() + 3];
+                              java.util.Arrays.fill(spectrogram, 99.0);
+                              stft.calculateSpectrogram(true, spectrogram, pool);
+                              assertSpectrogram(description, expected[1], java.util.Arrays.copyOf(spectrogram, spectrogram.length - 3));
+                              assertEquals(99.0, spectrogram[spectrogram.length - 1], 0.0);
+
+                              double[] times = stft.getFrameTimes();
+                              for (int frame = 0; frame < times.length; frame++)
+                                   assertEquals(frame * hop_size / 8000.0, times[frame], 1.0e-12);
+                              assertEquals(8000.0 / frame_size, stft.getBinLabels()[1], 1.0e-9);
+                         }
+          }
+          finally
+          {
+               pool.shutdown();
+          }
+     }
+
+
+     /**
+      * Checks the shapes of the window functions and that invalid parameters
+      * are rejected.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testWindows()
+          throws Exception
+     {
+          double[] rectangular = ShortTimeFourierTransform.getWindow(ShortTimeFourierTransform.WINDOW_RECTANGULAR, 8);
+          assertArrayEquals(new double[] {1, 1, 1, 1, 1, 1, 1, 1}, rectangular, 0.0);
+          double[] hanning = ShortTimeFourierTransform.getWindow(ShortTimeFourierTransform.WINDOW_HANNING, 8);
+          assertEquals(0.0, hanning[0], 1.0e-15);
+          assertEquals(1.0, hanning[4], 1.0e-15);
+          assertEquals(hanning[1], hanning[7], 1.0e-15);
+          double[] hamming = ShortTimeFourierTransform.getWindow(ShortTimeFourierTransform.WINDOW_HAMMING, 8);
+          assertEquals(0.08, hamming[0], 1.0e-15);
+          assertEquals(1.0, hamming[4], 1.0e-15);
+          double[] blackman = ShortTimeFourierTransform.getWindow(ShortTimeFourierTransform.WINDOW_BLACKMAN, 8);
+          assertEquals(0.0, blackman[0], 1.0e-15);
+          assertEquals(1.0, blackman[4], 1.0e-15);
+
+          AudioFormat format = new AudioFormat(8000.0f, 16, 1, true, false);
+          AudioSamples audio_samples = new AudioSamples(AudioSamplesTest.getRandomSamples(1, 100), format, "stft", false);
+          for (int[] parameters : new int[][] {{1, 10, 0}, {16, 0, 0}, {16, 8, 7}})
+          {
+               try
+               {
+                    new ShortTimeFourierTransform(audio_samples, parameters[0], parameters[1], parameters[2]);
+                    fail("Invalid parameters were accepted: " + java.util.Arrays.toString(parameters));
+               }
+               catch (Exception e)
+               {
+                    // Expected
+               }
+          }
+          try
+          {
+               new ShortTimeFourierTransform(audio_samples, 16, 8, 0).calculateSpectrogram(false, new double[10], ForkJoinPool.commonPool());
+               fail("A spectrogram array that is too short was accepted.");
+          }
+          catch (IllegalArgumentException e)
+          {
+               // Expected
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Returns the magnitude and power spectrograms of the given samples,
+      * calculated one frame at a time with the FFT class. Frames begin every
+      * hop until one reaches the end of the samples, and the last frame is
+      * zero-padded.
+      */
+     private static double[][][] getSerialSpectrograms(double[] samples, int frame_size, int hop_size, int window_type)
+          throws Exception
+     {
+          int number_frames = 0;
+          for (int start = 0; start < samples.length; start += hop_size)
+          {
+               number_frames++;
+               if (start + frame_size >= samples.length)
+                    break;
+          }
+
+          double[] window = ShortTimeFourierTransform.getWindow(window_type, frame_size);
+          double[][][] spectrograms = new double[2][number_frames][frame_size / 2 + 1];
+          for (int frame = 0; frame < number_frames; frame++)
+          {
+               double[] frame_samples = new double[frame_size];
+               for (int samp = 0; samp < frame_size; samp++)
+               {
+                    int index = frame * hop_size + samp;
+                    if (index < samples.length)
+                         frame_samples[samp] = samples[index] * window[samp];
+               }
+               FFT fft = new FFT(frame_samples, null, false, false, false);
+               double[] real = fft.getRealValues();
+               double[] imaginary = fft.getImaginaryValues();
+               for (int bin = 0; bin <= frame_size / 2; bin++)
+               {
+                    double squared = real[bin] * real[bin] + imaginary[bin] * imaginary[bin];
+                    spectrograms[0][frame][bin] = Math.sqrt(squared) / frame_size;
+                    spectrograms[1][frame][bin] = squared / frame_size;
+               }
+          }
+          return spectrograms;
+     }
+
+
+     /**
+      * Checks that the given frame-major spectrogram matches the expected
+      * spectrum of each frame.
+      */
+     private static void assertSpectrogram(String description, double[][] expected, double[] actual)
+     {
+          int number_bins = expected[0].length;
+          assertEquals(description, expected.length * number_bins, actual.length);
+          for (int frame = 0; frame < expected.length; frame++)
+               for (int bin = 0; bin < number_bins; bin++)
+                    assertEquals( description + ", frame " + frame + ", bin " + bin,
+                         expected[frame][bin],
+                         actual[frame * number_bins + bin],
+                         1.0e-10 );
+     }
+}
@@ -0,0 +1,282 @@
+/*
+ * SineOscillatorTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the SineOscillator class against samples calculated directly with
+ * <code>Math.sin</code>, for constant tones, frequency sweeps and amplitude
+ * ramps, generated in blocks that do and do not line up with the
+ * resynchronization interval.
+ *
+ * @author Cory McKay
+ */
+public class SineOscillatorTest
+{
+     /**
+      * The largest difference allowed from the samples calculated directly.
+      */
+     private static final double TOLERANCE = 1.0e-9;
+
+
+     /**
+      * Checks ten seconds of constant tones, from low frequencies to near the
+      * Nyquist frequency, generated in one block.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testConstantTone()
+          throws Exception
+     {
+          for (double frequency : new double[] {0.0, 27.5, 440.0, 21000.0})
+          {
+               SineOscillator oscillator = new SineOscillator(frequency, 0.0, 0.3, 44100.0);
+               double[] samples = new double[441000];
+               oscillator.generate(samples, 0, samples.length);
+               assertEquals(441000, oscillator.getPosition());
+               assertMatches("Frequency " + frequency, frequency, 0.0, 0.3, 1.0, 0.0, 44100.0, 0, samples, 0, samples.length);
+          }
+
+          // The two-argument constructor starts at a phase of 0
+          SineOscillator oscillator = new SineOscillator(1000.0, 8000.0);
+          double[] samples = new double[5];
+          oscillator.generate(samples, 0, 5);
+          assertArrayEquals(new double[] {0.0, Math.sqrt(0.5), 1.0, Math.sqrt(0.5), 0.0}, samples, TOLERANCE);
+          assertEquals(8000.0, oscillator.getSampleRate(), 0.0);
+     }
+
+
+     /**
+      * Checks rising and falling sweeps across the audible range.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testSweep()
+          throws Exception
+     {
+          // 20 Hz to 20 kHz and back over ten seconds
+          double slope = (20000.0 - 20.0) / 441000.0;
+          double[][] sweeps = {{20.0, slope, 0.5}, {20000.0, -slope, 0.0}, {440.0, 0.001, 1.0}};
+          for (double[] sweep : sweeps)
+          {
+               SineOscillator oscillator = new SineOscillator(sweep[0], sweep[1], sweep[2], 44100.0);
+               double[] samples = new double[441000];
+               oscillator.generate(samples, 0, samples.length);
+               assertMatches("Sweep from " + sweep[0], sweep[0], sweep[1], sweep[2], 1.0, 0.0, 44100.0, 0, samples, 0, samples.length);
+          }
+     }
+
+
+     /**
+      * Checks that the amplitude ramps linearly from sample 0, including when
+      * it is set part way through, and in single precision buffers.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testAmplitudeRamp()
+          throws Exception
+     {
+          SineOscillator oscillator = new SineOscillator(300.0, 0.02, 0.0, 22050.0);
+          oscillator.setAmplitude(1.0, -1.0 / 20000.0);
+          double[] samples = new double[20000];
+          oscillator.generate(samples, 0, samples.length);
+          assertMatches("Fade out", 300.0, 0.02, 0.0, 1.0, -1.0 / 20000.0, 22050.0, 0, samples, 0, samples.length);
+          assertEquals(0.0, samples[19999], 1.0e-4);
+
+          // A new ramp is measured from sample 0, not from the current
+          // position
+          oscillator.setAmplitude(0.0, 0.5 / 30000.0);
+          oscillator.generate(samples, 0, 10000);
+          assertMatches("Fade in", 300.0, 0.02, 0.0, 0.0, 0.5 / 30000.0, 22050.0, 20000, samples, 0, 10000);
+
+          float[] floats = new float[10000];
+          oscillator.generate(floats, 0, floats.length);
+          for (int samp = 0; samp < floats.length; samp++)
+               assertEquals(getExpected(300.0, 0.02, 0.0, 0.0, 0.5 / 30000.0, 22050.0, 30000 + samp), floats[samp], 1.0e-7);
+     }
+
+
+     /**
+      * Checks that accumulate adds to the existing contents of the buffer
+      * without touching the samples around the given range.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testAccumulate()
+          throws Exception
+     {
+          double[] samples = new double[10002];
+          java.util.Arrays.fill(samples, 0.25);
+          SineOscillator first = new SineOscillator(200.0, 44100.0);
+          SineOscillator second = new SineOscillator(600.0, -0.01, 1.0, 44100.0);
+          second.setAmplitude(0.5, 0.0);
+          first.accumulate(samples, 1, 10000);
+          second.accumulate(samples, 1, 10000);
+          assertEquals(0.25, samples[0], 0.0);
+          assertEquals(0.25, samples[10001], 0.0);
+          for (int samp = 0; samp < 10000; samp++)
+          {
+               double expected = 0.25 + getExpected(200.0, 0.0, 0.0, 1.0, 0.0, 44100.0, samp) +
+                    getExpected(600.0, -0.01, 1.0, 0.5, 0.0, 44100.0, samp);
+               assertEquals("Sample " + samp, expected, samples[samp + 1], TOLERANCE);
+          }
+     }
+
+
+     /**
+      * Checks that samples generated in blocks of awkward sizes, and after
+      * moving, skipping or resetting to positions on either side of a
+      * resynchronization, match those generated in one block.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testResynchronizationBoundary()
+          throws Exception
+     {
+          int interval = SineOscillator.RESYNCHRONIZATION_INTERVAL;
+          for (double frequency_slope : new double[] {0.0, 0.003})
+          {
+               String description = "Change in frequency of " + frequency_slope;
+               SineOscillator oscillator = new SineOscillator(1234.5, frequency_slope, 0.2, 44100.0);
+               oscillator.setAmplitude(0.8, 1.0e-6);
+               double[] samples = new double[5 * interval];
+               int position = 0;
+               for (int block_size : new int[] {1, interval - 2, 3, interval, 2 * interval - 5, 7, interval - 4})
+               {
+                    oscillator.generate(samples, position, block_size);
+                    position += block_size;
+                    assertEquals(position, oscillator.getPosition());
+               }
+               assertEquals(samples.length, position);
+               assertMatches(description, 1234.5, frequency_slope, 0.2, 0.8, 1.0e-6, 44100.0, 0, samples, 0, samples.length);
+
+               // Move to just before, at and just after boundaries
+               double[] block = new double[10];
+               for (long target : new long[] {interval - 3, interval, 3L * interval + 1, 100L * interval - 5})
+               {
+                    oscillator.setPosition(target);
+                    oscillator.generate(block, 0, 10);
+                    assertMatches(description, 1234.5, frequency_slope, 0.2, 0.8, 1.0e-6, 44100.0, target, block, 0, 10);
+               }
+               oscillator.skip(-20);
+               assertEquals(100L * interval - 15, oscillator.getPosition());
+               oscillator.skip(interval);
+               oscillator.generate(block, 0, 10);
+               assertMatches(description, 1234.5, frequency_slope, 0.2, 0.8, 1.0e-6, 44100.0, 101L * interval - 15, block, 0, 10);
+               oscillator.reset();
+               oscillator.generate(block, 0, 10);
+               assertMatches(description, 1234.5, frequency_slope, 0.2, 0.8, 1.0e-6, 44100.0, 0, block, 0, 10);
+          }
+     }
+
+
+     /**
+      * Checks that negative positions and invalid parameters are rejected,
+      * and that a rejected move leaves the position unchanged.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testInvalidArguments()
+          throws Exception
+     {
+          SineOscillator oscillator = new SineOscillator(440.0, 44100.0);
+          oscillator.skip(100);
+          for (int attempt = 0; attempt < 2; attempt++)
+          {
+               try
+               {
+                    if (attempt == 0)
+                         oscillator.setPosition(-1);
+                    else
+                         oscillator.skip(-101);
+                    fail("A negative position was accepted.");
+               }
+               catch (IllegalArgumentException e)
+               {
+                    // Expected
+               }
+               assertEquals(100, oscillator.getPosition());
+          }
+          double[] block = new double[5];
+          oscillator.generate(block, 0, 5);
+          assertMatches("After a rejected move", 440.0, 0.0, 0.0, 1.0, 0.0, 44100.0, 100, block, 0, 5);
+
+          double[][] invalid = { {440.0, 0.0, 0.0, 0.0},
+               {440.0, 0.0, 0.0, Double.POSITIVE_INFINITY},
+               {Double.NaN, 0.0, 0.0, 44100.0},
+               {440.0, Double.POSITIVE_INFINITY, 0.0, 44100.0},
+               {440.0, 0.0, Double.NaN, 44100.0} };
+          for (double[] parameters : invalid)
+          {
+               try
+               {
+                    new SineOscillator(parameters[0], parameters[1], parameters[2], parameters[3]);
+                    fail("Invalid parameters were accepted: " + java.util.Arrays.toString(parameters));
+               }
+               catch (Exception e)
+               {
+                    // Expected
+               }
+          }
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Checks the given samples against those calculated directly, where the
+      * first checked sample is at the given position of the oscillator.
+      */
+     private static void assertMatches( String description,
+          double frequency,
+          double frequency_slope,
+          double phase,
+          double amplitude,
+          double amplitude_slope,
+          double sample_rate,
+          long first_position,
+          double[] samples,
+          int offset,
+          int length )
+     {
+          for (int samp = 0; samp < length; samp++)
+          {
+               long position = first_position + samp;
+               double expected = getExpected(frequency, frequency_slope, phase, amplitude, amplitude_slope, sample_rate, position);
+               assertEquals(description + ", position " + position, expected, samples[offset + samp], TOLERANCE);
+          }
+     }
+
+
+     /**
+      * Returns the sample at the given position, calculated directly from
+      * the formula in the documentation of the SineOscillator class.
+      */
+     private static double getExpected( double frequency,
+          double frequency_slope,
+          double phase,
+          double amplitude,
+          double amplitude_slope,
+          double sample_rate,
+          long position )
+     {
+          double n = (double) position;
+          double cycles = frequency * n + frequency_slope * n * (n - 1.0) / 2.0;
+          return (amplitude + amplitude_slope * n) * Math.sin(phase + 2.0 * Math.PI * cycles / sample_rate);
+     }
+}
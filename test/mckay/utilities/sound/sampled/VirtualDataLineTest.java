@@ -0,0 +1,300 @@
+/*
+ * VirtualDataLineTest.java
+ *
+ * Last modified on October 17, 2026.
+ * Marianopolis College, McGill University and University of Waikato
+ */
+
+package mckay.utilities.sound.sampled;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+/**
+ * Tests the VirtualTargetDataLine and VirtualSourceDataLine classes for the
+ * timing of real-time and as-fast-as-possible lines, the counting of
+ * overruns and underruns, the kept output, and the unblocking of blocked
+ * reads and writes by stopping, flushing and closing the line from another
+ * thread.
+ *
+ * @author Cory McKay
+ */
+public class VirtualDataLineTest
+{
+     /**
+      * The format used by the lines tested: 16-bit mono at 8000 Hz.
+      */
+     private static final AudioFormat FORMAT = new AudioFormat(8000.0f, 16, 1, true, false);
+
+
+     /**
+      * Checks that as-fast-as-possible lines never block, capture their
+      * source exactly and then silence, keep everything written to them, and
+      * never overrun or underrun.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testAsFastAsPossible()
+          throws Exception
+     {
+          byte[] source_bytes = getSequence(2000);
+          VirtualTargetDataLine target = new VirtualTargetDataLine(getStream(source_bytes), false);
+          target.open(FORMAT, 200);
+          assertEquals(0, target.available());
+          target.start();
+          assertEquals(198, target.available());
+
+          // Reads larger than the buffer are filled at once, and the source
+          // is followed by silence
+          byte[] captured = new byte[2400];
+          long start_time = System.nanoTime();
+          assertEquals(2400, target.read(captured, 0, 2400));
+          assertArrayEquals(source_bytes, java.util.Arrays.copyOf(captured, 2000));
+          assertArrayEquals(new byte[400], java.util.Arrays.copyOfRange(captured, 2000, 2400));
+          assertTrue(target.isSourceExhausted());
+          assertNull(target.getSourceError());
+          assertEquals(1200, target.getLongFramePosition());
+          assertEquals(0, target.getOverrunCount());
+
+          VirtualSourceDataLine source = new VirtualSourceDataLine(FORMAT, false, true);
+          source.open(FORMAT, 200);
+          source.start();
+          for (int i = 0; i < 10; i++)
+               assertEquals(240, source.write(captured, 240 * i, 240));
+          source.drain();
+          assertTrue((System.nanoTime() - start_time) < 1000000000L);
+          assertEquals(198, source.available());
+          assertEquals(1200, source.getLongFramePosition());
+          assertArrayEquals(captured, source.getOutput());
+          assertEquals(0, source.getUnderrunCount());
+          AudioInputStream output = source.getOutputAudioInputStream();
+          assertEquals(1200, output.getFrameLength());
+          target.close();
+          source.close();
+     }
+
+
+     /**
+      * Checks that real-time lines capture and play at the sampling rate of
+      * their format.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testRealTime()
+          throws Exception
+     {
+          // Reading 0.2 seconds of audio takes 0.2 seconds
+          VirtualTargetDataLine target = new VirtualTargetDataLine(FORMAT, new CountingGenerator(), true);
+          target.open(FORMAT, 8000);
+          target.start();
+          byte[] captured = new byte[3200];
+          long start_time = System.nanoTime();
+          assertEquals(3200, target.read(captured, 0, 3200));
+          double elapsed = (System.nanoTime() - start_time) / 1.0e9;
+          assertTrue("Read in " + elapsed + " seconds.", elapsed > 0.18 && elapsed < 1.0);
+          assertEquals(0, target.getOverrunCount());
+          target.close();
+
+          // Writing 0.3 seconds of audio to a line with a 0.1 second buffer
+          // takes at least 0.2 seconds, and draining it the rest
+          VirtualSourceDataLine source = new VirtualSourceDataLine(FORMAT, true, false);
+          source.open(FORMAT, 1600);
+          source.start();
+          start_time = System.nanoTime();
+          assertEquals(4800, source.write(new byte[4800], 0, 4800));
+          elapsed = (System.nanoTime() - start_time) / 1.0e9;
+          assertTrue("Written in " + elapsed + " seconds.", elapsed > 0.18 && elapsed < 1.0);
+          assertTrue(source.isActive());
+          source.drain();
+          elapsed = (System.nanoTime() - start_time) / 1.0e9;
+          assertTrue("Drained in " + elapsed + " seconds.", elapsed > 0.28 && elapsed < 1.5);
+          assertEquals(2400, source.getLongFramePosition());
+          assertFalse(source.isActive());
+          source.close();
+     }
+
+
+     /**
+      * Checks that a real-time capture line that is not read in time loses
+      * its oldest frames and counts an overrun, and that a real-time playback
+      * line that runs dry counts an underrun when it is next written to.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testOverrunsAndUnderruns()
+          throws Exception
+     {
+          CountingGenerator generator = new CountingGenerator();
+          VirtualTargetDataLine target = new VirtualTargetDataLine(FORMAT, generator, true);
+          target.open(FORMAT, 160);
+          target.start();
+          Thread.sleep(100);
+          assertTrue(target.getOverrunCount() >= 1);
+          assertTrue(target.getLostFrameCount() >= 400);
+
+          // The frames read follow the lost ones, which were taken from the
+          // generator and discarded
+          byte[] captured = new byte[20];
+          assertEquals(20, target.read(captured, 0, 20));
+          assertEquals(target.getLostFrameCount() + 10, generator.frames_generated);
+          target.close();
+
+          VirtualSourceDataLine source = new VirtualSourceDataLine(FORMAT, true, false);
+          source.open(FORMAT, 1600);
+          source.start();
+          assertEquals(160, source.write(new byte[160], 0, 160));
+          Thread.sleep(50);
+          assertFalse(source.isActive());
+          assertEquals(0, source.getUnderrunCount());
+          assertEquals(160, source.write(new byte[160], 0, 160));
+          assertEquals(1, source.getUnderrunCount());
+          source.drain();
+          assertEquals(160, source.getLongFramePosition());
+          source.close();
+     }
+
+
+     /**
+      * Checks that stopping, flushing and closing a line from another thread
+      * each end a blocked read or write, which then returns the frames done
+      * so far.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testUnblocking()
+          throws Exception
+     {
+          for (final String action : new String[] {"stop", "flush", "close"})
+          {
+               // Reading 10 seconds of audio blocks
+               final VirtualTargetDataLine target = new VirtualTargetDataLine(FORMAT, new CountingGenerator(), true);
+               target.open(FORMAT, 160000);
+               target.start();
+               final AtomicInteger bytes_read = new AtomicInteger(-1);
+               Thread reader = new Thread(() -> bytes_read.set(target.read(new byte[160000], 0, 160000)));
+               reader.start();
+               Thread.sleep(100);
+               assertTrue(reader.isAlive());
+               perform(action, target);
+               reader.join(2000);
+               assertFalse(action + " did not end a blocked read.", reader.isAlive());
+               assertTrue(bytes_read.get() >= 0 && bytes_read.get() < 160000);
+               assertEquals(0, bytes_read.get() % 2);
+               target.close();
+
+               // Writing 10 seconds of audio to a line with a 0.1 second
+               // buffer blocks
+               final VirtualSourceDataLine source = new VirtualSourceDataLine(FORMAT, true, false);
+               source.open(FORMAT, 1600);
+               source.start();
+               final AtomicInteger bytes_written = new AtomicInteger(-1);
+               Thread writer = new Thread(() -> bytes_written.set(source.write(new byte[160000], 0, 160000)));
+               writer.start();
+               Thread.sleep(100);
+               assertTrue(writer.isAlive());
+               perform(action, source);
+               writer.join(2000);
+               assertFalse(action + " did not end a blocked write.", writer.isAlive());
+               assertTrue(bytes_written.get() >= 1600 && bytes_written.get() < 160000);
+               source.close();
+          }
+     }
+
+
+     /**
+      * Checks that flushing discards unplayed frames from the kept output,
+      * and leaves it empty rather than negative if it was cleared first.
+      *
+      * @throws Exception
+      */
+     @Test
+     public void testFlushKeptOutput()
+          throws Exception
+     {
+          VirtualSourceDataLine source = new VirtualSourceDataLine(FORMAT, true, true);
+          source.open(FORMAT, 400);
+
+          // A line that is not running only accepts a buffer of frames
+          byte[] sequence = getSequence(1000);
+          assertEquals(400, source.write(sequence, 0, 1000));
+          assertEquals(400, source.getOutput().length);
+          source.flush();
+          assertEquals(0, source.getOutput().length);
+          assertEquals(400, source.available());
+
+          assertEquals(400, source.write(sequence, 0, 400));
+          source.clearOutput();
+          source.flush();
+          assertEquals(0, source.getOutput().length);
+          assertEquals(400, source.write(sequence, 400, 400));
+          assertArrayEquals(java.util.Arrays.copyOfRange(sequence, 400, 800), source.getOutput());
+          source.close();
+     }
+
+
+     /* HELPER METHODS ********************************************************/
+
+
+     /**
+      * Stops, flushes or closes the given line.
+      */
+     private static void perform(String action, DataLine line)
+     {
+          if (action.equals("stop"))
+               line.stop();
+          else if (action.equals("flush"))
+               line.flush();
+          else
+               line.close();
+     }
+
+
+     /**
+      * Returns bytes counting up from 0.
+      */
+     private static byte[] getSequence(int length)
+     {
+          byte[] bytes = new byte[length];
+          for (int i = 0; i < length; i++)
+               bytes[i] = (byte) i;
+          return bytes;
+     }
+
+
+     /**
+      * Returns a stream of the given bytes in the test format.
+      */
+     private static AudioInputStream getStream(byte[] bytes)
+     {
+          return new AudioInputStream(new ByteArrayInputStream(bytes), FORMAT, bytes.length / 2);
+     }
+
+
+     /* INTERNAL CLASSES ******************************************************/
+
+
+     /**
+      * A generator of a slowly rising ramp, which counts the frames it
+      * generates.
+      */
+     private static class CountingGenerator
+          implements AudioBlockProcessor
+     {
+          long frames_generated = 0;
+
+          public void processBlock(float[][] block, int number_frames)
+          {
+               for (int samp = 0; samp < number_frames; samp++)
+                    block[0][samp] = (float) (((frames_generated + samp) % 1000) / 1000.0);
+               frames_generated += number_frames;
+          }
+     }
+}